@@ -2,11 +2,17 @@ package com.habbashx;
 
 
 import com.habbashx.exception.NoSuchAnimationException;
+import com.habbashx.exception.NoSuchArchiveFormatException;
+import com.habbashx.exception.NoSuchBatchOrderException;
+import com.habbashx.exception.NoSuchChecksumAlgorithmException;
 import com.habbashx.exception.NoSuchDownloadMethodException;
+import com.habbashx.exception.NoSuchPriorityException;
 
 public class DownloadManagerMain extends Launcher{
 
-    public static void main(String[] args) throws NoSuchAnimationException, NoSuchDownloadMethodException {
+    public static void main(String[] args) throws NoSuchAnimationException, NoSuchDownloadMethodException,
+            NoSuchPriorityException, NoSuchBatchOrderException, NoSuchChecksumAlgorithmException,
+            NoSuchArchiveFormatException {
         launch(args);
     }
 }
@@ -2,16 +2,51 @@ package com.habbashx;
 
 import com.habbashx.config.DownloadManagerConfig;
 
+import com.habbashx.exception.InvalidURLException;
+import com.habbashx.exception.NoSuchArchiveFormatException;
 import com.habbashx.exception.NoSuchAnimationException;
+import com.habbashx.exception.NoSuchBatchOrderException;
+import com.habbashx.exception.NoSuchChecksumAlgorithmException;
 import com.habbashx.exception.NoSuchDownloadMethodException;
+import com.habbashx.exception.NoSuchPriorityException;
 
 import com.habbashx.manager.DownloadTask;
 import com.habbashx.manager.DownloadTaskFactory;
 
-import com.habbashx.task.CommandListener;
+import com.habbashx.manager.archive.ArchiveExtractor;
+import com.habbashx.manager.buffer.BufferPool;
+import com.habbashx.manager.cache.ContentCache;
+import com.habbashx.manager.checksum.IntegrityCheck;
+import com.habbashx.manager.connection.HostConnectionLimiter;
+import com.habbashx.manager.http.ConnectionPool;
+import com.habbashx.manager.http.HttpProtocol;
+
+import com.habbashx.manager.scheduler.BatchImporter;
+import com.habbashx.manager.scheduler.BatchOrder;
+import com.habbashx.manager.scheduler.DownloadPriority;
+import com.habbashx.manager.scheduler.DownloadQueue;
+import com.habbashx.manager.scheduler.DownloadScheduler;
+
+import com.habbashx.task.CachingProxy;
+import com.habbashx.task.DaemonClient;
+import com.habbashx.task.DownloadDaemon;
 
 import com.habbashx.terminal.ResizableTable;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import java.net.InetSocketAddress;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Abstract class that provides a method to initialize and manage the execution of
  * different download-related operations based on the provided command-line arguments.
@@ -26,33 +61,278 @@ import com.habbashx.terminal.ResizableTable;
  * - Configures the application using runtime-modifiable settings.
  * - Initializes the appropriate {@link DownloadTask} implementation for downloading files.
  * <br><br>
- * Error handling is implemented to manage custom exceptions such as {@code NoSuchAnimationException}
- * and {@code NoSuchDownloadMethodException}, which may occur due to misconfigurations or unsupported
- * download methods.
+ * Several URLs given to {@code -d}, and the downloads added with {@code --queue}, are run together by a
+ * {@link DownloadScheduler}, which records them in the {@link DownloadQueue} so that downloads left
+ * unfinished are resumed by the next {@code --queue}. The URLs listed in a file given to {@code -f} are
+ * probed by a {@link BatchImporter} and scheduled in the {@link BatchOrder} of their sizes, all in one run
+ * of the download manager. {@code -m} downloads one file from several mirrors at once, {@code -c}
+ * verifies a download against an {@link IntegrityCheck} while it is written, and {@code -x} extracts an
+ * archive with an {@link ArchiveExtractor} while it is downloaded.
+ * <br><br>
+ * {@code --daemon} keeps a {@link DownloadDaemon} running in the background. While it runs, {@code -d}
+ * only forwards its URLs to the daemon, which starts them on warm connections without the startup of a
+ * new download manager, and {@code --pause}, {@code --resume}, {@code --stop} and {@code --status}
+ * control the downloads of the daemon. {@code --queue} forwards its downloads to the daemon as well, since
+ * the daemon owns the download queue while it runs, and {@code -f} refuses to run.
+ * <br><br>
+ * {@code --proxy} runs a {@link CachingProxy}, which downloads the files requested by the machines of the
+ * network once and serves them from the content cache afterwards.
+ * <br><br>
+ * Error handling is implemented to manage custom exceptions such as {@code NoSuchAnimationException},
+ * {@code NoSuchDownloadMethodException}, {@code NoSuchPriorityException},
+ * {@code NoSuchBatchOrderException}, {@code NoSuchChecksumAlgorithmException} and
+ * {@code NoSuchArchiveFormatException}, which may occur due to misconfigurations or unsupported download
+ * methods, priorities, batch orders, checksum algorithms and archive formats.
  */
 public abstract class Launcher {
 
-    public static void launch(String[] args) throws NoSuchAnimationException, NoSuchDownloadMethodException {
+    public static void launch(String[] args) throws NoSuchAnimationException, NoSuchDownloadMethodException,
+            NoSuchPriorityException, NoSuchBatchOrderException, NoSuchChecksumAlgorithmException,
+            NoSuchArchiveFormatException {
         DownloadManagerConfig config = new DownloadManagerConfig();
         String downloadMethod = (String) config.getPropertyValue("dm.settings.download.method");
-        DownloadTask downloadTask = DownloadTaskFactory.getInstance(downloadMethod);
+        configureSharedResources(config);
 
         switch (args[0]) {
             case "--help" -> System.out.println("""
                         --version print program version
                         --logs print downloads logs
                         --config <property> <new Value>
-                        -d <linkURL>
+                        -d <linkURL> [<linkURL>...]
+                        --queue [<high|normal|low> <linkURL>...] resume the queued downloads, adding new ones
+                        -f <file|-> [shortest|largest|listed] download the URLs listed in a file, one per line
+                        -m <linkURL> <mirrorURL>... download one file from several mirrors at once
+                        -c <linkURL> <algorithm:checksum|checksumURL> verify the download while it is written
+                        -x <linkURL> extract the archive (zip, tar, tar.gz) while it downloads
+                        --daemon keep running in the background, -d then hands its URLs to the daemon
+                        --status | --pause <job> | --resume <job> | --stop <job> control the downloads of the daemon
+                        --proxy [port] serve the network as a caching HTTP proxy
                         """);
-            case "--logs" -> ResizableTable.printTable(downloadTask.getFileLogger().getAllLogs());
+            case "--logs" -> ResizableTable.printTable(DownloadTaskFactory.getInstance(downloadMethod).getFileLogger().getAllLogs());
             case "--version" -> System.out.println("1.0-alpha");
             case "--config" -> config.modifyProperty(args[1], args[2]);
             case "-d" -> {
-                String linkURL = args[1];
-                downloadTask.downloadFile(linkURL);
+                if (forwardToDaemon(Arrays.asList(args).subList(1, args.length), DownloadPriority.NORMAL)) {
+                    return;
+                }
+                if (args.length == 2) {
+                    String linkURL = args[1];
+                    DownloadTask downloadTask = DownloadTaskFactory.getInstance(downloadMethod);
+                    downloadTask.downloadFile(linkURL);
+                } else {
+                    runQueued(config, downloadMethod, false, DownloadPriority.NORMAL, Arrays.asList(args).subList(1, args.length));
+                }
+            }
+            case "--queue" -> {
+                DownloadPriority priority = args.length > 1 ? DownloadPriority.of(args[1]) : DownloadPriority.NORMAL;
+                List<String> linkURLs = args.length > 2 ? Arrays.asList(args).subList(2, args.length) : List.of();
+                if (DaemonClient.isRunning(DownloadDaemon.SOCKET_PATH)) {
+                    // the daemon already runs the queued downloads
+                    if (linkURLs.isEmpty() || !forwardToDaemon(linkURLs, priority)) {
+                        System.out.println("the download manager daemon runs the queued downloads");
+                    }
+                    return;
+                }
+                runQueued(config, downloadMethod, true, priority, linkURLs);
             }
+            case "-f" -> {
+                if (DaemonClient.isRunning(DownloadDaemon.SOCKET_PATH)) {
+                    System.out.println("a download manager daemon is running, hand it the URLs with -d");
+                    return;
+                }
+                String order = args.length > 2 ? args[2] : (String) config.getPropertyValue("dm.settings.batch.order", "shortest");
+                runBatch(config, downloadMethod, DownloadTaskFactory.getInstance(downloadMethod), args[1], BatchOrder.of(order));
+            }
+            case "-m" -> DownloadTaskFactory.getInstance(downloadMethod)
+                    .downloadFromMirrors(Arrays.asList(args).subList(1, args.length));
+            case "-c" -> {
+                DownloadTask downloadTask = DownloadTaskFactory.getInstance(downloadMethod);
+                downloadTask.downloadVerified(args[1], readIntegrityCheck(downloadTask, args[2]));
+            }
+            case "-x" -> DownloadTaskFactory.getInstance(downloadMethod).downloadExtracted(args[1]);
+            case "--daemon" -> runDaemon(config, downloadMethod);
+            case "--proxy" -> runProxy(config, args.length > 1 ? Integer.parseInt(args[1])
+                    : (int) config.getPropertyValue("dm.settings.proxy.port", 3128));
+            case "--status" -> control("status");
+            case "--pause", "--resume", "--stop" -> control(args[0].substring(2) + " " + args[1]);
             default -> System.out.println("use --help");
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Configures the process-wide resources that all downloads of this run share, once, before the first
+     * download task is created: the memory budget of the {@link BufferPool}, how many idle keep-alive
+     * connections the {@link ConnectionPool} keeps per host, and for how many seconds, and how many
+     * connections the {@link HostConnectionLimiter} lets all downloads together open to each host, and the
+     * size of the {@link ContentCache}.
+     */
+    private static void configureSharedResources(DownloadManagerConfig config) {
+        BufferPool.getInstance().setBudget((int) config.getPropertyValue("dm.settings.buffer.budget", 64) * 1024L * 1024L);
+        int poolMaxPerHost = Math.max(0, (int) config.getPropertyValue("dm.settings.pool.max.per.host", 16));
+        int poolIdleTimeout = Math.max(0, (int) config.getPropertyValue("dm.settings.pool.idle.timeout", 30));
+        ConnectionPool.getInstance().configure(poolIdleTimeout * 1000L, poolMaxPerHost);
+        int hostLimit = Math.max(0, (int) config.getPropertyValue("dm.settings.host.limit", 0));
+        Map<String, Integer> hostLimits = new HashMap<>();
+        config.getPropertyValues("dm.settings.host.limit.")
+                .forEach((host, limit) -> hostLimits.put(host.toLowerCase(), Math.max(0, (int) limit)));
+        HostConnectionLimiter.getInstance().configure(hostLimit, hostLimits);
+        long cacheSize = Math.max(0, (int) config.getPropertyValue("dm.settings.cache.size", 4096));
+        ContentCache.getInstance().configure(ContentCache.DEFAULT_DIRECTORY, cacheSize * 1024L * 1024L);
+    }
+
+    /**
+     * Adds the given downloads to the download queue and runs them together, waiting until they have
+     * finished.
+     *
+     * @param resume   whether the downloads left in the queue by previous runs are run as well.
+     * @param priority the priority of the added downloads.
+     * @param linkURLs the URLs of the added downloads.
+     */
+    private static void runQueued(DownloadManagerConfig config, String downloadMethod, boolean resume,
+                                  DownloadPriority priority, List<String> linkURLs) {
+        int connections = (int) config.getPropertyValue("dm.settings.scheduler.connections", 16);
+        try (DownloadQueue queue = DownloadQueue.open(Path.of(DownloadQueue.FILE_NAME))) {
+            DownloadScheduler scheduler = new DownloadScheduler(queue, downloadMethod, connections);
+            if (resume) {
+                scheduler.resumePending();
+            }
+            for (String linkURL : linkURLs) {
+                try {
+                    scheduler.submit(linkURL, priority);
+                } catch (InvalidURLException e) {
+                    System.out.println("invalid URL: " + linkURL);
+                }
+            }
+            scheduler.awaitIdle();
+            scheduler.shutdown();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Probes the URLs listed in a file, one per line, and downloads them in the given order, waiting
+     * until they have finished.
+     *
+     * @param listFile the file listing the URLs, or {@code -} for the standard input.
+     * @param order    the order the downloads are scheduled in.
+     */
+    private static void runBatch(DownloadManagerConfig config, String downloadMethod, DownloadTask downloadTask,
+                                 String listFile, BatchOrder order) {
+        int connections = (int) config.getPropertyValue("dm.settings.scheduler.connections", 16);
+        long singleThreshold = (int) config.getPropertyValue("dm.settings.batch.single.threshold", 8) * 1024L * 1024L;
+        BatchImporter importer = new BatchImporter(downloadMethod, singleThreshold, connections,
+                downloadTask.getConnectionTimeout(), downloadTask.getStallTimeout());
+        try (BufferedReader reader = listFile.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(listFile));
+             DownloadQueue queue = DownloadQueue.open(Path.of(DownloadQueue.FILE_NAME))) {
+            List<BatchImporter.ProbedFile> files = importer.probe(BatchImporter.readURLs(reader));
+            DownloadScheduler scheduler = new DownloadScheduler(queue, downloadMethod, connections);
+            importer.schedule(files, order, scheduler);
+            scheduler.awaitIdle();
+            scheduler.shutdown();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the download daemon until the JVM is stopped, resuming the downloads left in the queue.
+     */
+    private static void runDaemon(DownloadManagerConfig config, String downloadMethod) {
+        int connections = (int) config.getPropertyValue("dm.settings.scheduler.connections", 16);
+        try (DownloadQueue queue = DownloadQueue.open(Path.of(DownloadQueue.FILE_NAME))) {
+            DownloadScheduler scheduler = new DownloadScheduler(queue, downloadMethod, connections);
+            DownloadDaemon daemon = DownloadDaemon.open(scheduler, DownloadDaemon.SOCKET_PATH);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    daemon.close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+            scheduler.resumePending();
+            daemon.serve();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the integrity check given on the command line, downloading the checksum file if a URL is given.
+     *
+     * @param check {@code <algorithm>:<checksum>}, or the URL of a checksum file.
+     */
+    private static IntegrityCheck readIntegrityCheck(DownloadTask downloadTask, String check)
+            throws NoSuchChecksumAlgorithmException {
+        try {
+            return IntegrityCheck.of(check, HttpProtocol.HTTP_1_1.newClient(downloadTask.getConnectionTimeout(),
+                    downloadTask.getStallTimeout()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs the caching proxy until the JVM is stopped.
+     *
+     * @param port the port the proxy listens on.
+     */
+    private static void runProxy(DownloadManagerConfig config, int port) {
+        String address = (String) config.getPropertyValue("dm.settings.proxy.address", "127.0.0.1");
+        int connectTimeout = (int) config.getPropertyValue("dm.settings.timeout");
+        int stallTimeout = Math.max(0, (int) config.getPropertyValue("dm.settings.stall.timeout", 30)) * 1000;
+        Path spoolDirectory = Path.of(System.getProperty("user.home"), ".downloadManager", "proxy");
+        try (CachingProxy proxy = CachingProxy.open(new InetSocketAddress(address, port), spoolDirectory,
+                connectTimeout, stallTimeout)) {
+            proxy.serve();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Hands the given URLs to the download daemon, if one is running.
+     *
+     * @param priority the priority of the downloads.
+     * @return {@code true} if a daemon took the downloads, {@code false} if none is running.
+     */
+    private static boolean forwardToDaemon(List<String> linkURLs, DownloadPriority priority) {
+        try {
+            boolean forwarded = false;
+            for (String linkURL : linkURLs) {
+                String reply = DaemonClient.send(DownloadDaemon.SOCKET_PATH,
+                        "add " + linkURL + " " + priority.name().toLowerCase());
+                if (reply == null && !forwarded) {
+                    return false;
+                }
+                System.out.println(reply == null ? "the download manager daemon stopped before " + linkURL : reply);
+                forwarded = true;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Sends a command to the download daemon and prints its reply.
+     */
+    private static void control(String command) {
+        try {
+            String reply = DaemonClient.send(DownloadDaemon.SOCKET_PATH, command);
+            System.out.println(reply == null ? "no download manager daemon is running" : reply);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -11,7 +11,7 @@ package com.habbashx.animation;
 class ArrowProgressAnimation extends ProgressAnimation {
 
     @Override
-    public void printProgressBar(int progress, int barLength, double internetSpeed, long downloadedBytes ,int fileSize) {
+    public void printProgressBar(int progress, int barLength, double internetSpeed, long downloadedBytes, long fileSize) {
 
         for (int i = 0 ; i <= 100 ;i++){
             int arrowPosition = (i * barLength) / 100;
@@ -17,7 +17,7 @@ package com.habbashx.animation;
 class DefaultProgressAnimation extends ProgressAnimation {
 
     @Override
-    public void printProgressBar(int progress , int barLength , double internetSpeed, long downloadedBytes, int fileSize){
+    public void printProgressBar(int progress , int barLength , double internetSpeed, long downloadedBytes, long fileSize){
 
         int filledLength = (int) (barLength * progress / 100.0);
 
@@ -22,6 +22,6 @@ public abstract class ProgressAnimation {
      * @param downloadedBytes the total number of bytes that have been downloaded so far.
      * @param fileSize        the total size of the file being downloaded, in bytes.
      */
-    public abstract void printProgressBar(int progress, int barLength, double internetSpeed, long downloadedBytes ,int fileSize);
+    public abstract void printProgressBar(int progress, int barLength, double internetSpeed, long downloadedBytes, long fileSize);
 
 }
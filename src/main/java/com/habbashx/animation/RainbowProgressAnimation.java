@@ -15,7 +15,7 @@ package com.habbashx.animation;
 class RainbowProgressAnimation extends ProgressAnimation {
 
     @Override
-    public void printProgressBar(int progress, int barLength, double internetSpeed, long downloadedBytes,int fileSize) {
+    public void printProgressBar(int progress, int barLength, double internetSpeed, long downloadedBytes, long fileSize) {
         System.out.println("coming soon");
     }
 }
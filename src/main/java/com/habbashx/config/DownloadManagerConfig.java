@@ -12,6 +12,8 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -98,6 +100,41 @@ public class DownloadManagerConfig {
         return PropertyParser.parsePropertyValue(value);
     }
 
+    /**
+     * Retrieves the value of a specified property, falling back to a default value when the
+     * property is missing. Configuration files generated by older versions do not contain
+     * the newer settings, so callers reading those settings should use this method.
+     *
+     * @param property     the key of the property to retrieve
+     * @param defaultValue the value returned if the property is not present in the configuration
+     * @return the parsed value of the specified property, or {@code defaultValue} if it is missing
+     */
+    public Object getPropertyValue(String property, Object defaultValue){
+        String value = properties.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        return PropertyParser.parsePropertyValue(value.trim());
+    }
+
+    /**
+     * Retrieves the values of all properties whose key starts with the given prefix, such as the
+     * per-host settings that are keyed by host name.
+     *
+     * @param prefix the common beginning of the keys
+     * @return the parsed values, keyed by the rest of their key after the prefix
+     */
+    public Map<String, Object> getPropertyValues(String prefix){
+        Map<String, Object> values = new HashMap<>();
+        for (String property : properties.stringPropertyNames()) {
+            if (property.startsWith(prefix) && property.length() > prefix.length()) {
+                String value = properties.getProperty(property).trim();
+                values.put(property.substring(prefix.length()), PropertyParser.parsePropertyValue(value));
+            }
+        }
+        return values;
+    }
+
     /**
      * Modifies the value of a specified property and updates the configuration file
      * with the new value. The method ensures that the updated property is persisted
@@ -114,7 +151,19 @@ public class DownloadManagerConfig {
                     # NOTE: choose parallel download method for better performance
                     #
                     # animations [default , arrow , rainbow]
-                    # download methods [single , parallel]
+                    # download methods [single , parallel , virtual , http2]
+                    # write modes [auto , channel , mmap] (mmap and buffer budgets in MB)
+                    # direct threshold in MB, files this large bypass the page cache (0 = never)
+                    # speed limit in KB/s (0 = unlimited)
+                    # retry attempts per segment, retry budget per download, stall timeout in seconds
+                    # duplicate requests a download may send for slow segments at its end (0 = no hedging)
+                    # idle keep-alive connections kept per host, and for how many seconds (0 = no reuse)
+                    # connections per host across all downloads (0 = unlimited), dm.settings.host.limit.<host> overrides it
+                    # connections shared by queued downloads, more urgent downloads get theirs first
+                    # batch orders [shortest , largest , listed], smaller files (in MB) use a single connection
+                    # content cache size in MB, unchanged files are restored from it (0 = disabled)
+                    # caching proxy address and port, 0.0.0.0 serves the whole network
+                    # compression asks servers for gzip or deflate, decoded while the file is written
                     """);
         }catch (IOException e){
             throw new RuntimeException(e);
@@ -131,6 +180,19 @@ public class DownloadManagerConfig {
      * - Speed limit for downloads.
      * - The type of progress animation.
      * - The chosen download method (e.g., single or parallel).
+     * - The bounds of the number of connections used by a parallel download.
+     * - The write mode of the parallel engine and its memory mapping budget.
+     * - The cap on the memory of the buffers shared by all downloads.
+     * - The file size from which downloads bypass the page cache.
+     * - How often failed transfers are retried, and how long a connection may stall.
+     * - How many duplicate requests a download may send for the slow segments at its end.
+     * - How many idle keep-alive connections are kept per host, and for how long.
+     * - How many connections all downloads together may open to one host.
+     * - How many connections the downloads of a queue share.
+     * - The order of batch downloads, and the size below which they use a single connection.
+     * - The size of the cache unchanged files are restored from.
+     * - The address and port the caching proxy listens on.
+     * - Whether downloads ask servers to compress the file.
      *
      * In case of an error during file creation or writing, an unchecked
      * {@link RuntimeException} is thrown wrapping the underlying {@link IOException}.
@@ -151,12 +213,44 @@ public class DownloadManagerConfig {
                     # NOTE: choose parallel download method for better performance
                     #
                     # animations [default , arrow , rainbow]
-                    # download methods [single , parallel]
+                    # download methods [single , parallel , virtual , http2]
+                    # write modes [auto , channel , mmap] (mmap and buffer budgets in MB)
+                    # direct threshold in MB, files this large bypass the page cache (0 = never)
+                    # speed limit in KB/s (0 = unlimited)
+                    # retry attempts per segment, retry budget per download, stall timeout in seconds
+                    # duplicate requests a download may send for slow segments at its end (0 = no hedging)
+                    # idle keep-alive connections kept per host, and for how many seconds (0 = no reuse)
+                    # connections per host across all downloads (0 = unlimited), dm.settings.host.limit.<host> overrides it
+                    # connections shared by queued downloads, more urgent downloads get theirs first
+                    # batch orders [shortest , largest , listed], smaller files (in MB) use a single connection
+                    # content cache size in MB, unchanged files are restored from it (0 = disabled)
+                    # caching proxy address and port, 0.0.0.0 serves the whole network
+                    # compression asks servers for gzip or deflate, decoded while the file is written
                     
                     dm.settings.timeout = 400000
-                    dm.settings.speedLimit = 100
+                    dm.settings.speedLimit = 0
                     dm.settings.progress.animation = default
                     dm.settings.download.method = parallel
+                    dm.settings.connections.min = 2
+                    dm.settings.connections.max = 16
+                    dm.settings.write.mode = auto
+                    dm.settings.mmap.budget = 4096
+                    dm.settings.buffer.budget = 64
+                    dm.settings.direct.threshold = 0
+                    dm.settings.retry.attempts = 5
+                    dm.settings.retry.budget = 50
+                    dm.settings.stall.timeout = 30
+                    dm.settings.hedge.budget = 4
+                    dm.settings.pool.max.per.host = 16
+                    dm.settings.pool.idle.timeout = 30
+                    dm.settings.host.limit = 0
+                    dm.settings.scheduler.connections = 16
+                    dm.settings.batch.order = shortest
+                    dm.settings.batch.single.threshold = 8
+                    dm.settings.cache.size = 4096
+                    dm.settings.proxy.address = 127.0.0.1
+                    dm.settings.proxy.port = 3128
+                    dm.settings.compression = false
                     """);
            }
         } catch (IOException e){
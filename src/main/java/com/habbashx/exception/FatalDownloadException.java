@@ -0,0 +1,22 @@
+package com.habbashx.exception;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when a part of a download fails in a way that retrying or handing the part to
+ * another connection cannot fix, for example when the server rejects the request or the destination
+ * file cannot be written.
+ *
+ * When a segment of a parallel download fails with this exception, the whole download is cancelled
+ * instead of letting the remaining connections continue with a file that cannot be completed.
+ */
+public class FatalDownloadException extends IOException {
+
+    public FatalDownloadException(String message) {
+        super(message);
+    }
+
+    public FatalDownloadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
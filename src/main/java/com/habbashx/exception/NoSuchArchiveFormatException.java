@@ -0,0 +1,13 @@
+package com.habbashx.exception;
+
+/**
+ * This exception is thrown to indicate that a specified archive format is not recognized.
+ *
+ * It is thrown when a file that should be extracted while it downloads is not named like an archive
+ * the download manager can extract (e.g., ".zip", ".tar", ".tar.gz" or ".tgz").
+ */
+public class NoSuchArchiveFormatException extends Exception {
+    public NoSuchArchiveFormatException(String message) {
+        super(message);
+    }
+}
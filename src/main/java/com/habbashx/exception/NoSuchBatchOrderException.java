@@ -0,0 +1,14 @@
+package com.habbashx.exception;
+
+/**
+ * This exception is thrown to indicate that a specified batch order is not recognized.
+ *
+ * It is thrown when the order a batch of downloads should be scheduled in, given on the command line
+ * or in the configuration file, does not name one of the supported orders (e.g., "shortest",
+ * "largest" or "listed").
+ */
+public class NoSuchBatchOrderException extends Exception {
+    public NoSuchBatchOrderException(String message) {
+        super(message);
+    }
+}
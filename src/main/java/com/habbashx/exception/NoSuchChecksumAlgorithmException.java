@@ -0,0 +1,14 @@
+package com.habbashx.exception;
+
+/**
+ * This exception is thrown to indicate that a specified checksum algorithm is not recognized.
+ *
+ * It is thrown when the checksum a download should be verified against, given on the command line or
+ * in a checksum file, names an algorithm other than the supported ones (e.g., "sha256", "sha512" or
+ * "crc32c").
+ */
+public class NoSuchChecksumAlgorithmException extends Exception {
+    public NoSuchChecksumAlgorithmException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package com.habbashx.exception;
+
+/**
+ * This exception is thrown to indicate that a specified content encoding is not recognized.
+ *
+ * It is thrown when a server sends a body in a content encoding the download manager cannot decode,
+ * one other than the ones it asked for (e.g., "gzip" or "deflate").
+ */
+public class NoSuchContentEncodingException extends Exception {
+    public NoSuchContentEncodingException(String message) {
+        super(message);
+    }
+}
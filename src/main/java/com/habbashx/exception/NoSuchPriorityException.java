@@ -0,0 +1,13 @@
+package com.habbashx.exception;
+
+/**
+ * This exception is thrown to indicate that a specified download priority is not recognized.
+ *
+ * It is thrown when a priority given on the command line, or read back from the download queue,
+ * does not name one of the supported priorities (e.g., "high", "normal" or "low").
+ */
+public class NoSuchPriorityException extends Exception {
+    public NoSuchPriorityException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,16 @@
+package com.habbashx.exception;
+
+/**
+ * This exception is thrown to indicate that the configured write mode of the download engine
+ * (e.g. "auto", "channel" or "mmap") is not recognized.
+ *
+ * It is thrown by the {@code DownloadWriterFactory} when the destination file of a download is opened.
+ *
+ * Extends {@link RuntimeException}, making it an unchecked exception.
+ */
+public class NoSuchWriteModeException extends RuntimeException {
+
+    public NoSuchWriteModeException(String message) {
+        super(message);
+    }
+}
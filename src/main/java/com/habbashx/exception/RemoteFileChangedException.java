@@ -0,0 +1,13 @@
+package com.habbashx.exception;
+
+/**
+ * Exception thrown when a range request carrying {@code If-Range} is answered with the whole
+ * resource, which means the remote file has changed since the download started. The bytes already
+ * written belong to the previous version and must not be combined with the new one.
+ */
+public class RemoteFileChangedException extends FatalDownloadException {
+
+    public RemoteFileChangedException(String linkURL) {
+        super("the remote file has changed: " + linkURL);
+    }
+}
@@ -1,12 +1,32 @@
 package com.habbashx.manager;
 
 import com.habbashx.config.DownloadManagerConfig;
+import com.habbashx.exception.NoSuchArchiveFormatException;
 import com.habbashx.logger.FileLogger;
 import com.habbashx.logger.Logger;
+import com.habbashx.manager.archive.ArchiveExtractor;
+import com.habbashx.manager.archive.ArchiveFormat;
+import com.habbashx.manager.buffer.BufferPool;
+import com.habbashx.manager.buffer.BufferSize;
+import com.habbashx.manager.cache.ContentCache;
+import com.habbashx.manager.checksum.IntegrityCheck;
+import com.habbashx.manager.encoding.ContentEncoding;
+import com.habbashx.manager.http.CacheControl;
+import com.habbashx.manager.http.RangeExchange;
+import com.habbashx.manager.retry.RetryPolicy;
+import com.habbashx.manager.throttle.SpeedLimiter;
 import com.habbashx.system.StorageType;
 import com.habbashx.system.StorageTypeChecker;
 import lombok.Getter;
 
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.List;
+
+import static com.habbashx.manager.destinationOrganizer.DestinationOrganizer.organizeFileDestination;
+
 /**
  * Represents an abstract task for managing the download of files. The class serves as a blueprint for handling
  * file downloads and provides functionality for initializing configurations, logging events, managing storage types,
@@ -23,7 +43,27 @@ import lombok.Getter;
 public abstract class DownloadTask {
 
     private final int connectionTimeout;
-    private final int speedLimit;
+
+    /**
+     * The cap on the download speed of this task in KB/s, {@code 0} for unlimited, and the limiter that
+     * enforces it on every transfer of the task.
+     */
+    private volatile int speedLimit;
+    private final SpeedLimiter speedLimiter;
+
+    /**
+     * The lower and upper bounds of the number of range connections a parallel download may use.
+     * The actual number is adjusted at runtime according to the measured throughput.
+     */
+    private final int minConnections;
+    private final int maxConnections;
+
+    /**
+     * The number of connections the download may use at most right now, set by a scheduler that shares
+     * its connections between several downloads. Lowering it takes connections away from a running
+     * download.
+     */
+    private volatile int connectionLimit = Integer.MAX_VALUE;
 
     /**
      * The configuration object for managing settings and properties related to the download process.
@@ -52,8 +92,72 @@ public abstract class DownloadTask {
      */
     private final StorageType storageType;
 
+    /**
+     * The size of the buffers the download reads into, recommended once for the storage type.
+     * The buffers themselves come from the process-wide {@link BufferPool}.
+     */
+    private final int bufferSize;
+
     private final String animation;
 
+    /**
+     * How the parallel engine writes to the destination file: "channel", "mmap" or "auto". In "auto"
+     * mode files up to {@code mappingBudget} megabytes are memory mapped when the storage is an SSD.
+     */
+    private final String writeMode;
+    private final int mappingBudget;
+
+    /**
+     * Files of at least this many megabytes are written with direct I/O, bypassing the page cache.
+     * {@code 0} disables direct I/O.
+     */
+    private final int directThreshold;
+
+    /**
+     * The number of consecutive failures of one transfer that are retried, and the total number of
+     * retries allowed for one download.
+     */
+    private final int retryAttempts;
+    private final int retryBudget;
+
+    /**
+     * The number of seconds a connection may go without receiving a byte before it is restarted.
+     * {@code 0} lets a connection wait forever.
+     */
+    private final int stallTimeout;
+
+    /**
+     * The number of duplicate requests one download may send for the slow segments at its end.
+     * {@code 0} disables hedging.
+     */
+    private final int hedgeBudget;
+
+    /**
+     * The check the running download is verified against, {@code null} for none. Set for the duration of
+     * {@link #downloadVerified(String, IntegrityCheck)}.
+     */
+    private volatile IntegrityCheck integrityCheck;
+
+    /**
+     * Whether downloads ask the server to compress the file, which is decoded while it is written.
+     */
+    private volatile boolean compression;
+
+    /**
+     * Whether the running download is extracted while it is written. Set for the duration of
+     * {@link #downloadExtracted(String)}.
+     */
+    private volatile boolean extracting;
+
+    /**
+     * The status code and content type of the response to the first request of the current or last
+     * download of this task, and whether the response allows storing the file in the
+     * {@link ContentCache}; {@code 0} and {@code null} until the server has answered.
+     */
+    private volatile int responseCode;
+    private volatile String contentType;
+    private volatile boolean cacheable;
+
     private final FileLogger fileLogger;
     private final Logger logger;
 
@@ -62,17 +166,150 @@ public abstract class DownloadTask {
         this.fileLogger = new FileLogger();
         this.logger = new Logger();
         this.connectionTimeout = (int) config.getPropertyValue("dm.settings.timeout");
-        this.speedLimit = (int) config.getPropertyValue("dm.settings.speedLimit");
+        this.speedLimit = Math.max(0, (int) config.getPropertyValue("dm.settings.speedLimit", 0));
+        this.speedLimiter = new SpeedLimiter(speedLimit * 1024L);
+        this.minConnections = Math.max(1, (int) config.getPropertyValue("dm.settings.connections.min", 2));
+        this.maxConnections = Math.max(minConnections, (int) config.getPropertyValue("dm.settings.connections.max", 16));
         this.storageType = new StorageTypeChecker().getStorageType();
+        this.bufferSize = new BufferSize(storageType).getRecommendedBufferSize();
         this.animation = (String) config.getPropertyValue("dm.settings.progress.animation");
+        this.writeMode = (String) config.getPropertyValue("dm.settings.write.mode", "auto");
+        this.mappingBudget = (int) config.getPropertyValue("dm.settings.mmap.budget", 4096);
+        this.directThreshold = (int) config.getPropertyValue("dm.settings.direct.threshold", 0);
+        this.retryAttempts = Math.max(0, (int) config.getPropertyValue("dm.settings.retry.attempts", 5));
+        this.retryBudget = Math.max(0, (int) config.getPropertyValue("dm.settings.retry.budget", 50));
+        this.stallTimeout = Math.max(0, (int) config.getPropertyValue("dm.settings.stall.timeout", 30));
+        this.hedgeBudget = Math.max(0, (int) config.getPropertyValue("dm.settings.hedge.budget", 4));
+        this.compression = (boolean) config.getPropertyValue("dm.settings.compression", false);
     }
 
     public abstract void downloadFile(String urlString);
+
+    /**
+     * Downloads a file to the given destination instead of the folder of its file type.
+     *
+     * @param urlString       the URL of the file.
+     * @param fileDestination the file the download is written to.
+     */
+    public abstract void downloadFile(String urlString, Path fileDestination);
+
+    /**
+     * Downloads a file that is available from several mirrors. Tasks that cannot split a download
+     * across mirrors download it from the first one.
+     *
+     * @param linkURLs the URLs of the same file on the mirrors, the primary one first.
+     */
+    public void downloadFromMirrors(List<String> linkURLs) {
+        downloadFile(linkURLs.get(0));
+    }
+
+    /**
+     * Downloads a file and verifies it against the given check while it is written. A download that
+     * fails verification does not complete.
+     *
+     * @param linkURL        the URL of the file.
+     * @param integrityCheck the checksum or block manifest of the file.
+     */
+    public void downloadVerified(String linkURL, IntegrityCheck integrityCheck) {
+        this.integrityCheck = integrityCheck;
+        try {
+            downloadFile(linkURL);
+        } finally {
+            this.integrityCheck = null;
+        }
+    }
+
+    /**
+     * Downloads an archive and extracts it while it is written, into a folder named after the archive
+     * next to it. The archive itself is kept.
+     *
+     * @param linkURL the URL of the archive.
+     * @throws NoSuchArchiveFormatException if the name of the file is not the one of a supported archive.
+     */
+    public void downloadExtracted(String linkURL) throws NoSuchArchiveFormatException {
+        Path archive = organizeFileDestination(linkURL);
+        ArchiveFormat format = ArchiveFormat.of(archive.getFileName().toString());
+        ArchiveExtractor extractor;
+        try {
+            extractor = ArchiveExtractor.start(format, linkURL, archive, this);
+        } catch (IOException e) {
+            logger.error("could not create the extraction folder of " + archive.getFileName() + ": " + e.getMessage());
+            return;
+        }
+        extracting = true;
+        try {
+            downloadFile(linkURL, archive);
+        } finally {
+            extracting = false;
+            extractor.finish(isCompleted());
+        }
+    }
+
     public abstract void resumeDownload(String urlString);
     public abstract void pauseDownload();
     public abstract void stopDownload();
     public abstract void resumeFailureDownload(String urlString ,String fileDestination,int retryCount);
 
+    /**
+     * @return {@code true} if the last download of this task finished successfully.
+     */
+    public abstract boolean isCompleted();
+
+    /**
+     * @return the number of bytes of the file the current or last download of this task has written.
+     */
+    public abstract long getDownloadedBytes();
+
+    /**
+     * @return the size of the file of the current or last download of this task, {@code -1} if unknown.
+     */
+    public abstract long getFileSize();
+
+    /**
+     * Forgets the outcome of the last download, so that a task handed to the next download reports no
+     * progress until that download starts. Must not be called while a download runs. Subclasses clear
+     * their progress and call this method.
+     */
+    public void reset() {
+        responseCode = 0;
+        contentType = null;
+        cacheable = false;
+    }
+
+    /**
+     * Records the response to the first request of a download.
+     *
+     * @param responseCode the status code of the response.
+     * @param response     the exchange, whose response headers have been received.
+     */
+    protected void setResponse(int responseCode, RangeExchange response) {
+        this.contentType = response.getHeader("Content-Type");
+        this.cacheable = CacheControl.allowsStoring(response);
+        this.responseCode = responseCode;
+    }
+
+    /**
+     * Returns how much of the file can already be read from its destination while the download runs.
+     * Tasks that write the file in order can be read up to every byte they have written.
+     *
+     * @return the number of leading bytes of the file that have been written.
+     */
+    public long getContiguousBytes() {
+        return getDownloadedBytes();
+    }
+
+    /**
+     * Returns whether a range of the file can already be read from its destination while the download
+     * runs. Tasks that write the file in order have written every range before their contiguous bytes.
+     *
+     * @param start the offset of the first byte of the range.
+     * @param end   the offset past the last byte of the range.
+     * @return {@code true} if every byte of the range has been written.
+     */
+    public boolean isWritten(long start, long end) {
+        return end <= getContiguousBytes();
+    }
+
     public void requireNonNull(String string, String message){
         if (string.isEmpty() || string.isBlank() || string.equals("null")){
             throw new IllegalArgumentException(message);
@@ -95,6 +332,10 @@ public abstract class DownloadTask {
         return storageType;
     }
 
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
     public String getAnimation() {
         return animation;
     }
@@ -106,4 +347,91 @@ public abstract class DownloadTask {
     public int getSpeedLimit() {
         return speedLimit;
     }
+
+    /**
+     * Changes the speed limit of this task. A running download slows down or speeds up with its next
+     * read, without restarting its transfers.
+     *
+     * @param speedLimit the new limit in KB/s, {@code 0} for unlimited.
+     */
+    public void setSpeedLimit(int speedLimit) {
+        this.speedLimit = Math.max(0, speedLimit);
+        speedLimiter.setRate(this.speedLimit * 1024L);
+    }
+
+    public SpeedLimiter getSpeedLimiter() {
+        return speedLimiter;
+    }
+
+    public String getWriteMode() {
+        return writeMode;
+    }
+
+    /**
+     * @return the largest file size, in bytes, that the "auto" write mode memory maps.
+     */
+    public long getMappingBudget() {
+        return mappingBudget * 1024L * 1024L;
+    }
+
+    /**
+     * @return the smallest file size, in bytes, written with direct I/O, or {@code 0} if disabled.
+     */
+    public long getDirectThreshold() {
+        return directThreshold * 1024L * 1024L;
+    }
+
+    /**
+     * @return a new retry policy for one download, with its own retry budget.
+     */
+    public RetryPolicy newRetryPolicy() {
+        return new RetryPolicy(retryAttempts, retryBudget);
+    }
+
+    /**
+     * @return the time, in milliseconds, a connection may go without receiving a byte, or {@code 0}
+     *         for no limit.
+     */
+    public int getStallTimeout() {
+        return stallTimeout * 1000;
+    }
+
+    public int getConnectionLimit() {
+        return connectionLimit;
+    }
+
+    /**
+     * Caps the number of connections of this task. A running download closes the connections above
+     * the new limit as soon as they have written their buffers.
+     *
+     * @param connectionLimit the number of connections the task may use, at least one.
+     */
+    public void setConnectionLimit(int connectionLimit) {
+        this.connectionLimit = Math.max(1, connectionLimit);
+    }
+
+    /**
+     * Turns the compression of the downloads of this task on or off, from the next download on.
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * @return the {@code Accept-Encoding} header the running download asks for compression with, or
+     *         {@code null} if it does not. A download verified against a checksum is never compressed,
+     *         because its checksum is computed from the bytes that are written, and neither is one that
+     *         is extracted, because the extraction reads the archive as it is written.
+     */
+    public String getAcceptEncoding() {
+        return compression && integrityCheck == null && !extracting ? ContentEncoding.ACCEPTED : null;
+    }
+
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
 }
@@ -2,6 +2,8 @@ package com.habbashx.manager;
 
 import com.habbashx.exception.NoSuchAnimationException;
 import com.habbashx.exception.NoSuchDownloadMethodException;
+import com.habbashx.manager.concurrent.ExecutionMode;
+import com.habbashx.manager.http.HttpProtocol;
 
 /**
  * Factory class for creating instances of {@link DownloadTask}.
@@ -16,7 +18,9 @@ public class DownloadTaskFactory {
      *
      * @param downloadMethod the method of download. Acceptable values are:
      *                       - "single" for a single-file download task
-     *                       - "parallel" for a parallel download task
+     *                       - "parallel" for a parallel download task running on platform threads
+     *                       - "virtual" for a parallel download task running one virtual thread per segment
+     *                       - "http2" for a parallel download task multiplexing its segments over one HTTP/2 connection
      * @return an instance of a DownloadTask implementation corresponding to the specified download method
      * @throws NoSuchAnimationException if the associated animation for the download task cannot be found
      * @throws NoSuchDownloadMethodException if the specified download method is not recognized
@@ -26,6 +30,8 @@ public class DownloadTaskFactory {
        return switch (downloadMethod) {
             case "single" -> new SingleDownloadTask();
             case "parallel" -> new ParallelDownloadTask();
+            case "virtual" -> new ParallelDownloadTask(ExecutionMode.VIRTUAL);
+            case "http2" -> new ParallelDownloadTask(ExecutionMode.PLATFORM, HttpProtocol.HTTP_2);
            default -> throw new NoSuchDownloadMethodException("no such download method: " + downloadMethod);
        };
     }
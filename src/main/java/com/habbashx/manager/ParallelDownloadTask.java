@@ -1,7 +1,10 @@
 package com.habbashx.manager;
 
+import com.habbashx.exception.FatalDownloadException;
 import com.habbashx.exception.InvalidURLException;
 import com.habbashx.exception.NoSuchAnimationException;
+import com.habbashx.exception.NoSuchContentEncodingException;
+import com.habbashx.exception.RemoteFileChangedException;
 
 import com.habbashx.animation.ProgressAnimation;
 import com.habbashx.animation.ProgressAnimationFactory;
@@ -9,23 +12,56 @@ import com.habbashx.animation.ProgressAnimationFactory;
 import com.habbashx.logger.FileLogger;
 import com.habbashx.logger.Logger;
 
+import com.habbashx.manager.buffer.BufferPool;
 import com.habbashx.manager.buffer.BufferSize;
+import com.habbashx.manager.cache.ContentCache;
+import com.habbashx.manager.checksum.ChecksumAlgorithm;
+import com.habbashx.manager.checksum.DownloadVerifier;
+import com.habbashx.manager.checksum.SequentialDigest;
+import com.habbashx.manager.concurrent.DownloadScope;
+import com.habbashx.manager.concurrent.ExecutionMode;
+import com.habbashx.manager.encoding.ContentDecoder;
+import com.habbashx.manager.encoding.ContentEncoding;
+import com.habbashx.manager.io.DownloadWriter;
+import com.habbashx.manager.http.ConnectionPool;
+import com.habbashx.manager.http.ContentRange;
+import com.habbashx.manager.http.HttpProtocol;
+import com.habbashx.manager.http.IfRange;
+import com.habbashx.manager.http.RangeClient;
+import com.habbashx.manager.http.RangeExchange;
+import com.habbashx.manager.io.DownloadWriterFactory;
+import com.habbashx.manager.connection.AdaptiveConnectionController;
+import com.habbashx.manager.connection.HostConnectionLimiter;
+import com.habbashx.manager.journal.DownloadJournal;
+import com.habbashx.manager.mirror.Mirror;
+import com.habbashx.manager.mirror.MirrorSet;
+import com.habbashx.manager.retry.RetryPolicy;
+import com.habbashx.manager.segment.Hedge;
+import com.habbashx.manager.segment.Segment;
+import com.habbashx.manager.segment.SegmentPlanner;
 import com.habbashx.manager.urlvalidation.URLValidation;
 
-import java.io.IOException;
-import java.io.InputStream;
+import com.habbashx.system.FilePreallocator;
 
-import java.io.RandomAccessFile;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
 
 import java.net.HttpURLConnection;
-import java.net.URL;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
-import java.util.concurrent.ExecutorService;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.habbashx.manager.destinationOrganizer.DestinationOrganizer.organizeFileDestination;
 import static com.habbashx.notification.DownloadManagerNotification.pushNotification;
@@ -33,22 +69,41 @@ import static com.habbashx.notification.DownloadManagerNotification.pushNotifica
 import static java.awt.TrayIcon.MessageType.INFO;
 import static java.awt.TrayIcon.MessageType.ERROR;
 
-import static java.util.concurrent.Executors.newFixedThreadPool;
 
 /**
  * Represents a task for downloading files in parallel using multiple threads.
  * This class extends the abstract {@code DownloadTask} to provide functionality for
  * downloading large files by dividing them into chunks and processing each chunk concurrently.
  *
- * The class uses a fixed thread pool to manage parallel downloads and ensures thread-safe
- * operations using synchronization and atomic variables.
+ * The segments of a download run in a {@link DownloadScope}, either on a pool of platform threads or on
+ * one virtual thread per segment (see {@link ExecutionMode}). They talk to the server over HTTP/1.1 with
+ * one connection each, or as streams multiplexed over a single HTTP/2 connection (see
+ * {@link HttpProtocol}). A fatal failure of one segment cancels the others, so the download always
+ * finishes as a whole. Thread-safe operations are ensured using synchronization and atomic variables.
  *
  * Features include:
- * - Downloading files by splitting them into a defined number of chunks.
+ * - 64-bit file sizes, with the destination preallocated to its final size before segments start.
+ * - Starting without a probe: the request for the first range tells the size of the file, and its body
+ *   is the first segment. A server that ignores ranges sends the whole file over that one connection.
+ * - Downloading files by splitting them into a defined number of chunks, and splitting the
+ *   remaining range of the slowest chunk whenever a thread becomes idle.
  * - Pausing, resuming, and stopping download operations safely.
+ * - A speed limit shared by all segments, which can be changed while the download runs.
+ * - A per-host connection limit shared with every other download from the same server.
+ * - Fetching the ranges of one file from several mirrors, with more segments going to the mirrors
+ *   that serve a connection fastest, and mirrors that keep failing dropped mid-transfer.
+ * - Retrying a failed or stalled segment from its last written byte with jittered exponential backoff,
+ *   within a retry budget shared by the whole download.
+ * - Hedging the slow segments at the end of the download: a duplicate request for the rest of a segment
+ *   far slower than the others takes it over once its response arrives, within a hedge budget.
+ * - Crash-safe resume: the missing ranges are checkpointed to a {@link DownloadJournal}, and a later
+ *   download of the same URL fetches only those ranges, guarded by {@code If-Range}.
  * - Animated progress bar for monitoring download progress and speed.
  * - Logging success or failure events to console and file logs.
- * - Cleanup operations to handle interruptions or failures gracefully.
+ * - Checkpointing the journal when the JVM exits, so interruptions or failures cost only the
+ *   bytes received since the last checkpoint.
+ * - Downloading the compressed file in segments when compression is turned on and the server serves
+ *   ranges of it, decoded into the destination by a {@link ContentDecoder} that follows the segments.
  *
  * This class employs internally defined components such as {@code ChunkDownloadTask}, which represents
  * the task of downloading a specific portion of the file, and makes use of external utilities like
@@ -82,30 +137,85 @@ class ParallelDownloadTask extends DownloadTask {
     private final AtomicLong totalDownloadedBytes = new AtomicLong(0);
 
     /**
-     * Represents the number of threads to be used for executing parallel download tasks within the
-     * {@code ParallelDownloadTask} class. This constant defines the fixed number of concurrent threads
-     * that the application allocates for handling download operations.
-     *
-     * It ensures efficient utilization of system resources by limiting the number of simultaneous
-     * threads while maintaining a balance between download performance and resource constraints.
-     *
-     * The value is immutable and cannot be modified at runtime. It is used internally to configure
-     * the thread pool for managing parallel downloads.
+     * The size of the file being downloaded, {@code -1} until the server has told it.
      */
-    private static final int THREAD_COUNT = 4;
+    private volatile long totalFileSize = -1;
 
     /**
-     * An {@link ExecutorService} instance used for managing a pool of worker threads.
-     * The thread pool size is determined by the constant {@code THREAD_COUNT}.
-     * This instance allows for asynchronous task execution, providing
-     * improved performance for concurrent and parallel operations.
-     *
-     * The {@code executorService} ensures proper thread management, including
-     * lifecycle handling and reuse of threads, to optimize resource utilization.
-     * It is recommended to terminate the executor service properly
-     * to release resources when it is no longer needed.
+     * The interval at which the download monitor refreshes the progress bar and feeds the
+     * measured throughput to the {@link AdaptiveConnectionController}.
+     */
+    private static final long MONITOR_INTERVAL = 1000;
+
+    /**
+     * The interval at which the written ranges of the download are flushed and saved to its journal.
+     * An interruption costs at most the bytes received during one interval.
+     */
+    private static final long CHECKPOINT_INTERVAL = 5000;
+
+    /**
+     * How many times the ranges of a download that fail verification are downloaded again.
+     */
+    private static final int MAX_VERIFICATION_ROUNDS = 3;
+
+    /**
+     * How long the shutdown hook waits for the running segments to write out their buffers before it
+     * saves the final checkpoint.
+     */
+    private static final long EXIT_TIMEOUT = 2000;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * The number of times the last remaining worker retries a segment the server refused with
+     * 429 or 503 before it gives up.
+     */
+    private static final int MAX_THROTTLED_ATTEMPTS = 5;
+
+    /**
+     * The size of the range a new download starts with instead of a probe. The worker of the first
+     * segment reads the whole range, so that no bytes are sent in vain and its connection is kept
+     * alive, and the rest of the file is requested in other ranges.
+     */
+    private static final long FIRST_RANGE_SIZE = 1024 * 1024;
+
+    /**
+     * The kind of threads the segments run on: a pool of platform threads sized to the maximum
+     * number of connections, or one virtual thread per segment.
+     */
+    private final ExecutionMode executionMode;
+
+    /**
+     * The client that carries the exchanges of the segments, speaking the protocol of the task. It is
+     * created once with the task and used by all of its downloads, since an HTTP/2 client holds its
+     * connections and threads until it is garbage collected.
      */
-    private final ExecutorService executorService = newFixedThreadPool(THREAD_COUNT);
+    private final RangeClient client;
+
+    /**
+     * Whether the last download wrote every byte of the file without a fatal failure.
+     */
+    private volatile boolean completed;
+
+    /**
+     * The structured scope of the running download. Every segment is forked into it; when one
+     * segment fails fatally, or the download is stopped, the scope cancels all the others.
+     */
+    private volatile DownloadScope scope;
+
+    /**
+     * Adjusts the number of range connections to the measured throughput, between the configured
+     * minimum and maximum number of connections. A new controller is created for every download, so
+     * that a reused task does not start from the target the previous download settled on.
+     */
+    private volatile AdaptiveConnectionController connectionController;
+
+    /**
+     * The number of workers that are currently running. A worker retires when this number is above
+     * the controller's target, and the download is over once it drops to zero.
+     */
+    private final AtomicInteger activeWorkers = new AtomicInteger(0);
 
     private final Logger logger;
     private final FileLogger fileLogger;
@@ -122,27 +232,128 @@ class ParallelDownloadTask extends DownloadTask {
     private final ProgressAnimation animation;
 
     /**
-     * Represents the count of chunks that have been successfully processed or completed during the
-     * execution of a parallel download task. This variable is primarily used to track and monitor
-     * the number of finished chunks within the context of a multi-threaded file download process.
-     *
-     * It is implemented as a thread-safe {@link AtomicInteger} to ensure proper synchronization and
-     * atomic updates in a concurrent environment, where multiple threads may increment the value
-     * simultaneously.
+     * Plans the byte ranges downloaded by the worker threads. The file is first cut into one
+     * segment per initial connection; whenever a worker finishes its segment, the planner splits the
+     * remaining range of the slowest in-flight segment and hands the upper half to that worker.
      *
-     * This variable helps in determining the progress of the download operation by comparing it
-     * against the total number of chunks to be downloaded. It may also be utilized for logging,
-     * reporting progress, or triggering certain logic, such as notifying completion.
+     * The planner is also the source of truth for the outcome of the download: the download
+     * succeeded only if every segment has been fully written.
      */
-    private final AtomicInteger finishedChunk = new AtomicInteger(0);
+    private volatile SegmentPlanner planner;
+
+    /**
+     * The writer shared by all segments of the running download. It holds the only file handle of
+     * the download, and every segment writes through it at absolute positions. Depending on the
+     * configured write mode it writes through a file channel or into a memory mapping of the file.
+     */
+    private DownloadWriter writer;
+
+    /**
+     * Guards the writer against being flushed by a checkpoint while it is being closed.
+     */
+    private final Object writerLock = new Object();
+    private boolean writerClosed;
+
+    /**
+     * The journal of the running download, or {@code null} if the download cannot be resumed because
+     * the server reports neither its size nor a validator.
+     */
+    private volatile DownloadJournal journal;
+
+    /**
+     * The validator of the remote file sent as {@code If-Range} with every range request, or
+     * {@code null} if the server did not send one.
+     */
+    private String validator;
+
+    /**
+     * The mirrors given to {@link #downloadFromMirrors(List)} besides the URL of the download, empty for
+     * a download from a single URL.
+     */
+    private List<String> mirrorURLs = List.of();
+
+    /**
+     * The URLs the ranges of the running download are fetched from.
+     */
+    private volatile MirrorSet mirrors;
+
+    /**
+     * Verifies the running download while its segments are written, {@code null} if the download has no
+     * integrity check.
+     */
+    private volatile DownloadVerifier verifier;
+
+    /**
+     * Computes the SHA-256 digest the running download is stored under in the {@link ContentCache} while
+     * its segments are written, {@code null} if the cache does not take the file.
+     */
+    private volatile SequentialDigest cacheDigest;
+    private boolean verified;
+    private boolean checksumMismatch;
+    private int verificationRounds;
+
+    /**
+     * The content encoding the segments of the running download are sent in, and the decoder that
+     * writes the decoded file while they are downloaded, {@code null} unless the download is compressed.
+     */
+    private volatile ContentEncoding encoding = ContentEncoding.IDENTITY;
+    private ContentDecoder decoder;
+
+    /**
+     * The response to the request the running download started with, until the worker of the first
+     * segment takes it to read its body.
+     */
+    private final AtomicReference<OpenedRange> firstRange = new AtomicReference<>();
+
+    /**
+     * Whether the server of the running download ignored its first range request: the file is then
+     * downloaded over the one connection that request opened.
+     */
+    private volatile boolean singleStream;
+
+    /**
+     * The exchange each segment is currently downloaded over, so that a hedged segment whose rest has
+     * been taken over can be stopped without waiting for its slow connection.
+     */
+    private final Map<Segment, RangeExchange> segmentExchanges = new ConcurrentHashMap<>();
+
+    /**
+     * The number of hedges the running download may still send, and the number it sent and won.
+     */
+    private final AtomicInteger hedgesLeft = new AtomicInteger();
+    private final AtomicInteger hedgesSent = new AtomicInteger();
+    private final AtomicInteger hedgesWon = new AtomicInteger();
+
+    private boolean shutdownHookInstalled;
+
+    /**
+     * Decides how often and after which delay the segments of the running download are retried.
+     * Created for every download, so each one gets a fresh retry budget.
+     */
+    private volatile RetryPolicy retryPolicy;
 
     private Path path;
 
     public ParallelDownloadTask() throws NoSuchAnimationException {
+        this(ExecutionMode.PLATFORM);
+    }
+
+    public ParallelDownloadTask(ExecutionMode executionMode) throws NoSuchAnimationException {
+        this(executionMode, HttpProtocol.HTTP_1_1);
+    }
+
+    public ParallelDownloadTask(ExecutionMode executionMode, HttpProtocol protocol) throws NoSuchAnimationException {
         super();
         fileLogger = getFileLogger();
         logger = getLogger();
         animation = ProgressAnimationFactory.getInstance(getAnimation());
+        this.executionMode = executionMode;
+        client = protocol.newClient(getConnectionTimeout(), getStallTimeout());
+        connectionController = new AdaptiveConnectionController(getMinConnections(), getMaxConnections());
+
+        if (executionMode == ExecutionMode.VIRTUAL && !ExecutionMode.isVirtualThreadSupported()) {
+            logger.warning("virtual threads require java 21 or newer, segments will run on platform threads");
+        }
     }
 
     /**
@@ -150,67 +361,221 @@ class ParallelDownloadTask extends DownloadTask {
      * downloads and providing a progress update with internet speed calculation. The operation supports
      * pausing, resuming, and stopping while performing cleanup at the end of execution.
      *
+     * If the destination has a journal left by an interrupted download of the same, unchanged remote
+     * file, only the ranges missing from it are downloaded. A journal of a different or changed file is
+     * discarded and the download starts over.
+     *
      * @param linkURL the URL to download the file from. It must be a valid HTTP, HTTPS, or FTP URL.
      *                Throws {@code InvalidURLException} if the URL is invalid.
      */
     @Override
     public void downloadFile(String linkURL) {
-        initializeShutDownHookOperation(this::cleanupOnExit);
+        requireNonNull(linkURL, "linkURL is null or empty");
+        downloadFile(linkURL, organizeFileDestination(linkURL));
+    }
+
+    /**
+     * Downloads a file from the specified URL to the given destination, as described in
+     * {@link #downloadFile(String)}.
+     *
+     * A new download is started with a {@code GET} of the first {@link #FIRST_RANGE_SIZE} bytes of the
+     * file instead of a {@code HEAD} probe: the {@code Content-Range} of the response tells the size of
+     * the file, the other segments are requested as soon as it is known, and the worker of the first
+     * segment, which covers that range, reads the response that is already on its way. An empty file,
+     * which the server answers with 416 and <code>bytes *&#47;0</code>, is created without a download. A
+     * resumed download, a compressed one and one from mirrors still probe the file first.
+     *
+     * @param linkURL         the URL to download the file from.
+     * @param fileDestination the file the download is written to.
+     */
+    @Override
+    public void downloadFile(String linkURL, Path fileDestination) {
+        if (!shutdownHookInstalled) {
+            initializeShutDownHookOperation(this::cleanupOnExit);
+            shutdownHookInstalled = true;
+        }
         requireNonNull(linkURL, "linkURL is null or empty");
 
         if (!URLValidation.isValidURL(linkURL)) {
             throw new InvalidURLException(linkURL);
         }
 
+        completed = false;
+        totalFileSize = -1;
+        totalDownloadedBytes.set(0);
+        connectionController = new AdaptiveConnectionController(getMinConnections(), getMaxConnections());
         try {
-            URL url = new URL(linkURL);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-            Path fileDestination = organizeFileDestination(linkURL);
-            path = fileDestination;
-            int responseCode = connection.getResponseCode();
-
-            if (Files.exists(fileDestination)) {
-                logger.warning("file already exists with this name");
+            if (ContentCache.getInstance().restore(linkURL, fileDestination, client)) {
+                path = fileDestination;
+                completed = true;
+                return;
             }
+            int responseCode;
+            long fileSize;
+            long firstRangeEnd = -1;
+            encoding = ContentEncoding.IDENTITY;
+            singleStream = false;
+            String acceptEncoding = mirrorURLs.isEmpty() ? getAcceptEncoding() : null;
+            if (canStartWithoutProbe(fileDestination, acceptEncoding)) {
+                OpenedRange first = openFirstRange(linkURL);
+                firstRange.set(first);
+                responseCode = first.responseCode();
+                setResponse(responseCode, first.exchange());
+                fileSize = ContentRange.totalSizeOf(first.exchange());
+                validator = IfRange.validatorOf(first.exchange());
+                if (responseCode == HttpURLConnection.HTTP_OK) {
+                    // the server ignored the range: the body is the whole file, and no other range can be fetched
+                    logger.info("the server does not serve ranges, downloading the file over a single connection");
+                    singleStream = true;
+                } else if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    ContentRange range = ContentRange.parse(first.exchange().getHeader("Content-Range"));
+                    firstRangeEnd = range != null ? range.getEnd() : -1;
+                } else if (responseCode == HTTP_RANGE_NOT_SATISFIABLE && fileSize == 0) {
+                    // an empty file has no first byte to serve
+                    responseCode = HttpURLConnection.HTTP_OK;
+                    setResponse(responseCode, first.exchange());
+                }
+            } else {
+                HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(linkURL);
+                try (permit; RangeExchange probe = client.head(linkURL)) {
+                    responseCode = probe.send();
+                    setResponse(responseCode, probe);
+                    fileSize = ContentRange.totalSizeOf(probe);
+                    validator = IfRange.validatorOf(probe);
+                }
+                if (acceptEncoding != null && responseCode == HttpURLConnection.HTTP_OK) {
+                    fileSize = negotiateEncoding(linkURL, acceptEncoding, fileSize);
+                }
+            }
+            if ((responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL)
+                    && fileSize == 0) {
+                createEmptyFile(linkURL, fileDestination);
+                return;
+            }
+            if ((responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL)
+                    && fileSize < 0) {
+                logger.warning("the server does not report the size of the file, use the single download method");
+                return;
+            }
+            totalFileSize = fileSize;
+            mirrors = newMirrorSet(linkURL, fileSize);
 
-            connection.setRequestMethod("HEAD");
-            connection.setConnectTimeout(getConnectionTimeout());
-
-            int fileSize = connection.getContentLength();
-            int chunkSize = fileSize / THREAD_COUNT;
+            // a compressed file is downloaded next to the destination, which it is decoded into
+            Path target = encoding == ContentEncoding.IDENTITY
+                    ? fileDestination
+                    : ContentDecoder.spoolOf(fileDestination, encoding);
+            path = target;
 
             if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
 
-                for (int i = 0; i < THREAD_COUNT; i++) {
-                    int start = i * chunkSize;
-                    int end = (i == THREAD_COUNT - 1) ? fileSize : start + chunkSize - 1;
-                    executorService.submit(new ChunkDownloadTask(linkURL, fileDestination.toString(), start, end));
+                DownloadJournal previousJournal = loadJournal(target, linkURL, fileSize);
+                if (previousJournal == null && Files.exists(fileDestination)) {
+                    logger.warning("file already exists with this name");
+                }
+
+                scope = new DownloadScope(executionMode.newExecutor(getMaxConnections()));
+                retryPolicy = newRetryPolicy();
+                hedgesLeft.set(singleStream ? 0 : getHedgeBudget());
+                hedgesSent.set(0);
+                hedgesWon.set(0);
+                new FilePreallocator().preallocate(target, fileSize);
+                writer = DownloadWriterFactory.getInstance(getWriteMode(), target, fileSize,
+                        getStorageType(), getMappingBudget(), getDirectThreshold());
+                writerClosed = false;
+
+                int initialConnections = singleStream ? 1 : connectionController.getTargetConnections();
+                if (previousJournal != null) {
+                    planner = new SegmentPlanner(previousJournal.getSegments(),
+                            SegmentPlanner.DEFAULT_MINIMUM_SPLIT_SIZE, writer.getAlignment());
+                    journal = previousJournal;
+                    markResumedRanges(previousJournal.getSegments(), fileSize);
+                    logger.info("resuming download, " + planner.getUnwrittenBytes() / 1024 / 1024 + "MB left");
+                } else {
+                    planner = firstRangeEnd >= 0
+                            ? new SegmentPlanner(fileSize, firstRangeEnd, initialConnections,
+                                    SegmentPlanner.DEFAULT_MINIMUM_SPLIT_SIZE, writer.getAlignment())
+                            : new SegmentPlanner(fileSize, initialConnections,
+                                    SegmentPlanner.DEFAULT_MINIMUM_SPLIT_SIZE, writer.getAlignment());
+                    // a file downloaded over a single connection cannot be resumed from where it stopped
+                    journal = (fileSize > 0 && validator != null && !singleStream)
+                            ? new DownloadJournal(target, linkURL, fileSize, validator)
+                            : null;
+                }
+                if (encoding != ContentEncoding.IDENTITY) {
+                    decoder = ContentDecoder.following(encoding, target, fileDestination, planner::getContiguousBytes);
+                }
+                verifier = getIntegrityCheck() != null ? getIntegrityCheck().newVerifier(fileSize) : null;
+                // the validator of a compressed file is not the validator of the file, it is not cached
+                cacheDigest = encoding == ContentEncoding.IDENTITY && isCacheable()
+                        && ContentCache.getInstance().accepts(linkURL, fileSize, validator)
+                        ? new SequentialDigest(ChecksumAlgorithm.SHA_256, fileSize)
+                        : null;
+                verified = false;
+                checksumMismatch = false;
+                verificationRounds = 0;
+                totalDownloadedBytes.set(Math.max(0, fileSize - planner.getUnwrittenBytes()));
+                connectionController.restartWindow(totalDownloadedBytes.get());
+                for (int i = 0; i < initialConnections; i++) {
+                    startWorker(linkURL);
                 }
 
                 long previousTime = System.currentTimeMillis();
-                long lastDownloadedBytes = 0;
+                long lastDownloadedBytes = totalDownloadedBytes.get();
+                long lastCheckpoint = previousTime;
                 long sessionStart = System.currentTimeMillis();
 
-                executorService.shutdown();
-                while (!executorService.isTerminated()) {
+                // once the workers are done, the ranges that fail verification are downloaded again
+                while (activeWorkers.get() > 0 && !scope.isCancelled() || refetchCorrupted(linkURL, fileDestination)) {
                     synchronized (this) {
                         if (isPaused) {
-                            wait();
+                            while (isPaused) {
+                                wait();
+                            }
+                            connectionController.restartWindow(totalDownloadedBytes.get());
                         }
+                        wait(MONITOR_INTERVAL);
                     }
 
                     long currentTime = System.currentTimeMillis();
+                    double elapsedSeconds = Math.max(currentTime - previousTime, 1) / 1000.0;
+                    double internetSpeed = (totalDownloadedBytes.get() - lastDownloadedBytes) / 1024.0 / elapsedSeconds;
+                    int progress = (int) ((totalDownloadedBytes.get() * 100) / fileSize);
 
-                    if (currentTime - previousTime >= 1000) {
-                        double internetSpeed = (totalDownloadedBytes.get() - lastDownloadedBytes) / 1024.0;
+                    animation.printProgressBar(progress, 50, internetSpeed, totalDownloadedBytes.get(), fileSize);
+                    previousTime = currentTime;
+                    lastDownloadedBytes = totalDownloadedBytes.get();
 
-                        int progress = (int) ((totalDownloadedBytes.get() * 100) / fileSize);
+                    connectionController.update(totalDownloadedBytes.get());
+                    mirrors.sample();
+                    while (!isStopped && !scope.isCancelled() && (planner.hasAssignableWork() || canHedge())
+                            && activeWorkers.get() < getAllowedConnections()) {
+                        startWorker(linkURL);
+                    }
 
-                        animation.printProgressBar(progress, 50, internetSpeed, totalDownloadedBytes.get(), fileSize);
-                        previousTime = currentTime;
-                        lastDownloadedBytes = totalDownloadedBytes.get();
+                    if (verifier != null) {
+                        verifier.catchUp(fileDestination, planner.getContiguousBytes());
+                    }
+                    if (cacheDigest != null) {
+                        cacheDigest.catchUp(fileDestination, planner.getContiguousBytes());
                     }
+                    if (currentTime - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+                        checkpoint();
+                        lastCheckpoint = currentTime;
+                    }
+                }
+                scope.join(0);
+                scope.close();
+                completed = planner.isComplete() && scope.getFailure() == null && (verifier == null || verified);
+                if (!planner.isComplete()) {
+                    checkpoint();
+                }
+                closeWriter();
+                if (decoder != null) {
+                    completed = finishDecoding(target, fileDestination);
+                }
+                closeJournal();
+                if (completed && cacheDigest != null) {
+                    storeInCache(linkURL, fileDestination);
                 }
 
                 notifyUser(sessionStart, linkURL);
@@ -221,9 +586,219 @@ class ParallelDownloadTask extends DownloadTask {
 
         } catch(InterruptedException | IOException e){
             throw new RuntimeException(e);
+        } finally {
+            // the first response is left open when no worker took it, or the download failed before
+            closeFirstRange();
         }
     }
 
+    /**
+     * Downloads a file from several mirrors at once. The first URL is the primary one: the file is
+     * named, journaled and resumed after it, and the other mirrors are only used if they serve a file
+     * of the same size and, when they send strong entity tags, the same entity tag.
+     *
+     * @param linkURLs the URLs of the same file on the mirrors, the primary one first.
+     */
+    @Override
+    public void downloadFromMirrors(List<String> linkURLs) {
+        mirrorURLs = List.copyOf(linkURLs.subList(1, linkURLs.size()));
+        try {
+            downloadFile(linkURLs.get(0));
+        } finally {
+            mirrorURLs = List.of();
+        }
+    }
+
+    /**
+     * Returns whether the download can start with the request for its first range instead of a probe.
+     * Resuming needs the size and validator of the file before any range is requested, negotiating
+     * compression asks for the file with a probe of its own, and mirrors are probed together.
+     */
+    private boolean canStartWithoutProbe(Path fileDestination, String acceptEncoding) {
+        return mirrorURLs.isEmpty() && acceptEncoding == null
+                && !Files.exists(DownloadJournal.pathOf(fileDestination));
+    }
+
+    /**
+     * Requests the first {@link #FIRST_RANGE_SIZE} bytes of the file, which tells the size and validator
+     * of the file like a probe does, and whose body is then downloaded by the worker of the first
+     * segment: the download starts one round trip earlier than with a probe.
+     *
+     * @param linkURL the URL of the file.
+     * @return the response, open, with the connection permit it holds.
+     * @throws IOException          if the request fails.
+     * @throws InterruptedException if the thread is interrupted while waiting for a connection permit or
+     *                              for the response.
+     */
+    private OpenedRange openFirstRange(String linkURL) throws IOException, InterruptedException {
+        HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(linkURL);
+        RangeExchange exchange = null;
+        try {
+            exchange = client.get(linkURL, 0, FIRST_RANGE_SIZE - 1, null);
+            return new OpenedRange(permit, exchange, exchange.send());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            if (exchange != null) {
+                exchange.close();
+            }
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes the download of an empty file, which has no range to download, by creating it empty.
+     */
+    private void createEmptyFile(String linkURL, Path fileDestination) throws IOException {
+        Files.write(fileDestination, new byte[0]);
+        totalFileSize = 0;
+        path = fileDestination;
+        completed = true;
+        logger.info("the file is empty");
+        pushNotification("Download Successfully", logger, INFO);
+        fileLogger.logSuccess("Download successfully", linkURL);
+    }
+
+    private void closeFirstRange() {
+        OpenedRange first = firstRange.getAndSet(null);
+        if (first != null) {
+            first.close();
+        }
+    }
+
+    /**
+     * Stores the completed download in the {@link ContentCache} under the digest computed while it was
+     * written, reading back only the bytes at its end that had not been hashed yet.
+     */
+    private void storeInCache(String linkURL, Path fileDestination) {
+        try {
+            ContentCache.getInstance().store(linkURL, fileDestination, validator, cacheDigest.finish(fileDestination),
+                    getContentType());
+        } catch (IOException e) {
+            logger.warning("could not store " + fileDestination + " in the content cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Asks the server whether it sends the file compressed, and switches the download to the compressed
+     * file if the server also serves ranges of it, with the size and validator of the compressed file.
+     * Servers that compress on the fly serve no ranges of what they send, and the download falls back
+     * to the file as it is.
+     *
+     * @param linkURL        the URL of the file, already probed.
+     * @param acceptEncoding the encodings to ask for.
+     * @param fileSize       the size of the file as it is.
+     * @return the size of the file that is downloaded.
+     * @throws InterruptedException if the thread is interrupted while waiting for a connection permit.
+     */
+    private long negotiateEncoding(String linkURL, String acceptEncoding, long fileSize) throws InterruptedException {
+        HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(linkURL);
+        try (permit; RangeExchange probe = client.head(linkURL, acceptEncoding)) {
+            if (probe.send() != HttpURLConnection.HTTP_OK) {
+                return fileSize;
+            }
+            ContentEncoding probed = ContentEncoding.of(probe);
+            if (probed == ContentEncoding.IDENTITY) {
+                return fileSize;
+            }
+            if (!ContentEncoding.supportsRanges(probe)) {
+                logger.info("the server does not serve ranges of the " + probed + " file, downloading it uncompressed");
+                return fileSize;
+            }
+            long encodedSize = probe.getContentLength();
+            logger.info("downloading the " + probed + " file, " + encodedSize / 1024 + "KB instead of "
+                    + fileSize / 1024 + "KB");
+            encoding = probed;
+            validator = IfRange.validatorOf(probe);
+            return encodedSize;
+        } catch (IOException | NoSuchContentEncodingException e) {
+            logger.warning("could not negotiate compression, downloading the file uncompressed: " + e.getMessage());
+            return fileSize;
+        }
+    }
+
+    /**
+     * Waits for the decoder once the compressed file has been downloaded, and deletes the compressed
+     * file once it has been decoded. The decoder of a download that did not complete is stopped and its
+     * output deleted; the compressed file is kept with its journal, so that the download can be resumed,
+     * and is decoded again from its start then.
+     *
+     * @param spoolFile       the compressed file.
+     * @param fileDestination the file it is decoded into.
+     * @return {@code true} if the file has been decoded.
+     * @throws InterruptedException if the thread is interrupted while waiting for the decoder.
+     */
+    private boolean finishDecoding(Path spoolFile, Path fileDestination) throws InterruptedException {
+        ContentDecoder contentDecoder = decoder;
+        decoder = null;
+        try {
+            if (!completed) {
+                contentDecoder.close();
+                Files.deleteIfExists(fileDestination);
+                return false;
+            }
+            try {
+                long decodedBytes = contentDecoder.finish();
+                logger.info(encoding + " file of " + totalFileSize / 1024 + "KB decoded to "
+                        + decodedBytes / 1024 + "KB");
+                Files.delete(spoolFile);
+                totalFileSize = decodedBytes;
+                totalDownloadedBytes.set(decodedBytes);
+                return true;
+            } catch (IOException e) {
+                // the compressed file is complete and corrupted, resuming it would not help
+                logger.error(e.getMessage());
+                Files.deleteIfExists(fileDestination);
+                Files.deleteIfExists(spoolFile);
+                Files.deleteIfExists(DownloadJournal.pathOf(spoolFile));
+                return false;
+            }
+        } catch (IOException e) {
+            logger.warning("could not clean up after decoding: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Probes the mirrors of the download and keeps those that serve the same file as the primary URL.
+     *
+     * @param linkURL  the primary URL, already probed.
+     * @param fileSize the size of the file at the primary URL.
+     * @return the mirrors of the download, the primary URL first.
+     * @throws InterruptedException if the thread is interrupted while waiting for a connection permit.
+     */
+    private MirrorSet newMirrorSet(String linkURL, long fileSize) throws InterruptedException {
+        List<Mirror> accepted = new ArrayList<>();
+        accepted.add(new Mirror(linkURL, validator));
+        for (String mirrorURL : mirrorURLs) {
+            if (!URLValidation.isValidURL(mirrorURL)) {
+                logger.warning("skipping mirror with invalid URL: " + mirrorURL);
+                continue;
+            }
+            HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(mirrorURL);
+            try (permit; RangeExchange probe = client.head(mirrorURL)) {
+                int responseCode = probe.send();
+                long mirrorSize = ContentRange.totalSizeOf(probe);
+                String mirrorValidator = IfRange.validatorOf(probe);
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    logger.warning("skipping mirror " + mirrorURL + ": server answered " + responseCode);
+                } else if (fileSize <= 0 || mirrorSize != fileSize) {
+                    logger.warning("skipping mirror " + mirrorURL + ": size " + mirrorSize + " instead of " + fileSize);
+                } else if (!MirrorSet.sameValidator(validator, mirrorValidator)) {
+                    logger.warning("skipping mirror " + mirrorURL + ": entity tag " + mirrorValidator
+                            + " instead of " + validator);
+                } else {
+                    accepted.add(new Mirror(mirrorURL, mirrorValidator));
+                }
+            } catch (IOException e) {
+                logger.warning("skipping mirror " + mirrorURL + ": " + e.getMessage());
+            }
+        }
+        if (accepted.size() > 1) {
+            logger.info("downloading from " + accepted.size() + " mirrors");
+        }
+        return new MirrorSet(accepted, logger);
+    }
+
     /**
      * Resumes a previously paused download operation for the specified URL.
      *
@@ -278,28 +853,290 @@ class ParallelDownloadTask extends DownloadTask {
     public void stopDownload() {
         isStopped = true;
         isPaused = false;
+        if (scope != null) {
+            scope.cancel();
+        }
         synchronized (this) {
             notifyAll();
         }
     }
 
+    @Override
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public long getDownloadedBytes() {
+        return totalDownloadedBytes.get();
+    }
+
+    @Override
+    public long getFileSize() {
+        return totalFileSize;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        completed = false;
+        totalFileSize = -1;
+        totalDownloadedBytes.set(0);
+        planner = null;
+    }
+
     /**
-     * Attempts to resume a previously failed download operation for a specified URL.
-     * This method retries downloading the file from its last known state using the given number of retry attempts.
-     * It is marked as deprecated and may be removed in future versions. Consider using alternative methods for
-     * download management.
+     * Returns how much of the file can already be read from its destination: the bytes written from
+     * the start of the file up to the first byte that is still missing. Segments are written out of
+     * order, so this can be far less than {@link #getDownloadedBytes()}.
      *
-     * @param urlString the URL of the file that failed during download. It specifies the location of the file to resume downloading from.
-     * @param fileDestination the local destination path where the downloaded file will be saved. It represents the directory location for the resumed file.
-     * @param retries the number of retry attempts allowed for resuming the failed download. This parameter dictates how many times the operation will
-     *                attempt to recover before failing completely.
+     * @return the number of leading bytes of the file that have been written.
      */
     @Override
-    @Deprecated(since = "1.0")
-    public void resumeFailureDownload(String urlString, String fileDestination, int retries) {}
+    public long getContiguousBytes() {
+        SegmentPlanner currentPlanner = planner;
+        return currentPlanner == null ? 0 : currentPlanner.getContiguousBytes();
+    }
+
+    /**
+     * Segments are written out of order, so a range can be written long before the bytes preceding it.
+     *
+     * @return {@code true} if every byte of the range has been written.
+     */
+    @Override
+    public boolean isWritten(long start, long end) {
+        SegmentPlanner currentPlanner = planner;
+        return currentPlanner != null && currentPlanner.isWritten(start, end);
+    }
+
+    /**
+     * Resumes a previously failed download from its journal, downloading only the ranges that are
+     * still missing. The download is attempted again until it completes, it is stopped, or the given
+     * number of attempts is used up.
+     *
+     * @param urlString the URL of the file that failed during download.
+     * @param fileDestination the local file the failed download was written to.
+     * @param retries the number of attempts allowed for resuming the failed download.
+     */
+    @Override
+    public void resumeFailureDownload(String urlString, String fileDestination, int retries) {
+        Path journalPath = DownloadJournal.pathOf(Path.of(fileDestination));
+        for (int attempt = 1; attempt <= retries && !isStopped && Files.exists(journalPath); attempt++) {
+            logger.info("resuming failed download, attempt " + attempt + " of " + retries);
+            downloadFile(urlString);
+        }
+    }
+
+    /**
+     * Flushes the destination file if every segment has been written, then closes the writer.
+     * A failure to flush is treated like any other fatal failure of the download.
+     */
+    private void closeWriter() {
+        synchronized (writerLock) {
+            writerClosed = true;
+            try (DownloadWriter downloadWriter = writer) {
+                if (planner.isComplete() && scope.getFailure() == null) {
+                    downloadWriter.flush();
+                }
+            } catch (IOException e) {
+                scope.fail(new FatalDownloadException("could not flush " + path, e));
+            }
+        }
+    }
 
     /**
-     * Notifies the user about the download outcome based on the number of finished chunks.
+     * Tells the writer which ranges of a resumed download are already in the destination file: every
+     * range the journal does not list as missing.
+     *
+     * @param unwritten the segments the journal lists as missing.
+     * @param fileSize  the total size of the remote file.
+     */
+    private void markResumedRanges(List<Segment> unwritten, long fileSize) {
+        List<Segment> missing = new ArrayList<>(unwritten);
+        missing.sort(Comparator.comparingLong(Segment::getStart));
+        long position = 0;
+        for (Segment segment : missing) {
+            if (segment.getWritten() > position) {
+                writer.markWritten(position, segment.getWritten() - position);
+            }
+            position = Math.max(position, segment.getEnd() + 1);
+        }
+        if (position < fileSize) {
+            writer.markWritten(position, fileSize - position);
+        }
+    }
+
+    /**
+     * Reads the journal left by an earlier download to the given destination and decides whether it
+     * can be resumed: the journal must describe the same URL, size and validator, and the partially
+     * downloaded file must still be there. A journal that cannot be resumed is deleted.
+     *
+     * @param fileDestination the file the download is written to.
+     * @param linkURL         the URL of the file being downloaded.
+     * @param fileSize        the total size of the remote file.
+     * @return the journal to resume from, or {@code null} if the download starts from scratch.
+     */
+    private DownloadJournal loadJournal(Path fileDestination, String linkURL, long fileSize) {
+        try {
+            DownloadJournal previousJournal = DownloadJournal.load(fileDestination);
+            if (previousJournal == null) {
+                return null;
+            }
+            if (previousJournal.matches(linkURL, fileSize, validator)
+                    && Files.exists(fileDestination) && Files.size(fileDestination) == fileSize) {
+                return previousJournal;
+            }
+            logger.warning("the remote file changed since the download was interrupted, starting over");
+            previousJournal.delete();
+        } catch (IOException e) {
+            logger.warning("could not read the download journal, starting over: " + e.getMessage());
+            try {
+                Files.deleteIfExists(DownloadJournal.pathOf(fileDestination));
+            } catch (IOException ignored) {
+                // the journal is rewritten at the first checkpoint anyway
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Saves the ranges that are still missing to the journal. The snapshot is taken before the writer
+     * is flushed, so the journal never lists as written a byte that has not reached the storage device.
+     * A failed checkpoint only loses the progress made since the previous one, so it is logged and the
+     * download goes on.
+     */
+    private void checkpoint() {
+        DownloadJournal downloadJournal = journal;
+        if (downloadJournal == null || planner == null) {
+            return;
+        }
+        List<Segment> unwritten = planner.getUnwrittenSegments();
+        synchronized (writerLock) {
+            if (writerClosed) {
+                return;
+            }
+            try {
+                writer.flush();
+                downloadJournal.save(unwritten);
+            } catch (IOException e) {
+                logger.warning("could not save the download journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes the journal once it is of no further use: the download has completed, or the remote file
+     * has changed, so the bytes written so far must not be resumed. In any other case the journal is
+     * kept, so that the download can be resumed later.
+     */
+    private void closeJournal() {
+        DownloadJournal downloadJournal = journal;
+        if (downloadJournal == null) {
+            return;
+        }
+        if (completed || checksumMismatch || scope.getFailure() instanceof RemoteFileChangedException) {
+            try {
+                downloadJournal.delete();
+            } catch (IOException e) {
+                logger.warning("could not delete the download journal: " + e.getMessage());
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * Verifies the download once every segment has been written, and hands the ranges that fail
+     * verification back to the planner, with new workers to download them again. A mismatch of the
+     * checksum of the whole file cannot be located, and fails the download.
+     *
+     * @return {@code true} if corrupted ranges are being downloaded again.
+     * @throws IOException if the file cannot be read back.
+     */
+    private boolean refetchCorrupted(String linkURL, Path fileDestination) throws IOException {
+        if (verifier == null || verified || isStopped || scope.isCancelled() || scope.getFailure() != null
+                || !planner.isComplete()) {
+            return false;
+        }
+        List<Segment> corrupted = verifier.verify(fileDestination);
+        if (corrupted.isEmpty()) {
+            verified = true;
+            logger.info(getIntegrityCheck().getAlgorithm() + " verified, "
+                    + verifier.getReadBackBytes() / 1024 / 1024 + "MB read back from the file");
+            return false;
+        }
+        if (!verifier.locatesCorruption() || ++verificationRounds > MAX_VERIFICATION_ROUNDS) {
+            logger.error(getIntegrityCheck().getAlgorithm() + " checksum mismatch, the downloaded file is corrupted");
+            checksumMismatch = true;
+            return false;
+        }
+        long corruptedBytes = 0;
+        for (Segment range : corrupted) {
+            verifier.forget(range.getStart(), range.getEnd());
+            if (cacheDigest != null) {
+                cacheDigest.forget(range.getStart());
+            }
+            corruptedBytes += range.getEnd() - range.getStart() + 1;
+        }
+        logger.warning(corrupted.size() + " ranges (" + corruptedBytes / 1024 + "KB) failed verification, downloading them again");
+        planner.reopen(corrupted);
+        totalDownloadedBytes.addAndGet(-corruptedBytes);
+        for (int i = 0; i < Math.min(corrupted.size(), getAllowedConnections()); i++) {
+            startWorker(linkURL);
+        }
+        return true;
+    }
+
+    /**
+     * Starts a new worker that downloads segments handed out by the planner.
+     *
+     * @param linkURL the URL of the file being downloaded.
+     */
+    private void startWorker(String linkURL) {
+        activeWorkers.incrementAndGet();
+        if (!scope.fork(new ChunkDownloadTask(linkURL, 0))) {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of connections the download should use: the target of the connection
+     *         controller, capped by the limit set by a scheduler, or one for a server that does not
+     *         serve ranges.
+     */
+    private int getAllowedConnections() {
+        if (singleStream) {
+            return 1;
+        }
+        return Math.min(connectionController.getTargetConnections(), getConnectionLimit());
+    }
+
+    /**
+     * @return {@code true} if the download has a hedge left and a segment slow enough to spend it on.
+     */
+    private boolean canHedge() {
+        return hedgesLeft.get() > 0 && planner.canHedge();
+    }
+
+    /**
+     * Retires the calling worker if more workers are running than the connection controller wants,
+     * or than the scheduler allows.
+     * The check and the decrement are atomic so that concurrent workers never retire below the target.
+     *
+     * @return {@code true} if the worker has been retired and must stop.
+     */
+    private boolean tryRetireWorker() {
+        int active;
+        do {
+            active = activeWorkers.get();
+            if (active <= getAllowedConnections()) {
+                return false;
+            }
+        } while (!activeWorkers.compareAndSet(active, active - 1));
+        return true;
+    }
+
+    /**
+     * Notifies the user about the download outcome based on whether every segment has been downloaded.
      * If the download is successful, logs and displays a notification indicating success and
      * the session duration. In case of failure, logs and displays an error notification.
      *
@@ -307,13 +1144,35 @@ class ParallelDownloadTask extends DownloadTask {
      * @param linkURL  the URL of the download that is being notified about.
      */
     private void notifyUser(long session ,String linkURL){
-        if (finishedChunk.get() > 3) {
+        if (scope.getFailure() != null) {
+            logger.error("download cancelled: " + scope.getFailure().getMessage());
+        }
+        if (completed) {
             long sessionEnd = (System.currentTimeMillis() - session) / 1000;
+            ConnectionPool connectionPool = ConnectionPool.getInstance();
+            logger.info("connections opened: " + connectionPool.getOpenedConnections() + ", reused: "
+                    + connectionPool.getReusedConnections());
+            if (hedgesSent.get() > 0) {
+                logger.info("hedged requests: " + hedgesSent.get() + ", won: " + hedgesWon.get());
+            }
+            if (mirrors.getMirrors().size() > 1) {
+                for (Mirror mirror : mirrors.getMirrors()) {
+                    logger.info("mirror " + mirror.getUrl() + ": " + (mirror.isDropped() ? "dropped, " : "")
+                            + (long) Math.max(0, mirror.getThroughput()) / 1024 + "KB/s per connection, "
+                            + mirror.getFailures() + " of " + mirror.getAttempts() + " attempts failed");
+                }
+            }
             pushNotification("Download Successfully", logger, INFO);
             fileLogger.logSuccess("Download successfully", linkURL);
             logger.info("session time: " + sessionEnd + "s");
+        } else if (checksumMismatch) {
+            fileLogger.logFailure("Download failed checksum mismatch", linkURL);
+            pushNotification("Download Failed", logger, ERROR);
         } else {
             logger.error("something went wrong please check your internet connection and try again");
+            if (journal != null) {
+                logger.info("run the same download again to resume it");
+            }
             fileLogger.logFailure("Download failed connection lost",linkURL);
             pushNotification("Download Failed",logger,ERROR);
         }
@@ -326,138 +1185,546 @@ class ParallelDownloadTask extends DownloadTask {
      * are released properly. It performs the following tasks:
      *
      * 1. Checks if the task is already stopped. If not, it updates the `isStopped` flag to
-     *    true and forcibly shuts down all running tasks in the `executorService` by invoking
-     *    `shutdownNow()`.
-     *
-     * 2. Attempts to delete the file located at the `path` if it exists to ensure no
-     *    incomplete or corrupted data is left behind.
+     *    true and cancels all running segments of the download scope.
      *
-     * 3. If an I/O exception occurs while deleting the file, it wraps the exception into
-     *    a `RuntimeException` and propagates it.
+     * 2. If the download has not completed, waits briefly for the segments to write out their
+     *    buffers and saves a final checkpoint to the journal. The partially downloaded file is kept,
+     *    so that the next download of the same URL resumes from it instead of starting over.
      *
      * This method is invoked during application shutdown or as part of the download task's
-     * termination logic to ensure proper resource management and file cleanup.
+     * termination logic to ensure proper resource management.
      */
     private void cleanupOnExit(){
         if (!isStopped){
             isStopped = true;
-            executorService.shutdownNow();
+            if (scope != null) {
+                scope.cancel();
+            }
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        if (planner == null || planner.isComplete()) {
+            return;
         }
         try {
-            if (Files.exists(path)) {
-                Files.delete(path);
-            }
-        }catch (IOException e) {
-            throw new RuntimeException(e);
+            scope.join(EXIT_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        checkpoint();
     }
 
     /**
-     * Represents a task responsible for downloading a specific chunk of a file in a multi-threaded download process.
-     * This class is designed to handle the downloading of a specified byte range from a given file URL and save it
-     * to a target location. It operates as part of a larger parallel download mechanism.
+     * Represents a worker responsible for downloading chunks of a file in a multi-threaded download process.
+     * A worker holds one connection slot of the download: it asks the {@link SegmentPlanner} for a segment,
+     * downloads its byte range from the given file URL and saves it to the target location, then forks its
+     * successor into the {@link DownloadScope} so that every segment runs as its own task.
      *
      * The {@code ChunkDownloadTask} is executed as a {@code Runnable} instance and can handle interruptions,
      * periodic I/O operations, and download pausing or stopping as dictated by the parent {@code ParallelDownloadTask}.
      *
      * Features include:
      * - Byte range request capability using HTTP Range headers.
-     * - Efficient use of buffer size depending on the underlying storage type.
+     * - Stopping early when the planner hands the rest of the segment to another worker.
+     * - Pooled direct buffers sized for the underlying storage type.
      * - Support for pause, resume, and stop operations through synchronized methods.
      * - Atomically tracked progress within a multi-threading environment.
      */
     private class ChunkDownloadTask implements Runnable {
 
         private final String urlString;
-        private final String fileDestination;
-        private final int start;
-        private final int end;
 
         /**
-         * Initializes a task for downloading a specific chunk of a file from a given URL.
+         * The number of consecutive times the server refused a segment of this worker with 429 or 503.
+         */
+        private final int throttledAttempts;
+
+        /**
+         * Initializes a worker for downloading chunks of a file from a given URL.
          *
          * @param urlString The URL of the file to be downloaded.
-         * @param fileDestination The local file path where the downloaded chunk will be saved.
-         * @param start The starting byte position of the chunk to be downloaded.
-         * @param end The ending byte position of the chunk to be downloaded.
+         * @param throttledAttempts The number of consecutive refusals of the previous segments of this worker.
          */
-        public ChunkDownloadTask(String urlString, String fileDestination, int start, int end) {
+        public ChunkDownloadTask(String urlString, int throttledAttempts) {
             this.urlString = urlString;
-            this.fileDestination = fileDestination;
-            this.start = start;
-            this.end = end;
+            this.throttledAttempts = throttledAttempts;
         }
 
         /**
-         * Implements a thread that downloads a specific portion of a file from a remote server.
-         *
-         * This method performs the task of downloading a defined chunk of a file, specified by the start
-         * and end byte positions, using an HTTP connection. It sets up a connection to the file's URL,
-         * requests the defined byte range to download, and writes the data to a specified file
-         * destination.
-         *
-         * The method utilizes a buffer size optimized for the type of storage and maintains thread
-         * safety during the write operation to ensure proper handling of pause and stop commands. The
-         * current download progress is tracked and updated throughout the operation.
-         *
-         * If interrupted or if any exceptions occur, it handles resource cleanup and ensures the
-         * connection is safely closed.
+         * Downloads one segment handed out by the planner and forks a successor that continues with the
+         * next one, unless no work is left, the download is stopped, or the connection controller asks
+         * for fewer connections.
          *
-         * Exception Handling:
-         * - IOException: Captures errors during connection, reading, or writing operations.
-         * - InterruptedException: Manages thread interruptions during paused state.
-         *
-         * Synchronization:
-         * - Provides support for pausing and resuming the download thread via synchronization.
-         * - Ensures thread-safe handling of stop commands to terminate the download prematurely.
+         * If a segment fails with a network error, or stalls for longer than the configured stall timeout,
+         * the worker reconnects and continues it from the last written byte after a jittered exponential
+         * backoff. Once the segment has failed too often in a row, or the download's retry budget is used
+         * up, the failure becomes fatal. A {@link FatalDownloadException} cancels the whole download scope. If the server refuses a segment with 429 or 503, the controller
+         * is told to back off and the worker retires, unless it is the last one.
          */
         @Override
         public void run() {
 
+            Segment segment = null;
+            boolean retired = false;
+            boolean continued = false;
+            try {
+                if (isStopped || (retired = tryRetireWorker())) {
+                    return;
+                }
+                segment = planner.nextSegment();
+                OpenedRange opened = null;
+                if (segment == null) {
+                    Hedge hedge = nextHedge();
+                    if (hedge == null) {
+                        return;
+                    }
+                    opened = sendHedge(hedge);
+                    if (opened == null) {
+                        return;
+                    }
+                    segment = takeOver(hedge, opened);
+                    if (segment == null) {
+                        return;
+                    }
+                }
+
+                if (downloadWithRetries(segment, opened)) {
+                    planner.release(segment);
+                    segment = null;
+                    continued = scope.fork(new ChunkDownloadTask(urlString, 0));
+                    return;
+                }
+
+                connectionController.onThrottled();
+                planner.release(segment);
+                segment = null;
+                if (throttledAttempts >= MAX_THROTTLED_ATTEMPTS) {
+                    logger.warning("server keeps refusing the download, giving up the connection");
+                    return;
+                }
+                Thread.sleep(retryPolicy.backoffMillis(throttledAttempts + 1));
+                continued = scope.fork(new ChunkDownloadTask(urlString, throttledAttempts + 1));
+            } catch (FatalDownloadException e) {
+                scope.fail(e);
+            } catch (IOException e) {
+                if (!scope.isCancelled() && !isStopped) {
+                    logger.warning("chunk download failed: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (segment != null) {
+                    planner.release(segment);
+                }
+                if (!retired && !continued) {
+                    activeWorkers.decrementAndGet();
+                }
+                synchronized (ParallelDownloadTask.this) {
+                    ParallelDownloadTask.this.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Takes a hedge from the planner once no segment is left to download, if the budget of the download
+         * allows one more.
+         *
+         * @return the hedge, or {@code null} if the budget is used up or no segment is slow enough.
+         */
+        private Hedge nextHedge() {
+            int left;
+            do {
+                left = hedgesLeft.get();
+                if (left <= 0) {
+                    return null;
+                }
+            } while (!hedgesLeft.compareAndSet(left, left - 1));
+            Hedge hedge = planner.nextHedge();
+            if (hedge == null) {
+                hedgesLeft.incrementAndGet();
+            }
+            return hedge;
+        }
+
+        /**
+         * Sends the duplicate request of a hedge, for the range the hedged segment had left when it was
+         * hedged, from the mirror the {@link MirrorSet} currently scores best.
+         *
+         * @param hedge the hedge to send.
+         * @return the response with the connection permit it holds, or {@code null} if the server refused
+         *         the request with 429 or 503.
+         * @throws IOException if the request fails, or the server did not send the range.
+         * @throws InterruptedException if the thread is interrupted while waiting for a permit or for the
+         *                              response.
+         */
+        private OpenedRange sendHedge(Hedge hedge) throws IOException, InterruptedException {
+            logger.info("segment at " + hedge.getSegment().getPosition() + " is slow, sending a duplicate"
+                    + " request for its last " + (hedge.getEnd() - hedge.getStart() + 1) / 1024 + "KB");
+            hedgesSent.incrementAndGet();
+            Mirror mirror = mirrors.acquire();
+            HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(mirror.getUrl());
             try {
-                URL url = new URL(urlString);
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                RangeExchange exchange = requestRange(mirror, hedge.getStart(), hedge.getEnd());
+                if (exchange == null) {
+                    permit.close();
+                    return null;
+                }
+                return new OpenedRange(permit, exchange, HttpURLConnection.HTTP_PARTIAL);
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                permit.close();
+                throw e;
+            } finally {
+                mirrors.release(mirror);
+            }
+        }
 
-                connection.setRequestProperty("Range", "bytes=" + start + "-" + end);
+        /**
+         * Hands the rest of a hedged segment over to the response of its hedge, which then skips the bytes
+         * the segment downloaded while the duplicate request was on its way. The worker of the hedged
+         * segment stops at the new end of its segment, and is stopped right away if it has reached it
+         * already, since its connection is the slow one.
+         *
+         * @param hedge  the hedge whose response has arrived.
+         * @param opened the response.
+         * @return the segment the response downloads, or {@code null} if the hedged segment finished first
+         *         and the response has been closed.
+         */
+        private Segment takeOver(Hedge hedge, OpenedRange opened) {
+            Segment segment = planner.takeOver(hedge);
+            if (segment == null) {
+                scope.register(null);
+                opened.close();
+                return null;
+            }
+            hedgesWon.incrementAndGet();
+            if (hedge.getSegment().isFinished()) {
+                RangeExchange loser = segmentExchanges.get(hedge.getSegment());
+                if (loser != null) {
+                    loser.close();
+                }
+            }
+            try {
+                skipBody(opened.exchange(), segment.getStart() - hedge.getStart());
+            } catch (IOException e) {
+                // the segment is downloaded over a connection of its own instead
+                scope.register(null);
+                opened.close();
+                planner.release(segment);
+                return null;
+            }
+            return segment;
+        }
 
-                int bufferSize = new BufferSize(getStorageType()).getRecommendedBufferSize();
-                int currentPosition = start;
+        /**
+         * Reads and drops the given number of bytes from the start of a response body, leaving the body
+         * open.
+         */
+        private void skipBody(RangeExchange exchange, long bytes) throws IOException {
+            if (bytes == 0) {
+                return;
+            }
+            ReadableByteChannel body = exchange.getBody();
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bytes, 64 * 1024));
+            while (bytes > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), bytes));
+                int read = body.read(buffer);
+                if (read == -1) {
+                    throw new EOFException("hedge response ended before the rest of the segment");
+                }
+                bytes -= read;
+            }
+        }
 
-                InputStream inputStream = connection.getInputStream();
-                connection.setConnectTimeout(getConnectionTimeout());
-                RandomAccessFile raf = new RandomAccessFile(fileDestination,"rw");
-                raf.seek(currentPosition);
-                raf.getChannel().force(true);
+        /**
+         * Downloads the given segment, reconnecting from its last written byte whenever the transfer fails
+         * with a network error. The consecutive failure count starts over as soon as an attempt writes
+         * any bytes, so a long transfer survives any number of isolated resets within the retry budget.
+         *
+         * Every attempt fetches the range from the mirror the {@link MirrorSet} currently scores best, so a
+         * segment that failed on one mirror is retried on another once the failing mirror is dropped.
+         *
+         * Every attempt holds a permit of the {@link HostConnectionLimiter} while its connection is open,
+         * and waits for one if the host already has as many connections as it allows.
+         *
+         * @param segment the segment to download.
+         * @param opened  the response to a hedge whose body starts at the position of the segment, used by
+         *                the first attempt, or {@code null} to request the range.
+         * @return {@code false} if the server refused the request with 429 or 503, {@code true} otherwise.
+         * @throws FatalDownloadException if the segment cannot be completed, or failed too often.
+         * @throws IOException if the download was stopped or cancelled while the segment failed.
+         * @throws InterruptedException if the thread is interrupted while waiting for a permit or for the
+         *                              next attempt.
+         */
+        private boolean downloadWithRetries(Segment segment, OpenedRange opened)
+                throws IOException, InterruptedException {
+            int failures = 0;
+            while (true) {
+                long written = segment.getWritten();
+                Mirror mirror = mirrors.acquire();
+                // the segment at the start of the file continues the response the download started with
+                OpenedRange first = opened != null ? opened
+                        : segment.getPosition() == 0 ? firstRange.getAndSet(null) : null;
+                opened = null;
+                try {
+                    HostConnectionLimiter.Permit permit = first != null
+                            ? first.permit()
+                            : HostConnectionLimiter.getInstance().acquire(mirror.getUrl());
+                    boolean accepted;
+                    // the permit is given back before a failed attempt backs off
+                    try (permit) {
+                        accepted = downloadSegment(segment, mirror, first != null ? first.exchange() : null);
+                    }
+                    if (accepted) {
+                        mirrors.onSuccess(mirror);
+                    } else {
+                        mirrors.onFailure(mirror);
+                    }
+                    return accepted;
+                } catch (FatalDownloadException e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (isStopped || scope.isCancelled()) {
+                        throw e;
+                    }
+                    // a hedged segment whose rest was taken over is stopped by closing its connection
+                    if (segment.isFinished()) {
+                        return true;
+                    }
+                    mirrors.onFailure(mirror);
+                    if (singleStream) {
+                        throw new FatalDownloadException("the server does not serve ranges, the download cannot"
+                                + " continue from " + segment.getWritten() + ": " + e.getMessage(), e);
+                    }
+                    failures = segment.getWritten() > written ? 1 : failures + 1;
+                    if (!retryPolicy.tryRetry(failures)) {
+                        String reason = failures > retryPolicy.getMaxAttempts()
+                                ? "failed " + failures + " times in a row"
+                                : "failed and the retry budget is used up";
+                        throw new FatalDownloadException("segment at " + segment.getWritten() + " " + reason
+                                + ": " + e.getMessage(), e);
+                    }
+                    long delay = retryPolicy.backoffMillis(failures);
+                    logger.warning("segment at " + segment.getWritten() + " failed (" + e.getMessage()
+                            + "), retrying in " + delay + "ms");
+                    Thread.sleep(delay);
+                } finally {
+                    mirrors.release(mirror);
+                }
+            }
+        }
+
+        /**
+         * Downloads the given segment from its current position, using an HTTP connection that requests
+         * the segment's byte range and writes the data through the shared {@link DownloadWriter}.
+         *
+         * Network bytes are read straight into a pooled direct buffer, which the writer hands to the file
+         * channel without another copy, and every write is positional, so the segment keeps no file handle
+         * or seek state of its own. The buffer is only written once it is full or the segment is done, which
+         * keeps writes few, large and aligned to the buffer size; bytes still buffered when the connection
+         * fails are written before the buffer is returned, because they have already been claimed. Only
+         * whole blocks of the {@link DownloadWriter#getAlignment() alignment} of the writer are written
+         * then while the segment is unfinished, and the rest is given back to the segment, so that it
+         * resumes at an aligned position and a direct writer keeps bypassing the page cache. Every
+         * read is claimed from the segment before it is written, so the worker stops as soon as the
+         * planner has handed the rest of the segment to another worker. The worker also stops early when
+         * the download has more connections than its scheduler allows, and the planner queues the rest of
+         * the segment again.
+         *
+         * A read that receives nothing for the configured stall timeout fails with a
+         * {@link java.net.SocketTimeoutException}, so a stalled connection is restarted like a failed one.
+         *
+         * The request carries {@code If-Range}, so a remote file that changed since the download started
+         * is answered with 200 instead of 206 and cancels the download with a
+         * {@link RemoteFileChangedException}. A mirror that answers like this, or ignores the range, is
+         * dropped instead while other mirrors remain, and the segment is retried on them.
+         *
+         * @param segment the segment to download.
+         * @param mirror  the mirror to fetch the range from.
+         * @param opened  the response the download started with, or to a hedge, whose body starts at the
+         *                position of the segment, or {@code null} to request the range.
+         * @return {@code false} if the server refused the request with 429 or 503, {@code true} otherwise.
+         * @throws IOException if an error occurs during connection, reading, or writing operations.
+         * @throws InterruptedException if the thread is interrupted while the download is paused.
+         */
+        private boolean downloadSegment(Segment segment, Mirror mirror, RangeExchange opened)
+                throws IOException, InterruptedException {
+            long currentPosition = segment.getPosition();
+            RangeExchange exchange;
+            if (opened != null) {
+                exchange = opened;
+                scope.register(exchange);
+            } else {
+                if (segment.isFinished()) {
+                    // a hedge took the rest of the segment over while the worker waited for its permit
+                    return true;
+                }
+                exchange = requestRange(mirror, currentPosition, segment.getEnd());
+                if (exchange == null) {
+                    return false;
+                }
+            }
+
+            segmentExchanges.put(segment, exchange);
+            ByteBuffer buffer = null;
+            try (ReadableByteChannel channel = exchange.getBody()) {
 
-                byte[] buffer = new byte[bufferSize];
+                buffer = BufferPool.getInstance().acquire(getBufferSize(), BufferSize.MINIMUM_BUFFER_SIZE);
                 int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
+                while ((bytesRead = channel.read(buffer)) != -1) {
 
                     synchronized (ParallelDownloadTask.this) {
-                        while (isPaused) {
-                            wait();
+                        while (isPaused && !scope.isCancelled()) {
+                            ParallelDownloadTask.this.wait();
                         }
-                        if (isStopped) {
-                            inputStream.close();
-                            raf.close();
-                            connection.disconnect();
+                        if (isStopped || scope.isCancelled()) {
+                            buffer.position(buffer.position() - bytesRead);
                             break;
                         }
                     }
 
-                    raf.write(buffer, 0, bytesRead);
-                    currentPosition += bytesRead;
-                    totalDownloadedBytes.addAndGet(bytesRead);
+                    int claimed = segment.claim(bytesRead);
+                    buffer.position(buffer.position() - (bytesRead - claimed));
+                    totalDownloadedBytes.addAndGet(claimed);
+                    mirror.addBytes(claimed);
+                    getSpeedLimiter().acquire(claimed);
+
+                    boolean segmentDone = claimed < bytesRead || segment.isFinished();
+                    if (!buffer.hasRemaining() || segmentDone) {
+                        currentPosition = writeBuffer(segment, buffer, currentPosition);
+                    }
+                    if (segmentDone) {
+                        break;
+                    }
+                    if (activeWorkers.get() > getConnectionLimit()) {
+                        // the scheduler took connections away, hand the rest of the segment back
+                        break;
+                    }
+                }
+                if (bytesRead == -1 && !segment.isFinished() && !isStopped && !scope.isCancelled()) {
+                    throw new EOFException("connection closed at " + segment.getPosition()
+                            + " before the end of the segment");
+                }
+            } finally {
+                try {
+                    if (buffer != null && buffer.position() > 0) {
+                        int tail = (int) ((currentPosition + buffer.position()) % writer.getAlignment());
+                        if (tail > 0 && tail <= buffer.position() && segment.unclaim(tail)) {
+                            buffer.position(buffer.position() - tail);
+                            totalDownloadedBytes.addAndGet(-tail);
+                        }
+                        if (buffer.position() > 0) {
+                            writeBuffer(segment, buffer, currentPosition);
+                        }
+                    }
+                } finally {
+                    BufferPool.getInstance().release(buffer);
+                    segmentExchanges.remove(segment, exchange);
+                    scope.register(null);
+                    exchange.close();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Requests a range of the file and checks the response, as described in
+         * {@link #downloadSegment(Segment, Mirror, RangeExchange)}.
+         *
+         * @param mirror the mirror to fetch the range from.
+         * @param first  the offset of the first requested byte.
+         * @param last   the offset of the last requested byte.
+         * @return the exchange, registered in the scope, whose body is the range, or {@code null} if the
+         *         server refused the request with 429 or 503.
+         * @throws IOException if the request fails, or the server did not send the range.
+         * @throws InterruptedException if the thread is interrupted while waiting for the response.
+         */
+        private RangeExchange requestRange(Mirror mirror, long first, long last)
+                throws IOException, InterruptedException {
+            String acceptEncoding = encoding == ContentEncoding.IDENTITY ? null : ContentEncoding.ACCEPTED;
+            RangeExchange exchange = client.get(mirror.getUrl(), first, last, mirror.getValidator(), acceptEncoding);
+            scope.register(exchange);
+            int responseCode;
+            try {
+                responseCode = exchange.send();
+            } catch (IOException | InterruptedException e) {
+                scope.register(null);
+                exchange.close();
+                throw e;
+            }
+            if (responseCode == HTTP_TOO_MANY_REQUESTS || responseCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+                scope.register(null);
+                exchange.close();
+                return null;
+            }
+            if (responseCode == HttpURLConnection.HTTP_OK && mirror.getValidator() != null) {
+                scope.register(null);
+                exchange.close();
+                if (mirrors.drop(mirror, "the file has changed")) {
+                    throw new IOException("mirror " + mirror.getUrl() + " serves a changed file");
+                }
+                throw new RemoteFileChangedException(mirror.getUrl());
+            }
+            if (responseCode != HttpURLConnection.HTTP_PARTIAL
+                    && !(responseCode == HttpURLConnection.HTTP_OK && first == 0)) {
+                scope.register(null);
+                exchange.close();
+                if (mirrors.drop(mirror, "answered " + responseCode + " to a range request")) {
+                    throw new IOException("mirror " + mirror.getUrl() + " answered " + responseCode);
+                }
+                throw new FatalDownloadException("server answered " + responseCode + " to a range request");
+            }
+            if (acceptEncoding != null && !encoding.isEncodingOf(exchange)) {
+                scope.register(null);
+                exchange.close();
+                throw new FatalDownloadException("server stopped sending the " + encoding + " file");
+            }
+            return exchange;
+        }
+
+        /**
+         * Writes the bytes accumulated in the buffer at the given file position, records them as written
+         * in the segment and clears the buffer, even if the write fails.
+         *
+         * @param segment  the segment the bytes belong to.
+         * @param buffer   the buffer holding the bytes read since the last write.
+         * @param position the file position of the first byte in the buffer.
+         * @return the file position following the written bytes.
+         * @throws FatalDownloadException if the bytes cannot be written.
+         */
+        private long writeBuffer(Segment segment, ByteBuffer buffer, long position) throws FatalDownloadException {
+            buffer.flip();
+            int length = buffer.remaining();
+            try {
+                if (verifier != null) {
+                    verifier.update(position, buffer.duplicate());
                 }
-                finishedChunk.addAndGet(1);
-                inputStream.close();
-                raf.close();
-                connection.disconnect();
+                if (cacheDigest != null) {
+                    cacheDigest.update(position, buffer.duplicate());
+                }
+                writer.write(buffer, position);
+                segment.markWritten(length);
             } catch (IOException e) {
-               finishedChunk.addAndGet(0);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+                throw new FatalDownloadException("could not write " + path, e);
+            } finally {
+                buffer.clear();
             }
+            return position + length;
+        }
+    }
+
+    /**
+     * A response that has been received before the segment it belongs to is downloaded, open, and the
+     * connection permit it holds: the response to the request a download started with instead of a
+     * probe, handed to the worker of the first segment, or the response to a hedge.
+     */
+    private record OpenedRange(HostConnectionLimiter.Permit permit, RangeExchange exchange, int responseCode)
+            implements Closeable {
+
+        @Override
+        public void close() {
+            exchange.close();
+            permit.close();
         }
     }
 }
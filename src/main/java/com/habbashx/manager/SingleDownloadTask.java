@@ -8,23 +8,42 @@ import com.habbashx.logger.FileLogger;
 import com.habbashx.logger.Logger;
 
 import com.habbashx.exception.InvalidURLException;
+import com.habbashx.exception.NoSuchContentEncodingException;
 
+import com.habbashx.manager.buffer.BufferPool;
 import com.habbashx.manager.buffer.BufferSize;
+import com.habbashx.manager.cache.ContentCache;
+import com.habbashx.manager.checksum.ChecksumAlgorithm;
+import com.habbashx.manager.checksum.DownloadVerifier;
+import com.habbashx.manager.checksum.SequentialDigest;
+import com.habbashx.manager.connection.HostConnectionLimiter;
+import com.habbashx.manager.encoding.ContentDecoder;
+import com.habbashx.manager.encoding.ContentEncoding;
+import com.habbashx.manager.http.ContentRange;
+import com.habbashx.manager.http.HttpProtocol;
+import com.habbashx.manager.http.IfRange;
+import com.habbashx.manager.http.RangeClient;
+import com.habbashx.manager.http.RangeExchange;
+import com.habbashx.manager.retry.RetryPolicy;
+import com.habbashx.manager.segment.Segment;
 import com.habbashx.manager.urlvalidation.URLValidation;
 
 import lombok.Cleanup;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.io.File;
-import java.io.BufferedInputStream;
 
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import java.util.List;
+
 import static com.habbashx.manager.destinationOrganizer.DestinationOrganizer.organizeFileDestination;
 import static com.habbashx.notification.DownloadManagerNotification.pushNotification;
 
@@ -45,17 +64,23 @@ import static java.awt.TrayIcon.MessageType.ERROR;
  * - Manages and logs download success and failure events using `FileLogger` and standard logging mechanisms.
  * - Dynamically displays download progress using a customizable animation style via `ProgressAnimation`.
  * - Handles partial downloads using "Range" HTTP headers.
- * - Implements retry logic with a predefined limit for failed downloads.
+ * - Keeps the download speed under the configured speed limit.
+ * - Counts its connection against the per-host connection limit shared by all downloads.
+ * - Takes its connection from the shared keep-alive connection pool, so retries and later downloads
+ *   from the same host reuse a warm connection.
+ * - Retries a failed transfer from the end of the partial file with jittered exponential backoff,
+ *   within the configured retry attempts and budget.
+ * - Asks for a compressed file when compression is turned on, and decodes it into the destination
+ *   on a decoder thread while it is received.
  *
  * Fields:
  * - `isPaused`: Indicates whether the download is paused. Used for pausing mechanism.
  * - `isStopped`: Indicates whether the download is stopped. Used for stopping mechanism.
  * - `fileLogger`: Instance of `FileLogger` to record download events.
  * - `logger`: Logger instance for logging general events.
- * - `RETRIES`: Static variable that defines the maximum retry limit for failed download attempts.
  * - `animation`: Instance of `ProgressAnimation` used for rendering the download progress bar.
  * - `path`: Represents the file destination path for the downloaded file.
- * - `retryCount`: Keeps track of the current retry attempt count.
+ * - `completed`: Indicates whether the last download finished successfully.
  *
  * Constructor:
  * - `SingleDownloadTask()`:
@@ -65,8 +90,8 @@ import static java.awt.TrayIcon.MessageType.ERROR;
  * Methods:
  * - `downloadFile(String linkURL)`:
  *   Downloads the provided file from the specified URL, with support for partial downloads, progress tracking,
- *   and retry handling. Validates the input URL and organizes the file destination for the download. Handles
- *   possible I/O exceptions and notifies the user on success or failure.
+ *   and retry handling. Validates the input URL and organizes the file destination for the download. Retries
+ *   failed transfers in a loop and notifies the user on success or failure.
  *
  * - `resumeDownload(String urlString)`:
  *   Resumes a paused or partially downloaded file by spinning up a new thread to initiate the download process.
@@ -78,14 +103,11 @@ import static java.awt.TrayIcon.MessageType.ERROR;
  *   Stops the ongoing download entirely. Deletes the partially downloaded file and releases open resources.
  *
  * - `resumeFailureDownload(String urlString, String fileDestination, int retries)`:
- *   Handles retry logic for downloads that failed. If the retry count does not exceed the predefined
- *   limit (`RETRIES`), it waits for a fixed time period before retrying the download.
- *   Logs a failure message and notifies the user upon exceeding retry attempts.
+ *   Downloads a failed file again, resuming from its partial file, up to the given number of times.
  *
  * Private Methods:
- * - `waitRetry()`:
- *   Waits for a specified waiting time before retrying a failed download. Used in retry logic to handle
- *   intermittent network issues.
+ * - `transferFile(String linkURL)`:
+ *   Performs one attempt of the download, continuing from the end of the partial file.
  *
  * - `cleanupOnExit()`:
  *   Ensures that resources are cleaned up in case of unexpected program termination or after stopping a download.
@@ -119,18 +141,6 @@ class SingleDownloadTask extends DownloadTask {
     private final FileLogger fileLogger;
     private final Logger logger;
 
-    /**
-     * The maximum number of retry attempts allowed for a failed download task.
-     * This constant is used in scenarios where a download operation fails
-     * and needs to be retried. It ensures that the retry mechanism does not
-     * exceed the defined limit to avoid infinite loops or excessive retries.
-     *
-     * This value can be utilized in the context of controlling failure recovery
-     * strategies, enabling robust handling of transient issues such as network
-     * instability or server unavailability.
-     */
-    private static final int RETRIES = 5;
-
     /**
      * A variable representing a progress animation used to visually indicate the
      * progression of a task or an operation. The animation's behavior and state
@@ -144,80 +154,205 @@ class SingleDownloadTask extends DownloadTask {
 
     private Path path;
 
-    private int retryCount;
+    private volatile boolean completed;
+
+    /**
+     * Verifies the current download while it is written, {@code null} if the download has no integrity
+     * check or its size is not known yet.
+     */
+    private DownloadVerifier verifier;
+
+    /**
+     * Whether an attempt of the current download has asked for a compressed file. Only the first attempt
+     * does: the ranges a failed attempt is resumed with are ranges of the decoded file.
+     */
+    private boolean compressionRequested;
+
+    /**
+     * The progress of the current or last download, for {@link #getDownloadedBytes()} and {@link #getFileSize()}.
+     */
+    private volatile long transferredBytes;
+    private volatile long totalBytes = -1;
+
+    private boolean shutdownHookInstalled;
+
+    /**
+     * The client the transfers are sent with. Its connections come from the process-wide connection pool.
+     */
+    private final RangeClient client;
 
     public SingleDownloadTask() throws NoSuchAnimationException {
         super();
         fileLogger = getFileLogger();
         logger = getLogger();
         animation = ProgressAnimationFactory.getInstance(getAnimation());
+        client = HttpProtocol.HTTP_1_1.newClient(getConnectionTimeout(), getStallTimeout());
     }
 
     /**
      * Downloads a file from the specified URL.
      *
+     * A transfer that fails with a network error, or receives nothing for the configured stall timeout,
+     * is retried from the end of the partial file after a jittered exponential backoff. The consecutive
+     * failure count starts over whenever an attempt adds bytes to the file, and the retries of the
+     * download are limited by the retry budget.
+     *
      * @param linkURL the URL of the file to be downloaded. Must be a valid HTTP/HTTPS/FTP URL.
      *                Throws IllegalArgumentException if null or empty.
      *                Throws InvalidURLException if the URL is invalid.
      */
     @Override
     public void downloadFile(String linkURL) {
+        requireNonNull(linkURL,"linkURL is null or empty");
+        downloadFile(linkURL, organizeFileDestination(linkURL));
+    }
+
+    /**
+     * Downloads a file from the specified URL to the given destination, as described in
+     * {@link #downloadFile(String)}.
+     *
+     * @param linkURL         the URL of the file to be downloaded.
+     * @param fileDestination the file the download is written to.
+     */
+    @Override
+    public void downloadFile(String linkURL, Path fileDestination) {
 
         requireNonNull(linkURL,"linkURL is null or empty");
 
         if (!URLValidation.isValidURL(linkURL)) {
             throw new InvalidURLException(linkURL);
         }
+        completed = false;
+        transferredBytes = 0;
+        totalBytes = -1;
+        verifier = null;
+        compressionRequested = false;
+        path = fileDestination;
         try {
-            URL url = new URL(linkURL);
-
-            Path path = organizeFileDestination(linkURL);
-            this.path = path;
-            File file = path.toFile();
-
-            long existingFileSize = file.exists() ? file.length() : 0;
-            long downloadedBytes = existingFileSize;
-
-            int bufferSize = new BufferSize(getStorageType()).getRecommendedBufferSize();
-
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(getConnectionTimeout());
-
-            int fileSize = connection.getContentLength();
-            if (existingFileSize > 0) {
-                connection.setRequestProperty("Range", "bytes=" + existingFileSize + "-");
+            if (ContentCache.getInstance().restore(linkURL, path, client)) {
+                completed = true;
+                return;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        RetryPolicy retryPolicy = newRetryPolicy();
+        int failures = 0;
+
+        while (!isStopped) {
+            long lengthBefore = path.toFile().length();
+            try {
+                transferFile(linkURL);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("download interrupted\n");
+                return;
+            } catch (IOException e) {
+                failures = path.toFile().length() > lengthBefore ? 1 : failures + 1;
+                if (isStopped || !retryPolicy.tryRetry(failures)) {
+                    logger.warning("download retries reach the limit\n");
+                    logger.warning("download failed try again or check your internet connection\n");
+                    fileLogger.logFailure("Download failed",linkURL);
+                    pushNotification("Download failed", logger,ERROR);
+                    return;
+                }
+                long delay = retryPolicy.backoffMillis(failures);
+                logger.error(e.getMessage() + " something went wrong check your internet connection, retrying in "
+                        + delay + "ms\n");
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
 
-            int responseCode = connection.getResponseCode();
+    /**
+     * Performs one attempt of the download: requests the file from the end of the partial file, if any,
+     * and appends the received bytes to it.
+     *
+     * The first attempt of a download that starts from scratch asks for a compressed file when
+     * compression is turned on. A compressed body is decoded into the file by a {@link ContentDecoder},
+     * and an attempt that fails is resumed from the end of the decoded bytes, without compression.
+     *
+     * @param linkURL the URL of the file to be downloaded.
+     * @throws IOException if the connection fails, stalls, or the file cannot be written.
+     * @throws InterruptedException if the thread is interrupted while waiting for a buffer.
+     */
+    private void transferFile(String linkURL) throws IOException, InterruptedException {
+        File file = path.toFile();
+
+        long existingFileSize = file.exists() ? file.length() : 0;
+        long downloadedBytes = existingFileSize;
+
+        @Cleanup
+        HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(linkURL);
+        String acceptEncoding = existingFileSize == 0 && !compressionRequested ? getAcceptEncoding() : null;
+        compressionRequested |= acceptEncoding != null;
+        @Cleanup
+        RangeExchange exchange = client.get(linkURL, existingFileSize, -1, null, acceptEncoding);
+
+        int responseCode = exchange.send();
+        setResponse(responseCode, exchange);
+        long fileSize = ContentRange.totalSizeOf(exchange);
+
+        if (responseCode == HttpURLConnection.HTTP_OK && existingFileSize > 0) {
+            // the server ignored the range, the whole file is sent again
+            downloadedBytes = 0;
+        }
+        transferredBytes = downloadedBytes;
+        totalBytes = fileSize;
 
-            if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
+        if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
+            if (getIntegrityCheck() != null && fileSize >= 0 && (verifier == null || downloadedBytes == 0)) {
+                verifier = getIntegrityCheck().newVerifier(fileSize);
+            }
 
-                @Cleanup
-                InputStream inputStream = new BufferedInputStream(connection.getInputStream());
-                @Cleanup
-                RandomAccessFile raf = new RandomAccessFile(file, "rw");
-                raf.seek(downloadedBytes);
+            @Cleanup
+            ReadableByteChannel channel = exchange.getBody();
+            @Cleanup
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(downloadedBytes);
+            raf.seek(downloadedBytes);
+            FileChannel fileChannel = raf.getChannel();
+            @Cleanup
+            ContentDecoder decoder = newDecoder(exchange, acceptEncoding);
+            // a file resumed without If-Range may mix two versions, and is not cached; the validator of a
+            // compressed file is not the validator of the file, and it is not cached either
+            String validator = IfRange.validatorOf(exchange);
+            SequentialDigest cacheDigest = decoder == null && downloadedBytes == 0 && isCacheable()
+                    && ContentCache.getInstance().accepts(linkURL, fileSize, validator)
+                    ? new SequentialDigest(ChecksumAlgorithm.SHA_256, fileSize)
+                    : null;
+            if (!shutdownHookInstalled) {
                 initializeShutDownHookOperation(this::cleanupOnExit);
+                shutdownHookInstalled = true;
+            }
 
-                int bytesDownloadedLastSecond = 0;
-                long previousTime = System.currentTimeMillis();
+            int bytesDownloadedLastSecond = 0;
+            long previousTime = System.currentTimeMillis();
 
-                final int barLength = 50;
+            final int barLength = 50;
 
-                byte[] buffer = new byte[bufferSize];
-                int byteRead;
-                long totalBytesRead = 0;
-                long sessionStart = System.currentTimeMillis();
+            ByteBuffer buffer = BufferPool.getInstance().acquire(getBufferSize(), BufferSize.MINIMUM_BUFFER_SIZE);
+            int byteRead;
+            long sessionStart = System.currentTimeMillis();
 
-                while ((byteRead = inputStream.read(buffer)) != -1) {
+            try {
+                while ((byteRead = channel.read(buffer)) != -1) {
                     if (isPaused) {
-                        inputStream.close();
-                        raf.close();
+                        waitWhilePaused();
                     }
 
                     if (isStopped) {
-                        inputStream.close();
+                        channel.close();
+                        if (decoder != null) {
+                            decoder.close();
+                        }
                         raf.close();
                         Files.delete(path);
                         break;
@@ -225,58 +360,164 @@ class SingleDownloadTask extends DownloadTask {
 
                     downloadedBytes += byteRead;
                     bytesDownloadedLastSecond += byteRead;
-                    raf.write(buffer, 0, byteRead);
-                    totalBytesRead += byteRead;
+                    getSpeedLimiter().acquire(byteRead);
+                    buffer.flip();
+                    if (verifier != null) {
+                        verifier.update(downloadedBytes - buffer.remaining(), buffer.duplicate());
+                    }
+                    if (cacheDigest != null) {
+                        cacheDigest.update(downloadedBytes - buffer.remaining(), buffer.duplicate());
+                    }
+                    if (decoder != null) {
+                        decoder.write(buffer);
+                    } else {
+                        while (buffer.hasRemaining()) {
+                            fileChannel.write(buffer);
+                        }
+                    }
+                    buffer.clear();
+                    transferredBytes = downloadedBytes;
 
                     long currentTime = System.currentTimeMillis();
 
                     if (currentTime - previousTime >= 1000) {
                         int internetSpeed = (int) (bytesDownloadedLastSecond / 1024.0);
-                        int progress = (int) ((totalBytesRead * 100) / fileSize);
+                        int progress = fileSize > 0 ? (int) ((downloadedBytes * 100) / fileSize) : 0;
                         animation.printProgressBar(progress, barLength, internetSpeed, downloadedBytes,fileSize);
                         bytesDownloadedLastSecond = 0;
+                        previousTime = currentTime;
+                        if (verifier != null) {
+                            // hashes the partial file this download resumed from
+                            verifier.catchUp(path, downloadedBytes);
+                        }
                     }
 
                 }
-                long sessionEnd = (System.currentTimeMillis() - sessionStart) / 1000;
-                pushNotification("Download successfully", logger, INFO);
-                fileLogger.logSuccess("Download successfully",linkURL);
-                logger.info("Session Time: " + sessionEnd);
-            } else {
-                logger.warning("download failed responseCode: " + responseCode);
+            } finally {
+                BufferPool.getInstance().release(buffer);
+            }
+            if (isStopped) {
+                return;
+            }
+            if (fileSize > 0 && downloadedBytes < fileSize) {
+                throw new EOFException("connection closed at " + downloadedBytes + " of " + fileSize + " bytes");
+            }
+            if (decoder != null) {
+                long decodedBytes = decoder.finish();
+                logger.info(decoder.getEncoding() + " body of " + downloadedBytes / 1024 + "KB decoded to "
+                        + decodedBytes / 1024 + "KB");
+                transferredBytes = decodedBytes;
+                totalBytes = decodedBytes;
+            }
+            if (getIntegrityCheck() != null && !verify(linkURL, raf, downloadedBytes)) {
+                return;
+            }
+            long sessionEnd = (System.currentTimeMillis() - sessionStart) / 1000;
+            completed = true;
+            if (cacheDigest != null) {
+                try {
+                    ContentCache.getInstance().store(linkURL, path, validator, cacheDigest.finish(path),
+                            getContentType());
+                } catch (IOException e) {
+                    logger.warning("could not store " + path + " in the content cache: " + e.getMessage());
+                }
             }
+            pushNotification("Download successfully", logger, INFO);
+            fileLogger.logSuccess("Download successfully",linkURL);
+            logger.info("Session Time: " + sessionEnd);
+        } else {
+            logger.warning("download failed responseCode: " + responseCode);
+        }
+    }
+
 
-        } catch (IOException e) {
-            retryCount++;
-            logger.error(e.getMessage() + " something went wrong check your internet connection\n");
-            resumeFailureDownload(linkURL,path.toString(),retryCount);
+    /**
+     * Starts the decoder of a response to a request that asked for compression, if the body is
+     * compressed.
+     *
+     * @param acceptEncoding the encodings the request asked for, {@code null} if it did not.
+     * @return the running decoder, or {@code null} if the body is written as it is.
+     * @throws IOException if the body is compressed in an encoding that was not asked for.
+     */
+    private ContentDecoder newDecoder(RangeExchange exchange, String acceptEncoding) throws IOException {
+        if (acceptEncoding == null) {
+            return null;
         }
+        try {
+            ContentEncoding encoding = ContentEncoding.of(exchange);
+            return encoding == ContentEncoding.IDENTITY ? null : ContentDecoder.streaming(encoding, path);
+        } catch (NoSuchContentEncodingException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
 
+    /**
+     * Verifies the downloaded file against the integrity check of the download. When the check locates
+     * the corruption, the file is cut off before the first corrupted block and the attempt fails, so that
+     * the download is retried from there.
+     *
+     * @param raf             the downloaded file.
+     * @param downloadedBytes the size of the downloaded file.
+     * @return {@code true} if the file is intact, {@code false} if it is corrupted and cannot be repaired.
+     * @throws IOException if the file is corrupted and is downloaded again from the first corrupted block.
+     */
+    private boolean verify(String linkURL, RandomAccessFile raf, long downloadedBytes) throws IOException {
+        if (verifier == null) {
+            // the server did not report the size, nothing could be hashed on its way
+            verifier = getIntegrityCheck().newVerifier(downloadedBytes);
+        }
+        List<Segment> corrupted = verifier.verify(path);
+        if (corrupted.isEmpty()) {
+            logger.info(getIntegrityCheck().getAlgorithm() + " verified, "
+                    + verifier.getReadBackBytes() / 1024 / 1024 + "MB read back from the file");
+            return true;
+        }
+        if (verifier.locatesCorruption()) {
+            long start = corrupted.get(0).getStart();
+            verifier.forget(start, downloadedBytes - 1);
+            raf.setLength(start);
+            throw new IOException(getIntegrityCheck().getAlgorithm() + " mismatch from byte " + start
+                    + ", downloading the file again from there");
+        }
+        logger.error(getIntegrityCheck().getAlgorithm() + " checksum mismatch, the downloaded file is corrupted");
+        fileLogger.logFailure("Download failed checksum mismatch", linkURL);
+        pushNotification("Download failed", logger, ERROR);
+        return false;
     }
 
+    /**
+     * Blocks the download while it is paused, until it is resumed or stopped.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private synchronized void waitWhilePaused() throws InterruptedException {
+        while (isPaused && !isStopped) {
+            wait();
+        }
+    }
 
     /**
      * Resumes a previously paused file download operation for the specified URL.
-     * This method restarts the download in a new thread by setting the pause flag to false
-     * and invoking the file download logic.
+     * This method clears the pause flag and wakes the download, which continues on the
+     * same connection, from where it was paused.
      *
      * @param urlString the URL of the file to resume downloading. Must be a valid HTTP/HTTPS/FTP URL.
      *                  Throws IllegalArgumentException if null or empty.
      */
     @Override
     public void resumeDownload(String urlString) {
-        Thread downloadThread = new Thread(() -> {
-            isPaused = false;
-            downloadFile(urlString);
-        });
-
-        downloadThread.start();
+        isPaused = false;
+        synchronized (this) {
+            notifyAll();
+        }
     }
 
     /**
      * Pauses the ongoing download process by setting the pause state to true.
      * This method updates the internal state to indicate that the download should
-     * no longer proceed until manually resumed.
+     * no longer proceed until manually resumed. The download holds its connection and
+     * file while it waits; if the server drops the idle connection, the resumed download
+     * retries from the end of the partial file.
      */
     @Override
     public void pauseDownload() {
@@ -294,50 +535,50 @@ class SingleDownloadTask extends DownloadTask {
     @Override
     public void stopDownload() {
         isStopped = true;
+        synchronized (this) {
+            notifyAll();
+        }
     }
 
     /**
-     * Attempts to resume a failed download for the given URL and persists the download to a specified file destination.
-     * The method retries downloading based on a limited number of attempts defined by the RETRIES field.
-     * If the retry limit is reached, an appropriate log message is recorded and a failure notification is sent.
+     * Attempts to resume a failed download for the given URL. Each attempt continues from the end of the
+     * partial file and retries on its own as described in {@link #downloadFile(String)}; the download is
+     * attempted again until it completes, it is stopped, or the given number of attempts is used up.
      *
      * @param urlString        the URL of the file to resume downloading. Must be a valid HTTP/HTTPS/FTP URL.
      *                         Throws IllegalArgumentException if null or empty.
      * @param fileDestination  the destination path where the file will be saved during the download.
      *                         Should be a valid writable file path.
-     * @param retries          the current retry attempt count. If it exceeds the RETRIES limit, the download will fail.
+     * @param retries          the number of attempts allowed for resuming the failed download.
      */
     @Override
     public void resumeFailureDownload(String urlString, String fileDestination, int retries) {
-
-        if (retries <= RETRIES) {
-            waitRetry();
+        for (int attempt = 1; attempt <= retries && !isStopped && !completed; attempt++) {
             downloadFile(urlString);
-        } else {
-            logger.warning("download retries reach the limit\n");
-            logger.warning("download failed try again or check your internet connection\n");
-            fileLogger.logFailure("Download failed",urlString);
-            pushNotification("Download failed", logger,ERROR);
         }
     }
 
-    /**
-     * Causes the current thread to pause execution for a fixed duration of time
-     * before retrying an operation, allowing for periodic checks or actions.
-     *
-     * This method halts the thread for 5 seconds using {@code Thread.sleep},
-     * and in case of an {@code InterruptedException}, it propagates the exception
-     * by wrapping it in a {@code RuntimeException}.
-     *
-     * Throws:
-     * - RuntimeException: If the thread is interrupted while sleeping, the exception is rethrown as a runtime exception.
-     */
-    private void waitRetry() {
-        try {
-            Thread.sleep(5000); // check connection every 5 second
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+    @Override
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    @Override
+    public long getDownloadedBytes() {
+        return transferredBytes;
+    }
+
+    @Override
+    public long getFileSize() {
+        return totalBytes;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        completed = false;
+        transferredBytes = 0;
+        totalBytes = -1;
     }
 
     /**
@@ -345,7 +586,7 @@ class SingleDownloadTask extends DownloadTask {
      *
      * This method ensures that the task has been stopped by toggling the `isStopped`
      * flag to true, preventing further operations. It then attempts to delete the file
-     * specified by the `path` field if it exists.
+     * specified by the `path` field if it exists and its download has not completed.
      *
      * Exceptions:
      * - If an {@code IOException} occurs during file deletion, it is propagated
@@ -356,7 +597,7 @@ class SingleDownloadTask extends DownloadTask {
             isStopped = true;
         }
         try {
-            if (Files.exists(path)) {
+            if (!completed && path != null && Files.exists(path)) {
                 Files.delete(path);
             }
         }catch (IOException e) {
@@ -0,0 +1,254 @@
+package com.habbashx.manager.archive;
+
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.DownloadTask;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts an archive while a {@link DownloadTask} downloads it, on a thread of its own, so that the
+ * time spent decompressing and writing the entries overlaps the time spent on the network instead of
+ * following it with a second pass over the whole file.
+ *
+ * The extractor reads the archive from its destination file, and only the bytes the task reports as
+ * written: {@link DownloadTask#getContiguousBytes()} for formats read in order, and
+ * {@link DownloadTask#isWritten(long, long)} for formats whose entries can be read in any order. Once
+ * the download is over, {@link #finish(boolean)} extracts what is left, or stops the extraction if the
+ * download failed.
+ *
+ * Entries are extracted below the extraction directory only: names that are absolute or climb out of
+ * it with {@code ..}, and entries that would be written through a symbolic link pointing out of it, fail
+ * the extraction.
+ */
+public abstract class ArchiveExtractor {
+
+    /**
+     * How often an extractor waiting for bytes checks the progress of the download, in milliseconds.
+     */
+    protected static final long POLL_INTERVAL = 50;
+
+    protected final Logger logger = new Logger();
+
+    protected final String linkURL;
+    protected final Path archive;
+    protected final Path directory;
+    protected final DownloadTask task;
+
+    private final Thread thread;
+    private final AtomicInteger extractedEntries = new AtomicInteger();
+    private final AtomicLong extractedBytes = new AtomicLong();
+
+    private volatile boolean downloaded;
+    private volatile boolean stopped;
+    private volatile Exception failure;
+
+    protected ArchiveExtractor(String linkURL, Path archive, Path directory, DownloadTask task) {
+        this.linkURL = linkURL;
+        this.archive = archive;
+        this.directory = directory;
+        this.task = task;
+        this.thread = new Thread(this::run, "archive-extractor");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts extracting an archive that the given task is about to download. Must be called before the
+     * download starts, on a task that has not downloaded anything yet.
+     *
+     * @param format  the format of the archive.
+     * @param linkURL the URL of the archive.
+     * @param archive the file the archive is downloaded to.
+     * @param task    the task that downloads the archive.
+     * @return the running extractor.
+     * @throws IOException if the extraction directory cannot be created.
+     */
+    public static ArchiveExtractor start(ArchiveFormat format, String linkURL, Path archive, DownloadTask task)
+            throws IOException {
+        Path directory = format.directoryOf(archive);
+        Files.createDirectories(directory);
+        ArchiveExtractor extractor = switch (format) {
+            case TAR, TAR_GZIP -> new TarExtractor(linkURL, archive, directory, task, format == ArchiveFormat.TAR_GZIP);
+            case ZIP -> new ZipExtractor(linkURL, archive, directory, task);
+        };
+        extractor.thread.start();
+        return extractor;
+    }
+
+    private void run() {
+        try {
+            extract();
+        } catch (Exception e) {
+            if (!stopped) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Extracts the archive, on the thread of the extractor.
+     *
+     * @throws IOException          if the archive cannot be read or is malformed, or an entry cannot be
+     *                              written.
+     * @throws InterruptedException if the extraction is stopped.
+     */
+    protected abstract void extract() throws IOException, InterruptedException;
+
+    /**
+     * Called once the download is over: when it completed, the rest of the archive can be read.
+     */
+    protected abstract void onDownloadOver(boolean completed) throws IOException;
+
+    /**
+     * Waits for the extraction once the download is over, and reports it. The extraction of an archive
+     * whose download failed is stopped; the entries extracted so far are kept.
+     *
+     * @param completed whether the download completed.
+     * @return {@code true} if the whole archive has been extracted.
+     */
+    public boolean finish(boolean completed) {
+        int extractedEarly = extractedEntries.get();
+        downloaded = completed;
+        stopped = !completed;
+        try {
+            onDownloadOver(completed);
+            thread.join();
+        } catch (IOException e) {
+            logger.warning("could not stop the extraction: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!completed) {
+            logger.warning("download failed, extraction of " + archive.getFileName() + " stopped after "
+                    + extractedEntries.get() + " entries");
+            return false;
+        }
+        if (failure != null) {
+            logger.error("could not extract " + archive.getFileName() + ": " + failure.getMessage());
+            return false;
+        }
+        logger.info("extracted " + extractedEntries.get() + " entries (" + extractedBytes.get() / 1024 / 1024
+                + "MB) to " + directory + ", " + extractedEarly + " of them while the archive was downloading");
+        return true;
+    }
+
+    /**
+     * @return {@code true} once the download has completed and the whole archive can be read.
+     */
+    protected boolean isDownloaded() {
+        return downloaded;
+    }
+
+    /**
+     * @return {@code true} if the download failed and the extraction must stop.
+     */
+    protected boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Waits until the archive file has been created and its first bytes written, or the download is over.
+     *
+     * @return {@code true} if there are bytes to read.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    protected boolean awaitArchive() throws InterruptedException {
+        while (!stopped) {
+            if (Files.exists(archive) && (downloaded || task.getContiguousBytes() > 0 || task.getFileSize() > 0)) {
+                return true;
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        return false;
+    }
+
+    /**
+     * Resolves the name of an entry against the extraction directory.
+     *
+     * @param name the name of the entry, with {@code /} separating its directories.
+     * @return the path the entry is extracted to.
+     * @throws IOException if the entry would be extracted out of the extraction directory.
+     */
+    protected Path resolve(String name) throws IOException {
+        Path entry = directory.resolve(name).normalize();
+        if (name.startsWith("/") || !entry.startsWith(directory) || entry.equals(directory)) {
+            throw new IOException("entry " + name + " is out of the extraction directory");
+        }
+        Path parent = entry.getParent();
+        Files.createDirectories(parent);
+        // a symbolic link extracted earlier must not lead the entry out of the directory
+        if (!parent.toRealPath().startsWith(directory.toRealPath())) {
+            throw new IOException("entry " + name + " is out of the extraction directory");
+        }
+        return entry;
+    }
+
+    /**
+     * Writes the content of a file entry.
+     *
+     * @param name       the name of the entry.
+     * @param content    the content of the entry.
+     * @param executable whether the entry is marked executable.
+     * @return the number of bytes written.
+     * @throws IOException if the entry cannot be written.
+     */
+    protected long writeFile(String name, InputStream content, boolean executable) throws IOException {
+        Path file = resolve(name);
+        if (Files.isSymbolicLink(file)) {
+            Files.delete(file);
+        }
+        long size = Files.copy(content, file, StandardCopyOption.REPLACE_EXISTING);
+        if (executable) {
+            file.toFile().setExecutable(true);
+        }
+        onExtracted(size);
+        return size;
+    }
+
+    protected void createDirectory(String name) throws IOException {
+        Files.createDirectories(resolve(name));
+        onExtracted(0);
+    }
+
+    /**
+     * Creates a symbolic link entry. The target is not checked: entries extracted through the link later
+     * are, by {@link #resolve(String)}.
+     */
+    protected void createSymbolicLink(String name, String target) throws IOException {
+        Path link = resolve(name);
+        Files.deleteIfExists(link);
+        try {
+            Files.createSymbolicLink(link, Path.of(target));
+        } catch (UnsupportedOperationException | FileAlreadyExistsException e) {
+            logger.warning("could not create the symbolic link " + name + ": " + e.getMessage());
+        }
+        onExtracted(0);
+    }
+
+    /**
+     * Creates a hard link entry as a copy of the entry it links to, which must have been extracted.
+     */
+    protected void createHardLink(String name, String target) throws IOException {
+        Path source = resolve(target);
+        if (!Files.isRegularFile(source, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("entry " + name + " links to " + target + ", which has not been extracted");
+        }
+        Path link = resolve(name);
+        Files.copy(source, link, StandardCopyOption.REPLACE_EXISTING);
+        onExtracted(Files.size(link));
+    }
+
+    private void onExtracted(long size) {
+        extractedEntries.incrementAndGet();
+        extractedBytes.addAndGet(size);
+    }
+}
@@ -0,0 +1,64 @@
+package com.habbashx.manager.archive;
+
+import com.habbashx.exception.NoSuchArchiveFormatException;
+
+import java.nio.file.Path;
+
+/**
+ * The archive formats that can be extracted while they download.
+ *
+ * Enumerated Constants:
+ * - TAR: A tar archive, whose entries follow each other from the start of the file and are extracted
+ *   in order as the bytes arrive.
+ * - TAR_GZIP: A gzip compressed tar archive, decompressed and extracted in order as the bytes arrive.
+ * - ZIP: A zip archive. Its central directory, at the end of the file, lists where every entry starts,
+ *   so each entry is extracted as soon as its own bytes have been written, in any order.
+ *
+ * Archives compressed with xz or bzip2, and rar archives, are not supported: the JDK has no decoder
+ * for them.
+ */
+public enum ArchiveFormat {
+    TAR(".tar"),
+    TAR_GZIP(".tar.gz"),
+    ZIP(".zip");
+
+    private final String suffix;
+
+    ArchiveFormat(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Returns the format of an archive from its file name, ignoring case.
+     *
+     * @param fileName the name of the archive.
+     * @return the format of the archive.
+     * @throws NoSuchArchiveFormatException if the name is not the name of a supported archive.
+     */
+    public static ArchiveFormat of(String fileName) throws NoSuchArchiveFormatException {
+        String name = fileName.toLowerCase();
+        int dot = name.endsWith(".tar.gz") ? name.length() - ".tar.gz".length() : name.lastIndexOf('.');
+        return switch (dot == -1 ? "" : name.substring(dot)) {
+            case ".tar" -> TAR;
+            case ".tar.gz", ".tgz" -> TAR_GZIP;
+            case ".zip" -> ZIP;
+            default -> throw new NoSuchArchiveFormatException("no such archive format: " + fileName);
+        };
+    }
+
+    /**
+     * @return the directory an archive is extracted into: next to it, named after it without its suffix.
+     */
+    public Path directoryOf(Path archive) {
+        String name = archive.getFileName().toString();
+        String lowerCaseName = name.toLowerCase();
+        int end = lowerCaseName.endsWith(suffix) ? name.length() - suffix.length() : name.lastIndexOf('.');
+        // an archive named only by its suffix has no name to give the directory
+        return archive.resolveSibling(end > 0 ? name.substring(0, end) : name + ".extracted");
+    }
+
+    @Override
+    public String toString() {
+        return suffix.substring(1);
+    }
+}
@@ -0,0 +1,275 @@
+package com.habbashx.manager.archive;
+
+import com.habbashx.manager.DownloadTask;
+import com.habbashx.manager.io.FollowingFileChannel;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts a tar archive, plain or gzip compressed, in order while it downloads. The archive is read
+ * through a {@link FollowingFileChannel}, so every entry is written as soon as the bytes before its end
+ * have arrived.
+ *
+ * Reads POSIX ustar archives with their pax extended headers, and the long names of GNU tar. Regular
+ * files, directories, symbolic links and hard links are extracted; device files and fifos are skipped.
+ */
+class TarExtractor extends ArchiveExtractor {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final boolean gzip;
+    private volatile FollowingFileChannel channel;
+
+    TarExtractor(String linkURL, Path archive, Path directory, DownloadTask task, boolean gzip) {
+        super(linkURL, archive, directory, task);
+        this.gzip = gzip;
+    }
+
+    @Override
+    protected void extract() throws IOException, InterruptedException {
+        if (!awaitArchive()) {
+            return;
+        }
+        channel = new FollowingFileChannel(archive, task::getContiguousBytes);
+        if (isDownloaded()) {
+            channel.complete();
+        }
+        try (InputStream archiveStream = Channels.newInputStream(channel);
+             InputStream in = gzip ? new GZIPInputStream(archiveStream, 64 * 1024) : archiveStream) {
+            extractEntries(in);
+        }
+    }
+
+    @Override
+    protected void onDownloadOver(boolean completed) throws IOException {
+        FollowingFileChannel followed = channel;
+        if (followed == null) {
+            return;
+        }
+        if (completed) {
+            followed.complete();
+        } else {
+            followed.close();
+        }
+    }
+
+    private void extractEntries(InputStream in) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        String longName = null;
+        String longLinkName = null;
+        while (true) {
+            if (in.readNBytes(header, 0, BLOCK_SIZE) < BLOCK_SIZE) {
+                throw new EOFException("archive ends in the middle of an entry header");
+            }
+            if (isZeroBlock(header)) {
+                // the end of the archive
+                return;
+            }
+            if (!hasValidChecksum(header)) {
+                throw new IOException("malformed tar header");
+            }
+            char type = (char) header[156];
+            long size = parseNumber(header, 124, 12);
+            String name = longName != null ? longName : nameOf(header);
+            String linkName = longLinkName != null ? longLinkName : parseString(header, 157, 100);
+            longName = null;
+            longLinkName = null;
+
+            InputStream content = new EntryStream(in, size);
+            switch (type) {
+                case 'L' -> longName = trimNull(readString(content));
+                case 'K' -> longLinkName = trimNull(readString(content));
+                case 'x' -> {
+                    PaxHeader pax = PaxHeader.parse(readString(content));
+                    longName = pax.path;
+                    longLinkName = pax.linkPath;
+                }
+                case '0', '\0', '7' -> {
+                    if (name.endsWith("/")) {
+                        createDirectory(name);
+                    } else {
+                        writeFile(name, content, (parseNumber(header, 100, 8) & 0111) != 0);
+                    }
+                }
+                case '5' -> createDirectory(name);
+                case '2' -> createSymbolicLink(name, linkName);
+                case '1' -> createHardLink(name, linkName);
+                default -> logger.warning("skipping tar entry " + name + " of type " + type);
+            }
+            content.skip(Long.MAX_VALUE);
+            skipPadding(in, size);
+        }
+    }
+
+    /**
+     * @return the name of an entry: its ustar prefix, if any, and its name.
+     */
+    private static String nameOf(byte[] header) {
+        String name = parseString(header, 0, 100);
+        boolean ustar = new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar");
+        String prefix = ustar ? parseString(header, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + "/" + name;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The checksum of a header is the sum of its bytes, its checksum field counted as spaces.
+     */
+    private static boolean hasValidChecksum(byte[] header) {
+        long sum = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            sum += (i >= 148 && i < 156) ? ' ' : header[i] & 0xFF;
+        }
+        return sum == parseNumber(header, 148, 8);
+    }
+
+    /**
+     * Parses a numeric header field: octal digits, or a big-endian binary number when the high bit of
+     * its first byte is set, which GNU tar uses for sizes of 8GB and more.
+     */
+    private static long parseNumber(byte[] header, int offset, int length) {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7F;
+            for (int i = 1; i < length; i++) {
+                value = value << 8 | header[offset + i] & 0xFF;
+            }
+            return value;
+        }
+        String digits = parseString(header, offset, length).trim();
+        return digits.isEmpty() ? 0 : Long.parseLong(digits, 8);
+    }
+
+    private static String parseString(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(InputStream content) throws IOException {
+        return new String(content.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static String trimNull(String value) {
+        int end = value.indexOf('\0');
+        return end == -1 ? value : value.substring(0, end);
+    }
+
+    /**
+     * Skips the padding of an entry up to the next block.
+     *
+     * @throws EOFException if the archive ends before the next block.
+     */
+    private static void skipPadding(InputStream in, long size) throws IOException {
+        in.skipNBytes((BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE);
+    }
+
+    /**
+     * The content of one entry, read from the archive up to its size.
+     */
+    private static class EntryStream extends FilterInputStream {
+
+        private long remaining;
+
+        EntryStream(InputStream in, long size) {
+            super(in);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("archive ends in the middle of an entry");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            byte[] buffer = new byte[8192];
+            while (skipped < n && remaining > 0) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        /**
+         * Does nothing: the archive stream is closed by the extractor.
+         */
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * The fields of a pax extended header that the extraction uses.
+     */
+    private record PaxHeader(String path, String linkPath) {
+
+        /**
+         * Parses records of the form {@code "<length> <key>=<value>\n"}.
+         */
+        static PaxHeader parse(String records) throws IOException {
+            String path = null;
+            String linkPath = null;
+            int position = 0;
+            while (position < records.length()) {
+                int space = records.indexOf(' ', position);
+                if (space == -1) {
+                    break;
+                }
+                int length;
+                try {
+                    length = Integer.parseInt(records.substring(position, space));
+                } catch (NumberFormatException e) {
+                    throw new IOException("malformed pax header");
+                }
+                // the length counts bytes, and the records are short enough to be ASCII paths in practice
+                String record = records.substring(space + 1, Math.min(records.length(), position + length) - 1);
+                int equals = record.indexOf('=');
+                if (equals != -1) {
+                    String key = record.substring(0, equals);
+                    String value = record.substring(equals + 1);
+                    if (key.equals("path")) {
+                        path = value;
+                    } else if (key.equals("linkpath")) {
+                        linkPath = value;
+                    }
+                }
+                position += length;
+            }
+            return new PaxHeader(path, linkPath);
+        }
+    }
+}
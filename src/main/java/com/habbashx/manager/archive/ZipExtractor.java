@@ -0,0 +1,529 @@
+package com.habbashx.manager.archive;
+
+import com.habbashx.manager.DownloadTask;
+import com.habbashx.manager.connection.HostConnectionLimiter;
+import com.habbashx.manager.http.HttpProtocol;
+import com.habbashx.manager.http.RangeExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.HttpURLConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Extracts a zip archive while it downloads, its entries in parallel, each one as soon as its bytes have
+ * been written, in whatever order the segments of the download arrive.
+ *
+ * The entries of a zip archive are listed in its central directory, at the end of the file, which is the
+ * last part a download in order writes. The extractor reads it from the file if it is there already, and
+ * otherwise asks the server for the tail of the file with one ranged {@code GET} of its own. From the
+ * offsets of the central directory, the region of every entry is known: from its local header up to the
+ * next entry. Entries stored or compressed with deflate are extracted, and their CRC-32 checked; entries
+ * that are encrypted or compressed with another method are skipped. Zip64 archives are supported.
+ *
+ * Symbolic links are created once every other entry has been extracted, so that no entry is written
+ * through a link while the links are being created.
+ */
+class ZipExtractor extends ArchiveExtractor {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    /**
+     * The host that made an entry, in the high byte of its version made by, whose external attributes
+     * carry a unix file mode.
+     */
+    private static final int UNIX_HOST = 3;
+
+    ZipExtractor(String linkURL, Path archive, Path directory, DownloadTask task) {
+        super(linkURL, archive, directory, task);
+    }
+
+    @Override
+    protected void extract() throws IOException, InterruptedException {
+        if (!awaitArchive()) {
+            return;
+        }
+        long fileSize = awaitFileSize();
+        if (fileSize <= 0) {
+            return;
+        }
+        try (FileChannel file = FileChannel.open(archive, READ)) {
+            CentralDirectory centralDirectory = readCentralDirectory(file, fileSize);
+            if (centralDirectory == null) {
+                return;
+            }
+            extractEntries(file, centralDirectory);
+        }
+    }
+
+    @Override
+    protected void onDownloadOver(boolean completed) {
+        // the extractor polls the task, and sees the end of the download by itself
+    }
+
+    /**
+     * Waits until the size of the archive is known.
+     *
+     * @return the size of the archive, or {@code -1} if the download failed first.
+     */
+    private long awaitFileSize() throws IOException, InterruptedException {
+        while (!isStopped()) {
+            if (task.getFileSize() > 0) {
+                return task.getFileSize();
+            }
+            // a download restored from the cache never probes the size
+            if (isDownloaded()) {
+                return Files.size(archive);
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        return -1;
+    }
+
+    /**
+     * Finds and parses the central directory of the archive.
+     *
+     * @return the central directory, or {@code null} if the download failed first.
+     * @throws IOException if the archive is not a zip archive, or is malformed.
+     */
+    private CentralDirectory readCentralDirectory(FileChannel file, long fileSize)
+            throws IOException, InterruptedException {
+        long tailStart = Math.max(0, fileSize - (END_SIZE + MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE));
+        ByteBuffer tail = read(file, tailStart, fileSize);
+        if (tail == null) {
+            return null;
+        }
+        int end = -1;
+        for (int i = tail.limit() - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new IOException("not a zip archive");
+        }
+        long entryCount = tail.getShort(end + 10) & 0xFFFF;
+        long size = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long offset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        int locator = end - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && tail.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64End = tail.getLong(locator + 8);
+            ByteBuffer record = read(file, zip64End, zip64End + ZIP64_END_SIZE);
+            if (record == null) {
+                return null;
+            }
+            if (record.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new IOException("malformed zip64 archive");
+            }
+            entryCount = record.getLong(32);
+            size = record.getLong(40);
+            offset = record.getLong(48);
+        }
+        if (offset + size > fileSize) {
+            throw new IOException("malformed zip archive, its central directory is out of the file");
+        }
+
+        ByteBuffer directory = read(file, offset, offset + size);
+        if (directory == null) {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        for (long i = 0; i < entryCount; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("malformed zip archive, bad central directory entry");
+            }
+            Entry entry = Entry.parse(directory, position);
+            entries.add(entry);
+            position += 46 + (directory.getShort(position + 28) & 0xFFFF)
+                    + (directory.getShort(position + 30) & 0xFFFF)
+                    + (directory.getShort(position + 32) & 0xFFFF);
+        }
+        return new CentralDirectory(offset, entries);
+    }
+
+    /**
+     * Extracts the entries of the archive as their regions are written, then creates its symbolic links.
+     */
+    private void extractEntries(FileChannel file, CentralDirectory centralDirectory)
+            throws IOException, InterruptedException {
+        List<Entry> pending = new ArrayList<>(centralDirectory.entries());
+        pending.sort(Comparator.comparingLong(Entry::offset));
+        List<Entry> links = new ArrayList<>();
+        List<Long> regionEnds = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            long regionEnd = centralDirectory.offset();
+            for (int next = i + 1; next < pending.size(); next++) {
+                if (pending.get(next).offset() > pending.get(i).offset()) {
+                    regionEnd = pending.get(next).offset();
+                    break;
+                }
+            }
+            regionEnds.add(regionEnd);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<?>> extractions = new ArrayList<>();
+        try {
+            boolean[] submitted = new boolean[pending.size()];
+            int remaining = pending.size();
+            while (remaining > 0) {
+                if (isStopped()) {
+                    return;
+                }
+                boolean downloadedAll = isDownloaded();
+                for (int i = 0; i < pending.size(); i++) {
+                    Entry entry = pending.get(i);
+                    if (submitted[i] || !(downloadedAll || task.isWritten(entry.offset(), regionEnds.get(i)))) {
+                        continue;
+                    }
+                    submitted[i] = true;
+                    remaining--;
+                    if (entry.isSymbolicLink()) {
+                        links.add(entry);
+                    } else {
+                        extractions.add(workers.submit(() -> {
+                            extractEntry(file, entry);
+                            return null;
+                        }));
+                    }
+                }
+                if (remaining > 0) {
+                    Thread.sleep(POLL_INTERVAL);
+                }
+            }
+            for (Future<?> extraction : extractions) {
+                extraction.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ioException ? ioException : new IOException(cause);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        for (Entry link : links) {
+            try (InputStream content = openEntry(file, link)) {
+                if (content != null) {
+                    createSymbolicLink(link.name(), new String(content.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+        }
+    }
+
+    private void extractEntry(FileChannel file, Entry entry) throws IOException {
+        if (entry.name().endsWith("/")) {
+            createDirectory(entry.name());
+            return;
+        }
+        try (InputStream content = openEntry(file, entry)) {
+            if (content != null) {
+                writeFile(entry.name(), content, entry.isExecutable());
+            }
+        }
+    }
+
+    /**
+     * Opens the content of an entry, decompressed, whose CRC-32 and size are checked once it has been
+     * read to its end.
+     *
+     * @return the content, or {@code null} if the entry cannot be extracted and is skipped.
+     * @throws IOException if the local header of the entry is malformed.
+     */
+    private InputStream openEntry(FileChannel file, Entry entry) throws IOException {
+        if (entry.isEncrypted()) {
+            logger.warning("skipping encrypted zip entry " + entry.name());
+            return null;
+        }
+        if (entry.method() != STORED && entry.method() != DEFLATED) {
+            logger.warning("skipping zip entry " + entry.name() + " compressed with method " + entry.method());
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(file, header, entry.offset());
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("malformed zip archive, bad local header for " + entry.name());
+        }
+        long dataStart = entry.offset() + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF)
+                + (header.getShort(28) & 0xFFFF);
+
+        boolean deflated = entry.method() == DEFLATED;
+        InputStream data = Channels.newInputStream(new RegionChannel(file, dataStart, entry.compressedSize(), deflated));
+        if (!deflated) {
+            return new VerifiedEntryStream(data, null, entry);
+        }
+        Inflater inflater = new Inflater(true);
+        return new VerifiedEntryStream(new InflaterInputStream(data, inflater, 64 * 1024), inflater, entry);
+    }
+
+    /**
+     * Reads the range {@code [start, end)} of the archive: from the file if it has been written, else from
+     * the server, else from the file once the download has written it.
+     *
+     * @return the bytes, little-endian, or {@code null} if the download failed first.
+     */
+    private ByteBuffer read(FileChannel file, long start, long end) throws IOException, InterruptedException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start)).order(ByteOrder.LITTLE_ENDIAN);
+        if (!isDownloaded() && !task.isWritten(start, end) && fetch(buffer, start, end)) {
+            return buffer.clear();
+        }
+        while (!isDownloaded() && !task.isWritten(start, end)) {
+            if (isStopped()) {
+                return null;
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        readFully(file, buffer, start);
+        return buffer.clear();
+    }
+
+    /**
+     * Fetches the range {@code [start, end)} of the archive with a ranged request of its own.
+     *
+     * @return {@code true} if the buffer has been filled, {@code false} if the server did not send the range.
+     */
+    private boolean fetch(ByteBuffer buffer, long start, long end) throws InterruptedException {
+        HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(linkURL);
+        try (permit;
+             RangeExchange exchange = HttpProtocol.HTTP_1_1.newClient(task.getConnectionTimeout(), task.getStallTimeout())
+                     .get(linkURL, start, end - 1, null)) {
+            if (exchange.send() != HttpURLConnection.HTTP_PARTIAL) {
+                return false;
+            }
+            ReadableByteChannel body = exchange.getBody();
+            while (buffer.hasRemaining()) {
+                if (body.read(buffer) == -1) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warning("could not fetch the central directory of " + archive.getFileName()
+                    + ", waiting for the download: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("archive ends before its entries do");
+            }
+        }
+    }
+
+    private record CentralDirectory(long offset, List<Entry> entries) {
+    }
+
+    /**
+     * An entry of the central directory.
+     */
+    private record Entry(String name, int flags, int method, long crc, long compressedSize, long size,
+                         int mode, long offset) {
+
+        static Entry parse(ByteBuffer directory, int position) {
+            int madeBy = directory.getShort(position + 4) & 0xFFFF;
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long crc = directory.getInt(position + 16) & 0xFFFFFFFFL;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long size = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            long externalAttributes = directory.getInt(position + 38) & 0xFFFFFFFFL;
+            long offset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.get(position + 46, nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // the zip64 extra field carries, in order, the fields whose value does not fit in 32 bits
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xFFFF;
+                int length = directory.getShort(extra + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL) {
+                        size = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (offset == 0xFFFFFFFFL) {
+                        offset = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+            int mode = madeBy >> 8 == UNIX_HOST ? (int) (externalAttributes >>> 16) : 0;
+            return new Entry(name, flags, method, crc, compressedSize, size, mode, offset);
+        }
+
+        boolean isEncrypted() {
+            return (flags & 1) != 0;
+        }
+
+        boolean isExecutable() {
+            return (mode & 0111) != 0;
+        }
+
+        boolean isSymbolicLink() {
+            return (mode & 0170000) == 0120000;
+        }
+    }
+
+    /**
+     * A region of the archive, read with positional reads so that entries can be read concurrently from
+     * one channel. The region of a deflated entry ends with one extra zero byte, which the inflater may
+     * need to finish a raw deflate stream.
+     */
+    private static class RegionChannel implements ReadableByteChannel {
+
+        private final FileChannel file;
+        private final long end;
+        private long position;
+
+        /**
+         * Whether the extra zero byte is still to be read.
+         */
+        private boolean padding;
+
+        RegionChannel(FileChannel file, long start, long length, boolean padded) {
+            this.file = file;
+            this.position = start;
+            this.end = start + length;
+            this.padding = padded;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            if (position >= end) {
+                if (!padding || !buffer.hasRemaining()) {
+                    return -1;
+                }
+                padding = false;
+                buffer.put((byte) 0);
+                return 1;
+            }
+            int limit = buffer.limit();
+            buffer.limit((int) Math.min(limit, buffer.position() + (end - position)));
+            try {
+                int read = file.read(buffer, position);
+                if (read == -1) {
+                    throw new IOException("archive ends before its entries do");
+                }
+                position += read;
+                return read;
+            } finally {
+                buffer.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return file.isOpen();
+        }
+
+        /**
+         * Does nothing: the archive channel is shared by the entries and closed by the extractor.
+         */
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * The content of an entry, whose size and CRC-32 are checked when its end is reached.
+     */
+    private static class VerifiedEntryStream extends CheckedInputStream {
+
+        private final Inflater inflater;
+        private final Entry entry;
+        private long read;
+
+        VerifiedEntryStream(InputStream in, Inflater inflater, Entry entry) {
+            super(in, new CRC32());
+            this.inflater = inflater;
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (read == entry.size()) {
+                verify();
+                return -1;
+            }
+            int count = super.read(b, off, (int) Math.min(len, entry.size() - read));
+            if (count == -1) {
+                throw new IOException("zip entry " + entry.name() + " is truncated");
+            }
+            read += count;
+            return count;
+        }
+
+        private void verify() throws IOException {
+            if (getChecksum().getValue() != entry.crc()) {
+                throw new IOException("zip entry " + entry.name() + " is corrupt, its CRC-32 does not match");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.habbashx.manager.buffer;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A process-wide pool of reusable direct buffers shared by every download running in the JVM.
+ *
+ * The pool enforces a hard cap on the total memory of the buffers it has allocated, whether they are
+ * in use or idle. When a download asks for a buffer and the cap is reached, the pool first drops idle
+ * buffers of other sizes, then hands out a smaller buffer, and only blocks the caller when not even the
+ * minimum size fits. This keeps the footprint of many concurrent downloads bounded and predictable, and
+ * avoids allocating a fresh buffer for every segment.
+ *
+ * Buffer sizes are rounded up to a multiple of {@link #ALIGNMENT}, and buffers start at a memory address
+ * that is a multiple of it, which keeps the number of distinct sizes small, lets idle buffers be reused
+ * across downloads, and makes every pooled buffer usable for direct I/O.
+ *
+ * The pool exposes hit and miss counters and the amount of memory in use, to monitor how well the
+ * budget fits the workload.
+ */
+public class BufferPool {
+
+    /**
+     * The granularity of buffer sizes, in bytes.
+     */
+    public static final int ALIGNMENT = 4096;
+
+    /**
+     * The default cap on the memory of all pooled buffers, in bytes.
+     */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * The smallest budget the pool accepts: room for one buffer of {@link BufferSize#MINIMUM_BUFFER_SIZE},
+     * without which every download would wait forever for its first buffer.
+     */
+    public static final long MINIMUM_BUDGET = align(BufferSize.MINIMUM_BUFFER_SIZE);
+
+    private static final BufferPool INSTANCE = new BufferPool(DEFAULT_BUDGET);
+
+    /**
+     * Idle buffers, grouped by capacity.
+     */
+    private final TreeMap<Integer, Deque<ByteBuffer>> idleBuffers = new TreeMap<>();
+
+    private long budget;
+    private long allocatedBytes;
+    private long inUseBytes;
+
+    private long hits;
+    private long misses;
+    private long waits;
+
+    BufferPool(long budget) {
+        this.budget = Math.max(budget, MINIMUM_BUDGET);
+    }
+
+    public static BufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Acquires a cleared direct buffer. The buffer must be given back with {@link #release(ByteBuffer)}.
+     *
+     * @param preferredSize the size the caller would like, in bytes.
+     * @param minimumSize   the smallest size the caller can work with, in bytes.
+     * @return a buffer whose capacity is between {@code minimumSize} and {@code preferredSize},
+     *         both rounded up to the pool's alignment.
+     * @throws InterruptedException if the caller is interrupted while waiting for memory.
+     */
+    public synchronized ByteBuffer acquire(int preferredSize, int minimumSize) throws InterruptedException {
+        int preferred = align(preferredSize);
+        int minimum = Math.min(align(minimumSize), preferred);
+
+        boolean waited = false;
+        while (true) {
+            for (int size = preferred; size >= minimum; size = Math.max(minimum, align(size / 2))) {
+                ByteBuffer buffer = take(size);
+                if (buffer != null) {
+                    inUseBytes += buffer.capacity();
+                    buffer.clear();
+                    return buffer;
+                }
+                if (size == minimum) {
+                    break;
+                }
+            }
+            if (!waited) {
+                waits++;
+                waited = true;
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Gives a buffer back to the pool, so that it can be reused by another segment or download.
+     *
+     * @param buffer a buffer obtained from {@link #acquire(int, int)}; {@code null} is ignored.
+     */
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        inUseBytes -= buffer.capacity();
+        if (allocatedBytes > budget) {
+            allocatedBytes -= buffer.capacity();
+        } else {
+            idleBuffers.computeIfAbsent(buffer.capacity(), size -> new ArrayDeque<>()).push(buffer);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Changes the cap on the memory of all pooled buffers. Lowering the budget does not take buffers
+     * away from their users; they are dropped when they are released.
+     *
+     * @param budget the new cap, in bytes, raised to {@link #MINIMUM_BUDGET} if it is smaller.
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = Math.max(budget, MINIMUM_BUDGET);
+        while (allocatedBytes > budget && dropIdleBuffer(Integer.MAX_VALUE)) {
+            // keep dropping idle buffers until the pool fits the new budget
+        }
+        notifyAll();
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public synchronized long getInUseBytes() {
+        return inUseBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of acquisitions that had to wait for another download to release memory.
+     */
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    /**
+     * Takes an idle buffer of the given size, or allocates one if the budget allows it, dropping idle
+     * buffers of other sizes to make room.
+     *
+     * @return the buffer, or {@code null} if the budget does not allow a buffer of this size.
+     */
+    private ByteBuffer take(int size) {
+        Deque<ByteBuffer> idle = idleBuffers.get(size);
+        if (idle != null && !idle.isEmpty()) {
+            hits++;
+            return idle.pop();
+        }
+        while (allocatedBytes + size > budget) {
+            if (!dropIdleBuffer(size)) {
+                return null;
+            }
+        }
+        misses++;
+        allocatedBytes += size;
+        return ByteBuffer.allocateDirect(size + ALIGNMENT).alignedSlice(ALIGNMENT).slice(0, size);
+    }
+
+    /**
+     * Drops one idle buffer whose size differs from {@code keepSize}, largest first.
+     *
+     * @return {@code true} if a buffer has been dropped.
+     */
+    private boolean dropIdleBuffer(int keepSize) {
+        Iterator<Map.Entry<Integer, Deque<ByteBuffer>>> iterator = idleBuffers.descendingMap().entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, Deque<ByteBuffer>> entry = iterator.next();
+            if (entry.getKey() == keepSize || entry.getValue().isEmpty()) {
+                continue;
+            }
+            entry.getValue().pop();
+            allocatedBytes -= entry.getKey();
+            if (entry.getValue().isEmpty()) {
+                iterator.remove();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static int align(int size) {
+        return Math.max(ALIGNMENT, (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT);
+    }
+}
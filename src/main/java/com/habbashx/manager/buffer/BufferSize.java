@@ -14,6 +14,12 @@ public class BufferSize {
      */
     private final StorageType storageType;
 
+    /**
+     * The smallest buffer a download works with when the {@link BufferPool} budget is exhausted.
+     * Below this size the per-read overhead starts to dominate the transfer.
+     */
+    public static final int MINIMUM_BUFFER_SIZE = 16384;
+
     public BufferSize(StorageType storageType) {
         this.storageType = storageType;
     }
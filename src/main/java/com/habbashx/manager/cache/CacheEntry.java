@@ -0,0 +1,71 @@
+package com.habbashx.manager.cache;
+
+/**
+ * What the {@link ContentCache} knows about the cached file of one URL.
+ */
+public class CacheEntry {
+
+    private final String url;
+    private final String validator;
+    private final long size;
+    private final String sha256;
+    private final long modified;
+    private final long lastAccess;
+    private final String contentType;
+
+    /**
+     * @param url        the URL the file was downloaded from.
+     * @param validator  the strong entity tag or the last modification date the server sent for the file.
+     * @param size       the size of the file in bytes.
+     * @param sha256     the SHA-256 digest of the file, in hexadecimal; the cached copy is named after it.
+     * @param modified   the modification time of the cached copy when it was stored, in milliseconds.
+     *                   A copy modified since was changed through a hard link and is no longer trusted.
+     * @param lastAccess  when the entry was last stored or restored, in milliseconds.
+     * @param contentType the content type the server sent for the file, {@code null} if it sent none.
+     */
+    public CacheEntry(String url, String validator, long size, String sha256, long modified, long lastAccess,
+                      String contentType) {
+        this.url = url;
+        this.validator = validator;
+        this.size = size;
+        this.sha256 = sha256;
+        this.modified = modified;
+        this.lastAccess = lastAccess;
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return a copy of this entry accessed at the given time.
+     */
+    CacheEntry accessedAt(long time) {
+        return new CacheEntry(url, validator, size, sha256, modified, time, contentType);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getValidator() {
+        return validator;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+}
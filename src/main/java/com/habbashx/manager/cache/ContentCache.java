@@ -0,0 +1,431 @@
+package com.habbashx.manager.cache;
+
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.connection.HostConnectionLimiter;
+import com.habbashx.manager.http.CacheControl;
+import com.habbashx.manager.http.RangeClient;
+import com.habbashx.manager.http.RangeExchange;
+
+import java.io.IOException;
+
+import java.net.HttpURLConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A process-wide cache of downloaded files, so that downloading a file that has not changed since it
+ * was last downloaded costs one small request instead of the whole transfer.
+ *
+ * Every completed download whose server sent a validator is stored in the cache directory, under the
+ * SHA-256 digest of its content, which the download engines compute while the file is written (see
+ * {@link #accepts(String, long, String)}), and recorded in an index by URL with its validator, size,
+ * digest and content type. The cache is shared with the clients of the caching proxy, so responses
+ * marked {@code no-store} or {@code private} are not stored (see {@link CacheControl}).
+ * A later download of the same URL sends a conditional request for the first byte of the file: while
+ * the server answers 304 (Not Modified), the file is restored from the cache and nothing is downloaded.
+ * Files are stored and restored as hard links where the file system allows it, so the cache costs no
+ * space for files that are still in the download folder; elsewhere they are copied. A cached copy that
+ * has been modified through one of its links no longer has the size and modification time recorded for
+ * it and is dropped instead of being restored.
+ *
+ * The cache is kept under its size cap by evicting the least recently used files. The index is shared
+ * with other download manager processes through a file lock, and rewritten atomically.
+ */
+public class ContentCache {
+
+    /**
+     * The cache directory of the current user.
+     */
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".downloadManager", "cache");
+
+    private static final ContentCache INSTANCE = new ContentCache();
+
+    private static final String INDEX_FILE = "index.tsv";
+    private static final String LOCK_FILE = "index.lock";
+    private static final String BLOBS_DIRECTORY = "blobs";
+
+    private final Logger logger = new Logger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile Path directory = DEFAULT_DIRECTORY;
+    private volatile long maxBytes;
+
+    ContentCache() {
+    }
+
+    public static ContentCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param directory the cache directory, created when the first file is stored.
+     * @param maxBytes  the size cap of the cache in bytes, {@code 0} to disable the cache.
+     */
+    public void configure(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Restores the file of the given URL from the cache, if it is cached and the server confirms that it
+     * has not changed. A destination that already exists is left alone, unless it is a link to the cached
+     * copy, in which case it is already up to date.
+     *
+     * @param url         the URL of the file.
+     * @param destination where the file is to be downloaded.
+     * @param client      the client the conditional request is sent with.
+     * @return {@code true} if the destination holds the unchanged file and nothing needs to be downloaded.
+     * @throws InterruptedException if the thread is interrupted while waiting for a connection permit.
+     */
+    public boolean restore(String url, Path destination, RangeClient client) throws InterruptedException {
+        if (!isEnabled()) {
+            return false;
+        }
+        try {
+            CacheEntry entry = intactEntryOf(url);
+            if (entry == null) {
+                return false;
+            }
+            Path blob = blobOf(entry.getSha256());
+            boolean present = Files.exists(destination);
+            if (present && !Files.isSameFile(destination, blob)) {
+                return false;
+            }
+
+            int responseCode = revalidate(entry, client);
+            if (responseCode != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (present && isChanged(responseCode)) {
+                    // unlink the destination so the download does not write into the cached copy
+                    Files.delete(destination);
+                }
+                return false;
+            }
+
+            if (!present) {
+                materialize(blob, destination);
+            }
+            logger.info("not modified since the last download, restored " + destination + " from the cache");
+            return true;
+        } catch (IOException e) {
+            logger.warning("content cache unavailable: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Looks up the cached copy of the given URL, if the server confirms that the file has not changed.
+     * The copy, see {@link #fileOf(CacheEntry)}, must be opened before it can be evicted by a later
+     * {@link #store(String, Path, String, byte[], String)}: once it is open, it can be read to the end
+     * even if it is evicted meanwhile.
+     *
+     * @param url    the URL of the file.
+     * @param client the client the conditional request is sent with.
+     * @return the entry of the cached copy, or {@code null} if the file is not cached or has changed.
+     * @throws InterruptedException if the thread is interrupted while waiting for a connection permit.
+     */
+    public CacheEntry lookup(String url, RangeClient client) throws InterruptedException {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            CacheEntry entry = intactEntryOf(url);
+            if (entry == null || revalidate(entry, client) != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return null;
+            }
+            return entry;
+        } catch (IOException e) {
+            logger.warning("content cache unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the cached copy of an entry.
+     */
+    public Path fileOf(CacheEntry entry) {
+        return blobOf(entry.getSha256());
+    }
+
+    /**
+     * Tells a download whether its file will be stored once it completes, so that it only computes the
+     * SHA-256 digest the file is stored under when the file is stored.
+     *
+     * @param url       the URL of the file.
+     * @param size      the size of the file.
+     * @param validator the strong entity tag or last modification date the server sent for the file.
+     * @return {@code false} for files larger than the cap, files without validator, or when the cache
+     *         is disabled.
+     */
+    public boolean accepts(String url, long size, String validator) {
+        return isEnabled() && validator != null && size <= maxBytes
+                && url.indexOf('\t') == -1 && validator.indexOf('\t') == -1;
+    }
+
+    /**
+     * Stores a completed download in the cache, evicting the least recently used files if the cache
+     * grows over its cap. Only files the cache {@link #accepts(String, long, String)} are stored.
+     *
+     * @param url         the URL the file was downloaded from.
+     * @param file        the downloaded file.
+     * @param validator   the strong entity tag or last modification date the server sent for the file.
+     * @param digest      the SHA-256 digest of the file, computed while it was written.
+     * @param contentType the content type the server sent for the file, {@code null} if it sent none.
+     */
+    public void store(String url, Path file, String validator, byte[] digest, String contentType) {
+        try {
+            long size = Files.size(file);
+            if (!accepts(url, size, validator)) {
+                return;
+            }
+            String sha256 = HexFormat.of().formatHex(digest);
+            Path blob = blobOf(sha256);
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                materialize(file, blob);
+            }
+            CacheEntry entry = new CacheEntry(url, validator, size, sha256,
+                    Files.getLastModifiedTime(blob).toMillis(), System.currentTimeMillis(),
+                    contentType != null && contentType.indexOf('\t') == -1 ? contentType : null);
+            withIndex(true, index -> {
+                index.put(url, entry);
+                evict(index, url);
+                return null;
+            });
+        } catch (IOException e) {
+            logger.warning("could not store " + file + " in the content cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the number of downloads that were restored from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of downloads that were not cached, or had changed.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the entry of the given URL, or {@code null} if the URL is not cached or its cached copy has
+     *         been modified, in which case the entry is dropped.
+     */
+    private CacheEntry intactEntryOf(String url) throws IOException {
+        CacheEntry entry = withIndex(false, index -> index.get(url));
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!isIntact(entry, blobOf(entry.getSha256()))) {
+            logger.warning("cached copy of " + url + " has been modified, dropping it");
+            remove(url);
+            misses.incrementAndGet();
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Asks the server whether the cached file has changed. The entry is dropped if it has, and marked as
+     * accessed if it has not.
+     *
+     * @return the status code of the conditional request, 304 (Not Modified) if the file is unchanged.
+     */
+    private int revalidate(CacheEntry entry, RangeClient client) throws IOException, InterruptedException {
+        String url = entry.getUrl();
+        int responseCode;
+        HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(url);
+        try (permit; RangeExchange exchange = client.revalidate(url, entry.getValidator())) {
+            responseCode = exchange.send();
+        }
+        if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            long now = System.currentTimeMillis();
+            withIndex(true, index -> index.computeIfPresent(url, (key, cached) -> cached.accessedAt(now)));
+            hits.incrementAndGet();
+        } else {
+            if (isChanged(responseCode)) {
+                remove(url);
+            }
+            misses.incrementAndGet();
+        }
+        return responseCode;
+    }
+
+    /**
+     * @return {@code true} if a conditional request answered with the given status code sent the file,
+     *         that is the file has changed.
+     */
+    private static boolean isChanged(int responseCode) {
+        return responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL;
+    }
+
+    private void remove(String url) throws IOException {
+        withIndex(true, index -> {
+            index.remove(url);
+            return null;
+        });
+    }
+
+    /**
+     * Removes the least recently used entries until the cached files fit the cap, never the entry just
+     * stored, and deletes the files no entry refers to any more.
+     */
+    private void evict(Map<String, CacheEntry> index, String keep) {
+        List<CacheEntry> entries = new ArrayList<>(index.values());
+        entries.sort((first, second) -> Long.compare(first.getLastAccess(), second.getLastAccess()));
+        long total = sizeOf(index);
+        for (CacheEntry entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            if (!entry.getUrl().equals(keep)) {
+                index.remove(entry.getUrl());
+                total = sizeOf(index);
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        index.values().forEach(entry -> referenced.add(entry.getSha256()));
+        try (var blobs = Files.list(directory.resolve(BLOBS_DIRECTORY))) {
+            for (Path blob : (Iterable<Path>) blobs::iterator) {
+                if (!referenced.contains(blob.getFileName().toString())) {
+                    Files.deleteIfExists(blob);
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("could not evict files from the content cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the size of the distinct files the index refers to.
+     */
+    private static long sizeOf(Map<String, CacheEntry> index) {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        index.values().forEach(entry -> sizes.put(entry.getSha256(), entry.getSize()));
+        return sizes.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private Path blobOf(String sha256) {
+        return directory.resolve(BLOBS_DIRECTORY).resolve(sha256);
+    }
+
+    private static boolean isIntact(CacheEntry entry, Path blob) throws IOException {
+        try {
+            return Files.size(blob) == entry.getSize()
+                    && Files.getLastModifiedTime(blob).toMillis() == entry.getModified();
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Makes the target a hard link to the source, or a copy of it where links are not possible.
+     */
+    private static void materialize(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (IOException | UnsupportedOperationException e) {
+            Path temporary = Path.of(target + ".tmp");
+            Files.copy(source, temporary, REPLACE_EXISTING);
+            Files.move(temporary, target, ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Runs an action on the index while holding the lock of the cache directory, saving the index
+     * afterwards if the action may have changed it.
+     */
+    private synchronized <T> T withIndex(boolean write, Function<Map<String, CacheEntry>, T> action)
+            throws IOException {
+        Files.createDirectories(directory);
+        try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), CREATE, WRITE)) {
+            // released when the channel is closed
+            lockChannel.lock();
+            Map<String, CacheEntry> index = loadIndex();
+            T result = action.apply(index);
+            if (write) {
+                saveIndex(index);
+            }
+            return result;
+        }
+    }
+
+    private Map<String, CacheEntry> loadIndex() throws IOException {
+        Map<String, CacheEntry> index = new LinkedHashMap<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(directory.resolve(INDEX_FILE), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return index;
+        }
+        for (String line : lines) {
+            String[] fields = line.split("\t", -1);
+            // indexes written before content types were recorded have six fields
+            if (fields.length != 6 && fields.length != 7) {
+                continue;
+            }
+            String contentType = fields.length == 7 && !fields[6].isEmpty() ? fields[6] : null;
+            try {
+                index.put(fields[0], new CacheEntry(fields[0], fields[1], Long.parseLong(fields[2]), fields[3],
+                        Long.parseLong(fields[4]), Long.parseLong(fields[5]), contentType));
+            } catch (NumberFormatException e) {
+                // a damaged line only costs its file a download
+            }
+        }
+        return index;
+    }
+
+    private void saveIndex(Map<String, CacheEntry> index) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (CacheEntry entry : index.values()) {
+            content.append(entry.getUrl()).append('\t')
+                    .append(entry.getValidator()).append('\t')
+                    .append(entry.getSize()).append('\t')
+                    .append(entry.getSha256()).append('\t')
+                    .append(entry.getModified()).append('\t')
+                    .append(entry.getLastAccess()).append('\t')
+                    .append(entry.getContentType() != null ? entry.getContentType() : "").append('\n');
+        }
+        Path temporary = directory.resolve(INDEX_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, directory.resolve(INDEX_FILE), REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,172 @@
+package com.habbashx.manager.checksum;
+
+import com.habbashx.manager.segment.Segment;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Verifies a download block by block, so that the blocks of a parallel download are hashed on their way
+ * to the file even though the segments are written out of order.
+ *
+ * Every block is hashed as long as its bytes arrive in order, which they do unless the block spans the
+ * boundary of two segments; only such blocks are read back. The checksums of the blocks are either
+ * compared with the block checksums of a manifest, which locates a corrupted block so that only it is
+ * downloaded again, or, for CRC32C, combined into the checksum of the whole file.
+ */
+class BlockVerifier extends DownloadVerifier {
+
+    /**
+     * The size of the blocks the CRC32C of a whole file is combined from.
+     */
+    static final long COMBINED_BLOCK_SIZE = 1024 * 1024;
+
+    private final ChecksumAlgorithm algorithm;
+    private final long fileSize;
+    private final long blockSize;
+    private final List<byte[]> expectedBlocks;
+    private final byte[] expected;
+    private final Block[] blocks;
+
+    private static class Block {
+        private StreamingChecksum checksum;
+
+        /**
+         * The number of leading bytes of the block that have been hashed.
+         */
+        private long hashed;
+
+        /**
+         * Set once a byte of the block arrived out of order, after which the block is read back.
+         */
+        private boolean outOfOrder;
+
+        private byte[] value;
+
+        private void reset() {
+            checksum = null;
+            hashed = 0;
+            outOfOrder = false;
+            value = null;
+        }
+    }
+
+    /**
+     * @param expectedBlocks the checksums of the blocks, or {@code null} to combine the CRC32C of the
+     *                       whole file from them.
+     * @param expected       the CRC32C of the whole file, used when no block checksums are given.
+     */
+    BlockVerifier(ChecksumAlgorithm algorithm, long fileSize, long blockSize, List<byte[]> expectedBlocks,
+                  byte[] expected) {
+        this.algorithm = algorithm;
+        this.fileSize = fileSize;
+        this.blockSize = blockSize;
+        this.expectedBlocks = expectedBlocks;
+        this.expected = expected;
+        this.blocks = new Block[(int) ((fileSize + blockSize - 1) / blockSize)];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new Block();
+        }
+    }
+
+    @Override
+    public void update(long position, ByteBuffer data) {
+        long end = position + data.remaining();
+        for (int index = (int) (position / blockSize); index < blocks.length && (long) index * blockSize < end; index++) {
+            long blockStart = (long) index * blockSize;
+            long blockEnd = Math.min(blockStart + blockSize, fileSize);
+            long from = Math.max(position, blockStart);
+            long to = Math.min(end, blockEnd);
+            Block block = blocks[index];
+            synchronized (block) {
+                if (block.value != null || block.outOfOrder) {
+                    continue;
+                }
+                if (blockStart + block.hashed != from) {
+                    block.outOfOrder = true;
+                    block.checksum = null;
+                    continue;
+                }
+                ByteBuffer slice = data.duplicate();
+                slice.position(data.position() + (int) (from - position));
+                slice.limit(data.position() + (int) (to - position));
+                if (block.checksum == null) {
+                    block.checksum = algorithm.newChecksum();
+                }
+                block.checksum.update(slice);
+                block.hashed += to - from;
+                if (blockStart + block.hashed == blockEnd) {
+                    block.value = block.checksum.finish();
+                    block.checksum = null;
+                }
+            }
+        }
+        data.position(data.limit());
+    }
+
+    @Override
+    public List<Segment> verify(Path file) throws IOException {
+        for (int index = 0; index < blocks.length; index++) {
+            Block block = blocks[index];
+            synchronized (block) {
+                if (block.value == null) {
+                    long blockStart = (long) index * blockSize;
+                    StreamingChecksum checksum = algorithm.newChecksum();
+                    readBack(file, blockStart, Math.min(blockStart + blockSize, fileSize), checksum);
+                    block.value = checksum.finish();
+                    block.checksum = null;
+                }
+            }
+        }
+        return expectedBlocks != null ? corruptedBlocks() : verifyCombined();
+    }
+
+    /**
+     * @return the blocks whose checksums differ from the manifest, adjacent blocks merged into one range.
+     */
+    private List<Segment> corruptedBlocks() {
+        List<Segment> corrupted = new ArrayList<>();
+        long rangeStart = -1;
+        for (int index = 0; index <= blocks.length; index++) {
+            boolean bad = index < blocks.length && !MessageDigest.isEqual(blocks[index].value, expectedBlocks.get(index));
+            long blockStart = (long) index * blockSize;
+            if (bad && rangeStart < 0) {
+                rangeStart = blockStart;
+            } else if (!bad && rangeStart >= 0) {
+                corrupted.add(new Segment(rangeStart, Math.min(blockStart, fileSize) - 1));
+                rangeStart = -1;
+            }
+        }
+        return corrupted;
+    }
+
+    private List<Segment> verifyCombined() {
+        long crc = 0;
+        for (int index = 0; index < blocks.length; index++) {
+            long blockLength = Math.min(blockSize, fileSize - (long) index * blockSize);
+            crc = Crc32c.combine(crc, Crc32c.fromBytes(blocks[index].value), blockLength);
+        }
+        return MessageDigest.isEqual(Crc32c.toBytes(crc), expected) ? List.of() : List.of(new Segment(0, fileSize - 1));
+    }
+
+    @Override
+    public void forget(long start, long end) {
+        for (int index = (int) (start / blockSize); index < blocks.length && (long) index * blockSize <= end; index++) {
+            synchronized (blocks[index]) {
+                blocks[index].reset();
+            }
+        }
+    }
+
+    @Override
+    public boolean locatesCorruption() {
+        return expectedBlocks != null;
+    }
+}
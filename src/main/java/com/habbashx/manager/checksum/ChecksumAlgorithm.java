@@ -0,0 +1,80 @@
+package com.habbashx.manager.checksum;
+
+import com.habbashx.exception.NoSuchChecksumAlgorithmException;
+
+/**
+ * The algorithms a download can be verified with.
+ *
+ * Enumerated Constants:
+ * - SHA_256: SHA-256, the digest published next to most downloads.
+ * - SHA_512: SHA-512.
+ * - CRC32C: The Castagnoli CRC, computed in hardware by most processors. Unlike the digests, the CRC of
+ *   a file can be combined from the CRCs of its parts, so a parallel download is verified without
+ *   reading back any byte written out of order.
+ */
+public enum ChecksumAlgorithm {
+    SHA_256("sha256", 32),
+    SHA_512("sha512", 64),
+    CRC32C("crc32c", 4);
+
+    private final String name;
+    private final int length;
+
+    ChecksumAlgorithm(String name, int length) {
+        this.name = name;
+        this.length = length;
+    }
+
+    /**
+     * Returns the algorithm with the given name, ignoring case and dashes.
+     *
+     * @param algorithm the name of the algorithm: "sha256", "sha512" or "crc32c".
+     * @return the algorithm with that name.
+     * @throws NoSuchChecksumAlgorithmException if no algorithm has that name.
+     */
+    public static ChecksumAlgorithm of(String algorithm) throws NoSuchChecksumAlgorithmException {
+        return switch (algorithm.toLowerCase().replace("-", "")) {
+            case "sha256" -> SHA_256;
+            case "sha512" -> SHA_512;
+            case "crc32c" -> CRC32C;
+            default -> throw new NoSuchChecksumAlgorithmException("no such checksum algorithm: " + algorithm);
+        };
+    }
+
+    /**
+     * Returns the algorithm whose checksums have the given length, the way checksum files that do not
+     * name their algorithm are read.
+     *
+     * @param hexLength the number of hexadecimal digits of a checksum.
+     * @return the algorithm.
+     * @throws NoSuchChecksumAlgorithmException if no algorithm has checksums of that length.
+     */
+    public static ChecksumAlgorithm ofLength(int hexLength) throws NoSuchChecksumAlgorithmException {
+        for (ChecksumAlgorithm algorithm : values()) {
+            if (algorithm.length * 2 == hexLength) {
+                return algorithm;
+            }
+        }
+        throw new NoSuchChecksumAlgorithmException("no checksum algorithm has " + hexLength + " digits");
+    }
+
+    public StreamingChecksum newChecksum() {
+        return switch (this) {
+            case SHA_256 -> StreamingChecksum.ofDigest("SHA-256");
+            case SHA_512 -> StreamingChecksum.ofDigest("SHA-512");
+            case CRC32C -> StreamingChecksum.ofCrc32c();
+        };
+    }
+
+    /**
+     * @return the length of a checksum in bytes.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,96 @@
+package com.habbashx.manager.checksum;
+
+/**
+ * Combines the CRC32C checksums of consecutive parts of a file into the checksum of the whole file,
+ * without reading the parts again.
+ *
+ * Appending {@code n} bytes to a message changes its CRC by a linear map that only depends on
+ * {@code n}: the CRC of the concatenation is the CRC of the first part shifted through {@code n} zero
+ * bytes, xor the CRC of the second part. The shift is applied as a 32x32 matrix over GF(2), raised to
+ * the power {@code n} by repeated squaring, as in zlib's {@code crc32_combine}.
+ */
+public final class Crc32c {
+
+    /**
+     * The Castagnoli polynomial, bit-reversed.
+     */
+    private static final long POLYNOMIAL = 0x82F63B78L;
+
+    private Crc32c() {
+    }
+
+    /**
+     * @param first        the CRC of the first part.
+     * @param second       the CRC of the second part.
+     * @param secondLength the length of the second part in bytes.
+     * @return the CRC of the first part followed by the second one.
+     */
+    public static long combine(long first, long second, long secondLength) {
+        if (secondLength <= 0) {
+            return first;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+
+        // the operator for one zero bit
+        odd[0] = POLYNOMIAL;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // the operators for two and four zero bits
+        square(even, odd);
+        square(odd, even);
+
+        // apply the operator for one zero byte, then for two, four, ... as the bits of the length ask
+        long crc = first;
+        long length = secondLength;
+        do {
+            square(even, odd);
+            if ((length & 1) != 0) {
+                crc = times(even, crc);
+            }
+            length >>>= 1;
+            if (length == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length & 1) != 0) {
+                crc = times(odd, crc);
+            }
+            length >>>= 1;
+        } while (length != 0);
+        return crc ^ second;
+    }
+
+    /**
+     * @return the CRC as four bytes, most significant first, the way CRCs are written down.
+     */
+    public static byte[] toBytes(long crc) {
+        return new byte[]{(byte) (crc >>> 24), (byte) (crc >>> 16), (byte) (crc >>> 8), (byte) crc};
+    }
+
+    /**
+     * @return the CRC written as four bytes, most significant first.
+     */
+    public static long fromBytes(byte[] bytes) {
+        return (bytes[0] & 0xFFL) << 24 | (bytes[1] & 0xFFL) << 16 | (bytes[2] & 0xFFL) << 8 | bytes[3] & 0xFFL;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
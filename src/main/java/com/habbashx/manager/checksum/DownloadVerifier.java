@@ -0,0 +1,110 @@
+package com.habbashx.manager.checksum;
+
+import com.habbashx.manager.segment.Segment;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Verifies a download against its {@link IntegrityCheck} while it is written.
+ *
+ * The download engines feed every buffer to the verifier on its way to the file, so the checksums are
+ * computed from bytes that are in memory anyway. Bytes the verifier could not use on their way, because
+ * they arrived out of order or were written by an earlier run of the download, are read back from the
+ * file when the download is verified.
+ *
+ * Verifiers are safe for concurrent use by the segments of a download.
+ */
+public abstract class DownloadVerifier {
+
+    private static final int READ_BACK_BUFFER_SIZE = 1024 * 1024;
+
+    private final AtomicLong readBackBytes = new AtomicLong();
+
+    /**
+     * Feeds bytes that are being written to the file.
+     *
+     * @param position the file position of the first byte.
+     * @param data     the bytes, from the position to the limit of the buffer; the buffer is consumed.
+     */
+    public abstract void update(long position, ByteBuffer data);
+
+    /**
+     * Gives the verifier the chance to hash bytes it has not seen yet while the download runs. Called
+     * periodically by the download engines.
+     *
+     * @param file       the file being downloaded.
+     * @param contiguous the number of leading bytes of the file that have been written.
+     * @throws IOException if the file cannot be read.
+     */
+    public void catchUp(Path file, long contiguous) throws IOException {
+    }
+
+    /**
+     * Verifies the completely written file.
+     *
+     * @param file the downloaded file.
+     * @return the ranges of the file that failed verification, empty if the file is intact.
+     * @throws IOException if the file cannot be read.
+     */
+    public abstract List<Segment> verify(Path file) throws IOException;
+
+    /**
+     * Forgets what has been hashed of the given range, before it is downloaded again.
+     *
+     * @param start the offset of the first byte of the range.
+     * @param end   the offset of the last byte of the range, inclusive.
+     */
+    public abstract void forget(long start, long end);
+
+    /**
+     * @return {@code true} if the ranges returned by {@link #verify(Path)} are the corrupted parts of
+     *         the file, {@code false} if a mismatch can only be reported for the whole file.
+     */
+    public abstract boolean locatesCorruption();
+
+    /**
+     * @return the number of bytes that were read back from the file because they could not be hashed
+     *         on their way to it.
+     */
+    public long getReadBackBytes() {
+        return readBackBytes.get();
+    }
+
+    /**
+     * Feeds the range {@code [start, end)} of the file to a checksum.
+     */
+    protected void readBack(Path file, long start, long end, StreamingChecksum checksum) throws IOException {
+        read(file, start, end, checksum);
+        readBackBytes.addAndGet(end - start);
+    }
+
+    /**
+     * Feeds the range {@code [start, end)} of the file to a checksum, without counting it.
+     */
+    static void read(Path file, long start, long end, StreamingChecksum checksum) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BACK_BUFFER_SIZE, Math.max(1, end - start)));
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new IOException("the file ends at " + position + " instead of " + end);
+                }
+                buffer.flip();
+                checksum.update(buffer);
+                position += read;
+            }
+        }
+    }
+}
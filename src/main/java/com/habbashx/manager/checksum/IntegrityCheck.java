@@ -0,0 +1,186 @@
+package com.habbashx.manager.checksum;
+
+import com.habbashx.exception.NoSuchChecksumAlgorithmException;
+import com.habbashx.manager.connection.HostConnectionLimiter;
+import com.habbashx.manager.http.RangeClient;
+import com.habbashx.manager.http.RangeExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.HttpURLConnection;
+
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * What a download is verified against: the checksum of the whole file, or a manifest with the checksum
+ * of every block of the file.
+ *
+ * A check is given as {@code <algorithm>:<checksum>}, e.g. {@code sha256:9f86d08...}, or as the URL of
+ * a checksum file. A checksum file either is in the format of {@code sha256sum}, one checksum per line
+ * followed by a file name, the algorithm being told by the length of the checksum, or is a block
+ * manifest:
+ * <pre>
+ * blocks sha256 4194304
+ * &lt;checksum of the first 4194304 bytes&gt;
+ * &lt;checksum of the next 4194304 bytes&gt;
+ * ...
+ * </pre>
+ * A manifest lets a parallel download hash every block on its way to the file and download again only
+ * the blocks that fail verification. The checksum of a whole file can only be verified as a whole.
+ */
+public class IntegrityCheck {
+
+    /**
+     * The largest checksum file that is downloaded.
+     */
+    private static final int MAX_CHECKSUM_FILE_SIZE = 64 * 1024 * 1024;
+
+    private final ChecksumAlgorithm algorithm;
+    private final byte[] expected;
+    private final long blockSize;
+    private final List<byte[]> blockChecksums;
+
+    private IntegrityCheck(ChecksumAlgorithm algorithm, byte[] expected, long blockSize, List<byte[]> blockChecksums) {
+        this.algorithm = algorithm;
+        this.expected = expected;
+        this.blockSize = blockSize;
+        this.blockChecksums = blockChecksums;
+    }
+
+    /**
+     * Reads a check given on the command line, downloading the checksum file if a URL is given.
+     *
+     * @param check  {@code <algorithm>:<checksum>}, or the URL of a checksum file.
+     * @param client the client the checksum file is downloaded with.
+     * @return the check.
+     * @throws NoSuchChecksumAlgorithmException if the algorithm is not supported.
+     * @throws IOException if the checksum file cannot be downloaded or read.
+     * @throws InterruptedException if the thread is interrupted while waiting for a connection permit.
+     */
+    public static IntegrityCheck of(String check, RangeClient client)
+            throws NoSuchChecksumAlgorithmException, IOException, InterruptedException {
+        if (check.contains("://")) {
+            return parseChecksumFile(download(check, client));
+        }
+        int separator = check.indexOf(':');
+        if (separator < 0) {
+            throw new IOException("not a checksum: " + check + ", expected <algorithm>:<checksum>");
+        }
+        ChecksumAlgorithm algorithm = ChecksumAlgorithm.of(check.substring(0, separator));
+        return new IntegrityCheck(algorithm, parseChecksum(algorithm, check.substring(separator + 1)), 0, null);
+    }
+
+    /**
+     * Reads a checksum file.
+     *
+     * @param content the content of the checksum file.
+     * @return the check.
+     * @throws NoSuchChecksumAlgorithmException if the algorithm is not supported.
+     * @throws IOException if the content is not a checksum file.
+     */
+    static IntegrityCheck parseChecksumFile(String content) throws NoSuchChecksumAlgorithmException, IOException {
+        List<String> lines = content.lines().map(String::strip).filter(line -> !line.isEmpty()).toList();
+        if (lines.isEmpty()) {
+            throw new IOException("empty checksum file");
+        }
+        String[] header = lines.get(0).split("\\s+");
+        if (!header[0].equals("blocks")) {
+            String checksum = header[0];
+            ChecksumAlgorithm algorithm = ChecksumAlgorithm.ofLength(checksum.length());
+            return new IntegrityCheck(algorithm, parseChecksum(algorithm, checksum), 0, null);
+        }
+        if (header.length != 3) {
+            throw new IOException("malformed block manifest header: " + lines.get(0));
+        }
+        ChecksumAlgorithm algorithm = ChecksumAlgorithm.of(header[1]);
+        long blockSize;
+        try {
+            blockSize = Long.parseLong(header[2]);
+        } catch (NumberFormatException e) {
+            throw new IOException("malformed block size: " + header[2]);
+        }
+        if (blockSize <= 0) {
+            throw new IOException("malformed block size: " + header[2]);
+        }
+        List<byte[]> blockChecksums = new ArrayList<>(lines.size() - 1);
+        for (String line : lines.subList(1, lines.size())) {
+            blockChecksums.add(parseChecksum(algorithm, line));
+        }
+        return new IntegrityCheck(algorithm, null, blockSize, blockChecksums);
+    }
+
+    private static byte[] parseChecksum(ChecksumAlgorithm algorithm, String checksum) throws IOException {
+        try {
+            byte[] value = HexFormat.of().parseHex(checksum.strip());
+            if (value.length != algorithm.getLength()) {
+                throw new IOException("a " + algorithm + " checksum has " + algorithm.getLength() * 2
+                        + " digits: " + checksum);
+            }
+            return value;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("not a hexadecimal checksum: " + checksum);
+        }
+    }
+
+    private static String download(String url, RangeClient client) throws IOException, InterruptedException {
+        HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(url);
+        try (permit; RangeExchange exchange = client.get(url, 0, -1, null)) {
+            int responseCode = exchange.send();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("could not download the checksum file " + url + ", response code " + responseCode);
+            }
+            try (InputStream body = Channels.newInputStream(exchange.getBody())) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                    if (content.size() > MAX_CHECKSUM_FILE_SIZE) {
+                        throw new IOException("the checksum file " + url + " is too large");
+                    }
+                }
+                return content.toString(StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Creates the verifier of one download.
+     *
+     * @param fileSize the size of the downloaded file.
+     * @return the verifier.
+     * @throws IOException if the block manifest does not describe a file of that size.
+     */
+    public DownloadVerifier newVerifier(long fileSize) throws IOException {
+        if (blockChecksums != null) {
+            long blocks = (fileSize + blockSize - 1) / blockSize;
+            if (blocks != blockChecksums.size()) {
+                throw new IOException("the block manifest describes " + blockChecksums.size()
+                        + " blocks, the file has " + blocks);
+            }
+            return new BlockVerifier(algorithm, fileSize, blockSize, blockChecksums, null);
+        }
+        if (algorithm == ChecksumAlgorithm.CRC32C) {
+            return new BlockVerifier(algorithm, fileSize, BlockVerifier.COMBINED_BLOCK_SIZE, null, expected);
+        }
+        return new SequentialVerifier(algorithm, expected, fileSize);
+    }
+
+    public ChecksumAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return {@code true} if the check has the checksums of the blocks of the file.
+     */
+    public boolean hasBlocks() {
+        return blockChecksums != null;
+    }
+}
@@ -0,0 +1,133 @@
+package com.habbashx.manager.checksum;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The checksum of a whole file that is written in any order, computed while it is written: the file is
+ * hashed from its first byte to its last, at the offset up to which it has been hashed, its frontier.
+ *
+ * Bytes written at the frontier are hashed on their way to the file. A single connection writes the
+ * whole file that way. The segments of a parallel download are written out of order, and the bytes
+ * written ahead of the frontier are read back once every byte before them has been written, while they
+ * are still likely to be in the page cache.
+ *
+ * Safe for concurrent use by the segments of a download.
+ */
+public class SequentialDigest {
+
+    /**
+     * The most bytes read back by one call to {@link #catchUp(Path, long)}, so that the caller is not
+     * held up for long.
+     */
+    private static final long CATCH_UP_LIMIT = 64L * 1024 * 1024;
+
+    private final ChecksumAlgorithm algorithm;
+    private final long fileSize;
+    private final AtomicLong readBackBytes = new AtomicLong();
+
+    private StreamingChecksum checksum;
+
+    /**
+     * The offset of the first byte that has not been hashed.
+     */
+    private long hashed;
+
+    /**
+     * @param algorithm the algorithm of the checksum.
+     * @param fileSize  the size of the file.
+     */
+    public SequentialDigest(ChecksumAlgorithm algorithm, long fileSize) {
+        this.algorithm = algorithm;
+        this.fileSize = fileSize;
+        this.checksum = algorithm.newChecksum();
+    }
+
+    /**
+     * Feeds bytes that are being written to the file. Bytes that are not at the frontier are ignored,
+     * and read back later.
+     *
+     * @param position the file position of the first byte.
+     * @param data     the bytes, from the position to the limit of the buffer; the buffer is consumed.
+     */
+    public synchronized void update(long position, ByteBuffer data) {
+        long end = position + data.remaining();
+        if (position > hashed || end <= hashed) {
+            return;
+        }
+        data.position(data.position() + (int) (hashed - position));
+        checksum.update(data);
+        hashed = end;
+    }
+
+    /**
+     * Reads back the bytes written ahead of the frontier that every byte before them has been written,
+     * a bounded amount at a time. Called periodically while the file is downloaded.
+     *
+     * @param file       the file being downloaded.
+     * @param contiguous the number of leading bytes of the file that have been written.
+     * @throws IOException if the file cannot be read.
+     */
+    public void catchUp(Path file, long contiguous) throws IOException {
+        long limit = Math.min(contiguous, fileSize);
+        for (long read = 0; read < CATCH_UP_LIMIT; ) {
+            synchronized (this) {
+                if (hashed >= limit) {
+                    return;
+                }
+                long end = Math.min(limit, hashed + Math.min(CATCH_UP_LIMIT - read, 1024 * 1024));
+                readBack(file, end);
+                read += end - hashed;
+                hashed = end;
+            }
+        }
+    }
+
+    /**
+     * Finishes the checksum of the completely written file, reading back what has not been hashed, and
+     * starts over.
+     *
+     * @param file the downloaded file.
+     * @return the checksum of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public synchronized byte[] finish(Path file) throws IOException {
+        if (hashed < fileSize) {
+            readBack(file, fileSize);
+        }
+        byte[] result = checksum.finish();
+        checksum = algorithm.newChecksum();
+        hashed = 0;
+        return result;
+    }
+
+    /**
+     * Forgets what has been hashed from the given offset on, before the bytes there are written again.
+     *
+     * @param start the offset of the first byte that is written again.
+     */
+    public synchronized void forget(long start) {
+        if (start < hashed) {
+            // a digest cannot be rewound, the file is hashed again from its start
+            checksum = algorithm.newChecksum();
+            hashed = 0;
+        }
+    }
+
+    /**
+     * @return the number of bytes that were read back from the file because they could not be hashed
+     *         on their way to it.
+     */
+    public long getReadBackBytes() {
+        return readBackBytes.get();
+    }
+
+    private void readBack(Path file, long end) throws IOException {
+        DownloadVerifier.read(file, hashed, end, checksum);
+        readBackBytes.addAndGet(end - hashed);
+    }
+}
@@ -0,0 +1,61 @@
+package com.habbashx.manager.checksum;
+
+import com.habbashx.manager.segment.Segment;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+
+import java.util.List;
+
+/**
+ * Verifies a download against the checksum of the whole file, for algorithms whose checksums cannot be
+ * combined from parts of the file: the file is hashed from its first byte to its last by a
+ * {@link SequentialDigest}.
+ */
+class SequentialVerifier extends DownloadVerifier {
+
+    private final byte[] expected;
+    private final long fileSize;
+    private final SequentialDigest digest;
+
+    SequentialVerifier(ChecksumAlgorithm algorithm, byte[] expected, long fileSize) {
+        this.expected = expected;
+        this.fileSize = fileSize;
+        this.digest = new SequentialDigest(algorithm, fileSize);
+    }
+
+    @Override
+    public void update(long position, ByteBuffer data) {
+        digest.update(position, data);
+    }
+
+    @Override
+    public void catchUp(Path file, long contiguous) throws IOException {
+        digest.catchUp(file, contiguous);
+    }
+
+    @Override
+    public List<Segment> verify(Path file) throws IOException {
+        byte[] actual = digest.finish(file);
+        return MessageDigest.isEqual(actual, expected) ? List.of() : List.of(new Segment(0, fileSize - 1));
+    }
+
+    @Override
+    public void forget(long start, long end) {
+        digest.forget(start);
+    }
+
+    @Override
+    public boolean locatesCorruption() {
+        return false;
+    }
+
+    @Override
+    public long getReadBackBytes() {
+        return digest.getReadBackBytes();
+    }
+}
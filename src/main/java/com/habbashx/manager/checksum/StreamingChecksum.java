@@ -0,0 +1,58 @@
+package com.habbashx.manager.checksum;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+/**
+ * A checksum computed over bytes fed to it in order.
+ */
+public interface StreamingChecksum {
+
+    /**
+     * Feeds the remaining bytes of the buffer to the checksum, consuming them.
+     */
+    void update(ByteBuffer data);
+
+    /**
+     * @return the checksum of the bytes fed so far. The checksum must not be used afterwards.
+     */
+    byte[] finish();
+
+    static StreamingChecksum ofDigest(String algorithm) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // every JDK provides SHA-256 and SHA-512
+            throw new IllegalStateException(e);
+        }
+        return new StreamingChecksum() {
+            @Override
+            public void update(ByteBuffer data) {
+                digest.update(data);
+            }
+
+            @Override
+            public byte[] finish() {
+                return digest.digest();
+            }
+        };
+    }
+
+    static StreamingChecksum ofCrc32c() {
+        CRC32C crc = new CRC32C();
+        return new StreamingChecksum() {
+            @Override
+            public void update(ByteBuffer data) {
+                crc.update(data);
+            }
+
+            @Override
+            public byte[] finish() {
+                return Crc32c.toBytes(crc.getValue());
+            }
+        };
+    }
+}
@@ -0,0 +1,193 @@
+package com.habbashx.manager.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the segments of one download as a structured unit of work: every task is forked into the
+ * scope, the scope can be joined to wait until all of them are done, and a fatal failure of one
+ * task cancels all of its siblings, so the whole download finishes together.
+ *
+ * Cancelling a task closes the resource it registered with {@link #register(Closeable)}, or interrupts
+ * its thread if it registered none. Closing the connection is what actually unblocks a thread stuck in
+ * {@code InputStream.read}, since blocking socket reads of platform threads ignore interrupts. Threads
+ * holding a resource are deliberately not interrupted: an interrupt during a {@code FileChannel} write
+ * closes the channel, which is shared by every segment and still needed to flush what was written.
+ *
+ * The scope owns its executor and shuts it down when it is closed. Like
+ * {@code ExecutorService.close()}, closing waits for the running tasks, and stops them if the waiting
+ * thread is interrupted, keeping its interrupt status set.
+ */
+public class DownloadScope implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    /**
+     * The threads currently running a task of this scope, each mapped to the resource it is blocked
+     * on (or to itself if it did not register any resource).
+     */
+    private final Map<Thread, Closeable> running = new ConcurrentHashMap<>();
+
+    /**
+     * Stands for "no resource registered" in {@link #running}; threads mapped to it are interrupted
+     * when the scope is cancelled.
+     */
+    private static final Closeable NO_RESOURCE = () -> {};
+
+    private int forked;
+
+    private volatile Throwable failure;
+    private volatile boolean cancelled;
+
+    public DownloadScope(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts the given task in this scope. Tasks forked after the scope was cancelled are ignored.
+     *
+     * @param task the task to run.
+     * @return {@code true} if the task has been started, {@code false} if the scope is cancelled.
+     */
+    public boolean fork(Runnable task) {
+        synchronized (this) {
+            if (cancelled) {
+                return false;
+            }
+            forked++;
+        }
+        try {
+            executor.submit(() -> run(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            finished();
+            return false;
+        }
+    }
+
+    /**
+     * Registers the resource the calling task is about to block on, so that cancelling the scope
+     * closes it. Registering {@code null} removes the previous registration.
+     *
+     * @param resource the resource to close when the scope is cancelled.
+     */
+    public void register(Closeable resource) {
+        Thread thread = Thread.currentThread();
+        running.put(thread, resource != null ? resource : NO_RESOURCE);
+        if (cancelled) {
+            closeQuietly(resource);
+        }
+    }
+
+    /**
+     * Records a fatal failure and cancels every task of the scope. Only the first failure is kept.
+     *
+     * @param throwable the reason the download cannot be completed.
+     */
+    public void fail(Throwable throwable) {
+        synchronized (this) {
+            if (failure == null) {
+                failure = throwable;
+            }
+        }
+        cancel();
+    }
+
+    /**
+     * Cancels every running task: their registered resources are closed, and the threads that did not
+     * register any are interrupted. No new task can be forked afterwards.
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+        }
+        running.forEach((thread, resource) -> {
+            if (resource == NO_RESOURCE) {
+                thread.interrupt();
+            } else {
+                closeQuietly(resource);
+            }
+        });
+    }
+
+    /**
+     * Waits until every task forked into this scope has finished.
+     *
+     * @param timeoutMillis the maximum time to wait, or {@code 0} to wait without limit.
+     * @return {@code true} if all tasks have finished.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     */
+    public synchronized boolean join(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (forked > 0) {
+            if (timeoutMillis == 0) {
+                wait();
+                continue;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(Runnable task) {
+        Thread thread = Thread.currentThread();
+        running.put(thread, NO_RESOURCE);
+        try {
+            if (!cancelled) {
+                task.run();
+            }
+        } catch (Throwable throwable) {
+            fail(throwable);
+        } finally {
+            running.remove(thread);
+            Thread.interrupted();
+            finished();
+        }
+    }
+
+    private synchronized void finished() {
+        forked--;
+        notifyAll();
+    }
+
+    private static void closeQuietly(Closeable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.habbashx.manager.concurrent;
+
+import java.lang.reflect.Method;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Represents the kind of threads that run the segments of a parallel download.
+ *
+ * Enumerated Constants:
+ * - PLATFORM: Segments run on a fixed pool of operating system threads, one per connection.
+ * - VIRTUAL: Every segment runs on its own virtual thread, so that a blocked {@code InputStream.read}
+ *   does not hold an operating system thread. Virtual threads need Java 21 or newer; on older runtimes
+ *   this mode falls back to a cached pool of platform threads.
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL;
+
+    /**
+     * Creates the executor that runs the segments of one download.
+     *
+     * @param maxConnections the maximum number of connections of the download, used to size the
+     *                       thread pool in {@code PLATFORM} mode.
+     * @return a new executor service, owned by the caller.
+     */
+    public ExecutorService newExecutor(int maxConnections) {
+        if (this == PLATFORM) {
+            return Executors.newFixedThreadPool(maxConnections);
+        }
+        ExecutorService virtualExecutor = newVirtualThreadPerTaskExecutor();
+        return virtualExecutor != null ? virtualExecutor : Executors.newCachedThreadPool();
+    }
+
+    /**
+     * @return {@code true} if the running JVM provides virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor()} reflectively, because the project
+     * is compiled for Java 17 where virtual threads do not exist yet.
+     *
+     * @return a virtual thread per task executor, or {@code null} if the runtime does not support it.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.habbashx.manager.connection;
+
+/**
+ * Decides how many range connections a parallel download should use, based on the aggregate
+ * throughput measured while the download runs (additive increase, multiplicative decrease).
+ *
+ * The controller starts at the configured minimum. After every evaluation window it compares the
+ * throughput of the window with the throughput measured before the last change:
+ * - if adding a connection raised the throughput noticeably, one more connection is added;
+ * - if it did not help, the controller stops growing, and gives the connection back if the
+ *   throughput dropped;
+ * - if the server answers with 429 or 503, the number of connections is halved.
+ *
+ * Once the controller has stopped growing it probes again from time to time, so that it follows
+ * changes of the available bandwidth during long downloads.
+ */
+public class AdaptiveConnectionController {
+
+    /**
+     * The relative throughput gain an additional connection must bring to be kept growing.
+     */
+    private static final double GAIN_THRESHOLD = 0.05;
+
+    /**
+     * The relative throughput loss after which the last added connection is given back.
+     */
+    private static final double LOSS_THRESHOLD = 0.10;
+
+    /**
+     * The length of an evaluation window. A new connection needs a moment to ramp up,
+     * so shorter windows would mostly measure TCP slow start.
+     */
+    private static final long WINDOW_NANOS = 2_000_000_000L;
+
+    /**
+     * The number of windows the controller waits before probing again after it stopped growing
+     * or after it was throttled by the server.
+     */
+    private static final int PROBE_INTERVAL_WINDOWS = 5;
+
+    private final int minConnections;
+    private final int maxConnections;
+
+    private volatile int targetConnections;
+
+    /**
+     * The throughput in bytes per second measured before the last change of the target.
+     */
+    private double baselineThroughput;
+
+    private boolean growing = true;
+    private int windowsSinceChange;
+
+    private long windowStartNanos;
+    private long windowStartBytes;
+
+    public AdaptiveConnectionController(int minConnections, int maxConnections) {
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.targetConnections = minConnections;
+        this.windowStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Feeds the total number of bytes downloaded so far. Called periodically by the download
+     * monitor; the target is only re-evaluated once per evaluation window.
+     *
+     * @param totalDownloadedBytes the number of bytes downloaded since the download started.
+     */
+    public synchronized void update(long totalDownloadedBytes) {
+        long now = System.nanoTime();
+        long elapsed = now - windowStartNanos;
+        if (elapsed < WINDOW_NANOS) {
+            return;
+        }
+
+        double throughput = (totalDownloadedBytes - windowStartBytes) / (elapsed / 1_000_000_000.0);
+        windowStartNanos = now;
+        windowStartBytes = totalDownloadedBytes;
+        windowsSinceChange++;
+
+        if (growing) {
+            if (baselineThroughput == 0 || throughput > baselineThroughput * (1 + GAIN_THRESHOLD)) {
+                changeTarget(targetConnections + 1, throughput);
+            } else {
+                if (throughput < baselineThroughput * (1 - LOSS_THRESHOLD)) {
+                    changeTarget(targetConnections - 1, throughput);
+                }
+                growing = false;
+            }
+        } else if (windowsSinceChange >= PROBE_INTERVAL_WINDOWS) {
+            growing = true;
+            changeTarget(targetConnections + 1, throughput);
+        }
+    }
+
+    /**
+     * Halves the number of connections because the server answered with 429 (Too Many Requests)
+     * or 503 (Service Unavailable), and stops growing for a while.
+     */
+    public synchronized void onThrottled() {
+        growing = false;
+        changeTarget(targetConnections / 2, 0);
+    }
+
+    /**
+     * Starts a new evaluation window, for example after the download was paused, so that
+     * the time spent paused is not mistaken for a throughput drop.
+     *
+     * @param totalDownloadedBytes the number of bytes downloaded since the download started.
+     */
+    public synchronized void restartWindow(long totalDownloadedBytes) {
+        windowStartNanos = System.nanoTime();
+        windowStartBytes = totalDownloadedBytes;
+    }
+
+    public int getTargetConnections() {
+        return targetConnections;
+    }
+
+    private void changeTarget(int target, double throughput) {
+        targetConnections = Math.max(minConnections, Math.min(maxConnections, target));
+        baselineThroughput = throughput;
+        windowsSinceChange = 0;
+    }
+}
@@ -0,0 +1,190 @@
+package com.habbashx.manager.connection;
+
+import java.io.Closeable;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A process-wide registry of per-host connection limits, shared by every download running in the JVM.
+ *
+ * Every range connection takes a permit of its host before it is opened and gives it back once it is
+ * closed, so several downloads from the same server together never hold more connections than the
+ * limit of that server, however many connections each of them would like to use. A connection that
+ * finds no free permit waits for one instead of failing, and waiting connections get their permits in
+ * the order they asked for them.
+ *
+ * Every host gets the default limit unless it has a limit of its own; a limit of {@code 0} means
+ * unlimited. Limits can be changed while downloads are running.
+ */
+public class HostConnectionLimiter {
+
+    private static final HostConnectionLimiter INSTANCE = new HostConnectionLimiter();
+
+    /**
+     * A permit that does not belong to any host, handed out when the host is not limited.
+     */
+    private static final Permit UNLIMITED = () -> {};
+
+    private final Map<String, HostSlots> hosts = new HashMap<>();
+
+    private int defaultLimit;
+    private Map<String, Integer> hostLimits = Map.of();
+
+    HostConnectionLimiter() {
+    }
+
+    public static HostConnectionLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * A permit to hold one connection to a host, given back by closing it.
+     */
+    public interface Permit extends Closeable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Waits until a connection to the host of the given URL may be opened.
+     *
+     * @param url the URL the connection is opened for.
+     * @return the permit, to be closed once the connection is closed.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public Permit acquire(String url) throws InterruptedException {
+        HostSlots slots = slotsOf(hostOf(url));
+        if (slots == null) {
+            return UNLIMITED;
+        }
+        slots.semaphore.acquire();
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                slots.semaphore.release();
+            }
+        };
+    }
+
+    /**
+     * Changes the limits. Connections already holding permits keep them; a lowered limit applies as
+     * they are closed.
+     *
+     * @param defaultLimit the limit of hosts without limit of their own, {@code 0} for unlimited.
+     * @param hostLimits   the limits of individual hosts, by lower case host name.
+     */
+    public synchronized void configure(int defaultLimit, Map<String, Integer> hostLimits) {
+        this.defaultLimit = Math.max(0, defaultLimit);
+        this.hostLimits = Map.copyOf(hostLimits);
+        hosts.forEach((host, slots) -> slots.resize(limitOf(host)));
+    }
+
+    /**
+     * @param host a lower case host name.
+     * @return the number of connections to the host that hold a permit.
+     */
+    public synchronized int getActiveConnections(String host) {
+        HostSlots slots = hosts.get(host);
+        return slots == null ? 0 : slots.permits - slots.semaphore.availablePermits();
+    }
+
+    /**
+     * @param host a lower case host name.
+     * @return the number of connections waiting for a permit of the host.
+     */
+    public synchronized int getWaitingConnections(String host) {
+        HostSlots slots = hosts.get(host);
+        return slots == null ? 0 : slots.semaphore.getQueueLength();
+    }
+
+    /**
+     * @param host a lower case host name.
+     * @return the connection limit of the host, {@code 0} for unlimited.
+     */
+    public synchronized int getLimit(String host) {
+        return limitOf(host);
+    }
+
+    /**
+     * @return the permits of the host, or {@code null} if the host is unlimited and has never been
+     *         limited.
+     */
+    private synchronized HostSlots slotsOf(String host) {
+        HostSlots slots = hosts.get(host);
+        if (slots == null) {
+            int limit = limitOf(host);
+            if (limit == 0) {
+                return null;
+            }
+            slots = new HostSlots(limit);
+            hosts.put(host, slots);
+        }
+        return slots;
+    }
+
+    private int limitOf(String host) {
+        return hostLimits.getOrDefault(host, defaultLimit);
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host == null ? "" : host.toLowerCase();
+        } catch (URISyntaxException e) {
+            return "";
+        }
+    }
+
+    /**
+     * The permits of one host. The semaphore is fair, so connections waiting for the host are served
+     * in order.
+     */
+    private static class HostSlots {
+
+        /**
+         * The permit count of a host that has become unlimited, large enough never to make anyone wait.
+         */
+        private static final int UNLIMITED_PERMITS = Integer.MAX_VALUE / 2;
+
+        private final ResizableSemaphore semaphore;
+        private int permits;
+
+        HostSlots(int limit) {
+            this.permits = limit;
+            this.semaphore = new ResizableSemaphore(limit);
+        }
+
+        /**
+         * Changes the number of permits. Permits that are held when the limit is lowered are taken
+         * away as they are given back.
+         */
+        void resize(int limit) {
+            int newPermits = limit == 0 ? UNLIMITED_PERMITS : limit;
+            if (newPermits > permits) {
+                semaphore.release(newPermits - permits);
+            } else if (newPermits < permits) {
+                semaphore.reducePermits(permits - newPermits);
+            }
+            permits = newPermits;
+        }
+    }
+
+    private static class ResizableSemaphore extends Semaphore {
+
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.habbashx.manager.encoding;
+
+import com.habbashx.manager.io.FollowingFileChannel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+import java.util.function.LongSupplier;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Decodes a compressed body into its destination file on a thread of its own, the stage of the download
+ * pipeline between the connections and the file.
+ *
+ * The connections only move encoded bytes, and decompression, which costs far more processor time than
+ * receiving them, never holds up a read from the network. The decoder is fed in one of two ways:
+ * - {@link #streaming(ContentEncoding, Path)}: the download hands the body, in order, to
+ *   {@link #write(ByteBuffer)}. Used by the single engine.
+ * - {@link #following(ContentEncoding, Path, Path, LongSupplier)}: the download writes the body into a
+ *   spool file, in any order, and the decoder follows it with a {@link FollowingFileChannel}. Used by
+ *   the parallel engine, whose segments arrive out of order.
+ *
+ * A decoder that fails stops reading its input, which then fails the writes of the download.
+ */
+public class ContentDecoder implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ContentEncoding encoding;
+    private final ReadableByteChannel source;
+    private final WritableByteChannel input;
+    private final Path destination;
+    private final Thread thread;
+
+    private volatile IOException failure;
+    private volatile long decodedBytes;
+
+    private ContentDecoder(ContentEncoding encoding, ReadableByteChannel source, WritableByteChannel input,
+                           Path destination) {
+        this.encoding = encoding;
+        this.source = source;
+        this.input = input;
+        this.destination = destination;
+        this.thread = new Thread(this::decode, "content-decoder");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts a decoder that is fed the body through {@link #write(ByteBuffer)}.
+     *
+     * @param encoding    the encoding of the body.
+     * @param destination the file the decoded body is written to, replacing its content.
+     * @return the running decoder.
+     * @throws IOException if the pipe to the decoder cannot be opened.
+     */
+    public static ContentDecoder streaming(ContentEncoding encoding, Path destination) throws IOException {
+        Pipe pipe = Pipe.open();
+        ContentDecoder decoder = new ContentDecoder(encoding, pipe.source(), pipe.sink(), destination);
+        decoder.thread.start();
+        return decoder;
+    }
+
+    /**
+     * Starts a decoder that reads the body from a spool file while it is downloaded.
+     *
+     * @param encoding    the encoding of the body.
+     * @param spoolFile   the file the body is downloaded into.
+     * @param destination the file the decoded body is written to, replacing its content.
+     * @param available   the number of leading bytes of the spool file that have been written.
+     * @return the running decoder.
+     * @throws IOException if the spool file cannot be opened.
+     */
+    public static ContentDecoder following(ContentEncoding encoding, Path spoolFile, Path destination,
+                                           LongSupplier available) throws IOException {
+        ContentDecoder decoder = new ContentDecoder(encoding, new FollowingFileChannel(spoolFile, available), null,
+                destination);
+        decoder.thread.start();
+        return decoder;
+    }
+
+    /**
+     * @return the file a body in the given encoding is downloaded into before it is decoded into the
+     *         given destination, next to it.
+     */
+    public static Path spoolOf(Path destination, ContentEncoding encoding) {
+        return destination.resolveSibling(destination.getFileName() + "." + encoding);
+    }
+
+    private void decode() {
+        try (InputStream in = encoding.decode(Channels.newInputStream(source));
+             FileChannel out = FileChannel.open(destination, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            byte[] bytes = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(bytes)) != -1) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, read);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                decodedBytes += read;
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            try {
+                // the writes of the download fail instead of blocking on a decoder that is gone
+                source.close();
+            } catch (IOException ignored) {
+                // the decoder is done with its input either way
+            }
+        }
+    }
+
+    /**
+     * Hands the next bytes of the body to a decoder started with {@link #streaming(ContentEncoding, Path)},
+     * waiting while the decoder is behind.
+     *
+     * @param buffer the bytes, all of which are consumed.
+     * @throws IOException if the decoder has failed or been closed.
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        try {
+            while (buffer.hasRemaining()) {
+                input.write(buffer);
+            }
+        } catch (IOException e) {
+            throw failure != null ? decodingFailure() : e;
+        }
+    }
+
+    public ContentEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return the number of decoded bytes written to the destination so far.
+     */
+    public long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    /**
+     * Tells the decoder that the whole body has been downloaded, and waits until it has been decoded.
+     *
+     * @return the size of the decoded file.
+     * @throws IOException          if the body cannot be decoded, or ends before the encoded file does.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public long finish() throws IOException, InterruptedException {
+        if (input != null) {
+            input.close();
+        } else {
+            ((FollowingFileChannel) source).complete();
+        }
+        thread.join();
+        if (failure != null) {
+            throw decodingFailure();
+        }
+        return decodedBytes;
+    }
+
+    private IOException decodingFailure() {
+        return new IOException("could not decode the " + encoding + " body: " + failure.getMessage(), failure);
+    }
+
+    /**
+     * Stops the decoder before the end of the body and waits for it. The bytes decoded so far stay in
+     * the destination.
+     */
+    @Override
+    public void close() {
+        try {
+            source.close();
+            if (input != null) {
+                input.close();
+            }
+            thread.join();
+        } catch (IOException e) {
+            // closing a channel that is already closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.habbashx.manager.encoding;
+
+import com.habbashx.exception.NoSuchContentEncodingException;
+import com.habbashx.manager.http.RangeExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The content encodings a download can be sent in, and how their bodies are decoded.
+ *
+ * Enumerated Constants:
+ * - IDENTITY: The file as it is, the encoding of every download that does not ask for compression.
+ * - GZIP: gzip, which most servers compress text with. Its trailer carries the CRC and the size of the
+ *   file, so a truncated or corrupted body fails to decode.
+ * - DEFLATE: zlib, or the raw deflate some servers send under the same name.
+ *
+ * Brotli is not supported: the JDK has no decoder for it, so it is never asked for.
+ */
+public enum ContentEncoding {
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    /**
+     * The {@code Accept-Encoding} header of a download that asks for compression.
+     */
+    public static final String ACCEPTED = "gzip, deflate";
+
+    private static final int DECODER_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+
+    ContentEncoding(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the encoding with the given name, ignoring case.
+     *
+     * @param encoding the value of a {@code Content-Encoding} header, {@code null} for none.
+     * @return the encoding with that name, {@link #IDENTITY} if there is none.
+     * @throws NoSuchContentEncodingException if the body is encoded in a way that cannot be decoded,
+     *                                        including several encodings applied one after the other.
+     */
+    public static ContentEncoding of(String encoding) throws NoSuchContentEncodingException {
+        if (encoding == null) {
+            return IDENTITY;
+        }
+        return switch (encoding.trim().toLowerCase()) {
+            case "", "identity" -> IDENTITY;
+            case "gzip", "x-gzip" -> GZIP;
+            case "deflate" -> DEFLATE;
+            default -> throw new NoSuchContentEncodingException("no such content encoding: " + encoding);
+        };
+    }
+
+    /**
+     * @return the encoding of the body of the given response.
+     * @throws NoSuchContentEncodingException if the body is encoded in a way that cannot be decoded.
+     */
+    public static ContentEncoding of(RangeExchange exchange) throws NoSuchContentEncodingException {
+        return of(exchange.getHeader("Content-Encoding"));
+    }
+
+    /**
+     * @return {@code true} if the body of the given response is sent in this encoding.
+     */
+    public boolean isEncodingOf(RangeExchange exchange) {
+        try {
+            return of(exchange) == this;
+        } catch (NoSuchContentEncodingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decides whether the parallel engine can download a body in this encoding in segments: the server
+     * must serve ranges of it, tell its length, and tag it with a strong entity tag, which promises that
+     * every request gets the same bytes. Bodies compressed on the fly have none of these.
+     *
+     * @param probe the answer to a {@code HEAD} request that asked for compression.
+     * @return {@code true} if ranges of the encoded body can be downloaded.
+     */
+    public static boolean supportsRanges(RangeExchange probe) {
+        String acceptRanges = probe.getHeader("Accept-Ranges");
+        String entityTag = probe.getHeader("ETag");
+        return acceptRanges != null && acceptRanges.toLowerCase().contains("bytes")
+                && probe.getContentLength() > 0
+                && entityTag != null && entityTag.startsWith("\"");
+    }
+
+    /**
+     * Wraps a stream of a body in this encoding into a stream of the decoded file.
+     *
+     * @param in the encoded body.
+     * @return the decoded file.
+     * @throws IOException if the header of the body cannot be read.
+     */
+    public InputStream decode(InputStream in) throws IOException {
+        return switch (this) {
+            case IDENTITY -> in;
+            case GZIP -> new GZIPInputStream(in, DECODER_BUFFER_SIZE);
+            case DEFLATE -> {
+                PushbackInputStream header = new PushbackInputStream(in, 2);
+                byte[] first = header.readNBytes(2);
+                header.unread(first);
+                // a zlib header is a deflate method byte whose pair is a multiple of 31
+                boolean zlib = first.length == 2 && (first[0] & 0x0F) == 8
+                        && ((first[0] & 0xFF) << 8 | first[1] & 0xFF) % 31 == 0;
+                yield new InflaterInputStream(header, new Inflater(!zlib), DECODER_BUFFER_SIZE);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,36 @@
+package com.habbashx.manager.http;
+
+import java.util.Locale;
+
+/**
+ * Reads the HTTP {@code Cache-Control} header of a response, which tells whether the file may be kept in
+ * a cache. The {@link com.habbashx.manager.cache.ContentCache} is shared with the clients of the caching
+ * proxy, so it only keeps files that a shared cache may store: a response marked {@code no-store} may
+ * not be stored at all, and one marked {@code private} is meant for a single user.
+ */
+public final class CacheControl {
+
+    public static final String HEADER = "Cache-Control";
+
+    private CacheControl() {
+    }
+
+    /**
+     * @param exchange an exchange whose response headers have been received.
+     * @return {@code false} if the response is marked {@code no-store} or {@code private}.
+     */
+    public static boolean allowsStoring(RangeExchange exchange) {
+        String cacheControl = exchange.getHeader(HEADER);
+        if (cacheControl == null) {
+            return true;
+        }
+        for (String directive : cacheControl.split(",")) {
+            // private may list the header fields it covers: private="Set-Cookie"
+            String name = directive.split("=", 2)[0].trim().toLowerCase(Locale.ROOT);
+            if (name.equals("no-store") || name.equals("private")) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,201 @@
+package com.habbashx.manager.http;
+
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process-wide pool of idle keep-alive HTTP/1.1 connections, shared by every download running in the
+ * JVM and grouped by origin (scheme, host and port).
+ *
+ * When an exchange has read its response to the end, its connection is handed back to the pool instead
+ * of being closed, and the next exchange with the same origin takes it over: a finished segment passes
+ * its warm connection to the next segment, and a later download from the same server skips the TCP and
+ * TLS handshakes altogether. Idle connections are kept for at most the idle timeout, and at most
+ * {@code maxIdlePerHost} of them per origin; the most recently used connection is handed out first.
+ *
+ * The pool counts the connections it opened and reused, to monitor how much connection setup it saves.
+ */
+public class ConnectionPool {
+
+    /**
+     * The default time an idle connection is kept, in milliseconds.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30_000;
+
+    /**
+     * The default number of idle connections kept per origin.
+     */
+    public static final int DEFAULT_MAX_IDLE_PER_HOST = 16;
+
+    private static final ConnectionPool INSTANCE = new ConnectionPool(DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_IDLE_PER_HOST);
+
+    /**
+     * Idle connections by origin, most recently used first.
+     */
+    private final Map<String, Deque<HttpConnection>> idleConnections = new HashMap<>();
+
+    private long idleTimeout;
+    private int maxIdlePerHost;
+
+    private long opened;
+    private long reused;
+    private long evicted;
+
+    ConnectionPool(long idleTimeout, int maxIdlePerHost) {
+        this.idleTimeout = idleTimeout;
+        this.maxIdlePerHost = maxIdlePerHost;
+    }
+
+    public static ConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Takes an idle connection to the origin of the given URI, or opens a new one if there is none.
+     *
+     * @param uri            the URI of the resource the connection is needed for.
+     * @param connectTimeout the connect timeout in milliseconds used if a connection has to be opened.
+     * @return a connection that carries no exchange. It must be given back with
+     *         {@link #release(HttpConnection)} or closed.
+     * @throws IOException if a new connection cannot be established.
+     */
+    HttpConnection acquire(URI uri, int connectTimeout) throws IOException {
+        String origin = HttpConnection.originOf(uri);
+        HttpConnection connection;
+        while ((connection = pollIdle(origin)) != null) {
+            if (connection.isAlive(System.currentTimeMillis())) {
+                connection.setReused(true);
+                synchronized (this) {
+                    reused++;
+                }
+                return connection;
+            }
+            connection.close();
+            synchronized (this) {
+                evicted++;
+            }
+        }
+
+        connection = HttpConnection.open(uri, connectTimeout);
+        synchronized (this) {
+            opened++;
+        }
+        return connection;
+    }
+
+    /**
+     * Hands back a connection whose last response has been read to the end, so that it can carry the
+     * next exchange with its origin. The connection is closed instead if the origin already has as many
+     * idle connections as allowed.
+     *
+     * @param connection a connection that carries no exchange.
+     */
+    void release(HttpConnection connection) {
+        long now = System.currentTimeMillis();
+        List<HttpConnection> expired = new ArrayList<>();
+        boolean kept;
+        synchronized (this) {
+            collectExpired(now, expired);
+            Deque<HttpConnection> idle = idleConnections.computeIfAbsent(connection.getOrigin(), origin -> new ArrayDeque<>());
+            kept = idleTimeout > 0 && idle.size() < maxIdlePerHost;
+            if (kept) {
+                connection.setIdleSince(now);
+                idle.addFirst(connection);
+            } else {
+                evicted++;
+            }
+        }
+        if (!kept) {
+            connection.close();
+        }
+        expired.forEach(HttpConnection::close);
+    }
+
+    private HttpConnection pollIdle(String origin) {
+        List<HttpConnection> expired = new ArrayList<>();
+        HttpConnection connection;
+        synchronized (this) {
+            collectExpired(System.currentTimeMillis(), expired);
+            Deque<HttpConnection> idle = idleConnections.get(origin);
+            connection = idle == null ? null : idle.pollFirst();
+        }
+        expired.forEach(HttpConnection::close);
+        return connection;
+    }
+
+    /**
+     * Removes the connections that have been idle for longer than the idle timeout.
+     */
+    private void collectExpired(long now, List<HttpConnection> expired) {
+        Iterator<Deque<HttpConnection>> origins = idleConnections.values().iterator();
+        while (origins.hasNext()) {
+            Deque<HttpConnection> idle = origins.next();
+            while (!idle.isEmpty() && now - idle.peekLast().getIdleSince() >= idleTimeout) {
+                expired.add(idle.pollLast());
+                evicted++;
+            }
+            if (idle.isEmpty()) {
+                origins.remove();
+            }
+        }
+    }
+
+    /**
+     * Changes the limits of the pool. Idle connections beyond the new limits are closed as the pool is
+     * used.
+     *
+     * @param idleTimeout    the time an idle connection is kept, in milliseconds. {@code 0} disables
+     *                       connection reuse.
+     * @param maxIdlePerHost the number of idle connections kept per origin.
+     */
+    public synchronized void configure(long idleTimeout, int maxIdlePerHost) {
+        this.idleTimeout = Math.max(0, idleTimeout);
+        this.maxIdlePerHost = Math.max(0, maxIdlePerHost);
+    }
+
+    public synchronized long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public synchronized int getMaxIdlePerHost() {
+        return maxIdlePerHost;
+    }
+
+    public synchronized int getIdleConnections() {
+        return idleConnections.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    public synchronized long getOpenedConnections() {
+        return opened;
+    }
+
+    public synchronized long getReusedConnections() {
+        return reused;
+    }
+
+    /**
+     * @return the number of idle connections closed because they expired, were closed by the server,
+     *         or did not fit into the pool.
+     */
+    public synchronized long getEvictedConnections() {
+        return evicted;
+    }
+
+    /**
+     * @return the share of exchanges that were carried by a reused connection, between {@code 0} and
+     *         {@code 1}.
+     */
+    public synchronized double getReuseRate() {
+        long exchanges = opened + reused;
+        return exchanges == 0 ? 0 : (double) reused / exchanges;
+    }
+}
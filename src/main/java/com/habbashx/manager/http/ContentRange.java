@@ -0,0 +1,128 @@
+package com.habbashx.manager.http;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Represents the value of an HTTP {@code Content-Range} response header, e.g.
+ * {@code bytes 0-1048575/42949672960}, which tells which part of a resource a 206 (Partial Content)
+ * response carries and how large the whole resource is.
+ *
+ * Offsets are 64-bit, so resources larger than 2 GB are described correctly.
+ */
+public class ContentRange {
+
+    private final long start;
+    private final long end;
+
+    /**
+     * The total size of the resource, or {@code -1} if the server reported it as unknown ({@code *}).
+     */
+    private final long total;
+
+    public ContentRange(long start, long end, long total) {
+        this.start = start;
+        this.end = end;
+        this.total = total;
+    }
+
+    /**
+     * Parses a {@code Content-Range} header value.
+     *
+     * @param value the header value, may be {@code null}.
+     * @return the parsed range, or {@code null} if the value is missing or malformed, including a range
+     *         that ends before it starts or runs past the total size.
+     */
+    public static ContentRange parse(String value) {
+        if (value == null || !value.startsWith("bytes ")) {
+            return null;
+        }
+        try {
+            String range = value.substring("bytes ".length()).trim();
+            int slash = range.indexOf('/');
+            int dash = range.indexOf('-');
+            if (slash == -1 || dash == -1 || dash > slash) {
+                return null;
+            }
+            long start = Long.parseLong(range.substring(0, dash).trim());
+            long end = Long.parseLong(range.substring(dash + 1, slash).trim());
+            String totalValue = range.substring(slash + 1).trim();
+            long total = totalValue.equals("*") ? -1 : Long.parseLong(totalValue);
+            if (start < 0 || end < start || total != -1 && end >= total) {
+                return null;
+            }
+            return new ContentRange(start, end, total);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses the total size out of the {@code Content-Range} header of a 416 (Range Not Satisfiable)
+     * response, e.g. <code>bytes *&#47;0</code> for an empty resource.
+     *
+     * @param value the header value, may be {@code null}.
+     * @return the total size in bytes, or {@code -1} if the value is missing or not of that form.
+     */
+    public static long parseUnsatisfied(String value) {
+        if (value == null || !value.startsWith("bytes */")) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.substring("bytes */".length()).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Determines the total size of the resource served by the given connection: from the
+     * {@code Content-Range} header of a 206 or 416 response, or from {@code Content-Length} otherwise.
+     *
+     * @param connection a connection whose response headers have been received.
+     * @return the total size in bytes, or {@code -1} if the server did not report it.
+     */
+    public static long totalSizeOf(HttpURLConnection connection) {
+        String header = connection.getHeaderField("Content-Range");
+        ContentRange contentRange = parse(header);
+        if (contentRange != null) {
+            return contentRange.getTotal();
+        }
+        long unsatisfiedTotal = parseUnsatisfied(header);
+        if (unsatisfiedTotal >= 0) {
+            return unsatisfiedTotal;
+        }
+        return connection.getContentLengthLong();
+    }
+
+    /**
+     * Determines the total size of the resource served by the given exchange, the same way as
+     * {@link #totalSizeOf(HttpURLConnection)}.
+     *
+     * @param exchange an exchange whose response headers have been received.
+     * @return the total size in bytes, or {@code -1} if the server did not report it.
+     */
+    public static long totalSizeOf(RangeExchange exchange) {
+        String header = exchange.getHeader("Content-Range");
+        ContentRange contentRange = parse(header);
+        if (contentRange != null) {
+            return contentRange.getTotal();
+        }
+        long unsatisfiedTotal = parseUnsatisfied(header);
+        if (unsatisfiedTotal >= 0) {
+            return unsatisfiedTotal;
+        }
+        return exchange.getContentLength();
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+}
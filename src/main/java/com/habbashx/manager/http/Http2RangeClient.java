@@ -0,0 +1,163 @@
+package com.habbashx.manager.http;
+
+import java.io.IOException;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link RangeClient} built on {@link HttpClient}, preferring HTTP/2.
+ *
+ * Against an HTTP/2 origin all the exchanges of a download are multiplexed as streams over a single
+ * connection, so the segments share one TCP and TLS handshake instead of paying for one each, and the
+ * server sees one connection rather than one per segment. Origins that do not speak HTTP/2 are served
+ * over HTTP/1.1 by the same client, which then keeps a pool of connections instead.
+ *
+ * Response bodies are read through a {@link StreamingBodySubscriber}, which copies the received
+ * buffers straight into the caller's buffer.
+ */
+public class Http2RangeClient implements RangeClient {
+
+    private final HttpClient client;
+    private final int stallTimeout;
+
+    /**
+     * @param connectTimeout the connect timeout in milliseconds, {@code 0} for none.
+     * @param stallTimeout   the longest time in milliseconds to wait for response headers or body data,
+     *                       {@code 0} for none.
+     */
+    public Http2RangeClient(int connectTimeout, int stallTimeout) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (connectTimeout > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+        this.client = builder.build();
+        this.stallTimeout = stallTimeout;
+    }
+
+    @Override
+    public RangeExchange head(String url, String acceptEncoding) throws IOException {
+        HttpRequest.Builder request = newRequest(url);
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return new Exchange(request.method("HEAD", HttpRequest.BodyPublishers.noBody()).build());
+    }
+
+    @Override
+    public RangeExchange get(String url, long first, long last, String validator, String acceptEncoding)
+            throws IOException {
+        HttpRequest.Builder request = newRequest(url);
+        String range = RangeClient.rangeOf(first, last);
+        if (range != null) {
+            request.header("Range", range);
+        }
+        if (validator != null) {
+            request.header(IfRange.HEADER, validator);
+        }
+        if (acceptEncoding != null) {
+            request.header("Accept-Encoding", acceptEncoding);
+        }
+        return new Exchange(request.GET().build());
+    }
+
+    @Override
+    public RangeExchange revalidate(String url, String validator) throws IOException {
+        HttpRequest.Builder request = newRequest(url)
+                .header("Range", RangeClient.rangeOf(0, 0))
+                .header(RangeClient.conditionOf(validator), validator);
+        return new Exchange(request.GET().build());
+    }
+
+    private HttpRequest.Builder newRequest(String url) throws IOException {
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(new URI(url));
+            if (stallTimeout > 0) {
+                request.timeout(Duration.ofMillis(stallTimeout));
+            }
+            return request;
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("invalid URL: " + url, e);
+        }
+    }
+
+    /**
+     * An exchange sent asynchronously, so that closing it can abort the request while the caller is
+     * still waiting for the response headers.
+     */
+    private class Exchange implements RangeExchange {
+
+        private final HttpRequest request;
+        private final StreamingBodySubscriber body = new StreamingBodySubscriber(stallTimeout);
+
+        private volatile CompletableFuture<HttpResponse<ReadableByteChannel>> future;
+        private volatile HttpResponse<ReadableByteChannel> response;
+        private volatile boolean closed;
+
+        Exchange(HttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public int send() throws IOException, InterruptedException {
+            future = client.sendAsync(request, responseInfo -> body);
+            if (closed) {
+                future.cancel(true);
+            }
+            try {
+                response = future.get();
+                return response.statusCode();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException io ? io : new IOException(cause);
+            } catch (CancellationException e) {
+                throw new AsynchronousCloseException();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                throw e;
+            }
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        }
+
+        @Override
+        public ReadableByteChannel getBody() throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            return response.body();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            CompletableFuture<HttpResponse<ReadableByteChannel>> pending = future;
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            body.close();
+        }
+    }
+}
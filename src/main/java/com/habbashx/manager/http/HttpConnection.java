@@ -0,0 +1,297 @@
+package com.habbashx.manager.http;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A persistent HTTP/1.1 connection to one origin, which carries one exchange at a time and can be
+ * handed back to the {@link ConnectionPool} between exchanges.
+ *
+ * Only the parts of HTTP/1.1 a download needs are implemented: {@code GET} and {@code HEAD} requests
+ * without body, and responses framed by {@code Content-Length}, by chunked transfer coding or by the
+ * end of the connection.
+ */
+class HttpConnection implements Closeable {
+
+    /**
+     * The longest status or header line accepted, to bound the memory a broken server can make us use.
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * A connection that has been idle for less than this many milliseconds is reused without checking
+     * whether the server closed it. Servers keep idle connections open for several seconds, and a
+     * request that fails on a closed connection is sent again anyway.
+     */
+    private static final long TRUSTED_IDLE_TIME = 1000;
+
+    private static final String USER_AGENT = "Java/" + System.getProperty("java.version");
+
+    private final String origin;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    private long idleSince;
+    private boolean reused;
+
+    private HttpConnection(String origin, Socket socket) throws IOException {
+        this.origin = origin;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Opens a new connection to the origin of the given URI, with TLS for {@code https}.
+     *
+     * @param uri            the URI of the resource the connection is opened for.
+     * @param connectTimeout the connect and TLS handshake timeout in milliseconds, {@code 0} for none.
+     * @return the connected connection.
+     * @throws IOException if the connection cannot be established.
+     */
+    static HttpConnection open(URI uri, int connectTimeout) throws IOException {
+        boolean secure = isSecure(uri);
+        String host = hostOf(uri);
+        int port = portOf(uri);
+
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            socket.setTcpNoDelay(true);
+            if (secure) {
+                SSLSocket sslSocket = (SSLSocket) HttpsURLConnection.getDefaultSSLSocketFactory()
+                        .createSocket(socket, host, port, true);
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+                sslSocket.setSoTimeout(connectTimeout);
+                sslSocket.startHandshake();
+                socket = sslSocket;
+            }
+            return new HttpConnection(originOf(uri), socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param uri an {@code http} or {@code https} URI.
+     * @return the key under which connections to the server of the URI are pooled.
+     */
+    static String originOf(URI uri) {
+        return uri.getScheme().toLowerCase() + "://" + hostOf(uri).toLowerCase() + ":" + portOf(uri);
+    }
+
+    private static boolean isSecure(URI uri) {
+        return "https".equalsIgnoreCase(uri.getScheme());
+    }
+
+    private static String hostOf(URI uri) {
+        String host = uri.getHost();
+        if (host == null) {
+            throw new IllegalArgumentException("URL without host: " + uri);
+        }
+        return host.startsWith("[") ? host.substring(1, host.length() - 1) : host;
+    }
+
+    private static int portOf(URI uri) {
+        return uri.getPort() != -1 ? uri.getPort() : isSecure(uri) ? 443 : 80;
+    }
+
+    /**
+     * Sends a request without body.
+     *
+     * @param method  the request method.
+     * @param uri     the URI of the requested resource.
+     * @param headers additional request headers.
+     * @throws IOException if the request cannot be written.
+     */
+    void writeRequest(String method, URI uri, Map<String, String> headers) throws IOException {
+        String target = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            target += "?" + uri.getRawQuery();
+        }
+        String host = uri.getRawAuthority().substring(uri.getRawAuthority().indexOf('@') + 1);
+
+        StringBuilder request = new StringBuilder()
+                .append(method).append(' ').append(target).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append("\r\n")
+                .append("User-Agent: ").append(USER_AGENT).append("\r\n")
+                .append("Accept: */*\r\n");
+        headers.forEach((name, value) -> request.append(name).append(": ").append(value).append("\r\n"));
+        request.append("\r\n");
+
+        out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Reads the status line and the headers of the response, skipping interim 1xx responses.
+     *
+     * @param headers receives the response headers; the first value of a repeated header is kept.
+     * @return the status line.
+     * @throws IOException if the response cannot be read or is malformed.
+     */
+    String readResponseHead(Map<String, String> headers) throws IOException {
+        while (true) {
+            String statusLine = readLine();
+            if (statusLine == null) {
+                throw new EOFException("connection closed before the response");
+            }
+            if (!statusLine.startsWith("HTTP/") || statusLine.length() < 12) {
+                throw new ProtocolException("malformed status line: " + statusLine);
+            }
+            headers.clear();
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.putIfAbsent(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+                }
+            }
+            if (line == null) {
+                throw new EOFException("connection closed in the response headers");
+            }
+            if (statusCodeOf(statusLine) / 100 != 1) {
+                return statusLine;
+            }
+        }
+    }
+
+    /**
+     * @param statusLine a status line, e.g. {@code HTTP/1.1 206 Partial Content}.
+     * @return the status code of the status line.
+     * @throws ProtocolException if the status line carries no status code.
+     */
+    static int statusCodeOf(String statusLine) throws ProtocolException {
+        try {
+            return Integer.parseInt(statusLine.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("malformed status line: " + statusLine);
+        }
+    }
+
+    /**
+     * Reads a line terminated by LF, without the line terminator.
+     *
+     * @return the line, or {@code null} if the connection was closed before the first byte.
+     */
+    String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (line.length() == MAX_LINE_LENGTH) {
+                throw new ProtocolException("response line too long");
+            }
+            line.append((char) b);
+        }
+        if (b == -1 && line.length() == 0) {
+            return null;
+        }
+        if (b == -1) {
+            throw new EOFException("connection closed in the middle of a line");
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Tells whether an idle connection can carry another exchange. A connection idle for longer than
+     * {@link #TRUSTED_IDLE_TIME} is probed with a one millisecond read, which tells a connection the
+     * server has closed from one that is merely quiet.
+     */
+    boolean isAlive(long now) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        if (now - idleSince < TRUSTED_IDLE_TIME) {
+            return true;
+        }
+        try {
+            if (in.available() > 0) {
+                // the server sent something without being asked, the connection is out of sync
+                return false;
+            }
+            int readTimeout = socket.getSoTimeout();
+            socket.setSoTimeout(1);
+            try {
+                // either the end of the stream, or a byte the server sent without being asked
+                in.read();
+                return false;
+            } catch (SocketTimeoutException e) {
+                return true;
+            } finally {
+                socket.setSoTimeout(readTimeout);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void setReadTimeout(int readTimeout) throws IOException {
+        socket.setSoTimeout(readTimeout);
+    }
+
+    InputStream getInputStream() {
+        return in;
+    }
+
+    String getOrigin() {
+        return origin;
+    }
+
+    long getIdleSince() {
+        return idleSince;
+    }
+
+    void setIdleSince(long idleSince) {
+        this.idleSince = idleSince;
+    }
+
+    /**
+     * @return {@code true} if the connection was taken from the pool rather than opened for the
+     *         current exchange.
+     */
+    boolean isReused() {
+        return reused;
+    }
+
+    void setReused(boolean reused) {
+        this.reused = reused;
+    }
+
+    /**
+     * Closes the socket. A thread blocked reading from the connection fails with an exception.
+     */
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.habbashx.manager.http;
+
+/**
+ * The HTTP protocol a parallel download talks to the server with. Each protocol creates the
+ * {@link RangeClient} that carries the exchanges of one download task.
+ */
+public enum HttpProtocol {
+
+    /**
+     * HTTP/1.1, one connection per segment at a time, taken from and given back to the
+     * {@link ConnectionPool}.
+     */
+    HTTP_1_1,
+
+    /**
+     * HTTP/2 over {@link java.net.http.HttpClient}, every segment a stream of one shared connection.
+     * Falls back to HTTP/1.1 when the origin does not support HTTP/2.
+     */
+    HTTP_2;
+
+    /**
+     * Creates the client a download task keeps for all of its downloads.
+     *
+     * @param connectTimeout the connect timeout in milliseconds, {@code 0} for none.
+     * @param stallTimeout   the longest time in milliseconds a read may wait for data, {@code 0} for none.
+     * @return a new client.
+     */
+    public RangeClient newClient(int connectTimeout, int stallTimeout) {
+        return switch (this) {
+            case HTTP_1_1 -> new PooledRangeClient(ConnectionPool.getInstance(), connectTimeout, stallTimeout);
+            case HTTP_2 -> new Http2RangeClient(connectTimeout, stallTimeout);
+        };
+    }
+}
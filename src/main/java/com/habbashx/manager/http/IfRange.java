@@ -0,0 +1,36 @@
+package com.habbashx.manager.http;
+
+/**
+ * Builds the value of an HTTP {@code If-Range} request header. A range request carrying it is only
+ * answered with 206 (Partial Content) while the resource is unchanged; once the resource has changed,
+ * the server sends the whole new resource with 200 instead, so bytes of two versions are never mixed.
+ *
+ * Only strong validators can be used: a strong {@code ETag} is preferred, and {@code Last-Modified} is
+ * used when the server sends no strong entity tag.
+ */
+public final class IfRange {
+
+    public static final String HEADER = "If-Range";
+
+    private IfRange() {
+    }
+
+    /**
+     * Determines the validator of the resource served by the given exchange.
+     *
+     * @param exchange an exchange whose response headers have been received.
+     * @return the strong entity tag or the last modification date of the resource, or {@code null}
+     *         if the server sent neither.
+     */
+    public static String validatorOf(RangeExchange exchange) {
+        String entityTag = exchange.getHeader("ETag");
+        if (entityTag != null && !entityTag.isBlank() && !entityTag.startsWith("W/")) {
+            return entityTag.trim();
+        }
+        String lastModified = exchange.getHeader("Last-Modified");
+        if (lastModified != null && !lastModified.isBlank()) {
+            return lastModified.trim();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,317 @@
+package com.habbashx.manager.http;
+
+import java.io.IOException;
+
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A {@link RangeClient} speaking HTTP/1.1 over keep-alive connections taken from a
+ * {@link ConnectionPool}.
+ *
+ * An exchange holds its connection only while it runs. Once its response has been read to the end, the
+ * connection goes back to the pool and carries the next exchange with the same origin, whether it
+ * belongs to the same download or to a later one. An exchange that is closed before the end of its
+ * response closes its connection instead, because the unread rest of the response would otherwise be
+ * taken for the next response.
+ *
+ * A request that fails on a reused connection before any response arrived is sent again on another
+ * connection: the server may close an idle connection at any time, and {@code GET} and {@code HEAD}
+ * can safely be repeated. Redirects are followed like {@link java.net.HttpURLConnection} does: only to a
+ * URL of the same scheme, so that a redirect never downgrades an {@code https} download to {@code http};
+ * a redirect to another scheme is returned to the caller.
+ *
+ * URLs that are reached through a proxy, or that are not {@code http} or {@code https}, are handed to a
+ * {@link UrlConnectionRangeClient}, which honours the proxy settings of the JVM.
+ */
+public class PooledRangeClient implements RangeClient {
+
+    private static final int MAX_REDIRECTS = 20;
+
+    /**
+     * The largest redirect body that is read to the end so that its connection can be reused.
+     */
+    private static final long DRAIN_LIMIT = 64 * 1024;
+
+    private final ConnectionPool pool;
+    private final int connectTimeout;
+    private final int stallTimeout;
+    private final UrlConnectionRangeClient fallback;
+
+    /**
+     * @param pool           the pool connections are taken from.
+     * @param connectTimeout the connect timeout in milliseconds, {@code 0} for none.
+     * @param stallTimeout   the longest time in milliseconds a read may wait for data, {@code 0} for none.
+     */
+    public PooledRangeClient(ConnectionPool pool, int connectTimeout, int stallTimeout) {
+        this.pool = pool;
+        this.connectTimeout = connectTimeout;
+        this.stallTimeout = stallTimeout;
+        this.fallback = new UrlConnectionRangeClient(connectTimeout, stallTimeout);
+    }
+
+    @Override
+    public RangeExchange head(String url, String acceptEncoding) throws IOException {
+        URI uri = toURI(url);
+        if (!isDirect(uri)) {
+            return fallback.head(url, acceptEncoding);
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (acceptEncoding != null) {
+            headers.put("Accept-Encoding", acceptEncoding);
+        }
+        return new Exchange("HEAD", uri, headers);
+    }
+
+    @Override
+    public RangeExchange get(String url, long first, long last, String validator, String acceptEncoding)
+            throws IOException {
+        URI uri = toURI(url);
+        if (!isDirect(uri)) {
+            return fallback.get(url, first, last, validator, acceptEncoding);
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        String range = RangeClient.rangeOf(first, last);
+        if (range != null) {
+            headers.put("Range", range);
+        }
+        if (validator != null) {
+            headers.put(IfRange.HEADER, validator);
+        }
+        if (acceptEncoding != null) {
+            headers.put("Accept-Encoding", acceptEncoding);
+        }
+        return new Exchange("GET", uri, headers);
+    }
+
+    @Override
+    public RangeExchange revalidate(String url, String validator) throws IOException {
+        URI uri = toURI(url);
+        if (!isDirect(uri)) {
+            return fallback.revalidate(url, validator);
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Range", RangeClient.rangeOf(0, 0));
+        headers.put(RangeClient.conditionOf(validator), validator);
+        return new Exchange("GET", uri, headers);
+    }
+
+    private static URI toURI(String url) throws IOException {
+        try {
+            return new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IOException("invalid URL: " + url, e);
+        }
+    }
+
+    /**
+     * @return {@code true} if the URI is an {@code http} or {@code https} URI that is not reached
+     *         through a proxy.
+     */
+    private static boolean isDirect(URI uri) {
+        String scheme = uri.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme) || uri.getHost() == null) {
+            return false;
+        }
+        ProxySelector proxySelector = ProxySelector.getDefault();
+        if (proxySelector == null) {
+            return true;
+        }
+        List<Proxy> proxies = proxySelector.select(uri);
+        return proxies.isEmpty() || proxies.get(0).type() == Proxy.Type.DIRECT;
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308;
+    }
+
+    /**
+     * One exchange, which owns its connection from {@link #send()} until its response has been read to
+     * the end or it is closed.
+     */
+    private class Exchange implements RangeExchange {
+
+        private final String method;
+        private final URI uri;
+        private final Map<String, String> requestHeaders;
+        private final Map<String, String> responseHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        /**
+         * The connection of the running exchange, {@code null} once it has been handed back or closed.
+         */
+        private final AtomicReference<HttpConnection> connection = new AtomicReference<>();
+
+        private volatile boolean closed;
+        private ResponseBody body;
+        private boolean keepAlive;
+
+        Exchange(String method, URI uri, Map<String, String> requestHeaders) {
+            this.method = method;
+            this.uri = uri;
+            this.requestHeaders = requestHeaders;
+        }
+
+        @Override
+        public int send() throws IOException {
+            URI target = uri;
+            for (int redirects = 0; ; redirects++) {
+                int statusCode = exchange(target);
+                String location = responseHeaders.get("Location");
+                if (!isRedirect(statusCode) || location == null || redirects == MAX_REDIRECTS) {
+                    return statusCode;
+                }
+                URI redirected;
+                try {
+                    redirected = target.resolve(new URI(location));
+                } catch (URISyntaxException e) {
+                    return statusCode;
+                }
+                if (!target.getScheme().equalsIgnoreCase(redirected.getScheme()) || !isDirect(redirected)) {
+                    return statusCode;
+                }
+                target = redirected;
+                discardBody();
+            }
+        }
+
+        /**
+         * Sends the request to the given URI and reads the response head, on a pooled connection if
+         * there is one.
+         */
+        private int exchange(URI target) throws IOException {
+            while (true) {
+                HttpConnection current = pool.acquire(target, connectTimeout);
+                connection.set(current);
+                if (closed) {
+                    abort();
+                    throw new AsynchronousCloseException();
+                }
+                try {
+                    current.setReadTimeout(stallTimeout);
+                    current.writeRequest(method, target, requestHeaders);
+                    String statusLine = current.readResponseHead(responseHeaders);
+                    int statusCode = HttpConnection.statusCodeOf(statusLine);
+                    keepAlive = statusLine.startsWith("HTTP/1.1")
+                            && !"close".equalsIgnoreCase(responseHeaders.get("Connection"));
+                    body = newBody(current, statusCode);
+                    return statusCode;
+                } catch (IOException e) {
+                    abort();
+                    if (closed) {
+                        throw new AsynchronousCloseException();
+                    }
+                    if (!current.isReused()) {
+                        throw e;
+                    }
+                    // the server closed the idle connection, try the next one
+                }
+            }
+        }
+
+        private ResponseBody newBody(HttpConnection current, int statusCode) {
+            String transferEncoding = responseHeaders.get("Transfer-Encoding");
+            boolean chunked = transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+            long length = ResponseBody.UNTIL_CLOSE;
+            if (method.equals("HEAD") || statusCode == 204 || statusCode == 304) {
+                length = 0;
+                chunked = false;
+            } else if (!chunked) {
+                length = getContentLength();
+                if (length == -1) {
+                    keepAlive = false;
+                }
+            }
+            return new ResponseBody(current.getInputStream(), length, chunked, this::finish);
+        }
+
+        /**
+         * Reads a short redirect body to the end, so that its connection can carry the redirected request.
+         */
+        private void discardBody() {
+            long remaining = body.getRemaining();
+            if (remaining >= 0 && remaining <= DRAIN_LIMIT) {
+                try {
+                    byte[] skipped = new byte[8192];
+                    while (body.read(skipped, 0, skipped.length) != -1) {
+                        // the body of a redirect is not used
+                    }
+                } catch (IOException e) {
+                    abort();
+                }
+            }
+            abort();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return responseHeaders.get(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            String contentLength = responseHeaders.get("Content-Length");
+            try {
+                return contentLength == null ? -1 : Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public ReadableByteChannel getBody() throws IOException {
+            if (closed || body == null) {
+                throw new ClosedChannelException();
+            }
+            return Channels.newChannel(body);
+        }
+
+        /**
+         * Hands the connection back to the pool once the response has been read to the end.
+         */
+        private void finish() {
+            HttpConnection current = connection.getAndSet(null);
+            if (current == null) {
+                return;
+            }
+            if (keepAlive && !closed) {
+                current.setReused(false);
+                pool.release(current);
+            } else {
+                current.close();
+            }
+        }
+
+        /**
+         * Closes the connection, if the exchange still holds it.
+         */
+        private void abort() {
+            HttpConnection current = connection.getAndSet(null);
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        /**
+         * Closes the exchange. A response read to the end has already given its connection back to the
+         * pool; otherwise the connection is closed, which also unblocks a thread reading the response.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            abort();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.habbashx.manager.http;
+
+import java.io.IOException;
+
+/**
+ * Creates the HTTP exchanges of a download task. A task creates its client once, configured with the
+ * connect and stall timeouts of the download manager, and uses it for every download it runs; depending
+ * on the protocol, the exchanges of a client share one connection, or draw their connections from the
+ * process-wide {@link ConnectionPool}.
+ *
+ * Implementations must be safe for concurrent use by the segments of a download.
+ *
+ * @see HttpProtocol#newClient(int, int)
+ */
+public interface RangeClient {
+
+    /**
+     * Creates a {@code HEAD} request for the given URL, used to probe the size and validator of a file.
+     *
+     * @param url the URL of the file.
+     * @return an exchange that has not been sent yet.
+     * @throws IOException if the URL is malformed or no connection can be created for it.
+     */
+    default RangeExchange head(String url) throws IOException {
+        return head(url, null);
+    }
+
+    /**
+     * Creates a {@code HEAD} request for the given URL that asks for the file in one of the given
+     * content encodings, used to learn how the server would send it.
+     *
+     * @param url            the URL of the file.
+     * @param acceptEncoding the value of the {@code Accept-Encoding} header, or {@code null} to send none.
+     * @return an exchange that has not been sent yet.
+     * @throws IOException if the URL is malformed or no connection can be created for it.
+     */
+    RangeExchange head(String url, String acceptEncoding) throws IOException;
+
+    /**
+     * Creates a {@code GET} request for the inclusive byte range {@code [first, last]} of the given URL.
+     *
+     * @param url       the URL of the file.
+     * @param first     the offset of the first requested byte.
+     * @param last      the offset of the last requested byte, or a negative value for the end of the file.
+     *                  The whole file is requested without {@code Range} header when {@code first} is
+     *                  {@code 0} and {@code last} is negative.
+     * @param validator the value of the {@code If-Range} header, or {@code null} to send none.
+     * @return an exchange that has not been sent yet.
+     * @throws IOException if the URL is malformed or no connection can be created for it.
+     */
+    default RangeExchange get(String url, long first, long last, String validator) throws IOException {
+        return get(url, first, last, validator, null);
+    }
+
+    /**
+     * Creates a {@code GET} request for a byte range of the given URL, as described in
+     * {@link #get(String, long, long, String)}, that asks for the file in one of the given content
+     * encodings. The range is then a range of the encoded file.
+     *
+     * @param acceptEncoding the value of the {@code Accept-Encoding} header, or {@code null} to send none.
+     * @return an exchange that has not been sent yet.
+     * @throws IOException if the URL is malformed or no connection can be created for it.
+     */
+    RangeExchange get(String url, long first, long last, String validator, String acceptEncoding)
+            throws IOException;
+
+    /**
+     * Creates a conditional {@code GET} request for the first byte of the given URL, which is answered
+     * with 304 (Not Modified) while the file still has the given validator.
+     *
+     * @param url       the URL of the file.
+     * @param validator the strong entity tag or the last modification date the file had.
+     * @return an exchange that has not been sent yet.
+     * @throws IOException if the URL is malformed or no connection can be created for it.
+     */
+    RangeExchange revalidate(String url, String validator) throws IOException;
+
+    /**
+     * @param first the offset of the first requested byte.
+     * @param last  the offset of the last requested byte, or a negative value for the end of the file.
+     * @return the value of the {@code Range} header for the given range, or {@code null} if the whole
+     *         file is requested.
+     */
+    static String rangeOf(long first, long last) {
+        if (first == 0 && last < 0) {
+            return null;
+        }
+        return "bytes=" + first + "-" + (last < 0 ? "" : last);
+    }
+
+    /**
+     * @param validator a strong entity tag or a last modification date.
+     * @return the conditional request header that carries the validator: {@code If-None-Match} for an
+     *         entity tag, {@code If-Modified-Since} for a date.
+     */
+    static String conditionOf(String validator) {
+        return validator.startsWith("\"") ? "If-None-Match" : "If-Modified-Since";
+    }
+}
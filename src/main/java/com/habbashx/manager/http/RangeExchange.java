@@ -0,0 +1,52 @@
+package com.habbashx.manager.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * One HTTP request of a download and its response, as seen by the download engines: the status code,
+ * the response headers and the body as a channel the engine reads into its own buffers.
+ *
+ * {@link #close()} may be called from any thread at any time. It aborts the exchange, which unblocks a
+ * thread waiting in {@link #send()} or reading the body, so a download scope can cancel its segments
+ * by closing their exchanges.
+ */
+public interface RangeExchange extends Closeable {
+
+    /**
+     * Sends the request and waits for the response headers.
+     *
+     * @return the status code of the response.
+     * @throws IOException if the request fails or the exchange has been closed.
+     * @throws InterruptedException if the thread is interrupted while waiting for the response.
+     */
+    int send() throws IOException, InterruptedException;
+
+    /**
+     * @param name the name of a response header.
+     * @return the first value of the header, or {@code null} if the response does not have it.
+     */
+    String getHeader(String name);
+
+    /**
+     * @return the value of the {@code Content-Length} response header, or {@code -1} if it is missing.
+     */
+    long getContentLength();
+
+    /**
+     * Returns the body of the response. A read that receives nothing for the client's stall timeout
+     * fails with a {@link java.net.SocketTimeoutException}.
+     *
+     * @return the body of the response.
+     * @throws IOException if the body cannot be read.
+     */
+    ReadableByteChannel getBody() throws IOException;
+
+    /**
+     * Aborts the exchange and releases its connection or stream.
+     */
+    @Override
+    void close();
+}
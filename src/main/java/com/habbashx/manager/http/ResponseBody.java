@@ -0,0 +1,171 @@
+package com.habbashx.manager.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+
+/**
+ * The body of an HTTP/1.1 response read from a {@link HttpConnection}, delimited by
+ * {@code Content-Length}, by chunked transfer coding, or by the end of the connection.
+ *
+ * The body knows when it has been read to its end, which is the moment its connection can carry the
+ * next exchange. A body delimited by {@code Content-Length} or chunked coding that ends early fails
+ * with an {@link EOFException} instead of looking complete.
+ */
+class ResponseBody extends InputStream {
+
+    /**
+     * The framing of a body that lasts until the server closes the connection.
+     */
+    static final long UNTIL_CLOSE = -1;
+
+    private final InputStream in;
+    private final boolean chunked;
+    private final Runnable onComplete;
+
+    /**
+     * The bytes left in the body, or in the current chunk of a chunked body.
+     */
+    private long remaining;
+    private boolean complete;
+
+    /**
+     * @param in         the input stream of the connection.
+     * @param length     the length of the body, or {@link #UNTIL_CLOSE}; ignored for chunked bodies.
+     * @param chunked    whether the body uses chunked transfer coding.
+     * @param onComplete called once, by the reading thread, when the end of the body has been read.
+     */
+    ResponseBody(InputStream in, long length, boolean chunked, Runnable onComplete) {
+        this.in = in;
+        this.chunked = chunked;
+        this.onComplete = onComplete;
+        this.remaining = chunked ? 0 : length;
+        if (!chunked && length == 0) {
+            complete();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (complete) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining == UNTIL_CLOSE) {
+            int read = in.read(b, off, len);
+            if (read == -1) {
+                complete();
+            }
+            return read;
+        }
+        if (chunked && remaining == 0) {
+            remaining = readChunkSize();
+            if (remaining == 0) {
+                skipTrailers();
+                complete();
+                return -1;
+            }
+        }
+
+        int read = in.read(b, off, (int) Math.min(len, remaining));
+        if (read == -1) {
+            throw new EOFException("connection closed before the end of the response body");
+        }
+        remaining -= read;
+        if (remaining == 0) {
+            if (chunked) {
+                readChunkEnd();
+            } else {
+                complete();
+            }
+        }
+        return read;
+    }
+
+    /**
+     * @return {@code true} once the whole body has been read.
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return the number of bytes left in a body delimited by {@code Content-Length}, {@code 0} once it
+     *         is complete, or {@code -1} if it is not known.
+     */
+    long getRemaining() {
+        if (complete) {
+            return 0;
+        }
+        return chunked ? -1 : remaining;
+    }
+
+    private void complete() {
+        complete = true;
+        onComplete.run();
+    }
+
+    private long readChunkSize() throws IOException {
+        String line = readLine();
+        int extension = line.indexOf(';');
+        String size = (extension == -1 ? line : line.substring(0, extension)).trim();
+        try {
+            long chunkSize = Long.parseLong(size, 16);
+            if (chunkSize < 0) {
+                throw new ProtocolException("invalid chunk size: " + line);
+            }
+            return chunkSize;
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("invalid chunk size: " + line);
+        }
+    }
+
+    private void readChunkEnd() throws IOException {
+        if (!readLine().isEmpty()) {
+            throw new ProtocolException("missing CRLF after chunk");
+        }
+    }
+
+    private void skipTrailers() throws IOException {
+        while (!readLine().isEmpty()) {
+            // trailer fields are not used
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("connection closed before the end of the response body");
+            }
+            if (line.length() == 1024) {
+                throw new ProtocolException("chunk header too long");
+            }
+            line.append((char) b);
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Does nothing: whether the connection is reused or closed is decided by the exchange the body
+     * belongs to.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,189 @@
+package com.habbashx.manager.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the body of an {@link java.net.http.HttpClient} response as a {@link ReadableByteChannel}.
+ *
+ * The buffers received from the HTTP/2 stream are copied straight into the buffer passed to
+ * {@link #read(ByteBuffer)}, without the intermediate byte arrays of an {@code InputStream}. Only one
+ * batch of buffers is requested at a time, so a slow reader applies back pressure to its stream through
+ * HTTP/2 flow control instead of letting the client buffer the body in memory.
+ *
+ * A read that receives nothing for the stall timeout fails with a {@link SocketTimeoutException}, the
+ * same way a read on an {@code HttpURLConnection} with a read timeout does.
+ */
+class StreamingBodySubscriber implements HttpResponse.BodySubscriber<ReadableByteChannel>, ReadableByteChannel {
+
+    /**
+     * Queued by {@link #onComplete()} to tell the reader that the body has ended.
+     */
+    private static final Object END_OF_BODY = new Object();
+
+    /**
+     * Holds at most one batch of buffers and the signal that ends the body.
+     */
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    private final long stallTimeout;
+
+    private volatile Flow.Subscription subscription;
+    private volatile boolean closed;
+
+    /**
+     * The batch the reader is currently copying from. Only accessed by the reading thread.
+     */
+    private final Deque<ByteBuffer> current = new ArrayDeque<>();
+    private boolean finished;
+
+    /**
+     * @param stallTimeout the longest time in milliseconds a read may wait for data, {@code 0} for none.
+     */
+    StreamingBodySubscriber(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+
+    @Override
+    public CompletionStage<ReadableByteChannel> getBody() {
+        return CompletableFuture.completedStage(this);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (closed) {
+            subscription.cancel();
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        queue.add(buffers);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        queue.add(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        queue.add(END_OF_BODY);
+    }
+
+    /**
+     * Copies as many received bytes as fit into {@code destination}, waiting only if nothing has been
+     * received yet.
+     */
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (current.isEmpty() && !takeNextBatch()) {
+            return -1;
+        }
+
+        int copied = 0;
+        while (destination.hasRemaining() && !current.isEmpty()) {
+            ByteBuffer source = current.peek();
+            int length = Math.min(source.remaining(), destination.remaining());
+            destination.put(source.slice(source.position(), length));
+            source.position(source.position() + length);
+            copied += length;
+            if (!source.hasRemaining()) {
+                current.poll();
+            }
+        }
+        if (current.isEmpty()) {
+            subscription.request(1);
+        }
+        return copied;
+    }
+
+    /**
+     * Waits for the next batch of buffers that contains any data.
+     *
+     * @return {@code false} if the body has ended.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean takeNextBatch() throws IOException {
+        while (current.isEmpty()) {
+            if (finished) {
+                return false;
+            }
+            Object item;
+            try {
+                item = stallTimeout > 0 ? queue.poll(stallTimeout, TimeUnit.MILLISECONDS) : queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while reading the response body");
+            }
+            if (item == null) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            if (item == END_OF_BODY) {
+                finished = true;
+                return false;
+            }
+            if (item instanceof Throwable throwable) {
+                if (closed) {
+                    throw new AsynchronousCloseException();
+                }
+                throw throwable instanceof IOException e ? e : new IOException(throwable);
+            }
+            for (ByteBuffer buffer : (List<ByteBuffer>) item) {
+                if (buffer.hasRemaining()) {
+                    current.add(buffer);
+                }
+            }
+            if (current.isEmpty()) {
+                subscription.request(1);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Cancels the stream. A thread blocked in {@link #read(ByteBuffer)} fails with an
+     * {@link AsynchronousCloseException}.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Flow.Subscription activeSubscription = subscription;
+        if (activeSubscription != null) {
+            activeSubscription.cancel();
+        }
+        queue.add(new AsynchronousCloseException());
+    }
+}
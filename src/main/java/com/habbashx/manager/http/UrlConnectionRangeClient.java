@@ -0,0 +1,111 @@
+package com.habbashx.manager.http;
+
+import java.io.IOException;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A {@link RangeClient} built on {@link HttpURLConnection}, speaking HTTP/1.1. Every exchange opens its
+ * own connection, and stalls are detected with the connection's read timeout.
+ *
+ * Used by {@link PooledRangeClient} for the URLs it does not handle itself, such as those reached
+ * through a proxy.
+ */
+public class UrlConnectionRangeClient implements RangeClient {
+
+    private final int connectTimeout;
+    private final int stallTimeout;
+
+    /**
+     * @param connectTimeout the connect timeout in milliseconds, {@code 0} for none.
+     * @param stallTimeout   the longest time in milliseconds a read may wait for data, {@code 0} for none.
+     */
+    public UrlConnectionRangeClient(int connectTimeout, int stallTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.stallTimeout = stallTimeout;
+    }
+
+    @Override
+    public RangeExchange head(String url, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = open(url);
+        connection.setRequestMethod("HEAD");
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        return new Exchange(connection);
+    }
+
+    @Override
+    public RangeExchange get(String url, long first, long last, String validator, String acceptEncoding)
+            throws IOException {
+        HttpURLConnection connection = open(url);
+        String range = RangeClient.rangeOf(first, last);
+        if (range != null) {
+            connection.setRequestProperty("Range", range);
+        }
+        if (validator != null) {
+            connection.setRequestProperty(IfRange.HEADER, validator);
+        }
+        if (acceptEncoding != null) {
+            connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+        }
+        return new Exchange(connection);
+    }
+
+    @Override
+    public RangeExchange revalidate(String url, String validator) throws IOException {
+        HttpURLConnection connection = open(url);
+        connection.setRequestProperty("Range", RangeClient.rangeOf(0, 0));
+        connection.setRequestProperty(RangeClient.conditionOf(validator), validator);
+        return new Exchange(connection);
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(stallTimeout);
+        return connection;
+    }
+
+    /**
+     * An exchange over a single {@link HttpURLConnection}. Closing it disconnects the connection, which
+     * is what unblocks a thread stuck in a socket read.
+     */
+    private static class Exchange implements RangeExchange {
+
+        private final HttpURLConnection connection;
+
+        Exchange(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public int send() throws IOException {
+            return connection.getResponseCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public ReadableByteChannel getBody() throws IOException {
+            return Channels.newChannel(connection.getInputStream());
+        }
+
+        @Override
+        public void close() {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.habbashx.manager.io;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A {@link DownloadWriter} that writes through a single {@link FileChannel} opened for the whole
+ * download, using positional writes.
+ *
+ * Positional writes do not touch the channel's position, so any number of segments can write
+ * through the same channel concurrently. Callers should pass direct buffers: the channel copies heap
+ * buffers into a temporary direct buffer on every write.
+ */
+public class ChannelDownloadWriter implements DownloadWriter {
+
+    private final FileChannel channel;
+
+    /**
+     * Opens the destination file for writing, creating it if it does not exist. Existing bytes are
+     * kept, so that a download can continue a partially written file.
+     *
+     * @param destination the file the download is written to.
+     * @throws IOException if the file cannot be opened.
+     */
+    public ChannelDownloadWriter(Path destination) throws IOException {
+        this.channel = FileChannel.open(destination, CREATE, WRITE);
+    }
+
+    @Override
+    public void write(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,82 @@
+package com.habbashx.manager.io;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A {@link DownloadWriter} that bypasses the page cache (O_DIRECT), for huge downloads that would
+ * otherwise evict the working set of everything else running on the machine.
+ *
+ * Direct I/O requires the memory address, the file position and the length of every write to be
+ * multiples of the file system's block size. Writes that satisfy this go through a channel opened
+ * with {@link ExtendedOpenOption#DIRECT}; anything else, typically the unaligned tail at the end of
+ * the file, goes through a second, buffered channel. The two channels never write the same bytes.
+ *
+ * Segments should therefore start at aligned offsets (see {@link #getAlignment()}) and read into
+ * aligned buffers whose capacity is a multiple of the block size, as the pooled buffers are.
+ */
+public class DirectDownloadWriter implements DownloadWriter {
+
+    private final FileChannel directChannel;
+    private final FileChannel bufferedChannel;
+    private final int blockSize;
+
+    /**
+     * Opens the destination file for direct and buffered writing.
+     *
+     * @param destination the file the download is written to. It must already exist, so that the
+     *                    block size of its file system can be determined.
+     * @throws IOException if the file cannot be opened, or the platform does not support direct I/O.
+     */
+    public DirectDownloadWriter(Path destination) throws IOException {
+        this.blockSize = (int) Files.getFileStore(destination).getBlockSize();
+        try {
+            this.directChannel = FileChannel.open(destination, CREATE, WRITE, ExtendedOpenOption.DIRECT);
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("direct I/O is not supported on this platform", e);
+        }
+        this.bufferedChannel = FileChannel.open(destination, WRITE);
+    }
+
+    @Override
+    public void write(ByteBuffer source, long position) throws IOException {
+        FileChannel channel = isAligned(source, position) ? directChannel : bufferedChannel;
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        bufferedChannel.force(true);
+        directChannel.force(true);
+    }
+
+    @Override
+    public int getAlignment() {
+        return blockSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (bufferedChannel) {
+            directChannel.close();
+        }
+    }
+
+    private boolean isAligned(ByteBuffer source, long position) {
+        return source.isDirect()
+                && position % blockSize == 0
+                && source.remaining() % blockSize == 0
+                && source.alignmentOffset(source.position(), blockSize) == 0;
+    }
+}
@@ -0,0 +1,54 @@
+package com.habbashx.manager.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes the bytes of a download to its destination file. A single writer is shared by all segments
+ * of a download; every write carries its absolute file position, so implementations hold no seek
+ * state and segments never need a file handle of their own.
+ *
+ * Implementations must be safe for concurrent use by the segments of a download.
+ */
+public interface DownloadWriter extends Closeable {
+
+    /**
+     * Writes all remaining bytes of {@code source} at the given file position. On return the buffer's
+     * position equals its limit.
+     *
+     * @param source   the bytes to write, between the buffer's position and limit.
+     * @param position the file position of the first byte.
+     * @throws IOException if the bytes cannot be written.
+     */
+    void write(ByteBuffer source, long position) throws IOException;
+
+    /**
+     * Tells the writer that a range of the destination file already holds its bytes, written by an
+     * earlier run of a resumed download. Writers that do not track the written ranges ignore it.
+     *
+     * @param position the file position of the first byte.
+     * @param length   the number of bytes.
+     */
+    default void markWritten(long position, long length) {
+    }
+
+    /**
+     * Forces every byte written so far to the storage device. A download is flushed before each
+     * checkpoint of its journal, and once more after the last segment has been written.
+     *
+     * @throws IOException if the file cannot be flushed.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Returns the alignment, in bytes, that segment boundaries should respect for this writer to
+     * work efficiently. Writers without alignment requirements return {@code 1}.
+     *
+     * @return the preferred alignment of segment start offsets.
+     */
+    default int getAlignment() {
+        return 1;
+    }
+}
@@ -0,0 +1,61 @@
+package com.habbashx.manager.io;
+
+import com.habbashx.exception.NoSuchWriteModeException;
+import com.habbashx.system.StorageType;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+/**
+ * Factory class responsible for opening the {@link DownloadWriter} of a download.
+ *
+ * The supported write modes are:
+ * - "channel": {@code ChannelDownloadWriter}, positional writes through a single file channel.
+ * - "mmap": {@code MappedDownloadWriter}, copies into a memory mapping of the destination file.
+ * - "auto": memory mapping when the destination is on an SSD and the file fits the mapping budget,
+ *   the file channel otherwise.
+ *
+ * Independently of the write mode, files at least as large as the direct I/O threshold are written
+ * with {@code DirectDownloadWriter}, which bypasses the page cache. If the platform does not support
+ * direct I/O, the configured write mode is used instead.
+ *
+ * Unsupported write modes will result in a {@code NoSuchWriteModeException} being thrown.
+ */
+public class DownloadWriterFactory {
+
+    /**
+     * Opens the writer of a download.
+     *
+     * @param writeMode     the configured write mode.
+     * @param destination   the file the download is written to.
+     * @param fileSize      the total size of the download in bytes.
+     * @param storageType   the type of the storage device the file is written to.
+     * @param mappingBudget the largest file size, in bytes, that is memory mapped in "auto" mode.
+     * @param directThreshold the smallest file size, in bytes, that is written with direct I/O,
+     *                        or {@code 0} to never use direct I/O.
+     * @return a new writer, owned by the caller.
+     * @throws IOException if the destination file cannot be opened.
+     */
+    public static DownloadWriter getInstance(String writeMode, Path destination, long fileSize,
+                                             StorageType storageType, long mappingBudget,
+                                             long directThreshold) throws IOException {
+
+        if (directThreshold > 0 && fileSize >= directThreshold) {
+            try {
+                return new DirectDownloadWriter(destination);
+            } catch (IOException e) {
+                // direct I/O is not available here, use the configured write mode
+            }
+        }
+
+        return switch (writeMode) {
+            case "channel" -> new ChannelDownloadWriter(destination);
+            case "mmap" -> new MappedDownloadWriter(destination, fileSize);
+            case "auto" -> (storageType == StorageType.SSD && fileSize > 0 && fileSize <= mappingBudget)
+                    ? new MappedDownloadWriter(destination, fileSize)
+                    : new ChannelDownloadWriter(destination);
+            default -> throw new NoSuchWriteModeException("no such write mode: " + writeMode);
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.habbashx.manager.io;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+
+import java.util.function.LongSupplier;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reads a file while a download writes it, from its start, waiting for bytes that have not been written
+ * yet. The segments of a parallel download are written out of order, so the channel reads up to the
+ * first byte still missing and waits for more.
+ *
+ * The channel reaches its end once {@link #complete()} has been called and every byte of the file has
+ * been read. Closing it from another thread unblocks a thread waiting in {@link #read(ByteBuffer)}.
+ */
+public class FollowingFileChannel implements ReadableByteChannel {
+
+    /**
+     * How often a read waiting for bytes checks the progress of the download, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 50;
+
+    private final FileChannel file;
+    private final LongSupplier available;
+
+    private long position;
+    private volatile boolean complete;
+    private volatile boolean open = true;
+
+    /**
+     * @param file      the file the download writes.
+     * @param available the number of leading bytes of the file that have been written.
+     * @throws IOException if the file cannot be opened.
+     */
+    public FollowingFileChannel(Path file, LongSupplier available) throws IOException {
+        this.file = FileChannel.open(file, READ);
+        this.available = available;
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        while (true) {
+            if (!open) {
+                throw new AsynchronousCloseException();
+            }
+            boolean downloaded = complete;
+            long limit = downloaded ? file.size() : available.getAsLong();
+            if (position < limit) {
+                ByteBuffer window = destination.slice();
+                window.limit((int) Math.min(window.limit(), limit - position));
+                int read = file.read(window, position);
+                if (read > 0) {
+                    position += read;
+                    destination.position(destination.position() + read);
+                    return read;
+                }
+            } else if (downloaded) {
+                return -1;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AsynchronousCloseException();
+            }
+        }
+    }
+
+    /**
+     * Tells the channel that the download has written the whole file.
+     */
+    public void complete() {
+        complete = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        file.close();
+    }
+}
@@ -0,0 +1,191 @@
+package com.habbashx.manager.io;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A {@link DownloadWriter} that maps the destination file into memory and copies the bytes of every
+ * segment straight into the mapped region they belong to, without any write system call.
+ *
+ * The file is mapped as a sequence of fixed-size windows. A window is mapped the first time a
+ * segment writes into it, and is forced and dropped as soon as all of its bytes have been written,
+ * so only the windows that segments are currently writing into stay mapped. The writer records which
+ * ranges of each window have been written, so bytes that are written twice, by a retried or hedged
+ * segment, are not counted twice, and the ranges a resumed download already holds are reported with
+ * {@link #markWritten(long, long)}.
+ *
+ * Mapping extends the file to its final size, so this writer needs the total size of the download
+ * up front.
+ */
+public class MappedDownloadWriter implements DownloadWriter {
+
+    /**
+     * The size of a mapped window. Large enough to keep the number of mappings small, small enough
+     * that finished parts of the file are unmapped early.
+     */
+    static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private final AtomicReferenceArray<MappedByteBuffer> windows;
+
+    /**
+     * The ranges written into each window, used to find out when a window is complete.
+     */
+    private final WrittenRanges[] writtenRanges;
+
+    /**
+     * Opens and maps the destination file.
+     *
+     * @param destination the file the download is written to.
+     * @param fileSize    the total size of the download in bytes.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MappedDownloadWriter(Path destination, long fileSize) throws IOException {
+        this.channel = FileChannel.open(destination, CREATE, READ, WRITE);
+        this.fileSize = fileSize;
+
+        int windowCount = (int) ((fileSize + WINDOW_SIZE - 1) / WINDOW_SIZE);
+        this.windows = new AtomicReferenceArray<>(windowCount);
+        this.writtenRanges = new WrittenRanges[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            writtenRanges[i] = new WrittenRanges(Math.min(WINDOW_SIZE, fileSize - i * WINDOW_SIZE));
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer source, long position) throws IOException {
+        while (source.hasRemaining()) {
+            int index = (int) (position / WINDOW_SIZE);
+            int offset = (int) (position % WINDOW_SIZE);
+
+            MappedByteBuffer window = window(index);
+            int length = Math.min(source.remaining(), window.capacity() - offset);
+
+            window.put(offset, source, source.position(), length);
+            source.position(source.position() + length);
+            position += length;
+
+            if (writtenRanges[index].add(offset, offset + length)) {
+                window.force();
+                windows.set(index, null);
+            }
+        }
+    }
+
+    /**
+     * Records a range the destination file already holds, so that the windows it completes are not
+     * kept mapped.
+     */
+    @Override
+    public void markWritten(long position, long length) {
+        long end = Math.min(position + length, fileSize);
+        while (position < end) {
+            int index = (int) (position / WINDOW_SIZE);
+            long windowEnd = Math.min((index + 1) * WINDOW_SIZE, end);
+            writtenRanges[index].add(position % WINDOW_SIZE, windowEnd - index * WINDOW_SIZE);
+            position = windowEnd;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        for (int i = 0; i < windows.length(); i++) {
+            MappedByteBuffer window = windows.get(i);
+            if (window != null) {
+                window.force();
+            }
+        }
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < windows.length(); i++) {
+            windows.set(i, null);
+        }
+        channel.close();
+    }
+
+    /**
+     * @return the number of windows that are currently mapped.
+     */
+    int getMappedWindows() {
+        int mapped = 0;
+        for (int i = 0; i < windows.length(); i++) {
+            if (windows.get(i) != null) {
+                mapped++;
+            }
+        }
+        return mapped;
+    }
+
+    /**
+     * Returns the mapped window with the given index, mapping it if no segment has written into it yet.
+     */
+    private MappedByteBuffer window(int index) throws IOException {
+        MappedByteBuffer window = windows.get(index);
+        if (window != null) {
+            return window;
+        }
+        synchronized (this) {
+            window = windows.get(index);
+            if (window == null) {
+                long start = index * WINDOW_SIZE;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(WINDOW_SIZE, fileSize - start));
+                windows.set(index, window);
+            }
+            return window;
+        }
+    }
+
+    /**
+     * The written ranges of one window, merged into disjoint ranges as they are added.
+     */
+    private static final class WrittenRanges {
+
+        private final long size;
+
+        /**
+         * The start offset of every written range, mapped to its exclusive end offset.
+         */
+        private final TreeMap<Long, Long> ranges = new TreeMap<>();
+
+        WrittenRanges(long size) {
+            this.size = size;
+        }
+
+        /**
+         * Records the range {@code [start, end)} of the window as written.
+         *
+         * @return {@code true} if every byte of the window has been written.
+         */
+        synchronized boolean add(long start, long end) {
+            Map.Entry<Long, Long> previous = ranges.floorEntry(start);
+            if (previous != null && previous.getValue() >= start) {
+                start = previous.getKey();
+                end = Math.max(end, previous.getValue());
+            }
+            Map.Entry<Long, Long> next;
+            while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+                end = Math.max(end, next.getValue());
+                ranges.remove(next.getKey());
+            }
+            ranges.put(start, end);
+            return start == 0 && end >= size;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.habbashx.manager.journal;
+
+import com.habbashx.manager.segment.Segment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A sidecar file next to a partially downloaded file that records which ranges of it are still
+ * missing, so that an interrupted parallel download can be resumed instead of started over.
+ *
+ * The journal holds the URL, the total size and the validator (strong {@code ETag} or
+ * {@code Last-Modified}) of the remote file, followed by the table of missing ranges. It stays small
+ * no matter how large the file is: one pair of offsets per unfinished segment. It is rewritten as a
+ * whole on every checkpoint, to a temporary file that is synced and then moved over the previous
+ * journal, so a crash in the middle of a checkpoint leaves the previous journal intact.
+ *
+ * A journal must only be saved once the ranges it does not list have been flushed to the destination
+ * file, otherwise it could claim bytes that never reached the storage device.
+ */
+public class DownloadJournal {
+
+    /**
+     * The extension appended to the destination file name to form the journal file name.
+     */
+    public static final String EXTENSION = ".dmjournal";
+
+    /**
+     * Marks the start of a journal file ("DMJ1"), to reject files that are not journals or were
+     * written by an incompatible version.
+     */
+    private static final int MAGIC = 0x444D4A31;
+
+    private final Path journalPath;
+    private final String url;
+    private final long fileSize;
+
+    /**
+     * The strong entity tag or the last modification date of the remote file, sent as
+     * {@code If-Range} with every range request of a resumed download.
+     */
+    private final String validator;
+
+    /**
+     * The missing ranges read from an existing journal. Empty for a journal that has not been saved yet.
+     */
+    private final List<Segment> segments;
+
+    /**
+     * Creates the journal of a download that has not been checkpointed yet.
+     *
+     * @param destination the file the download is written to.
+     * @param url         the URL of the remote file.
+     * @param fileSize    the total size of the remote file in bytes.
+     * @param validator   the strong entity tag or the last modification date of the remote file.
+     */
+    public DownloadJournal(Path destination, String url, long fileSize, String validator) {
+        this(pathOf(destination), url, fileSize, validator, List.of());
+    }
+
+    private DownloadJournal(Path journalPath, String url, long fileSize, String validator, List<Segment> segments) {
+        this.journalPath = journalPath;
+        this.url = url;
+        this.fileSize = fileSize;
+        this.validator = validator;
+        this.segments = segments;
+    }
+
+    /**
+     * @param destination the file a download is written to.
+     * @return the path of the journal of that download.
+     */
+    public static Path pathOf(Path destination) {
+        return Path.of(destination.toString() + EXTENSION);
+    }
+
+    /**
+     * Reads the journal of the download written to the given file.
+     *
+     * @param destination the file the download is written to.
+     * @return the journal, or {@code null} if there is none.
+     * @throws IOException if the journal exists but cannot be read or is not a valid journal.
+     */
+    public static DownloadJournal load(Path destination) throws IOException {
+        Path journalPath = pathOf(destination);
+        try (InputStream inputStream = Files.newInputStream(journalPath);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream))) {
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a download journal: " + journalPath);
+            }
+            String url = in.readUTF();
+            long fileSize = in.readLong();
+            String validator = in.readUTF();
+            int count = in.readInt();
+            List<Segment> segments = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long start = in.readLong();
+                long end = in.readLong();
+                if (start < 0 || end < start || end >= fileSize) {
+                    throw new IOException("corrupted download journal: " + journalPath);
+                }
+                segments.add(new Segment(start, end));
+            }
+            return new DownloadJournal(journalPath, url, fileSize, validator, segments);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether this journal describes the same remote file as the one about to be downloaded.
+     * A journal without validator never matches, because an unchanged file cannot be told apart from
+     * a changed one of the same size.
+     *
+     * @param url       the URL of the remote file.
+     * @param fileSize  the current total size of the remote file.
+     * @param validator the current validator of the remote file, may be {@code null}.
+     * @return {@code true} if the missing ranges of this journal can be resumed.
+     */
+    public boolean matches(String url, long fileSize, String validator) {
+        return this.url.equals(url)
+                && this.fileSize == fileSize
+                && !this.validator.isEmpty()
+                && this.validator.equals(validator);
+    }
+
+    /**
+     * Saves the given missing ranges as the new state of the download.
+     *
+     * @param missing the ranges that have not been written to the destination file yet.
+     * @throws IOException if the journal cannot be written.
+     */
+    public synchronized void save(List<Segment> missing) throws IOException {
+        Path temporary = temporaryPath();
+        try (FileOutputStream outputStream = new FileOutputStream(temporary.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+
+            out.writeInt(MAGIC);
+            out.writeUTF(url);
+            out.writeLong(fileSize);
+            out.writeUTF(validator == null ? "" : validator);
+            out.writeInt(missing.size());
+            for (Segment segment : missing) {
+                out.writeLong(segment.getStart());
+                out.writeLong(segment.getEnd());
+            }
+            out.flush();
+            outputStream.getFD().sync();
+        }
+        Files.move(temporary, journalPath, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the journal, once the download has completed or can no longer be resumed.
+     *
+     * @throws IOException if the journal exists but cannot be deleted.
+     */
+    public synchronized void delete() throws IOException {
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(temporaryPath());
+    }
+
+    /**
+     * @return the ranges that were missing when the journal was last saved.
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public String getValidator() {
+        return validator;
+    }
+
+    /**
+     * @return the file a checkpoint is written to before it replaces the journal.
+     */
+    private Path temporaryPath() {
+        return Path.of(journalPath.toString() + ".tmp");
+    }
+}
@@ -0,0 +1,137 @@
+package com.habbashx.manager.mirror;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One of the URLs a download can fetch its ranges from, with the statistics its score is computed from.
+ *
+ * The throughput of a mirror is measured per connection: servers that cap the speed of every
+ * connection serve each additional connection at the same speed, so the per-connection throughput is
+ * what another segment can expect from the mirror, and it only drops once the mirror as a whole is
+ * saturated.
+ */
+public class Mirror {
+
+    /**
+     * The weight of the latest sample in the smoothed throughput.
+     */
+    private static final double SMOOTHING = 0.3;
+
+    private final String url;
+    private final String validator;
+
+    private final AtomicLong sampledBytes = new AtomicLong();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * The smoothed throughput per connection in bytes per second, {@code -1} until it has been measured.
+     */
+    private volatile double throughput = -1;
+    private volatile boolean dropped;
+
+    /**
+     * @param url       the URL of the file on the mirror.
+     * @param validator the validator of the file on the mirror, sent as {@code If-Range}, or {@code null}.
+     */
+    public Mirror(String url, String validator) {
+        this.url = url;
+        this.validator = validator;
+    }
+
+    /**
+     * Accounts for bytes received from the mirror.
+     *
+     * @param bytes the number of bytes received.
+     */
+    public void addBytes(long bytes) {
+        sampledBytes.addAndGet(bytes);
+    }
+
+    /**
+     * Folds the bytes received since the previous sample into the throughput. A mirror without
+     * connections keeps its throughput, so it is tried again once the others are slower.
+     *
+     * @param intervalMillis the time since the previous sample, in milliseconds.
+     */
+    void sample(long intervalMillis) {
+        long bytes = sampledBytes.getAndSet(0);
+        int connections = activeConnections.get();
+        if (connections == 0 || intervalMillis <= 0) {
+            return;
+        }
+        double current = bytes * 1000.0 / intervalMillis / connections;
+        throughput = throughput < 0 ? current : SMOOTHING * current + (1 - SMOOTHING) * throughput;
+    }
+
+    /**
+     * @return how much another connection to the mirror is expected to receive per second. A mirror
+     *         that has not been measured yet scores highest, so that every mirror is tried.
+     */
+    double score() {
+        return throughput < 0 ? Double.MAX_VALUE : throughput / (1 + consecutiveFailures.get());
+    }
+
+    void onAcquire() {
+        activeConnections.incrementAndGet();
+        attempts.incrementAndGet();
+    }
+
+    void onRelease() {
+        activeConnections.decrementAndGet();
+    }
+
+    void onSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    void onFailure() {
+        failures.incrementAndGet();
+        consecutiveFailures.incrementAndGet();
+    }
+
+    void drop() {
+        dropped = true;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getValidator() {
+        return validator;
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public int getAttempts() {
+        return attempts.get();
+    }
+
+    public int getFailures() {
+        return failures.get();
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /**
+     * @return the smoothed throughput per connection in bytes per second, {@code -1} if not measured yet.
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * @return {@code true} once the mirror has been dropped from its download.
+     */
+    public boolean isDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,147 @@
+package com.habbashx.manager.mirror;
+
+import com.habbashx.logger.Logger;
+
+import java.util.List;
+
+/**
+ * The mirrors of one download, and the policy that spreads its range requests across them.
+ *
+ * Every attempt of a segment asks the set for a mirror and gets the one with the best score: the
+ * smoothed throughput per connection it has shown, lowered by its recent failures. New mirrors score
+ * highest until they have been measured, and among equal scores the mirror with the fewest connections
+ * wins, so the first segments are spread evenly. From then on, fast mirrors get more of the segments,
+ * until so many connections share them that another mirror serves a connection faster.
+ *
+ * A mirror that fails {@link #MAX_CONSECUTIVE_FAILURES} times in a row, or more than half of its
+ * attempts once it has made {@link #MIN_ATTEMPTS_FOR_ERROR_RATE} of them, is dropped: it gets no more
+ * segments, and the segments that failed on it are retried on the others. The last mirror is never
+ * dropped, so a download with a single URL behaves as before.
+ */
+public class MirrorSet {
+
+    static final int MAX_CONSECUTIVE_FAILURES = 3;
+    static final int MIN_ATTEMPTS_FOR_ERROR_RATE = 6;
+
+    private final List<Mirror> mirrors;
+    private final Logger logger;
+
+    private long lastSample = System.currentTimeMillis();
+
+    /**
+     * @param mirrors the mirrors, at least one.
+     * @param logger  the logger dropped mirrors are reported to.
+     */
+    public MirrorSet(List<Mirror> mirrors, Logger logger) {
+        if (mirrors.isEmpty()) {
+            throw new IllegalArgumentException("a download needs at least one mirror");
+        }
+        this.mirrors = List.copyOf(mirrors);
+        this.logger = logger;
+    }
+
+    /**
+     * Chooses the mirror for the next attempt of a segment. The caller must {@link #release(Mirror)}
+     * it once the attempt is over.
+     *
+     * @return the mirror with the best score.
+     */
+    public synchronized Mirror acquire() {
+        Mirror best = null;
+        for (Mirror mirror : mirrors) {
+            if (mirror.isDropped()) {
+                continue;
+            }
+            if (best == null || mirror.score() > best.score()
+                    || mirror.score() == best.score() && mirror.getActiveConnections() < best.getActiveConnections()) {
+                best = mirror;
+            }
+        }
+        best.onAcquire();
+        return best;
+    }
+
+    public void release(Mirror mirror) {
+        mirror.onRelease();
+    }
+
+    /**
+     * Records that an attempt on the mirror delivered its range.
+     */
+    public void onSuccess(Mirror mirror) {
+        mirror.onSuccess();
+    }
+
+    /**
+     * Records that an attempt on the mirror failed, dropping the mirror if it fails too often.
+     *
+     * @return {@code true} if the mirror has been dropped.
+     */
+    public synchronized boolean onFailure(Mirror mirror) {
+        mirror.onFailure();
+        boolean failing = mirror.getConsecutiveFailures() >= MAX_CONSECUTIVE_FAILURES
+                || mirror.getAttempts() >= MIN_ATTEMPTS_FOR_ERROR_RATE && mirror.getFailures() * 2 > mirror.getAttempts();
+        return failing && drop(mirror, "failed " + mirror.getFailures() + " of " + mirror.getAttempts() + " attempts");
+    }
+
+    /**
+     * Drops a mirror, unless it is the last one.
+     *
+     * @param reason why the mirror is dropped, for the log.
+     * @return {@code true} if the mirror has been dropped, or had been already.
+     */
+    public synchronized boolean drop(Mirror mirror, String reason) {
+        if (mirror.isDropped()) {
+            return true;
+        }
+        if (getLiveMirrors() == 1) {
+            return false;
+        }
+        mirror.drop();
+        logger.warning("dropping mirror " + mirror.getUrl() + ": " + reason);
+        return true;
+    }
+
+    /**
+     * Updates the throughput of every mirror from the bytes received since the previous call. Called
+     * periodically while the download runs.
+     */
+    public synchronized void sample() {
+        long now = System.currentTimeMillis();
+        for (Mirror mirror : mirrors) {
+            mirror.sample(now - lastSample);
+        }
+        lastSample = now;
+    }
+
+    /**
+     * @return the number of mirrors that have not been dropped.
+     */
+    public synchronized int getLiveMirrors() {
+        int live = 0;
+        for (Mirror mirror : mirrors) {
+            if (!mirror.isDropped()) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    public List<Mirror> getMirrors() {
+        return mirrors;
+    }
+
+    /**
+     * Compares the validators of the same file on two mirrors. Strong entity tags must be equal; dates
+     * of last modification are not compared, because every mirror records the time it copied the file.
+     *
+     * @return {@code false} if the validators show that the mirrors serve different files.
+     */
+    public static boolean sameValidator(String validator, String mirrorValidator) {
+        if (validator == null || mirrorValidator == null
+                || !validator.startsWith("\"") || !mirrorValidator.startsWith("\"")) {
+            return true;
+        }
+        return validator.equals(mirrorValidator);
+    }
+}
@@ -0,0 +1,89 @@
+package com.habbashx.manager.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether a failed transfer is retried and how long to wait before the next attempt.
+ *
+ * A policy belongs to one download. It allows a number of consecutive failures of the same transfer
+ * (the count starts over once the transfer makes progress again), and a retry budget shared by every
+ * segment of the download, so that a server that keeps dropping connections cannot keep the download
+ * retrying forever.
+ *
+ * Delays grow exponentially from {@link #BASE_DELAY} up to {@link #MAX_DELAY}. Only half of each delay
+ * is fixed and the other half is random, so segments that failed together, for example after a
+ * network blip, do not reconnect to the server at the same moment.
+ *
+ * The policy is safe for concurrent use by the segments of a download.
+ */
+public class RetryPolicy {
+
+    /**
+     * The delay before the first retry, in milliseconds.
+     */
+    public static final long BASE_DELAY = 500;
+
+    /**
+     * The longest delay between two attempts, in milliseconds.
+     */
+    public static final long MAX_DELAY = 30_000;
+
+    private final int maxAttempts;
+
+    /**
+     * The number of retries the download may still make, across all of its segments.
+     */
+    private final AtomicInteger budget;
+
+    /**
+     * @param maxAttempts the number of consecutive failures of one transfer that are retried.
+     * @param budget      the total number of retries allowed for the download.
+     */
+    public RetryPolicy(int maxAttempts, int budget) {
+        this.maxAttempts = maxAttempts;
+        this.budget = new AtomicInteger(budget);
+    }
+
+    /**
+     * Decides whether a transfer that failed {@code failures} times in a row is retried, and takes
+     * the retry out of the budget if so.
+     *
+     * @param failures the number of consecutive failures of the transfer, including the last one.
+     * @return {@code true} if the transfer should be retried.
+     */
+    public boolean tryRetry(int failures) {
+        if (failures > maxAttempts) {
+            return false;
+        }
+        int remaining;
+        do {
+            remaining = budget.get();
+            if (remaining <= 0) {
+                return false;
+            }
+        } while (!budget.compareAndSet(remaining, remaining - 1));
+        return true;
+    }
+
+    /**
+     * Returns how long to wait before retrying a transfer that failed {@code failures} times in a row.
+     *
+     * @param failures the number of consecutive failures, at least {@code 1}.
+     * @return the delay in milliseconds.
+     */
+    public long backoffMillis(int failures) {
+        int exponent = Math.min(Math.max(failures, 1) - 1, 16);
+        long delay = Math.min(MAX_DELAY, BASE_DELAY << exponent);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getRemainingBudget() {
+        return budget.get();
+    }
+}
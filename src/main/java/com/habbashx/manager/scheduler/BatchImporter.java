@@ -0,0 +1,197 @@
+package com.habbashx.manager.scheduler;
+
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.connection.HostConnectionLimiter;
+import com.habbashx.manager.http.ContentRange;
+import com.habbashx.manager.http.HttpProtocol;
+import com.habbashx.manager.http.RangeClient;
+import com.habbashx.manager.http.RangeExchange;
+import com.habbashx.manager.urlvalidation.URLValidation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import java.net.HttpURLConnection;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports a list of URLs into a {@link DownloadScheduler} as one batch.
+ *
+ * The URLs are probed first, many at a time over keep-alive connections, for the size of their file
+ * and whether their server refuses range requests. The batch is then scheduled in the chosen
+ * {@link BatchOrder}, and every file gets the download method that suits it: files that are large
+ * enough get the configured method, while small files and files whose server answers
+ * {@code Accept-Ranges: none} are downloaded over a single connection, which saves the probe and the
+ * planning of a parallel download. Many servers serve ranges without announcing it, so a missing
+ * {@code Accept-Ranges} header does not keep a file from the configured method; a parallel download
+ * falls back to a single stream by itself when the server ignores its ranges.
+ *
+ * Probes hold a permit of the {@link HostConnectionLimiter} like any other connection, so probing a
+ * batch from one server never opens more connections to it than its limit.
+ */
+public class BatchImporter {
+
+    private static final String SINGLE_METHOD = "single";
+
+    private final Logger logger = new Logger();
+
+    private final RangeClient client;
+    private final String downloadMethod;
+    private final long singleThreshold;
+    private final int parallelism;
+
+    /**
+     * @param downloadMethod  the download method of files that can be split.
+     * @param singleThreshold the size in bytes below which files are downloaded over a single connection.
+     * @param parallelism     the number of URLs probed at the same time.
+     * @param connectTimeout  the connect timeout of the probes in milliseconds, {@code 0} for none.
+     * @param stallTimeout    the longest time in milliseconds a probe may wait for a response, {@code 0} for none.
+     */
+    public BatchImporter(String downloadMethod, long singleThreshold, int parallelism, int connectTimeout,
+                         int stallTimeout) {
+        this.client = HttpProtocol.HTTP_1_1.newClient(connectTimeout, stallTimeout);
+        this.downloadMethod = downloadMethod;
+        this.singleThreshold = singleThreshold;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Reads a list of URLs, one per line. Blank lines and lines starting with {@code #} are skipped,
+     * and so are URLs that are listed more than once.
+     *
+     * @param reader the list.
+     * @return the URLs, in the order of the list.
+     * @throws IOException if the list cannot be read.
+     */
+    public static List<String> readURLs(BufferedReader reader) throws IOException {
+        Set<String> urls = new LinkedHashSet<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                urls.add(line);
+            }
+        }
+        return new ArrayList<>(urls);
+    }
+
+    /**
+     * Probes the valid URLs of the list, skipping the others with a warning.
+     *
+     * A URL that cannot be probed, for example because its server refuses {@code HEAD} requests, is
+     * still part of the result, as a file of unknown size that cannot be split.
+     *
+     * @param urls the URLs to probe.
+     * @return the probed files, in the order of the list.
+     * @throws InterruptedException if the thread is interrupted while waiting for the probes.
+     */
+    public List<ProbedFile> probe(List<String> urls) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, urls.size())));
+        try {
+            List<Future<ProbedFile>> probes = new ArrayList<>(urls.size());
+            for (String url : urls) {
+                if (URLValidation.isValidURL(url)) {
+                    probes.add(executor.submit(() -> probe(url)));
+                } else {
+                    logger.warning("skipping invalid URL: " + url);
+                }
+            }
+            List<ProbedFile> files = new ArrayList<>(probes.size());
+            for (Future<ProbedFile> probe : probes) {
+                try {
+                    files.add(probe.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return files;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ProbedFile probe(String url) throws InterruptedException {
+        HostConnectionLimiter.Permit permit = HostConnectionLimiter.getInstance().acquire(url);
+        try (permit; RangeExchange exchange = client.head(url)) {
+            int responseCode = exchange.send();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                logger.warning("probe of " + url + " answered " + responseCode);
+                return new ProbedFile(url, -1, false);
+            }
+            boolean acceptsRanges = !"none".equalsIgnoreCase(exchange.getHeader("Accept-Ranges"));
+            return new ProbedFile(url, ContentRange.totalSizeOf(exchange), acceptsRanges);
+        } catch (IOException e) {
+            logger.warning("could not probe " + url + ": " + e.getMessage());
+            return new ProbedFile(url, -1, false);
+        }
+    }
+
+    /**
+     * Schedules the probed files in the given order, each with the download method that suits it.
+     *
+     * @param files     the probed files.
+     * @param order     the order to schedule them in.
+     * @param scheduler the scheduler to run them.
+     * @return the scheduled jobs.
+     * @throws IOException if the files cannot be recorded in the download queue.
+     */
+    public List<DownloadJob> schedule(List<ProbedFile> files, BatchOrder order, DownloadScheduler scheduler)
+            throws IOException {
+        List<ProbedFile> ordered = new ArrayList<>(files);
+        ordered.sort(order.comparator());
+        Map<String, String> downloadMethods = new LinkedHashMap<>();
+        for (ProbedFile file : ordered) {
+            downloadMethods.put(file.getUrl(), downloadMethodOf(file));
+        }
+        return scheduler.submitAll(downloadMethods, DownloadPriority.NORMAL);
+    }
+
+    private String downloadMethodOf(ProbedFile file) {
+        return file.acceptsRanges() && file.getSize() >= singleThreshold ? downloadMethod : SINGLE_METHOD;
+    }
+
+    /**
+     * What a probe found out about the file of a URL.
+     */
+    public static class ProbedFile {
+
+        private final String url;
+        private final long size;
+        private final boolean acceptsRanges;
+
+        ProbedFile(String url, long size, boolean acceptsRanges) {
+            this.url = url;
+            this.size = size;
+            this.acceptsRanges = acceptsRanges;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return the size of the file in bytes, or {@code -1} if it is unknown.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return {@code false} if the server of the file refuses range requests, or could not be probed,
+         *         {@code true} if it may accept them.
+         */
+        public boolean acceptsRanges() {
+            return acceptsRanges;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.habbashx.manager.scheduler;
+
+import com.habbashx.exception.NoSuchBatchOrderException;
+
+import java.util.Comparator;
+
+/**
+ * The order the downloads of a batch are scheduled in, once their sizes are known.
+ *
+ * Enumerated Constants:
+ * - SHORTEST_FIRST: The smallest files first, which finishes the most files soonest and keeps the
+ *   connections of the scheduler busy with many short transfers while the large files wait.
+ * - LARGEST_FIRST: The largest files first, which starts the longest transfers early so that the
+ *   batch does not end with a single large file downloading alone.
+ * - LISTED: The order of the list.
+ *
+ * Files of unknown size are scheduled last in either of the size orders.
+ */
+public enum BatchOrder {
+    SHORTEST_FIRST,
+    LARGEST_FIRST,
+    LISTED;
+
+    /**
+     * Returns the order with the given name, ignoring case.
+     *
+     * @param order the name of the order: "shortest", "largest" or "listed".
+     * @return the order with that name.
+     * @throws NoSuchBatchOrderException if no order has that name.
+     */
+    public static BatchOrder of(String order) throws NoSuchBatchOrderException {
+        return switch (order.toLowerCase()) {
+            case "shortest" -> SHORTEST_FIRST;
+            case "largest" -> LARGEST_FIRST;
+            case "listed" -> LISTED;
+            default -> throw new NoSuchBatchOrderException("no such batch order: " + order);
+        };
+    }
+
+    /**
+     * @return the comparator that sorts probed files in this order. The sort is stable, so files of
+     *         the same size keep the order of the list.
+     */
+    Comparator<BatchImporter.ProbedFile> comparator() {
+        Comparator<BatchImporter.ProbedFile> unknownLast = Comparator.comparing(file -> file.getSize() < 0);
+        return switch (this) {
+            case SHORTEST_FIRST -> unknownLast.thenComparingLong(BatchImporter.ProbedFile::getSize);
+            case LARGEST_FIRST -> unknownLast.thenComparing(
+                    Comparator.comparingLong(BatchImporter.ProbedFile::getSize).reversed());
+            case LISTED -> (first, second) -> 0;
+        };
+    }
+}
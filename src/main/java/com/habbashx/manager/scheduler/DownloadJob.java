@@ -0,0 +1,43 @@
+package com.habbashx.manager.scheduler;
+
+import java.util.Comparator;
+
+/**
+ * A download waiting in, or run from, the {@link DownloadQueue}.
+ *
+ * Jobs are ordered by priority, and jobs of the same priority in the order they were queued.
+ */
+public class DownloadJob {
+
+    /**
+     * Orders jobs from the most to the least urgent.
+     */
+    public static final Comparator<DownloadJob> URGENCY = Comparator
+            .comparing(DownloadJob::getPriority)
+            .thenComparingLong(DownloadJob::getId);
+
+    private final long id;
+    private final String url;
+    private final DownloadPriority priority;
+
+    public DownloadJob(long id, String url, DownloadPriority priority) {
+        this.id = id;
+        this.url = url;
+        this.priority = priority;
+    }
+
+    /**
+     * @return the number of the job, unique within its queue and increasing in queueing order.
+     */
+    public long getId() {
+        return id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public DownloadPriority getPriority() {
+        return priority;
+    }
+}
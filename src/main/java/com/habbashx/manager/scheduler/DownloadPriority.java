@@ -0,0 +1,34 @@
+package com.habbashx.manager.scheduler;
+
+import com.habbashx.exception.NoSuchPriorityException;
+
+/**
+ * Represents how urgent a scheduled download is.
+ *
+ * Enumerated Constants:
+ * - HIGH: Started before any other waiting download, and served first when the connections of the
+ *   scheduler are shared out, taking them away from running downloads of lower priority.
+ * - NORMAL: The priority of downloads that are given none.
+ * - LOW: Bulk downloads, which only get the connections no other download needs.
+ */
+public enum DownloadPriority {
+    HIGH,
+    NORMAL,
+    LOW;
+
+    /**
+     * Returns the priority with the given name, ignoring case.
+     *
+     * @param priority the name of the priority: "high", "normal" or "low".
+     * @return the priority with that name.
+     * @throws NoSuchPriorityException if no priority has that name.
+     */
+    public static DownloadPriority of(String priority) throws NoSuchPriorityException {
+        return switch (priority.toLowerCase()) {
+            case "high" -> HIGH;
+            case "normal" -> NORMAL;
+            case "low" -> LOW;
+            default -> throw new NoSuchPriorityException("no such priority: " + priority);
+        };
+    }
+}
@@ -0,0 +1,229 @@
+package com.habbashx.manager.scheduler;
+
+import com.habbashx.exception.NoSuchPriorityException;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The durable list of scheduled downloads, kept in an append-only file so that the queue survives a
+ * restart of the download manager.
+ *
+ * Every change is appended to the file as one line and synced before the call returns: an {@code A}
+ * line adds a job with its number, priority and URL, a {@code D} line removes the job with the given
+ * number once it is done. Appending never rewrites what is already on disk, so a crash can at worst
+ * leave a torn last line without line break, which is ignored when the file is read back. The file is compacted to the
+ * jobs still pending every time the queue is opened.
+ *
+ * An open queue holds a lock on a {@code .lock} file next to the queue file until it is closed, so that
+ * only one download manager process at a time compacts the file and appends to it. Another process
+ * opening the queue meanwhile fails instead of replacing the file under the first one, whose records
+ * would then go to the replaced file while both ran the same jobs.
+ */
+public class DownloadQueue implements Closeable {
+
+    /**
+     * The name of the queue file in the working directory.
+     */
+    public static final String FILE_NAME = "downloadQueue.log";
+
+    private static final String ADD = "A";
+    private static final String DONE = "D";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final FileChannel lockChannel;
+
+    /**
+     * The pending jobs by number, in queueing order.
+     */
+    private final Map<Long, DownloadJob> pending;
+    private long nextId;
+
+    private DownloadQueue(Path path, FileChannel lockChannel, Map<Long, DownloadJob> pending, long nextId)
+            throws IOException {
+        this.path = path;
+        this.lockChannel = lockChannel;
+        this.pending = pending;
+        this.nextId = nextId;
+        this.channel = FileChannel.open(path, CREATE, WRITE, APPEND);
+    }
+
+    /**
+     * Opens the queue stored in the given file, creating an empty one if the file does not exist.
+     *
+     * @param path the queue file.
+     * @return the queue, holding the jobs that were pending when it was last used.
+     * @throws IOException if the queue is open in another download manager process, or the file cannot
+     *                     be read or compacted, or is corrupted.
+     */
+    public static DownloadQueue open(Path path) throws IOException {
+        FileChannel lockChannel = FileChannel.open(Path.of(path + ".lock"), CREATE, WRITE);
+        try {
+            // held until the queue is closed, released with the channel
+            if (lockChannel.tryLock() == null) {
+                throw new IOException("the download queue is used by another download manager process: " + path);
+            }
+            return open(path, lockChannel);
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    private static DownloadQueue open(Path path, FileChannel lockChannel) throws IOException {
+        Map<Long, DownloadJob> pending = new LinkedHashMap<>();
+        long nextId = 1;
+        String content;
+        try {
+            content = Files.readString(path, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            content = "";
+        }
+        // only complete lines count, the last one may have been torn by a crash while it was appended
+        String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            try {
+                if (fields[0].equals(ADD) && fields.length == 4) {
+                    long id = Long.parseLong(fields[1]);
+                    pending.put(id, new DownloadJob(id, fields[3], DownloadPriority.of(fields[2])));
+                    nextId = Math.max(nextId, id + 1);
+                } else if (fields[0].equals(DONE) && fields.length == 2) {
+                    pending.remove(Long.parseLong(fields[1]));
+                }
+            } catch (NumberFormatException | NoSuchPriorityException e) {
+                throw new IOException("corrupted download queue: " + path, e);
+            }
+        }
+
+        compact(path, pending.values());
+        return new DownloadQueue(path, lockChannel, pending, nextId);
+    }
+
+    /**
+     * Replaces the queue file with one that only adds the given jobs.
+     */
+    private static void compact(Path path, Iterable<DownloadJob> jobs) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (DownloadJob job : jobs) {
+            content.append(addRecord(job));
+        }
+        Path temporary = Path.of(path + ".tmp");
+        try (FileChannel temporaryChannel = FileChannel.open(temporary, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                temporaryChannel.write(buffer);
+            }
+            temporaryChannel.force(true);
+        }
+        Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private static String addRecord(DownloadJob job) {
+        return ADD + "\t" + job.getId() + "\t" + job.getPriority() + "\t" + job.getUrl() + "\n";
+    }
+
+    /**
+     * Adds a download to the queue.
+     *
+     * @param url      the URL of the file to download. Must not contain tabs or line breaks.
+     * @param priority the priority of the download.
+     * @return the queued job.
+     * @throws IOException if the job cannot be recorded.
+     */
+    public synchronized DownloadJob add(String url, DownloadPriority priority) throws IOException {
+        requireRecordable(url);
+        DownloadJob job = new DownloadJob(nextId++, url, priority);
+        append(addRecord(job));
+        pending.put(job.getId(), job);
+        return job;
+    }
+
+    /**
+     * Adds several downloads to the queue, in the given order, syncing the file once for all of them.
+     *
+     * @param urls     the URLs of the files to download. Must not contain tabs or line breaks.
+     * @param priority the priority of the downloads.
+     * @return the queued jobs, in the order of the URLs.
+     * @throws IOException if the jobs cannot be recorded.
+     */
+    public synchronized List<DownloadJob> addAll(List<String> urls, DownloadPriority priority) throws IOException {
+        urls.forEach(DownloadQueue::requireRecordable);
+        List<DownloadJob> jobs = new ArrayList<>(urls.size());
+        StringBuilder records = new StringBuilder();
+        for (String url : urls) {
+            DownloadJob job = new DownloadJob(nextId++, url, priority);
+            records.append(addRecord(job));
+            jobs.add(job);
+        }
+        append(records.toString());
+        jobs.forEach(job -> pending.put(job.getId(), job));
+        return jobs;
+    }
+
+    private static void requireRecordable(String url) {
+        if (url.indexOf('\t') != -1 || url.indexOf('\n') != -1 || url.indexOf('\r') != -1) {
+            throw new IllegalArgumentException("URL contains a tab or a line break: " + url);
+        }
+    }
+
+    /**
+     * Removes a download from the queue once it has completed or failed.
+     *
+     * @param job the job to remove.
+     * @throws IOException if the removal cannot be recorded.
+     */
+    public synchronized void remove(DownloadJob job) throws IOException {
+        if (pending.remove(job.getId()) != null) {
+            append(DONE + "\t" + job.getId() + "\n");
+        }
+    }
+
+    private void append(String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * @return the pending jobs, in queueing order.
+     */
+    public synchronized List<DownloadJob> getPendingJobs() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            lockChannel.close();
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package com.habbashx.manager.scheduler;
+
+import com.habbashx.exception.InvalidURLException;
+import com.habbashx.exception.NoSuchAnimationException;
+import com.habbashx.exception.NoSuchDownloadMethodException;
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.DownloadTask;
+import com.habbashx.manager.DownloadTaskFactory;
+import com.habbashx.manager.urlvalidation.URLValidation;
+
+import java.io.IOException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs many downloads at once, in the order of their priority, under a global connection budget.
+ *
+ * Every download is recorded in a {@link DownloadQueue} before it is scheduled and removed from it once
+ * it has finished, so downloads that were still waiting or running when the download manager stopped
+ * can be scheduled again with {@link #resumePending()}; a running download then continues from its
+ * journal.
+ *
+ * The budget is the number of connections all running downloads may use together. A download needs at
+ * least one connection, so at most that many downloads run at the same time, and the others wait, the
+ * most urgent first. The connections beyond the first of every download are shared out by priority:
+ * the most urgent running download gets as many as it can use, then the next one, and so on. They are
+ * shared out again whenever a download starts or finishes, so a download of high priority that starts
+ * takes connections away from running downloads of lower priority, which close them right away.
+ *
+ * Every download runs with the download method of the scheduler, unless it was submitted with a method
+ * of its own. A task that has finished its download is kept and runs the next download of the same
+ * method, so a long batch creates no more tasks than downloads run at the same time.
+ *
+ * Downloads can be paused, resumed and stopped by their job number. A paused download that is running
+ * keeps its connections and its place; a paused download that is waiting is not started until it is
+ * resumed. A stopped download is removed from the queue.
+ */
+public class DownloadScheduler {
+
+    private final DownloadQueue queue;
+    private final String downloadMethod;
+    private final int connectionBudget;
+
+    private final Logger logger = new Logger();
+
+    private final PriorityQueue<DownloadJob> waiting = new PriorityQueue<>(DownloadJob.URGENCY);
+    private final Map<DownloadJob, DownloadTask> running = new LinkedHashMap<>();
+    private final Map<DownloadJob, String> downloadMethods = new HashMap<>();
+    private final Map<String, Deque<DownloadTask>> idleTasks = new HashMap<>();
+
+    /**
+     * The running downloads that are paused, and the waiting downloads that are held back until they
+     * are resumed.
+     */
+    private final Set<DownloadJob> paused = new HashSet<>();
+    private final Set<DownloadJob> held = new HashSet<>();
+
+    /**
+     * The running downloads that have been stopped. Their tasks stay stopped, so they are not reused.
+     */
+    private final Set<DownloadJob> stopped = new HashSet<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * @param queue            the durable queue the downloads are recorded in.
+     * @param downloadMethod   the download method of every download, see {@link DownloadTaskFactory}.
+     * @param connectionBudget the number of connections all running downloads may use together.
+     */
+    public DownloadScheduler(DownloadQueue queue, String downloadMethod, int connectionBudget) {
+        this.queue = queue;
+        this.downloadMethod = downloadMethod;
+        this.connectionBudget = Math.max(1, connectionBudget);
+    }
+
+    /**
+     * Records a download in the queue and schedules it.
+     *
+     * @param url      the URL of the file to download.
+     * @param priority the priority of the download.
+     * @return the scheduled job.
+     * @throws InvalidURLException if the URL is invalid.
+     * @throws IOException if the download cannot be recorded in the queue.
+     */
+    public synchronized DownloadJob submit(String url, DownloadPriority priority) throws IOException {
+        if (!URLValidation.isValidURL(url)) {
+            throw new InvalidURLException(url);
+        }
+        DownloadJob job = queue.add(url, priority);
+        waiting.add(job);
+        schedule();
+        return job;
+    }
+
+    /**
+     * Records several downloads in the queue at once and schedules them in the given order, which is
+     * the order they start in among downloads of the same priority.
+     *
+     * @param downloadMethods the download method of every download, by URL.
+     * @param priority        the priority of the downloads.
+     * @return the scheduled jobs.
+     * @throws InvalidURLException if one of the URLs is invalid, in which case none is scheduled.
+     * @throws IOException if the downloads cannot be recorded in the queue.
+     */
+    public synchronized List<DownloadJob> submitAll(Map<String, String> downloadMethods, DownloadPriority priority)
+            throws IOException {
+        for (String url : downloadMethods.keySet()) {
+            if (!URLValidation.isValidURL(url)) {
+                throw new InvalidURLException(url);
+            }
+        }
+        List<DownloadJob> jobs = queue.addAll(new ArrayList<>(downloadMethods.keySet()), priority);
+        for (DownloadJob job : jobs) {
+            this.downloadMethods.put(job, downloadMethods.get(job.getUrl()));
+            waiting.add(job);
+        }
+        schedule();
+        return jobs;
+    }
+
+    /**
+     * Schedules the downloads that are still pending in the queue from a previous run.
+     */
+    public synchronized void resumePending() {
+        for (DownloadJob job : queue.getPendingJobs()) {
+            if (!running.containsKey(job) && !waiting.contains(job) && !held.contains(job)) {
+                waiting.add(job);
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Waits until every scheduled download has finished.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (!waiting.isEmpty() || !held.isEmpty() || !running.isEmpty()) {
+            wait();
+        }
+    }
+
+    /**
+     * Pauses a download.
+     *
+     * @param id the number of the job.
+     * @return {@code false} if no scheduled download has that number.
+     */
+    public synchronized boolean pause(long id) {
+        DownloadJob job = findJob(id);
+        if (job == null) {
+            return false;
+        }
+        if (running.containsKey(job)) {
+            running.get(job).pauseDownload();
+            paused.add(job);
+        } else if (waiting.remove(job)) {
+            held.add(job);
+        }
+        return true;
+    }
+
+    /**
+     * Resumes a paused download.
+     *
+     * @param id the number of the job.
+     * @return {@code false} if no scheduled download has that number.
+     */
+    public synchronized boolean resume(long id) {
+        DownloadJob job = findJob(id);
+        if (job == null) {
+            return false;
+        }
+        if (paused.remove(job)) {
+            running.get(job).resumeDownload(job.getUrl());
+        } else if (held.remove(job)) {
+            waiting.add(job);
+            schedule();
+        }
+        return true;
+    }
+
+    /**
+     * Stops a download and removes it from the queue. A running download keeps the part of the file it
+     * has written, as it does when the download manager is stopped.
+     *
+     * @param id the number of the job.
+     * @return {@code false} if no scheduled download has that number.
+     * @throws IOException if the removal cannot be recorded in the queue.
+     */
+    public synchronized boolean stop(long id) throws IOException {
+        DownloadJob job = findJob(id);
+        if (job == null) {
+            return false;
+        }
+        if (running.containsKey(job)) {
+            stopped.add(job);
+            paused.remove(job);
+            running.get(job).stopDownload();
+        } else {
+            waiting.remove(job);
+            held.remove(job);
+            downloadMethods.remove(job);
+            queue.remove(job);
+        }
+        return true;
+    }
+
+    /**
+     * Describes every scheduled download on one line: its number, state, priority, progress and URL.
+     * Running downloads come first, then the waiting ones, the most urgent first.
+     *
+     * @return the lines, one per download.
+     */
+    public synchronized List<String> describeJobs() {
+        List<String> lines = new ArrayList<>();
+        List<DownloadJob> jobs = new ArrayList<>(running.keySet());
+        jobs.sort(DownloadJob.URGENCY);
+        for (DownloadJob job : jobs) {
+            DownloadTask task = running.get(job);
+            String state = stopped.contains(job) ? "stopping" : paused.contains(job) ? "paused" : "running";
+            String progress = task.getFileSize() > 0
+                    ? task.getDownloadedBytes() * 100 / task.getFileSize() + "% of " + task.getFileSize() / 1024 / 1024 + "MB"
+                    : task.getDownloadedBytes() / 1024 / 1024 + "MB";
+            lines.add(describe(job, state, progress + ", " + task.getConnectionLimit() + " connections"));
+        }
+        jobs = new ArrayList<>(waiting);
+        jobs.addAll(held);
+        jobs.sort(DownloadJob.URGENCY);
+        for (DownloadJob job : jobs) {
+            lines.add(describe(job, held.contains(job) ? "held" : "waiting", "-"));
+        }
+        return lines;
+    }
+
+    private static String describe(DownloadJob job, String state, String progress) {
+        return job.getId() + "\t" + state + "\t" + job.getPriority().name().toLowerCase() + "\t" + progress
+                + "\t" + job.getUrl();
+    }
+
+    private DownloadJob findJob(long id) {
+        for (DownloadJob job : running.keySet()) {
+            if (job.getId() == id) {
+                return job;
+            }
+        }
+        for (DownloadJob job : waiting) {
+            if (job.getId() == id) {
+                return job;
+            }
+        }
+        for (DownloadJob job : held) {
+            if (job.getId() == id) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stops accepting work. Downloads that are running finish first.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Starts waiting downloads while the budget allows, then shares the connections out again.
+     */
+    private void schedule() {
+        while (!waiting.isEmpty() && running.size() < connectionBudget) {
+            start(waiting.poll());
+        }
+        rebalance();
+    }
+
+    private void start(DownloadJob job) {
+        String method = downloadMethods.getOrDefault(job, downloadMethod);
+        DownloadTask task = idleTasks.computeIfAbsent(method, key -> new ArrayDeque<>()).poll();
+        if (task == null) {
+            try {
+                task = DownloadTaskFactory.getInstance(method);
+            } catch (NoSuchAnimationException | NoSuchDownloadMethodException e) {
+                logger.error("cannot start the download of " + job.getUrl() + ": " + e.getMessage());
+                downloadMethods.remove(job);
+                return;
+            }
+        }
+        running.put(job, task);
+        DownloadTask startedTask = task;
+        executor.execute(() -> run(job, startedTask));
+    }
+
+    private void run(DownloadJob job, DownloadTask task) {
+        try {
+            logger.info("starting " + job.getPriority().name().toLowerCase() + " priority download: " + job.getUrl());
+            task.downloadFile(job.getUrl());
+        } catch (RuntimeException e) {
+            logger.error("download failed: " + job.getUrl() + ": " + e.getMessage());
+        } finally {
+            finished(job, task);
+        }
+    }
+
+    /**
+     * Removes a finished download from the queue and schedules the next ones. A download that ends
+     * because the JVM is shutting down stays in the queue, so that it is resumed by the next run.
+     */
+    private synchronized void finished(DownloadJob job, DownloadTask task) {
+        running.remove(job);
+        paused.remove(job);
+        if (!stopped.remove(job)) {
+            idleTasks.get(downloadMethods.getOrDefault(job, downloadMethod)).push(task);
+        }
+        downloadMethods.remove(job);
+        if (task.isCompleted() || !isShuttingDown()) {
+            try {
+                queue.remove(job);
+            } catch (IOException e) {
+                logger.warning("could not update the download queue: " + e.getMessage());
+            }
+        }
+        schedule();
+        notifyAll();
+    }
+
+    /**
+     * Gives every running download one connection, then the rest of the budget in order of urgency.
+     */
+    private void rebalance() {
+        List<DownloadJob> jobs = new ArrayList<>(running.keySet());
+        jobs.sort(DownloadJob.URGENCY);
+        int spare = connectionBudget - jobs.size();
+        for (DownloadJob job : jobs) {
+            DownloadTask task = running.get(job);
+            int extra = Math.min(spare, Math.max(0, task.getMaxConnections() - 1));
+            task.setConnectionLimit(1 + extra);
+            spare -= extra;
+        }
+    }
+
+    /**
+     * @return {@code true} once the JVM has started to run its shutdown hooks.
+     */
+    private static boolean isShuttingDown() {
+        Thread probe = new Thread(() -> {});
+        try {
+            Runtime.getRuntime().addShutdownHook(probe);
+            Runtime.getRuntime().removeShutdownHook(probe);
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+}
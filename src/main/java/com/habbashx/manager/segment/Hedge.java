@@ -0,0 +1,41 @@
+package com.habbashx.manager.segment;
+
+/**
+ * A duplicate request for the rest of a slow segment at the end of a download, handed out by
+ * {@link SegmentPlanner#nextHedge()}. The request asks for the range the segment had left when it was
+ * hedged; once its response arrives, {@link SegmentPlanner#takeOver(Hedge)} hands it what the segment
+ * still has left by then.
+ */
+public class Hedge {
+
+    private final Segment segment;
+    private final long start;
+    private final long end;
+
+    Hedge(Segment segment, long start, long end) {
+        this.segment = segment;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return the hedged segment.
+     */
+    public Segment getSegment() {
+        return segment;
+    }
+
+    /**
+     * @return the offset of the first byte to request.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the offset of the last byte to request.
+     */
+    public long getEnd() {
+        return end;
+    }
+}
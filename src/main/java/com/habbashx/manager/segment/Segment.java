@@ -0,0 +1,226 @@
+package com.habbashx.manager.segment;
+
+/**
+ * Represents a contiguous byte range of a remote file that is downloaded by a single connection.
+ * A segment keeps track of the next byte to be written and of its inclusive end offset.
+ *
+ * The end offset is not final: the {@link SegmentPlanner} may shrink it at any time to hand the
+ * upper half of the remaining range to an idle worker. Workers therefore never write beyond what
+ * {@link #claim(int)} grants them, which keeps the original worker and the new one from writing
+ * the same bytes.
+ *
+ * Claimed bytes are not on disk yet: a worker reads a whole buffer before writing it. The segment
+ * therefore also tracks how far it has been written, which is what the download journal records.
+ *
+ * All mutable state is guarded by the segment's monitor.
+ */
+public class Segment {
+
+    private final long start;
+
+    /**
+     * The inclusive end offset of this segment. It can only move backwards, when the
+     * {@link SegmentPlanner} splits the remaining range of this segment.
+     */
+    private long end;
+
+    /**
+     * The offset of the next byte that has not been claimed by the worker downloading this segment.
+     * The segment is finished once the position moves past {@link #end}.
+     */
+    private long position;
+
+    /**
+     * The offset of the first byte that has not been written yet. Every byte before it, down to the
+     * start of the segment, is in the destination file.
+     */
+    private long written;
+
+    private boolean assigned;
+
+    /**
+     * The {@link System#nanoTime()} at which the segment was last handed to a worker, and the number
+     * of bytes claimed since then. Both are used to estimate how long the segment still needs.
+     */
+    private long assignedAt;
+    private long claimedSinceAssigned;
+
+    /**
+     * The {@link System#nanoTime()} at which the segment was finished, {@code 0} while it is not. The
+     * throughput of a finished segment is measured up to then.
+     */
+    private long finishedAt;
+
+    public Segment(long start, long end) {
+        this.start = start;
+        this.end = end;
+        this.position = start;
+        this.written = start;
+    }
+
+    /**
+     * Claims up to {@code bytes} bytes at the current position of the segment. The claimed bytes
+     * must be written at the position returned by {@link #getPosition()} before this call.
+     *
+     * @param bytes the number of bytes the worker has read from the network.
+     * @return the number of bytes the worker is allowed to write, which is less than {@code bytes}
+     *         when the segment has been shrunk, and {@code 0} when the segment is finished.
+     */
+    public synchronized int claim(int bytes) {
+        long remaining = end - position + 1;
+        if (remaining <= 0) {
+            return 0;
+        }
+        int claimed = (int) Math.min(bytes, remaining);
+        position += claimed;
+        claimedSinceAssigned += claimed;
+        if (position > end) {
+            finishedAt = System.nanoTime();
+        }
+        return claimed;
+    }
+
+    /**
+     * Gives the last {@code bytes} claimed bytes back to an unfinished segment, which has not written
+     * them, so that the next worker of the segment downloads them again.
+     *
+     * @param bytes the number of claimed bytes at the end of the claimed range that are not written.
+     * @return {@code true} if the bytes were given back, {@code false} if the segment is finished, in
+     *         which case they must be written.
+     */
+    public synchronized boolean unclaim(int bytes) {
+        if (position > end) {
+            return false;
+        }
+        position -= bytes;
+        claimedSinceAssigned -= bytes;
+        return true;
+    }
+
+    /**
+     * Records that the next {@code bytes} claimed bytes of this segment have been written to the
+     * destination file.
+     *
+     * @param bytes the number of bytes written at the current written offset.
+     */
+    public synchronized void markWritten(int bytes) {
+        written += bytes;
+    }
+
+    /**
+     * Splits the unclaimed range of this segment in half. This segment keeps the lower half and
+     * the returned segment covers the upper half.
+     *
+     * @param minimumSplitSize the smallest size each half is allowed to have.
+     * @param alignment        the value the start of the new segment must be a multiple of.
+     * @return the new segment, or {@code null} if the remaining range is too small to be split.
+     */
+    synchronized Segment split(long minimumSplitSize, long alignment) {
+        long remaining = end - position + 1;
+        if (remaining < minimumSplitSize * 2) {
+            return null;
+        }
+        long middle = (position + remaining / 2) / alignment * alignment;
+        if (middle <= position) {
+            return null;
+        }
+        Segment segment = new Segment(middle, end);
+        end = middle - 1;
+        return segment;
+    }
+
+    /**
+     * Hands the unclaimed range of this segment over to a new segment, which a hedged request for it
+     * downloads instead of the worker of this segment. This segment ends at its current position, or
+     * at the next multiple of {@code alignment} if the position is not one, and is finished then.
+     *
+     * @param alignment the value the start of the new segment must be a multiple of.
+     * @return the new segment, or {@code null} if nothing is left to hand over.
+     */
+    synchronized Segment takeOver(long alignment) {
+        long cut = (position + alignment - 1) / alignment * alignment;
+        if (cut > end) {
+            return null;
+        }
+        Segment segment = new Segment(cut, end);
+        end = cut - 1;
+        if (position > end) {
+            finishedAt = System.nanoTime();
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the throughput of this segment since it was last assigned, up to the time it finished if
+     * it has.
+     *
+     * @return the throughput in bytes per second, {@code 0} if the segment has not claimed anything.
+     */
+    synchronized double getThroughput() {
+        long until = finishedAt != 0 ? finishedAt : System.nanoTime();
+        double elapsedSeconds = (until - assignedAt) / 1_000_000_000.0;
+        return elapsedSeconds <= 0 ? 0 : claimedSinceAssigned / elapsedSeconds;
+    }
+
+    /**
+     * @return the number of seconds since the segment was last assigned.
+     */
+    synchronized double getAssignedSeconds() {
+        return (System.nanoTime() - assignedAt) / 1_000_000_000.0;
+    }
+
+    /**
+     * Estimates the number of seconds needed to finish this segment based on the throughput
+     * observed since it was assigned. A segment that has not claimed anything yet is considered
+     * infinitely slow.
+     */
+    synchronized double estimateRemainingSeconds() {
+        long remaining = end - position + 1;
+        if (remaining <= 0) {
+            return 0;
+        }
+        double elapsedSeconds = (System.nanoTime() - assignedAt) / 1_000_000_000.0;
+        if (claimedSinceAssigned == 0 || elapsedSeconds <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return remaining / (claimedSinceAssigned / elapsedSeconds);
+    }
+
+    synchronized void assign() {
+        assigned = true;
+        assignedAt = System.nanoTime();
+        claimedSinceAssigned = 0;
+    }
+
+    synchronized void unassign() {
+        assigned = false;
+    }
+
+    public synchronized boolean isAssigned() {
+        return assigned;
+    }
+
+    public synchronized boolean isFinished() {
+        return position > end;
+    }
+
+    public synchronized long getRemaining() {
+        return Math.max(0, end - position + 1);
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public synchronized long getEnd() {
+        return end;
+    }
+
+    public synchronized long getPosition() {
+        return position;
+    }
+
+    public synchronized long getWritten() {
+        return written;
+    }
+}
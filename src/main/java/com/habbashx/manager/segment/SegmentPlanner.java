@@ -0,0 +1,400 @@
+package com.habbashx.manager.segment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plans the byte ranges that the workers of a parallel download fetch.
+ *
+ * The file is first cut into a fixed number of equal segments. Whenever a worker asks for more
+ * work and no unassigned segment is left, the planner picks the in-flight segment that is expected
+ * to finish last and splits its remaining range in half, handing the upper half to the idle worker.
+ * This keeps every connection busy until the last byte instead of leaving the tail of the file
+ * to a single slow connection.
+ *
+ * Segments that were given back by a worker (for example after a connection failure) are queued
+ * and handed out again before any segment is split.
+ *
+ * Once no segment is left to split, a segment that is far slower than the median of the download,
+ * typically one stuck on a bad connection, can be hedged: a duplicate request is sent for its rest,
+ * and once its response arrives, the duplicate takes over what the segment has left by then, unless
+ * the segment has finished first (see {@link #nextHedge()}).
+ *
+ * A resumed download starts from the ranges its journal still lists as missing instead of the
+ * whole file; see {@link #getUnwrittenSegments()}.
+ */
+public class SegmentPlanner {
+
+    /**
+     * The default smallest size of a segment created by work stealing. Splitting below this size
+     * costs more in connection setup than it saves in transfer time.
+     */
+    public static final long DEFAULT_MINIMUM_SPLIT_SIZE = 1024 * 1024;
+
+    /**
+     * A segment is hedged once it has been running for this many seconds at less than this fraction
+     * of the median throughput of the segments of the download.
+     */
+    private static final double HEDGE_MINIMUM_SECONDS = 2;
+    private static final double HEDGE_SLOWDOWN = 0.25;
+
+    private final long minimumSplitSize;
+
+    /**
+     * Every segment boundary created by the planner is a multiple of this value, for writers that
+     * need aligned offsets (for example direct I/O).
+     */
+    private final long alignment;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private final Deque<Segment> pending = new ArrayDeque<>();
+
+    /**
+     * The segments that have been hedged, each of which is hedged once.
+     */
+    private final Set<Segment> hedged = new HashSet<>();
+
+    /**
+     * Creates a planner that cuts the range {@code [0, fileSize)} into {@code initialSegments}
+     * segments of equal size.
+     *
+     * @param fileSize         the total size of the file in bytes.
+     * @param initialSegments  the number of segments to cut the file into up front.
+     * @param minimumSplitSize the smallest size a segment created by work stealing may have.
+     */
+    public SegmentPlanner(long fileSize, int initialSegments, long minimumSplitSize) {
+        this(fileSize, initialSegments, minimumSplitSize, 1);
+    }
+
+    /**
+     * Creates a planner that cuts the range {@code [0, fileSize)} into {@code initialSegments}
+     * segments of roughly equal size, whose boundaries are multiples of {@code alignment}.
+     *
+     * @param fileSize         the total size of the file in bytes.
+     * @param initialSegments  the number of segments to cut the file into up front.
+     * @param minimumSplitSize the smallest size a segment created by work stealing may have.
+     * @param alignment        the value every segment boundary must be a multiple of.
+     */
+    public SegmentPlanner(long fileSize, int initialSegments, long minimumSplitSize, long alignment) {
+        this(cut(fileSize, initialSegments, Math.max(1, alignment)), minimumSplitSize, alignment);
+    }
+
+    /**
+     * Creates a planner whose first segment is {@code [0, firstEnd]}, the range the response a download
+     * started with carries, and that cuts the rest of the file into {@code initialSegments - 1} segments
+     * of roughly equal size, whose boundaries are multiples of {@code alignment}. The worker of the first
+     * segment then reads that response to its end, which keeps its connection alive.
+     *
+     * @param fileSize         the total size of the file in bytes.
+     * @param firstEnd         the offset of the last byte of the first segment.
+     * @param initialSegments  the number of segments to cut the file into up front.
+     * @param minimumSplitSize the smallest size a segment created by work stealing may have.
+     * @param alignment        the value every segment boundary must be a multiple of.
+     */
+    public SegmentPlanner(long fileSize, long firstEnd, int initialSegments, long minimumSplitSize, long alignment) {
+        this(cutAfter(fileSize, firstEnd, initialSegments, Math.max(1, alignment)), minimumSplitSize, alignment);
+    }
+
+    /**
+     * Creates a planner for the given segments, typically the missing ranges of a resumed download.
+     *
+     * @param segments         the segments that still have to be downloaded.
+     * @param minimumSplitSize the smallest size a segment created by work stealing may have.
+     * @param alignment        the value every segment boundary created by work stealing must be a
+     *                         multiple of.
+     */
+    public SegmentPlanner(List<Segment> segments, long minimumSplitSize, long alignment) {
+        this.minimumSplitSize = minimumSplitSize;
+        this.alignment = Math.max(1, alignment);
+        this.segments.addAll(segments);
+        this.pending.addAll(segments);
+    }
+
+    /**
+     * Returns the next segment a worker should download. Unassigned segments are handed out first;
+     * once none is left the slowest in-flight segment is split in half.
+     *
+     * @return the segment assigned to the caller, or {@code null} if there is no work left that is
+     *         worth a new connection.
+     */
+    public synchronized Segment nextSegment() {
+        Segment segment = pending.poll();
+        while (segment != null && segment.isFinished()) {
+            segment = pending.poll();
+        }
+        if (segment == null) {
+            segment = stealFromSlowestSegment();
+        }
+        if (segment != null) {
+            segment.assign();
+        }
+        return segment;
+    }
+
+    /**
+     * Marks the given segment as no longer being downloaded by its worker. Unfinished segments are
+     * queued again so that another worker can continue from the segment's current position.
+     *
+     * @param segment the segment the caller is done with.
+     */
+    public synchronized void release(Segment segment) {
+        segment.unassign();
+        if (!segment.isFinished()) {
+            pending.add(segment);
+        }
+    }
+
+    /**
+     * Tells whether a new worker would get a segment: an unassigned segment is waiting, or an
+     * in-flight segment is still large enough to be split.
+     *
+     * @return {@code true} if starting another worker is worth a new connection.
+     */
+    public synchronized boolean hasAssignableWork() {
+        for (Segment segment : pending) {
+            if (!segment.isFinished()) {
+                return true;
+            }
+        }
+        for (Segment segment : segments) {
+            if (segment.isAssigned() && segment.getRemaining() >= minimumSplitSize * 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hands out a hedge for the slowest segment at the end of the download: when no segment is waiting
+     * or can be split, a segment that has been running for a while far below the median throughput of
+     * the segments of the download. Every segment is hedged at most once.
+     *
+     * @return the hedge, or {@code null} if no segment needs one.
+     */
+    public synchronized Hedge nextHedge() {
+        Segment segment = findHedgeCandidate();
+        if (segment == null) {
+            return null;
+        }
+        hedged.add(segment);
+        return new Hedge(segment, segment.getPosition(), segment.getEnd());
+    }
+
+    /**
+     * @return {@code true} if {@link #nextHedge()} would hand out a hedge.
+     */
+    public synchronized boolean canHedge() {
+        return findHedgeCandidate() != null;
+    }
+
+    /**
+     * Settles the race between a hedged segment and the duplicate request for it, once the response to
+     * the duplicate has arrived: the segment ends where it is, and the rest goes to a new segment
+     * assigned to the worker of the duplicate. The bytes the segment has downloaded since it was hedged
+     * are not downloaded twice; the duplicate skips them.
+     *
+     * @param hedge the hedge whose response has arrived.
+     * @return the new segment, starting at or after the start of the hedge, or {@code null} if the
+     *         hedged segment has finished first.
+     */
+    public synchronized Segment takeOver(Hedge hedge) {
+        Segment rest = hedge.getSegment().takeOver(alignment);
+        if (rest == null) {
+            return null;
+        }
+        segments.add(rest);
+        rest.assign();
+        return rest;
+    }
+
+    /**
+     * @return the segment to hedge, or {@code null} if none is slow enough, or there is still work to
+     *         hand out without hedging.
+     */
+    private Segment findHedgeCandidate() {
+        if (hasAssignableWork()) {
+            return null;
+        }
+        List<Double> throughputs = new ArrayList<>();
+        for (Segment segment : segments) {
+            double throughput = segment.getThroughput();
+            if (throughput > 0) {
+                throughputs.add(throughput);
+            }
+        }
+        if (throughputs.isEmpty()) {
+            return null;
+        }
+        throughputs.sort(null);
+        double median = throughputs.get(throughputs.size() / 2);
+
+        Segment slowest = null;
+        for (Segment segment : segments) {
+            // a segment that has not received anything yet may still wait for a connection permit
+            double throughput = segment.getThroughput();
+            if (!segment.isAssigned() || segment.isFinished() || hedged.contains(segment)
+                    || segment.getAssignedSeconds() < HEDGE_MINIMUM_SECONDS
+                    || throughput == 0 || throughput >= median * HEDGE_SLOWDOWN) {
+                continue;
+            }
+            if (slowest == null || segment.estimateRemainingSeconds() > slowest.estimateRemainingSeconds()) {
+                slowest = segment;
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * @return {@code true} if every byte of the file has been claimed by a worker.
+     */
+    public synchronized boolean isComplete() {
+        for (Segment segment : segments) {
+            if (!segment.isFinished()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized List<Segment> getSegments() {
+        return List.copyOf(segments);
+    }
+
+    /**
+     * Returns the ranges of the file that have not been written yet, as new segments. The snapshot is
+     * taken under the planner's lock, so no split can make a range fall between two segments.
+     *
+     * @return one segment per range that is still missing from the destination file.
+     */
+    public synchronized List<Segment> getUnwrittenSegments() {
+        List<Segment> unwritten = new ArrayList<>();
+        for (Segment segment : segments) {
+            long written = segment.getWritten();
+            long end = segment.getEnd();
+            if (written <= end) {
+                unwritten.add(new Segment(written, end));
+            }
+        }
+        return unwritten;
+    }
+
+    /**
+     * @return the number of bytes that are still missing from the destination file.
+     */
+    public synchronized long getUnwrittenBytes() {
+        long unwritten = 0;
+        for (Segment segment : segments) {
+            unwritten += Math.max(0, segment.getEnd() - segment.getWritten() + 1);
+        }
+        return unwritten;
+    }
+
+    /**
+     * @return the number of bytes written from the start of the file up to the first byte that is still
+     *         missing from the destination file.
+     */
+    public synchronized long getContiguousBytes() {
+        long firstMissing = Long.MAX_VALUE;
+        long fileEnd = 0;
+        for (Segment segment : segments) {
+            fileEnd = Math.max(fileEnd, segment.getEnd() + 1);
+            if (segment.getWritten() <= segment.getEnd()) {
+                firstMissing = Math.min(firstMissing, segment.getWritten());
+            }
+        }
+        return firstMissing == Long.MAX_VALUE ? fileEnd : firstMissing;
+    }
+
+    /**
+     * @param start the offset of the first byte of a range.
+     * @param end   the offset past the last byte of the range.
+     * @return {@code true} if no byte of the range is still missing from the destination file.
+     */
+    public synchronized boolean isWritten(long start, long end) {
+        for (Segment segment : segments) {
+            long written = segment.getWritten();
+            long segmentEnd = segment.getEnd();
+            if (written <= segmentEnd && written < end && segmentEnd >= start) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Queues ranges of the file to be downloaded again, typically ranges that failed verification.
+     *
+     * @param ranges the ranges, which must not be assigned to a worker.
+     */
+    public synchronized void reopen(List<Segment> ranges) {
+        for (Segment range : ranges) {
+            Segment segment = new Segment(range.getStart(), range.getEnd());
+            segments.add(segment);
+            pending.add(segment);
+        }
+    }
+
+    /**
+     * Cuts the range {@code [0, fileSize)} into {@code count} segments whose boundaries are multiples
+     * of {@code alignment}.
+     */
+    private static List<Segment> cut(long fileSize, int count, long alignment) {
+        List<Segment> segments = new ArrayList<>(count);
+        long segmentSize = fileSize / count / alignment * alignment;
+        for (int i = 0; i < count; i++) {
+            long start = i * segmentSize;
+            long end = (i == count - 1) ? fileSize - 1 : start + segmentSize - 1;
+            segments.add(new Segment(start, end));
+        }
+        return segments;
+    }
+
+    /**
+     * Cuts the range {@code [0, fileSize)} into the segment {@code [0, firstEnd]} and {@code count - 1}
+     * segments after it, whose boundaries are multiples of {@code alignment} if {@code firstEnd + 1} is.
+     */
+    private static List<Segment> cutAfter(long fileSize, long firstEnd, int count, long alignment) {
+        List<Segment> segments = new ArrayList<>(count);
+        long end = Math.min(firstEnd, fileSize - 1);
+        segments.add(new Segment(0, end));
+        long offset = end + 1;
+        if (offset < fileSize) {
+            for (Segment segment : cut(fileSize - offset, Math.max(1, count - 1), alignment)) {
+                segments.add(new Segment(offset + segment.getStart(), offset + segment.getEnd()));
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Splits the in-flight segment that is expected to finish last. If that segment is too small
+     * to be split, the next slowest one is tried.
+     */
+    private Segment stealFromSlowestSegment() {
+        record Candidate(Segment segment, double estimate, long remaining) {}
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (segment.isAssigned() && !segment.isFinished()) {
+                candidates.add(new Candidate(segment, segment.estimateRemainingSeconds(), segment.getRemaining()));
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(Candidate::estimate)
+                .thenComparingLong(Candidate::remaining)
+                .reversed());
+
+        for (Candidate candidate : candidates) {
+            Segment stolen = candidate.segment().split(minimumSplitSize, alignment);
+            if (stolen != null) {
+                segments.add(stolen);
+                return stolen;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package com.habbashx.manager.throttle;
+
+import java.io.InterruptedIOException;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caps the rate at which the transfers of a download receive bytes, shared by all of its segments.
+ *
+ * The limiter is a token bucket expressed as the generic cell rate algorithm: instead of a token count
+ * refilled by a timer, it keeps the theoretical time at which the bytes handed out so far would have
+ * been received at the configured rate. Taking bytes moves that time forward with a single
+ * compare-and-set, so the read loops of the segments never block each other; a caller that got ahead
+ * of the rate by more than the burst tolerance parks its own thread until it is back within it. Every
+ * caller reserves a distinct slot of the timeline, so parked segments wake up one after another
+ * instead of all at once, and the bucket never holds more than {@link #BURST_NANOS} worth of bytes,
+ * so an idle period is not followed by a burst.
+ *
+ * Rates are in bytes per second; {@code 0} means unlimited, in which case taking bytes costs a single
+ * volatile read. The rate can be changed while transfers are running.
+ */
+public class SpeedLimiter {
+
+    /**
+     * How far, in nanoseconds, the transfers may get ahead of the rate before they are slowed down.
+     * Short enough to keep the rate smooth within a second, long enough to absorb scheduling jitter.
+     */
+    private static final long BURST_NANOS = 100_000_000L;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * The theoretical arrival time, in {@link System#nanoTime()} units, of the last byte handed out.
+     */
+    private final AtomicLong theoreticalArrival = new AtomicLong(System.nanoTime());
+
+    private volatile long bytesPerSecond;
+
+    /**
+     * @param bytesPerSecond the rate, in bytes per second. {@code 0} for unlimited.
+     */
+    public SpeedLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Accounts for bytes that have been received, and waits if the transfers got ahead of the rate.
+     *
+     * @param bytes the number of bytes received.
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        long rate = bytesPerSecond;
+        if (rate == 0 || bytes <= 0) {
+            return;
+        }
+
+        long cost = bytes * NANOS_PER_SECOND / rate;
+        long now = System.nanoTime();
+        long previous;
+        long next;
+        do {
+            previous = theoreticalArrival.get();
+            next = Math.max(previous, now - BURST_NANOS) + cost;
+        } while (!theoreticalArrival.compareAndSet(previous, next));
+
+        long wakeUp = next - BURST_NANOS;
+        long delay;
+        while ((delay = wakeUp - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, delay);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while throttled");
+            }
+        }
+    }
+
+    /**
+     * Changes the rate. Transfers pick the new rate up with their next read; the debt accumulated at
+     * the previous rate is dropped, so raising the limit takes effect at once.
+     *
+     * @param bytesPerSecond the new rate, in bytes per second. {@code 0} for unlimited.
+     */
+    public void setRate(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        theoreticalArrival.set(System.nanoTime());
+    }
+
+    /**
+     * @return the rate, in bytes per second, or {@code 0} if unlimited.
+     */
+    public long getRate() {
+        return bytesPerSecond;
+    }
+}
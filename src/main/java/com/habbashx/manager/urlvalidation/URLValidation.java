@@ -2,6 +2,8 @@ package com.habbashx.manager.urlvalidation;
 
 import org.intellij.lang.annotations.Language;
 
+import java.util.regex.Pattern;
+
 public class URLValidation {
 
     /**
@@ -16,6 +18,12 @@ public class URLValidation {
     @Language(value = "RegExp")
     private static final String URL_REGEX = "^(https?|ftp)://[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}(:[0-9]{1,5})?(/.*)?$";
 
+    /**
+     * The URL_REGEX pattern, compiled once so that validating the URLs of a large batch does not
+     * compile it again for every URL.
+     */
+    private static final Pattern URL_PATTERN = Pattern.compile(URL_REGEX);
+
     /**
      * Validates if the provided string is a valid URL based on a predefined URL_REGEX pattern.
      *
@@ -23,6 +31,6 @@ public class URLValidation {
      * @return true if the string matches the URL_REGEX pattern, otherwise false
      */
     public static boolean isValidURL(String url) {
-        return url.matches(URL_REGEX);
+        return URL_PATTERN.matcher(url).matches();
     }
 }
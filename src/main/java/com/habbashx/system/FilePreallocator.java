@@ -0,0 +1,79 @@
+package com.habbashx.system;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.file.Path;
+
+/**
+ * The FilePreallocator class reserves the final size of a download on disk before any byte is written,
+ * so that the file system can lay the file out in contiguous extents instead of growing it from several
+ * offsets at once while parallel segments are written.
+ *
+ * Java has no portable way to allocate disk blocks, so the class relies on the operating system:
+ * - Linux: the {@code fallocate} utility allocates the blocks without writing them.
+ * - Windows: extending a file with {@link RandomAccessFile#setLength(long)} allocates its clusters on NTFS.
+ * - macOS, or Linux without {@code fallocate}: the file is extended with {@code setLength}, which may
+ *   only reserve its logical size.
+ *
+ * A file that is larger than the requested size (for example an older download with the same name) is
+ * truncated, so that no stale bytes are left after the end of the new download.
+ */
+public class FilePreallocator {
+
+    private final OperatingSystemChecker osChecker;
+
+    public FilePreallocator() {
+        osChecker = new OperatingSystemChecker();
+    }
+
+    /**
+     * Makes the given file exactly {@code size} bytes long, allocating its blocks where possible.
+     *
+     * @param file the file to preallocate. It is created if it does not exist.
+     * @param size the final size of the file in bytes.
+     * @throws IOException if the file cannot be created or resized.
+     */
+    public void preallocate(Path file, long size) throws IOException {
+        if (size <= 0) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            if (raf.length() > size) {
+                raf.setLength(size);
+            }
+            if (raf.length() == size) {
+                return;
+            }
+        }
+
+        if (osChecker.getOSName() == OperatingSystemType.LINUX && fallocate(file, size)) {
+            return;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+    }
+
+    /**
+     * Allocates the blocks of the file with the Linux {@code fallocate} utility.
+     *
+     * @return {@code true} if the utility succeeded.
+     */
+    private boolean fallocate(Path file, long size) {
+        try {
+            Process process = new ProcessBuilder("fallocate", "-l", String.valueOf(size), file.toString())
+                    .redirectErrorStream(true)
+                    .start();
+            process.getInputStream().transferTo(OutputStream.nullOutputStream());
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
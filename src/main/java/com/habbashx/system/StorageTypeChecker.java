@@ -26,11 +26,20 @@ import java.io.InputStreamReader;
  * - Linux
  * - macOS
  *
+ * The storage type is determined once per JVM and then remembered, because the storage does not change
+ * while the program runs and every download task asks for it: running the command again for every task
+ * would start a process for every download of a long-running download manager.
+ *
  * Exceptions:
  * - RuntimeException: Thrown in case of any IO or process-related errors during command execution.
  */
 public class StorageTypeChecker {
 
+    /**
+     * The storage type found by the first call of {@link #getStorageType()}, {@code null} until then.
+     */
+    private static volatile StorageType cachedStorageType;
+
     private final OperatingSystemChecker osChecker;
 
     /**
@@ -96,14 +105,20 @@ public class StorageTypeChecker {
      *         system is unsupported.
      */
     public StorageType getStorageType() {
+        StorageType storageType = cachedStorageType;
+        if (storageType != null) {
+            return storageType;
+        }
 
         OperatingSystemType osType = osChecker.getOSName();
 
-        return switch (osType) {
+        storageType = switch (osType) {
             case WINDOWS -> getOSDriveType(WINDOWS);
             case LINUX -> getOSDriveType(LINUX);
             case MACOS -> getOSDriveType(MAC);
         };
+        cachedStorageType = storageType;
+        return storageType;
     }
 
 
@@ -0,0 +1,222 @@
+package com.habbashx.task;
+
+import com.habbashx.exception.NoSuchAnimationException;
+import com.habbashx.exception.NoSuchDownloadMethodException;
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.DownloadTask;
+import com.habbashx.manager.DownloadTaskFactory;
+import com.habbashx.manager.cache.CacheEntry;
+import com.habbashx.manager.cache.ContentCache;
+import com.habbashx.manager.http.HttpProtocol;
+import com.habbashx.manager.http.RangeClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Serves the machines of a network as an HTTP proxy that downloads every file once, with the parallel
+ * engine, and keeps it in the {@link ContentCache}.
+ *
+ * A client requests a file by sending {@code GET} with the absolute URL of the file, as clients
+ * configured to use a proxy do. If the file is cached and the server confirms that it has not changed,
+ * it is sent from the cache with zero-copy transfers. Otherwise the proxy starts a {@link ProxyFetch} of
+ * the file, or joins the one that is already running for its URL, and sends the file as it is
+ * downloaded: clients requesting the same file at the same time share one download. Completed downloads
+ * are stored in the cache, which evicts the least recently used files to stay under its size cap.
+ *
+ * Only {@code GET} and {@code HEAD} of {@code http} and {@code https} URLs are served, always with the
+ * whole file; {@code CONNECT}, and with it tunnelled {@code https}, is not, since tunnelled bytes cannot
+ * be cached. Every response closes its connection.
+ */
+public class CachingProxy implements Closeable {
+
+    private final Logger logger = new Logger();
+
+    private final ServerSocketChannel server;
+    private final Path spoolDirectory;
+    private final RangeClient client;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final ExecutorService fetchers = Executors.newCachedThreadPool();
+
+    /**
+     * The downloads that are running, by URL.
+     */
+    private final Map<String, ProxyFetch> fetches = new HashMap<>();
+
+    /**
+     * The tasks whose download is finished, reused by the next downloads: every task installs a
+     * shutdown hook and configures the process-wide pools once, when it is created.
+     */
+    private final Deque<DownloadTask> idleTasks = new ArrayDeque<>();
+    private final AtomicLong spoolFiles = new AtomicLong();
+
+    private CachingProxy(ServerSocketChannel server, Path spoolDirectory, RangeClient client) {
+        this.server = server;
+        this.spoolDirectory = spoolDirectory;
+        this.client = client;
+    }
+
+    /**
+     * Opens the listening socket of a proxy.
+     *
+     * @param address        the address to listen on; {@code 0.0.0.0} serves the whole network.
+     * @param spoolDirectory the directory running downloads are written to. Files left in it by a proxy
+     *                       that did not shut down are deleted.
+     * @param connectTimeout the connect timeout of the conditional requests, in milliseconds.
+     * @param stallTimeout   the stall timeout of the conditional requests, in milliseconds.
+     * @return the proxy, which serves requests once {@link #serve()} is called.
+     * @throws IOException if the socket cannot be opened.
+     */
+    public static CachingProxy open(InetSocketAddress address, Path spoolDirectory, int connectTimeout,
+                                    int stallTimeout) throws IOException {
+        Files.createDirectories(spoolDirectory);
+        try (var leftovers = Files.list(spoolDirectory)) {
+            for (Path leftover : (Iterable<Path>) leftovers::iterator) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(address);
+        return new CachingProxy(server, spoolDirectory, HttpProtocol.HTTP_1_1.newClient(connectTimeout, stallTimeout));
+    }
+
+    /**
+     * Serves requests until the proxy is closed.
+     *
+     * @throws IOException if the socket fails.
+     */
+    public void serve() throws IOException {
+        if (!ContentCache.getInstance().isEnabled()) {
+            logger.warning("the content cache is disabled, every request downloads its file again");
+        }
+        logger.info("caching proxy listening on " + server.getLocalAddress());
+        while (server.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            connections.execute(new ProxyConnection(this, channel));
+        }
+    }
+
+    /**
+     * Sends a file to a client, from the cache if it is there and unchanged, else as it is downloaded.
+     *
+     * @param url     the URL of the file.
+     * @param head    whether only the headers of the response are sent.
+     * @param channel the connection of the client.
+     * @throws IOException          if the connection of the client fails.
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    void serve(String url, boolean head, SocketChannel channel) throws IOException, InterruptedException {
+        CacheEntry cached = ContentCache.getInstance().lookup(url, client);
+        if (cached != null) {
+            try (FileChannel file = FileChannel.open(ContentCache.getInstance().fileOf(cached), READ)) {
+                long size = file.size();
+                ProxyConnection.sendHeaders(channel, 200, "OK", size, cached.getContentType(), "HIT");
+                for (long sent = 0; !head && sent < size; ) {
+                    sent += file.transferTo(sent, size - sent, channel);
+                }
+                return;
+            } catch (NoSuchFileException e) {
+                // evicted since the lookup, download it again
+            }
+        }
+
+        ProxyFetch fetch = attach(url);
+        try {
+            long size = fetch.awaitSize();
+            if (size < 0) {
+                int status = fetch.getResponseCode();
+                if (status >= 400 && status < 600) {
+                    // the error of the server, not of the proxy
+                    ProxyConnection.sendError(channel, status, ProxyConnection.reasonOf(status),
+                            "the server answered " + status + " for " + url);
+                } else {
+                    ProxyConnection.sendError(channel, 502, "Bad Gateway", "could not download " + url);
+                }
+                return;
+            }
+            ProxyConnection.sendHeaders(channel, 200, "OK", size, fetch.getContentType(), "MISS");
+            if (!head && !fetch.transferTo(size, channel)) {
+                logger.warning("download of " + url + " failed, closing the connection of its client");
+            }
+        } finally {
+            fetch.release();
+        }
+    }
+
+    /**
+     * Joins the running download of a URL, or starts it.
+     *
+     * @return the download, to be released once the client has been served.
+     */
+    private ProxyFetch attach(String url) throws IOException {
+        synchronized (fetches) {
+            ProxyFetch fetch = fetches.get(url);
+            if (fetch == null) {
+                DownloadTask task = idleTasks.poll();
+                if (task != null) {
+                    task.reset();
+                } else {
+                    try {
+                        task = DownloadTaskFactory.getInstance("parallel");
+                    } catch (NoSuchAnimationException | NoSuchDownloadMethodException e) {
+                        throw new IOException(e);
+                    }
+                }
+                // clients are sent the spool file as it is written, which must be the file itself
+                task.setCompression(false);
+                Path spoolFile = spoolDirectory.resolve(spoolFiles.incrementAndGet() + ".part");
+                ProxyFetch started = new ProxyFetch(url, spoolFile, task);
+                DownloadTask startedTask = task;
+                fetch = started;
+                fetches.put(url, started);
+                fetchers.execute(() -> {
+                    started.download();
+                    synchronized (fetches) {
+                        fetches.remove(url, started);
+                    }
+                    started.finish();
+                    synchronized (fetches) {
+                        idleTasks.push(startedTask);
+                    }
+                });
+            }
+            fetch.attach();
+            return fetch;
+        }
+    }
+
+    /**
+     * Closes the listening socket. Running downloads are not stopped.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdown();
+        fetchers.shutdown();
+    }
+}
@@ -1,23 +1,109 @@
 package com.habbashx.task;
 
-import com.habbashx.manager.DownloadTask;
+import com.habbashx.exception.InvalidURLException;
+import com.habbashx.exception.NoSuchPriorityException;
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.scheduler.DownloadJob;
+import com.habbashx.manager.scheduler.DownloadPriority;
+import com.habbashx.manager.scheduler.DownloadScheduler;
 
-import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
 
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+
+/**
+ * Serves one connection to the control socket of a {@link DownloadDaemon}: reads one command, runs it
+ * against the scheduler of the daemon, writes the reply and closes the connection.
+ *
+ * Commands are one line of words separated by spaces:
+ * - {@code add <URL> [high|normal|low]}: schedules a download, replying with its job number.
+ * - {@code pause <job>}, {@code resume <job>}, {@code stop <job>}: controls a scheduled download.
+ * - {@code status}: replies with one line per scheduled download.
+ *
+ * Replies are one or more lines. A reply to a command that failed starts with {@code error:}.
+ */
 public class CommandListener implements Runnable {
 
-    private final DownloadTask task;
-    private final String linkURL;
+    private final Logger logger = new Logger();
+
+    private final DownloadScheduler scheduler;
+    private final SocketChannel channel;
 
-    public CommandListener(DownloadTask task , String linkURL) {
-        this.task = task;
-        this.linkURL = linkURL;
+    public CommandListener(DownloadScheduler scheduler, SocketChannel channel) {
+        this.scheduler = scheduler;
+        this.channel = channel;
     }
 
     @Override
     public void run() {
-        Scanner scanner = new Scanner(System.in);
+        try (BufferedReader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+             Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8)) {
+            String command = reader.readLine();
+            if (command == null) {
+                // a client checking whether the daemon is running
+                return;
+            }
+            writer.write(execute(command.strip()) + "\n");
+            writer.flush();
+        } catch (IOException e) {
+            logger.warning("control connection failed: " + e.getMessage());
+        }
+    }
 
+    /**
+     * Runs a command.
+     *
+     * @param command the command line.
+     * @return the reply, without the final line break.
+     */
+    String execute(String command) {
+        String[] words = command.split("\\s+");
+        try {
+            return switch (words[0]) {
+                case "add" -> {
+                    DownloadPriority priority = words.length > 2 ? DownloadPriority.of(words[2]) : DownloadPriority.NORMAL;
+                    DownloadJob job = scheduler.submit(argumentOf(words), priority);
+                    yield "added " + job.getId();
+                }
+                case "pause" -> scheduler.pause(jobOf(words)) ? "paused" : noSuchJob(words);
+                case "resume" -> scheduler.resume(jobOf(words)) ? "resumed" : noSuchJob(words);
+                case "stop" -> scheduler.stop(jobOf(words)) ? "stopped" : noSuchJob(words);
+                case "status" -> {
+                    List<String> jobs = scheduler.describeJobs();
+                    yield jobs.isEmpty() ? "no downloads" : String.join("\n", jobs);
+                }
+                default -> "error: unknown command: " + words[0];
+            };
+        } catch (InvalidURLException e) {
+            return "error: invalid URL: " + e.getMessage();
+        } catch (NoSuchPriorityException | IllegalArgumentException | IOException e) {
+            return "error: " + e.getMessage();
+        }
+    }
+
+    private static String argumentOf(String[] words) {
+        if (words.length < 2) {
+            throw new IllegalArgumentException(words[0] + " needs an argument");
+        }
+        return words[1];
+    }
+
+    private static long jobOf(String[] words) {
+        String job = argumentOf(words);
+        try {
+            return Long.parseLong(job);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a job number: " + job);
+        }
+    }
 
+    private static String noSuchJob(String[] words) {
+        return "error: no such download: " + words[1];
     }
 }
@@ -0,0 +1,81 @@
+package com.habbashx.task;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.net.SocketException;
+import java.net.UnixDomainSocketAddress;
+
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sends commands to a running {@link DownloadDaemon} over its control socket. See
+ * {@link CommandListener} for the commands.
+ */
+public class DaemonClient {
+
+    private DaemonClient() {
+    }
+
+    /**
+     * @param socketPath the control socket of the daemon.
+     * @return {@code true} if a daemon is listening on the socket.
+     */
+    public static boolean isRunning(Path socketPath) {
+        try (SocketChannel channel = connect(socketPath)) {
+            return channel != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends a command to the daemon and waits for its reply.
+     *
+     * @param socketPath the control socket of the daemon.
+     * @param command    the command, on one line.
+     * @return the reply, or {@code null} if no daemon is listening on the socket.
+     * @throws IOException if the connection to the daemon fails.
+     */
+    public static String send(Path socketPath, String command) throws IOException {
+        SocketChannel channel = connect(socketPath);
+        if (channel == null) {
+            return null;
+        }
+        try (channel;
+             Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+             Reader reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8))) {
+            writer.write(command + "\n");
+            writer.flush();
+            channel.shutdownOutput();
+            StringBuilder reply = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                reply.append(buffer, 0, read);
+            }
+            return reply.toString().stripTrailing();
+        }
+    }
+
+    /**
+     * @return the connection, or {@code null} if no daemon is listening on the socket.
+     */
+    private static SocketChannel connect(Path socketPath) throws IOException {
+        if (!Files.exists(socketPath)) {
+            return null;
+        }
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+        } catch (SocketException e) {
+            // a socket left behind by a daemon that did not shut down
+            return null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.habbashx.task;
+
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.scheduler.DownloadScheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps one download manager running in the background, so that downloads submitted one at a time do
+ * not each pay for starting a JVM, reading the configuration and probing the storage, and find the
+ * connection pool, the buffers and the download tasks of the previous downloads warm.
+ *
+ * The daemon listens on a Unix domain socket, which only the user running it may connect to, and
+ * serves every connection with a {@link CommandListener}. Downloads are run by a
+ * {@link DownloadScheduler} and recorded in its queue, so downloads that were running when the daemon
+ * stopped are resumed by the next daemon.
+ */
+public class DownloadDaemon implements Closeable {
+
+    /**
+     * The control socket of the daemon of the current user.
+     */
+    public static final Path SOCKET_PATH = Path.of(System.getProperty("user.home"), ".downloadManager.sock");
+
+    private final Logger logger = new Logger();
+
+    private final DownloadScheduler scheduler;
+    private final Path socketPath;
+    private final ServerSocketChannel server;
+    private final ExecutorService listeners = Executors.newCachedThreadPool();
+
+    private DownloadDaemon(DownloadScheduler scheduler, Path socketPath, ServerSocketChannel server) {
+        this.scheduler = scheduler;
+        this.socketPath = socketPath;
+        this.server = server;
+    }
+
+    /**
+     * Opens the control socket of a daemon.
+     *
+     * @param scheduler  the scheduler the downloads are run by.
+     * @param socketPath the path of the control socket.
+     * @return the daemon, which serves commands once {@link #serve()} is called.
+     * @throws IOException if another daemon is listening on the socket, or the socket cannot be opened.
+     */
+    public static DownloadDaemon open(DownloadScheduler scheduler, Path socketPath) throws IOException {
+        if (DaemonClient.isRunning(socketPath)) {
+            throw new IOException("a download manager daemon is already running on " + socketPath);
+        }
+        // left behind by a daemon that did not shut down
+        Files.deleteIfExists(socketPath);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        try {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // not a POSIX file system, the socket keeps the permissions of its directory
+        }
+        return new DownloadDaemon(scheduler, socketPath, server);
+    }
+
+    /**
+     * Serves commands until the daemon is closed.
+     *
+     * @throws IOException if the socket fails.
+     */
+    public void serve() throws IOException {
+        logger.info("download manager daemon listening on " + socketPath);
+        while (server.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            }
+            listeners.execute(new CommandListener(scheduler, channel));
+        }
+    }
+
+    /**
+     * Closes the control socket. Downloads that are running are not stopped.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        listeners.shutdown();
+        Files.deleteIfExists(socketPath);
+    }
+}
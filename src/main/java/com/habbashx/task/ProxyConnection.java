@@ -0,0 +1,153 @@
+package com.habbashx.task;
+
+import com.habbashx.logger.Logger;
+import com.habbashx.manager.urlvalidation.URLValidation;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves one connection to a {@link CachingProxy}: reads one request, sends the requested file and
+ * closes the connection.
+ *
+ * Requests are answered with:
+ * - 200 (OK) and the whole file, with the content type the server sent for it and an {@code X-Cache}
+ *   header telling whether it came from the cache.
+ * - 400 (Bad Request) for a request that is malformed, or whose target is not an absolute {@code http}
+ *   or {@code https} URL.
+ * - 501 (Not Implemented) for methods other than {@code GET} and {@code HEAD}.
+ * - The status code of the server if it answered the download with an error, such as 404 (Not Found).
+ * - 502 (Bad Gateway) if the file cannot be downloaded otherwise.
+ */
+public class ProxyConnection implements Runnable {
+
+    /**
+     * The largest request head that is read, request line and headers.
+     */
+    private static final int MAX_REQUEST_HEAD = 16 * 1024;
+
+    private final Logger logger = new Logger();
+
+    private final CachingProxy proxy;
+    private final SocketChannel channel;
+
+    public ProxyConnection(CachingProxy proxy, SocketChannel channel) {
+        this.proxy = proxy;
+        this.channel = channel;
+    }
+
+    @Override
+    public void run() {
+        try (channel) {
+            String requestLine = readRequestLine();
+            if (requestLine == null) {
+                sendError(channel, 400, "Bad Request", "malformed request");
+                return;
+            }
+            String[] words = requestLine.split(" ");
+            if (words.length != 3 || !words[2].startsWith("HTTP/")) {
+                sendError(channel, 400, "Bad Request", "malformed request line");
+                return;
+            }
+            String method = words[0];
+            String url = words[1];
+            if (!method.equals("GET") && !method.equals("HEAD")) {
+                sendError(channel, 501, "Not Implemented", method + " is not supported");
+                return;
+            }
+            if (!url.startsWith("http://") && !url.startsWith("https://") || !URLValidation.isValidURL(url)) {
+                sendError(channel, 400, "Bad Request", "not an absolute http or https URL: " + url);
+                return;
+            }
+            proxy.serve(url, method.equals("HEAD"), channel);
+        } catch (IOException e) {
+            logger.warning("proxy connection failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the head of the request, up to the empty line that ends it.
+     *
+     * @return the request line, or {@code null} if the connection was closed first or the head is too
+     *         large.
+     */
+    private String readRequestLine() throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MAX_REQUEST_HEAD);
+        while (head.hasRemaining()) {
+            if (channel.read(head) == -1) {
+                return null;
+            }
+            String received = new String(head.array(), 0, head.position(), StandardCharsets.ISO_8859_1);
+            if (received.contains("\r\n\r\n")) {
+                return received.substring(0, received.indexOf("\r\n"));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends the head of a response carrying a file.
+     *
+     * @param size        the size of the file.
+     * @param contentType the content type the server sent for the file, {@code null} if it sent none.
+     * @param cache       {@code HIT} if the file is sent from the cache, {@code MISS} if it is downloaded.
+     */
+    static void sendHeaders(SocketChannel channel, int status, String reason, long size, String contentType,
+                            String cache) throws IOException {
+        write(channel, "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Length: " + size + "\r\n"
+                + "Content-Type: " + (contentType != null ? contentType : "application/octet-stream") + "\r\n"
+                + "X-Cache: " + cache + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n");
+    }
+
+    /**
+     * Sends an error response whose body is the given message.
+     */
+    static void sendError(SocketChannel channel, int status, String reason, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        write(channel, "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Content-Type: text/plain; charset=utf-8\r\n"
+                + "Connection: close\r\n"
+                + "\r\n");
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the reason phrase of an error status code the server answered a download with.
+     */
+    static String reasonOf(int status) {
+        return switch (status) {
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 403 -> "Forbidden";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 410 -> "Gone";
+            case 416 -> "Range Not Satisfiable";
+            case 429 -> "Too Many Requests";
+            case 500 -> "Internal Server Error";
+            case 502 -> "Bad Gateway";
+            case 503 -> "Service Unavailable";
+            case 504 -> "Gateway Timeout";
+            default -> "Error";
+        };
+    }
+
+    private static void write(SocketChannel channel, String head) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.habbashx.task;
+
+import com.habbashx.manager.DownloadTask;
+import com.habbashx.manager.journal.DownloadJournal;
+
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * One download of a {@link CachingProxy}, shared by every client that requests its URL while it runs.
+ *
+ * The file is downloaded by a {@link DownloadTask} into a spool file. Clients read the spool file
+ * behind the download: the segments of the parallel engine are written out of order, so a client is
+ * sent the bytes written from the start of the file up to the first missing byte, and waits for more.
+ * The spool file is deleted once the download and all its clients are done; a completed download has
+ * been stored in the content cache by then, where later requests find it.
+ *
+ * Once the download is finished, the outcome of the task is kept and the task is no longer read, so it
+ * can be handed to the next download.
+ */
+public class ProxyFetch {
+
+    /**
+     * How often a client waiting for bytes checks the progress of the download, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 50;
+
+    private final String url;
+    private final Path spoolFile;
+    private final DownloadTask task;
+
+    /**
+     * The number of users of the spool file: the download, and the clients being sent the file.
+     */
+    private int users = 1;
+
+    private volatile boolean done;
+
+    /**
+     * The outcome of the task, kept when the download is finished.
+     */
+    private boolean completed;
+    private long fileSize;
+    private long contiguousBytes;
+    private int responseCode;
+    private String contentType;
+
+    /**
+     * @param url       the URL of the file.
+     * @param spoolFile the file the download is written to, which must not exist yet.
+     * @param task      the task the file is downloaded with, used by no other download until
+     *                  {@link #finish()} returns.
+     */
+    public ProxyFetch(String url, Path spoolFile, DownloadTask task) {
+        this.url = url;
+        this.spoolFile = spoolFile;
+        this.task = task;
+    }
+
+    /**
+     * Downloads the file. Once the download is no longer joined by new clients, {@link #finish()} must
+     * be called.
+     */
+    public void download() {
+        try {
+            task.downloadFile(url, spoolFile);
+        } catch (RuntimeException e) {
+            // the download failed, its clients are told so
+        }
+    }
+
+    /**
+     * Tells the clients that the download is done, and releases the spool file for the download.
+     */
+    public void finish() {
+        synchronized (this) {
+            completed = task.isCompleted();
+            fileSize = task.getFileSize();
+            contiguousBytes = task.getContiguousBytes();
+            responseCode = task.getResponseCode();
+            contentType = task.getContentType();
+            done = true;
+        }
+        release();
+    }
+
+    /**
+     * Registers a client of the download. Must be called before the download is finished.
+     */
+    public synchronized void attach() {
+        users++;
+    }
+
+    /**
+     * Unregisters the download or one of its clients, deleting the spool file once nobody uses it.
+     */
+    public synchronized void release() {
+        if (--users > 0) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spoolFile);
+            Files.deleteIfExists(DownloadJournal.pathOf(spoolFile));
+        } catch (IOException e) {
+            // left behind, removed when the proxy starts again
+        }
+    }
+
+    /**
+     * Waits until the size of the file is known.
+     *
+     * @return the size of the file, {@code 0} once an empty file is downloaded, or {@code -1} if the
+     *         download failed or the server did not report the size.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public long awaitSize() throws InterruptedException {
+        while (true) {
+            synchronized (this) {
+                if (done) {
+                    break;
+                }
+                if (task.getFileSize() > 0) {
+                    return task.getFileSize();
+                }
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+        if (fileSize > 0) {
+            return fileSize;
+        }
+        // a download restored from the cache never probes the size
+        if (completed) {
+            try {
+                return Files.size(spoolFile);
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the status code the server answered the download with, {@code 0} if it has not answered
+     *         or could not be reached.
+     */
+    public synchronized int getResponseCode() {
+        return done ? responseCode : task.getResponseCode();
+    }
+
+    /**
+     * @return the content type the server sent for the file, {@code null} if it sent none or has not
+     *         answered yet.
+     */
+    public synchronized String getContentType() {
+        return done ? contentType : task.getContentType();
+    }
+
+    /**
+     * Sends the file to a client as it is downloaded, with zero-copy transfers from the spool file.
+     *
+     * @param size   the size of the file.
+     * @param target the connection of the client.
+     * @return {@code true} if the whole file has been sent, {@code false} if the download failed first.
+     * @throws IOException          if the connection of the client fails.
+     * @throws InterruptedException if the thread is interrupted while waiting for bytes.
+     */
+    public boolean transferTo(long size, WritableByteChannel target) throws IOException, InterruptedException {
+        FileChannel file = null;
+        long sent = 0;
+        try {
+            while (sent < size) {
+                long available = awaitBytes(sent, size);
+                if (available <= sent) {
+                    return false;
+                }
+                if (file == null) {
+                    file = FileChannel.open(spoolFile, READ);
+                }
+                while (sent < available) {
+                    sent += file.transferTo(sent, available - sent, target);
+                }
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Waits until bytes past the given offset have been written, or the download is done.
+     *
+     * @return the number of leading bytes of the file that can be sent.
+     */
+    private long awaitBytes(long offset, long size) throws InterruptedException {
+        while (true) {
+            synchronized (this) {
+                if (done) {
+                    return completed ? size : Math.min(contiguousBytes, size);
+                }
+                long available = Math.min(task.getContiguousBytes(), size);
+                if (available > offset) {
+                    return available;
+                }
+            }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+}
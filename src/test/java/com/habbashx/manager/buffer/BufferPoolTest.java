@@ -0,0 +1,62 @@
+package com.habbashx.manager.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BufferPoolTest {
+
+    @Test
+    void budgetBelowOneMinimumBufferStillHandsOutAMinimumBuffer() throws InterruptedException {
+        BufferPool pool = new BufferPool(0);
+        assertEquals(BufferPool.MINIMUM_BUDGET, pool.getBudget());
+
+        ByteBuffer buffer = pool.acquire(1024 * 1024, BufferSize.MINIMUM_BUFFER_SIZE);
+
+        assertEquals(BufferSize.MINIMUM_BUFFER_SIZE, buffer.capacity());
+        pool.release(buffer);
+
+        pool.setBudget(0);
+        assertEquals(BufferPool.MINIMUM_BUDGET, pool.getBudget());
+    }
+
+    @Test
+    void smallerBufferIsHandedOutWhenThePreferredSizeDoesNotFit() throws InterruptedException {
+        BufferPool pool = new BufferPool(96 * 1024);
+
+        ByteBuffer first = pool.acquire(64 * 1024, 16 * 1024);
+        ByteBuffer second = pool.acquire(64 * 1024, 16 * 1024);
+
+        assertEquals(64 * 1024, first.capacity());
+        assertEquals(32 * 1024, second.capacity());
+        assertTrue(pool.getAllocatedBytes() <= pool.getBudget());
+    }
+
+    @Test
+    void releasedBufferIsReused() throws InterruptedException {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_BUDGET);
+
+        ByteBuffer buffer = pool.acquire(64 * 1024, 16 * 1024);
+        pool.release(buffer);
+        ByteBuffer again = pool.acquire(64 * 1024, 16 * 1024);
+
+        assertSame(buffer, again);
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertEquals(64 * 1024, pool.getInUseBytes());
+    }
+
+    @Test
+    void buffersAreAligned() throws InterruptedException {
+        BufferPool pool = new BufferPool(BufferPool.DEFAULT_BUDGET);
+
+        ByteBuffer buffer = pool.acquire(10_000, 1000);
+
+        assertEquals(0, buffer.capacity() % BufferPool.ALIGNMENT);
+        assertEquals(0, buffer.alignmentOffset(0, BufferPool.ALIGNMENT));
+    }
+}
@@ -0,0 +1,144 @@
+package com.habbashx.manager.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DownloadScopeTest {
+
+    @Test
+    void joinWaitsForEveryForkedTask() throws InterruptedException {
+        AtomicInteger done = new AtomicInteger();
+        try (DownloadScope scope = new DownloadScope(Executors.newFixedThreadPool(4))) {
+            for (int i = 0; i < 8; i++) {
+                scope.fork(() -> {
+                    sleep(20);
+                    done.incrementAndGet();
+                });
+            }
+
+            assertTrue(scope.join(0));
+            assertEquals(8, done.get());
+        }
+    }
+
+    @Test
+    void joinGivesUpAfterItsTimeout() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        try (DownloadScope scope = new DownloadScope(Executors.newSingleThreadExecutor())) {
+            scope.fork(() -> await(release));
+
+            assertFalse(scope.join(50));
+            release.countDown();
+            assertTrue(scope.join(0));
+        }
+    }
+
+    @Test
+    void failureCancelsTheSiblingsOfTheFailedTask() throws InterruptedException {
+        CountDownLatch registered = new CountDownLatch(2);
+        AtomicBoolean resourceClosed = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        IllegalStateException fatal = new IllegalStateException("fatal");
+        try (DownloadScope scope = new DownloadScope(Executors.newFixedThreadPool(3))) {
+            scope.fork(() -> {
+                CountDownLatch closed = new CountDownLatch(1);
+                scope.register(() -> {
+                    resourceClosed.set(true);
+                    closed.countDown();
+                });
+                registered.countDown();
+                await(closed);
+            });
+            scope.fork(() -> {
+                registered.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+            });
+            registered.await();
+            scope.fork(() -> {
+                throw fatal;
+            });
+
+            assertTrue(scope.join(5000));
+            assertTrue(scope.isCancelled());
+            assertSame(fatal, scope.getFailure());
+            assertTrue(resourceClosed.get());
+            assertTrue(interrupted.get());
+            assertFalse(scope.fork(() -> {
+            }));
+        }
+    }
+
+    @Test
+    void resourceRegisteredAfterCancelIsClosedAtOnce() {
+        AtomicBoolean closed = new AtomicBoolean();
+        try (DownloadScope scope = new DownloadScope(Executors.newSingleThreadExecutor())) {
+            scope.cancel();
+
+            scope.register(() -> closed.set(true));
+
+            assertTrue(closed.get());
+        }
+    }
+
+    @Test
+    void closeShutsTheExecutorDown() {
+        var executor = Executors.newSingleThreadExecutor();
+        DownloadScope scope = new DownloadScope(executor);
+        scope.fork(() -> sleep(20));
+
+        scope.close();
+
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    void interruptedCloseStopsTheTasksAndKeepsTheInterruptStatus() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        DownloadScope scope = new DownloadScope(executor);
+        CountDownLatch started = new CountDownLatch(1);
+        scope.fork(() -> {
+            started.countDown();
+            sleep(10_000);
+        });
+        started.await();
+
+        Thread.currentThread().interrupt();
+        try {
+            scope.close();
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.habbashx.manager.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ContentRangeTest {
+
+    @Test
+    void parsesARange() {
+        ContentRange range = ContentRange.parse("bytes 0-1048575/42949672960");
+
+        assertNotNull(range);
+        assertEquals(0, range.getStart());
+        assertEquals(1048575, range.getEnd());
+        assertEquals(42949672960L, range.getTotal());
+    }
+
+    @Test
+    void parsesARangeOfAnUnknownTotal() {
+        ContentRange range = ContentRange.parse("bytes 100-199/*");
+
+        assertNotNull(range);
+        assertEquals(100, range.getStart());
+        assertEquals(199, range.getEnd());
+        assertEquals(-1, range.getTotal());
+    }
+
+    @Test
+    void toleratesWhiteSpaceAroundTheNumbers() {
+        ContentRange range = ContentRange.parse("bytes  5 - 9 / 10 ");
+
+        assertNotNull(range);
+        assertEquals(5, range.getStart());
+        assertEquals(9, range.getEnd());
+        assertEquals(10, range.getTotal());
+    }
+
+    @Test
+    void rejectsMissingAndMalformedValues() {
+        assertNull(ContentRange.parse(null));
+        assertNull(ContentRange.parse(""));
+        assertNull(ContentRange.parse("items 0-1/2"));
+        assertNull(ContentRange.parse("bytes 0-1"));
+        assertNull(ContentRange.parse("bytes 01/2"));
+        assertNull(ContentRange.parse("bytes /2-1"));
+        assertNull(ContentRange.parse("bytes a-b/c"));
+        assertNull(ContentRange.parse("bytes 0-1/"));
+        assertNull(ContentRange.parse("bytes -5-10/20"));
+        assertNull(ContentRange.parse("bytes */100"));
+    }
+
+    @Test
+    void rejectsRangesThatDoNotFitTheirTotal() {
+        assertNull(ContentRange.parse("bytes 10-5/100"));
+        assertNull(ContentRange.parse("bytes 0-100/100"));
+        assertNull(ContentRange.parse("bytes 200-299/100"));
+    }
+
+    @Test
+    void parsesTheTotalOfAnUnsatisfiedRange() {
+        assertEquals(0, ContentRange.parseUnsatisfied("bytes */0"));
+        assertEquals(3000, ContentRange.parseUnsatisfied("bytes */3000"));
+        assertEquals(-1, ContentRange.parseUnsatisfied("bytes */*"));
+        assertEquals(-1, ContentRange.parseUnsatisfied("bytes 0-1/2"));
+        assertEquals(-1, ContentRange.parseUnsatisfied(null));
+    }
+
+    @Test
+    void totalSizeComesFromContentRangeFirst() {
+        RangeExchange exchange = new HeaderExchange(
+                "Content-Range", "bytes 0-1048575/15000000",
+                "Content-Length", "1048576");
+
+        assertEquals(15000000, ContentRange.totalSizeOf(exchange));
+    }
+
+    @Test
+    void totalSizeOfAnUnsatisfiedRange() {
+        RangeExchange exchange = new HeaderExchange("Content-Range", "bytes */0", "Content-Length", "0");
+
+        assertEquals(0, ContentRange.totalSizeOf(exchange));
+    }
+
+    @Test
+    void totalSizeFallsBackToContentLength() {
+        assertEquals(3000, ContentRange.totalSizeOf(new HeaderExchange("Content-Length", "3000")));
+        assertEquals(3000, ContentRange.totalSizeOf(new HeaderExchange(
+                "Content-Range", "bytes garbage", "Content-Length", "3000")));
+        assertEquals(-1, ContentRange.totalSizeOf(new HeaderExchange()));
+    }
+}
@@ -0,0 +1,46 @@
+package com.habbashx.manager.http;
+
+import java.nio.channels.ReadableByteChannel;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link RangeExchange} that has already received the given response headers, for testing the code
+ * that reads them.
+ */
+class HeaderExchange implements RangeExchange {
+
+    private final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    HeaderExchange(String... namesAndValues) {
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+    }
+
+    @Override
+    public int send() {
+        return 200;
+    }
+
+    @Override
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    @Override
+    public long getContentLength() {
+        String contentLength = headers.get("Content-Length");
+        return contentLength != null ? Long.parseLong(contentLength) : -1;
+    }
+
+    @Override
+    public ReadableByteChannel getBody() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,42 @@
+package com.habbashx.manager.http;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IfRangeTest {
+
+    private static final String LAST_MODIFIED = "Wed, 21 Oct 2015 07:28:00 GMT";
+
+    @Test
+    void prefersAStrongEntityTag() {
+        RangeExchange exchange = new HeaderExchange("ETag", "\"33a64df5\"", "Last-Modified", LAST_MODIFIED);
+
+        assertEquals("\"33a64df5\"", IfRange.validatorOf(exchange));
+    }
+
+    @Test
+    void fallsBackToTheModificationDateForAWeakEntityTag() {
+        RangeExchange exchange = new HeaderExchange("ETag", "W/\"33a64df5\"", "Last-Modified", LAST_MODIFIED);
+
+        assertEquals(LAST_MODIFIED, IfRange.validatorOf(exchange));
+    }
+
+    @Test
+    void usesTheModificationDateWithoutEntityTag() {
+        assertEquals(LAST_MODIFIED, IfRange.validatorOf(new HeaderExchange("Last-Modified", LAST_MODIFIED)));
+    }
+
+    @Test
+    void ignoresBlankValuesAndTrimsTheValidator() {
+        assertEquals(LAST_MODIFIED, IfRange.validatorOf(new HeaderExchange("ETag", " ", "Last-Modified", " " + LAST_MODIFIED)));
+        assertEquals("\"abc\"", IfRange.validatorOf(new HeaderExchange("ETag", "\"abc\" ")));
+    }
+
+    @Test
+    void hasNoValidatorWithoutEither() {
+        assertNull(IfRange.validatorOf(new HeaderExchange()));
+        assertNull(IfRange.validatorOf(new HeaderExchange("ETag", "W/\"33a64df5\"")));
+    }
+}
@@ -0,0 +1,104 @@
+package com.habbashx.manager.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseBodyTest {
+
+    private final AtomicInteger completions = new AtomicInteger();
+
+    @Test
+    void readsABodyDelimitedByContentLength() throws IOException {
+        InputStream in = stream("hello worldNEXT RESPONSE");
+        ResponseBody body = new ResponseBody(in, 11, false, completions::incrementAndGet);
+
+        assertEquals("hello world", readAll(body));
+        assertTrue(body.isComplete());
+        assertEquals(0, body.getRemaining());
+        assertEquals(1, completions.get());
+        // the bytes of the next response are left on the connection
+        assertEquals('N', in.read());
+    }
+
+    @Test
+    void emptyBodyIsCompleteRightAway() throws IOException {
+        ResponseBody body = new ResponseBody(stream(""), 0, false, completions::incrementAndGet);
+
+        assertTrue(body.isComplete());
+        assertEquals(1, completions.get());
+        assertEquals(-1, body.read());
+    }
+
+    @Test
+    void bodyCutShortFailsInsteadOfLookingComplete() {
+        ResponseBody body = new ResponseBody(stream("hello"), 11, false, completions::incrementAndGet);
+
+        assertThrows(EOFException.class, () -> readAll(body));
+        assertFalse(body.isComplete());
+        assertEquals(0, completions.get());
+    }
+
+    @Test
+    void readsAChunkedBodyAndItsTrailers() throws IOException {
+        InputStream in = stream("5\r\nhello\r\n6;name=value\r\n world\r\n0\r\nExpires: never\r\n\r\nNEXT");
+        ResponseBody body = new ResponseBody(in, ResponseBody.UNTIL_CLOSE, true, completions::incrementAndGet);
+
+        assertEquals(-1, body.getRemaining());
+        assertEquals("hello world", readAll(body));
+        assertTrue(body.isComplete());
+        assertEquals(1, completions.get());
+        assertEquals('N', in.read());
+    }
+
+    @Test
+    void rejectsMalformedChunks() {
+        ResponseBody badSize = new ResponseBody(stream("zz\r\nhello\r\n0\r\n\r\n"), 0, true, completions::incrementAndGet);
+        assertThrows(ProtocolException.class, () -> readAll(badSize));
+
+        ResponseBody missingCrlf = new ResponseBody(stream("5\r\nhelloX\r\n0\r\n\r\n"), 0, true, completions::incrementAndGet);
+        assertThrows(ProtocolException.class, () -> readAll(missingCrlf));
+
+        ResponseBody cutShort = new ResponseBody(stream("5\r\nhel"), 0, true, completions::incrementAndGet);
+        assertThrows(EOFException.class, () -> readAll(cutShort));
+    }
+
+    @Test
+    void bodyWithoutLengthLastsUntilTheConnectionCloses() throws IOException {
+        ResponseBody body = new ResponseBody(stream("until close"), ResponseBody.UNTIL_CLOSE, false,
+                completions::incrementAndGet);
+
+        assertEquals(-1, body.getRemaining());
+        assertEquals("until close", readAll(body));
+        assertTrue(body.isComplete());
+        assertEquals(1, completions.get());
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String readAll(ResponseBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4];
+        int read;
+        while ((read = body.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.habbashx.manager.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class ChannelDownloadWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void segmentsWriteConcurrentlyThroughOneChannel() throws IOException, InterruptedException {
+        byte[] content = content(1024 * 1024);
+        Path destination = directory.resolve("download");
+        int segments = 8;
+        int segmentSize = content.length / segments;
+
+        try (ChannelDownloadWriter writer = new ChannelDownloadWriter(destination)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int s = segments - 1; s >= 0; s--) {
+                int start = s * segmentSize;
+                Thread thread = new Thread(() -> {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+                    for (int offset = start; offset < start + segmentSize; offset += buffer.capacity()) {
+                        buffer.clear();
+                        buffer.put(content, offset, buffer.capacity()).flip();
+                        try {
+                            writer.write(buffer, offset);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            writer.flush();
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(destination));
+    }
+
+    @Test
+    void existingBytesAreKept() throws IOException {
+        Path destination = directory.resolve("partial");
+        Files.write(destination, new byte[] {1, 2, 3, 4, 5, 6});
+
+        try (ChannelDownloadWriter writer = new ChannelDownloadWriter(destination)) {
+            writer.write(ByteBuffer.wrap(new byte[] {9, 9}), 4);
+        }
+
+        assertArrayEquals(new byte[] {1, 2, 3, 4, 9, 9}, Files.readAllBytes(destination));
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31 + i / 4096);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,100 @@
+package com.habbashx.manager.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedDownloadWriterTest {
+
+    private static final int CHUNK = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void windowIsReleasedOnceEveryByteIsWritten() throws IOException {
+        Path destination = directory.resolve("download");
+        try (MappedDownloadWriter writer = new MappedDownloadWriter(destination, MappedDownloadWriter.WINDOW_SIZE + CHUNK)) {
+            write(writer, 0, MappedDownloadWriter.WINDOW_SIZE - CHUNK);
+            assertEquals(1, writer.getMappedWindows());
+
+            write(writer, MappedDownloadWriter.WINDOW_SIZE - CHUNK, MappedDownloadWriter.WINDOW_SIZE + CHUNK);
+            assertEquals(0, writer.getMappedWindows());
+
+            writer.flush();
+        }
+        assertContent(destination, MappedDownloadWriter.WINDOW_SIZE + CHUNK);
+    }
+
+    @Test
+    void rewrittenBytesAreNotCountedTwice() throws IOException {
+        Path destination = directory.resolve("rewritten");
+        try (MappedDownloadWriter writer = new MappedDownloadWriter(destination, MappedDownloadWriter.WINDOW_SIZE)) {
+            long half = MappedDownloadWriter.WINDOW_SIZE / 2;
+            write(writer, 0, half);
+            // a retried segment writes the same half again
+            write(writer, 0, half);
+            assertEquals(1, writer.getMappedWindows());
+
+            write(writer, half, MappedDownloadWriter.WINDOW_SIZE);
+            assertEquals(0, writer.getMappedWindows());
+        }
+        assertContent(destination, MappedDownloadWriter.WINDOW_SIZE);
+    }
+
+    @Test
+    void rangesMarkedWrittenCompleteAResumedWindow() throws IOException {
+        Path destination = directory.resolve("resumed");
+        try (MappedDownloadWriter writer = new MappedDownloadWriter(destination, MappedDownloadWriter.WINDOW_SIZE)) {
+            long half = MappedDownloadWriter.WINDOW_SIZE / 2;
+            write(writer, 0, half);
+            writer.markWritten(half, MappedDownloadWriter.WINDOW_SIZE - half - CHUNK);
+            assertEquals(1, writer.getMappedWindows());
+
+            write(writer, MappedDownloadWriter.WINDOW_SIZE - CHUNK, MappedDownloadWriter.WINDOW_SIZE);
+            assertEquals(0, writer.getMappedWindows());
+        }
+    }
+
+    /**
+     * Writes the bytes of {@code [start, end)}, whose value is derived from their position, a chunk at
+     * a time.
+     */
+    private static void write(DownloadWriter writer, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+        for (long position = start; position < end; position += CHUNK) {
+            buffer.clear();
+            for (int i = 0; i < CHUNK; i++) {
+                buffer.put(valueAt(position + i));
+            }
+            buffer.flip();
+            writer.write(buffer, position);
+        }
+    }
+
+    private static void assertContent(Path destination, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(destination, READ)) {
+            assertEquals(size, channel.size());
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+            for (long position = 0; position < size; position += CHUNK) {
+                buffer.clear();
+                channel.read(buffer, position);
+                for (int i = 0; i < CHUNK; i++) {
+                    assertEquals(valueAt(position + i), buffer.get(i), "byte " + (position + i));
+                }
+            }
+        }
+    }
+
+    private static byte valueAt(long position) {
+        return (byte) (position * 31 + position / CHUNK);
+    }
+}
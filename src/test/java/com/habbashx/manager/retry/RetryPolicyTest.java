@@ -0,0 +1,55 @@
+package com.habbashx.manager.retry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+
+    @Test
+    void retriesUpToTheAttemptsOfOneTransfer() {
+        RetryPolicy policy = new RetryPolicy(3, 100);
+
+        assertTrue(policy.tryRetry(1));
+        assertTrue(policy.tryRetry(3));
+        assertFalse(policy.tryRetry(4));
+        assertEquals(98, policy.getRemainingBudget());
+    }
+
+    @Test
+    void budgetIsSharedByAllTransfers() {
+        RetryPolicy policy = new RetryPolicy(5, 2);
+
+        assertTrue(policy.tryRetry(1));
+        assertTrue(policy.tryRetry(1));
+        assertFalse(policy.tryRetry(1));
+        assertEquals(0, policy.getRemainingBudget());
+    }
+
+    @Test
+    void backoffGrowsExponentiallyWithHalfOfItJittered() {
+        RetryPolicy policy = new RetryPolicy(5, 100);
+
+        for (int i = 0; i < 100; i++) {
+            assertBetween(RetryPolicy.BASE_DELAY / 2, RetryPolicy.BASE_DELAY, policy.backoffMillis(1));
+            assertBetween(RetryPolicy.BASE_DELAY, RetryPolicy.BASE_DELAY * 2, policy.backoffMillis(2));
+            assertBetween(RetryPolicy.BASE_DELAY * 2, RetryPolicy.BASE_DELAY * 4, policy.backoffMillis(3));
+        }
+    }
+
+    @Test
+    void backoffIsCappedAtTheLongestDelay() {
+        RetryPolicy policy = new RetryPolicy(100, 100);
+
+        for (int failures : new int[] {8, 20, 64, Integer.MAX_VALUE}) {
+            assertBetween(RetryPolicy.MAX_DELAY / 2, RetryPolicy.MAX_DELAY, policy.backoffMillis(failures));
+        }
+        assertBetween(RetryPolicy.BASE_DELAY / 2, RetryPolicy.BASE_DELAY, policy.backoffMillis(0));
+    }
+
+    private static void assertBetween(long lowest, long highest, long actual) {
+        assertTrue(actual >= lowest && actual <= highest, actual + " not in [" + lowest + ", " + highest + "]");
+    }
+}
@@ -0,0 +1,161 @@
+package com.habbashx.manager.segment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentPlannerTest {
+
+    private static final long FILE_SIZE = 10_000;
+
+    @Test
+    void initialSegmentsCoverTheFile() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 3, 100);
+
+        assertEquals(3, planner.getSegments().size());
+        assertCoversFile(planner, FILE_SIZE);
+    }
+
+    @Test
+    void initialSegmentBoundariesAreAligned() {
+        SegmentPlanner planner = new SegmentPlanner(100_000, 4, 1024, 4096);
+
+        for (Segment segment : planner.getSegments()) {
+            assertEquals(0, segment.getStart() % 4096);
+        }
+        assertCoversFile(planner, 100_000);
+    }
+
+    @Test
+    void pendingSegmentsAreHandedOutBeforeAnySplit() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 2, 100);
+
+        Segment first = planner.nextSegment();
+        Segment second = planner.nextSegment();
+
+        assertEquals(0, first.getStart());
+        assertEquals(FILE_SIZE / 2, second.getStart());
+        assertEquals(2, planner.getSegments().size());
+    }
+
+    @Test
+    void idleWorkerSplitsAnInFlightSegment() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 1, 100);
+        Segment running = planner.nextSegment();
+        running.claim(1000);
+
+        Segment stolen = planner.nextSegment();
+
+        assertNotNull(stolen);
+        assertEquals(running.getEnd() + 1, stolen.getStart());
+        assertTrue(running.getEnd() - running.getPosition() + 1 >= 100);
+        assertTrue(stolen.getEnd() - stolen.getStart() + 1 >= 100);
+        assertCoversFile(planner, FILE_SIZE);
+    }
+
+    @Test
+    void segmentsTooSmallToSplitAreLeftAlone() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 1, 100);
+        Segment running = planner.nextSegment();
+        running.claim((int) FILE_SIZE - 150);
+
+        assertFalse(planner.hasAssignableWork());
+        assertNull(planner.nextSegment());
+        assertEquals(1, planner.getSegments().size());
+    }
+
+    @Test
+    void releasedUnfinishedSegmentIsHandedOutAgain() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 1, 100);
+        Segment segment = planner.nextSegment();
+        segment.claim(500);
+
+        planner.release(segment);
+
+        assertTrue(planner.hasAssignableWork());
+        Segment again = planner.nextSegment();
+        assertSame(segment, again);
+        assertEquals(500, again.getPosition());
+    }
+
+    @Test
+    void releasedFinishedSegmentIsNotHandedOutAgain() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 2, 100);
+        Segment segment = planner.nextSegment();
+        segment.claim((int) FILE_SIZE);
+
+        planner.release(segment);
+
+        Segment next = planner.nextSegment();
+        assertEquals(FILE_SIZE / 2, next.getStart());
+    }
+
+    @Test
+    void plannerIsCompleteOnceEveryByteIsClaimed() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 3, 100);
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            segments.add(planner.nextSegment());
+        }
+        assertFalse(planner.isComplete());
+
+        for (Segment claimed : segments) {
+            claimed.claim((int) FILE_SIZE);
+        }
+        assertTrue(planner.isComplete());
+    }
+
+    @Test
+    void takeOverHandsTheRestOfAHedgedSegmentToTheDuplicate() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 1, 100);
+        Segment hedged = planner.nextSegment();
+        hedged.claim(3000);
+        Hedge hedge = new Hedge(hedged, hedged.getPosition(), hedged.getEnd());
+        hedged.claim(500);
+
+        Segment rest = planner.takeOver(hedge);
+
+        assertNotNull(rest);
+        assertEquals(3500, rest.getStart());
+        assertEquals(FILE_SIZE - 1, rest.getEnd());
+        assertTrue(rest.isAssigned());
+        assertTrue(hedged.isFinished());
+        assertCoversFile(planner, FILE_SIZE);
+    }
+
+    @Test
+    void takeOverReturnsNothingWhenTheHedgedSegmentFinishedFirst() {
+        SegmentPlanner planner = new SegmentPlanner(FILE_SIZE, 1, 100);
+        Segment hedged = planner.nextSegment();
+        Hedge hedge = new Hedge(hedged, hedged.getPosition(), hedged.getEnd());
+        hedged.claim((int) FILE_SIZE);
+
+        assertNull(planner.takeOver(hedge));
+        assertEquals(1, planner.getSegments().size());
+        assertTrue(planner.isComplete());
+    }
+
+    /**
+     * Asserts that the segments of the planner cover {@code [0, fileSize)} without gaps or overlaps.
+     */
+    static void assertCoversFile(SegmentPlanner planner, long fileSize) {
+        List<Segment> segments = new ArrayList<>(planner.getSegments());
+        segments.sort(Comparator.comparingLong(Segment::getStart));
+        long next = 0;
+        for (Segment segment : segments) {
+            assertEquals(next, segment.getStart(), "gap or overlap before " + segment.getStart());
+            assertTrue(segment.getEnd() >= segment.getStart());
+            next = segment.getEnd() + 1;
+        }
+        assertEquals(fileSize, next);
+    }
+}
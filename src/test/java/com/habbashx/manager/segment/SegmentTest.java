@@ -0,0 +1,122 @@
+package com.habbashx.manager.segment;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentTest {
+
+    @Test
+    void claimStopsAtTheEndOfTheSegment() {
+        Segment segment = new Segment(100, 199);
+
+        assertEquals(60, segment.claim(60));
+        assertEquals(160, segment.getPosition());
+        assertFalse(segment.isFinished());
+
+        assertEquals(40, segment.claim(60));
+        assertTrue(segment.isFinished());
+        assertEquals(0, segment.claim(60));
+        assertEquals(0, segment.getRemaining());
+    }
+
+    @Test
+    void unclaimGivesBytesBackOnlyWhileTheSegmentIsUnfinished() {
+        Segment segment = new Segment(0, 99);
+        segment.claim(50);
+
+        assertTrue(segment.unclaim(20));
+        assertEquals(30, segment.getPosition());
+
+        segment.claim(70);
+        assertFalse(segment.unclaim(10));
+        assertEquals(100, segment.getPosition());
+    }
+
+    @Test
+    void markWrittenAdvancesTheWrittenOffset() {
+        Segment segment = new Segment(1000, 1999);
+        segment.claim(300);
+        segment.markWritten(300);
+
+        assertEquals(1300, segment.getWritten());
+    }
+
+    @Test
+    void splitHalvesTheUnclaimedRange() {
+        Segment segment = new Segment(0, 999);
+        segment.claim(200);
+
+        Segment upper = segment.split(100, 1);
+
+        assertNotNull(upper);
+        assertEquals(600, upper.getStart());
+        assertEquals(999, upper.getEnd());
+        assertEquals(599, segment.getEnd());
+        assertEquals(200, segment.getPosition());
+    }
+
+    @Test
+    void splitAlignsTheStartOfTheNewSegment() {
+        Segment segment = new Segment(0, 10_000);
+        segment.claim(1);
+
+        Segment upper = segment.split(1024, 4096);
+
+        assertNotNull(upper);
+        assertEquals(0, upper.getStart() % 4096);
+        assertEquals(upper.getStart() - 1, segment.getEnd());
+    }
+
+    @Test
+    void splitRefusesRangesBelowTwiceTheMinimumSize() {
+        Segment segment = new Segment(0, 999);
+        segment.claim(900);
+
+        assertNull(segment.split(100, 1));
+        assertEquals(999, segment.getEnd());
+    }
+
+    @Test
+    void takeOverEndsTheSegmentAtItsAlignedPosition() {
+        Segment segment = new Segment(0, 99_999);
+        segment.claim(5000);
+
+        Segment rest = segment.takeOver(4096);
+
+        assertNotNull(rest);
+        assertEquals(8192, rest.getStart());
+        assertEquals(99_999, rest.getEnd());
+        assertEquals(8191, segment.getEnd());
+        assertFalse(segment.isFinished());
+
+        segment.claim(10_000);
+        assertTrue(segment.isFinished());
+        assertEquals(8192, segment.getPosition());
+    }
+
+    @Test
+    void takeOverFinishesASegmentAtAnAlignedPosition() {
+        Segment segment = new Segment(0, 99_999);
+        segment.claim(8192);
+
+        Segment rest = segment.takeOver(4096);
+
+        assertNotNull(rest);
+        assertEquals(8192, rest.getStart());
+        assertTrue(segment.isFinished());
+    }
+
+    @Test
+    void takeOverLeavesNothingOfAFinishedSegment() {
+        Segment segment = new Segment(0, 999);
+        segment.claim(1000);
+
+        assertNull(segment.takeOver(1));
+        assertEquals(999, segment.getEnd());
+    }
+}
@@ -0,0 +1,111 @@
+package com.habbashx.manager.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpeedLimiterTest {
+
+    private static final long RATE = 1024 * 1024;
+
+    @Test
+    void unlimitedRateNeverWaits() throws InterruptedIOException {
+        SpeedLimiter limiter = new SpeedLimiter(0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire(1024 * 1024);
+        }
+
+        assertTrue(elapsedMillis(start) < 100);
+    }
+
+    @Test
+    void burstWithinTheToleranceDoesNotWait() throws InterruptedIOException {
+        SpeedLimiter limiter = new SpeedLimiter(RATE);
+
+        long start = System.nanoTime();
+        limiter.acquire(RATE / 20);
+
+        assertTrue(elapsedMillis(start) < 50);
+    }
+
+    @Test
+    void transfersArePacedAtTheRate() throws InterruptedIOException {
+        SpeedLimiter limiter = new SpeedLimiter(RATE);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(RATE / 20);
+        }
+
+        // half a second worth of bytes, less the burst tolerance of a tenth of a second
+        long elapsed = elapsedMillis(start);
+        assertTrue(elapsed >= 350, "took " + elapsed + "ms");
+        assertTrue(elapsed < 2000, "took " + elapsed + "ms");
+    }
+
+    @Test
+    void concurrentTransfersShareTheRate() throws InterruptedException {
+        SpeedLimiter limiter = new SpeedLimiter(RATE);
+        List<Thread> threads = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5; i++) {
+                        limiter.acquire(RATE / 40);
+                    }
+                } catch (InterruptedIOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long elapsed = elapsedMillis(start);
+        assertTrue(elapsed >= 350, "took " + elapsed + "ms");
+        assertTrue(elapsed < 2000, "took " + elapsed + "ms");
+    }
+
+    @Test
+    void unlimitedRateTakesEffectAtOnce() throws InterruptedIOException {
+        SpeedLimiter limiter = new SpeedLimiter(1024);
+        limiter.setRate(0);
+
+        long start = System.nanoTime();
+        limiter.acquire(RATE);
+
+        assertTrue(elapsedMillis(start) < 50);
+        assertEquals(0, limiter.getRate());
+    }
+
+    @Test
+    void interruptedWaitFailsAndKeepsTheInterruptStatus() {
+        SpeedLimiter limiter = new SpeedLimiter(1024);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedIOException.class, () -> limiter.acquire(10 * 1024));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}